@@ -0,0 +1,92 @@
+package com.rusefi.benchmarks;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files, exit code is non-zero if any benchmark got slower than allowed
+ * <p>
+ * Usage: BaselineCheck baseline.json results.json [allowed regression percent]
+ */
+public class BaselineCheck {
+    public static void main(String[] args) throws IOException, ParseException {
+        if (args.length < 2) {
+            System.out.println("BaselineCheck baseline.json results.json [allowed regression percent]");
+            System.exit(-1);
+        }
+        double allowedRegression = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+
+        Map<String, JSONObject> baseline = read(args[0]);
+        Map<String, JSONObject> current = read(args[1]);
+
+        int regressions = 0;
+        for (Map.Entry<String, JSONObject> e : current.entrySet()) {
+            JSONObject before = baseline.get(e.getKey());
+            if (before == null) {
+                System.out.println(e.getKey() + ": no baseline");
+                continue;
+            }
+            double change = getChangePercent(before, e.getValue());
+            boolean isRegression = change > allowedRegression;
+            if (isRegression)
+                regressions++;
+            System.out.println(String.format("%s: %.3f -> %.3f %s, %+.1f%%%s", e.getKey(),
+                getScore(before), getScore(e.getValue()), getUnit(e.getValue()), change,
+                isRegression ? " REGRESSION" : ""));
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) over " + allowedRegression + "%");
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * @return positive if current result is worse
+     */
+    private static double getChangePercent(JSONObject before, JSONObject after) {
+        double ratio = getScore(after) / getScore(before);
+        // throughput: bigger is better, all other modes measure time
+        if ("thrpt".equals(before.get("mode")))
+            ratio = 1 / ratio;
+        return (ratio - 1) * 100;
+    }
+
+    private static double getScore(JSONObject result) {
+        return ((Number) getPrimaryMetric(result).get("score")).doubleValue();
+    }
+
+    private static String getUnit(JSONObject result) {
+        return (String) getPrimaryMetric(result).get("scoreUnit");
+    }
+
+    private static JSONObject getPrimaryMetric(JSONObject result) {
+        return (JSONObject) result.get("primaryMetric");
+    }
+
+    /**
+     * @return results by benchmark name with parameters
+     */
+    private static Map<String, JSONObject> read(String fileName) throws IOException, ParseException {
+        Map<String, JSONObject> result = new TreeMap<>();
+        try (Reader reader = new FileReader(fileName)) {
+            JSONArray array = (JSONArray) new JSONParser().parse(reader);
+            for (Object o : array) {
+                JSONObject benchmark = (JSONObject) o;
+                String key = (String) benchmark.get("benchmark");
+                Object params = benchmark.get("params");
+                if (params != null)
+                    key += new TreeMap<>((Map<?, ?>) params);
+                result.put(key, benchmark);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package com.rusefi.benchmarks;
+
+import com.rusefi.core.Sensor;
+import com.rusefi.sensor_logs.BinarySensorLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * One MLG record with all sensors per output channels response
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinarySensorLogBenchmark {
+    private BinarySensorLog<Sensor> log;
+
+    @Setup
+    public void setup() {
+        List<Sensor> sensors = Arrays.stream(Sensor.values()).filter(sensor -> sensor.getType() != null).collect(Collectors.toList());
+        log = new BinarySensorLog<>(sensor -> (double) sensor.ordinal(), sensors);
+    }
+
+    @TearDown
+    public void tearDown() {
+        log.close();
+        if (log.getFileName() != null)
+            new File(log.getFileName()).delete();
+    }
+
+    @Benchmark
+    public void writeSensorLogLine() {
+        log.writeSensorLogLine();
+    }
+}
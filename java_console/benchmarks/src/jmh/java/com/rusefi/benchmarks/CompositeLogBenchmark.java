@@ -0,0 +1,67 @@
+package com.rusefi.benchmarks;
+
+import com.rusefi.composite.CompositeEventBatch;
+import com.rusefi.composite.CompositeParser;
+import com.rusefi.config.generated.Integration;
+import com.rusefi.stream.VcdStreamFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Composite (tooth) logger: response parsing and VCD output
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompositeLogBenchmark {
+    @Param({"100", "1000"})
+    public int eventCount;
+
+    private byte[] response;
+    private final CompositeParser parser = new CompositeParser();
+    private final CompositeEventBatch events = new CompositeEventBatch();
+    private final Writer writer = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void write(String str) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + eventCount * Integration.COMPOSITE_PACKET_SIZE);
+        buffer.put((byte) 0);
+        for (int i = 0; i < eventCount; i++) {
+            buffer.putInt(i * 1000);
+            buffer.put((byte) i);
+        }
+        response = buffer.array();
+        parser.parse(response, events);
+    }
+
+    @Benchmark
+    public CompositeEventBatch parse() {
+        parser.parse(response, events);
+        return events;
+    }
+
+    @Benchmark
+    public void appendEvents() throws IOException {
+        VcdStreamFile.appendEvents(events, writer);
+    }
+}
@@ -0,0 +1,44 @@
+package com.rusefi.benchmarks;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.ConfigurationImageDiff;
+import com.rusefi.io.commands.ByteRange;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tune upload and change tracking diff a complete configuration image
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigurationImageDiffBenchmark {
+    private static final int SIZE = 32 * 1024;
+
+    /**
+     * number of changed bytes scattered across the image
+     */
+    @Param({"0", "100", "5000"})
+    public int changes;
+
+    private ConfigurationImage current;
+    private ConfigurationImage newVersion;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(changes);
+        current = new ConfigurationImage(SIZE);
+        random.nextBytes(current.getContent());
+        newVersion = current.clone();
+        for (int i = 0; i < changes; i++)
+            newVersion.getContent()[random.nextInt(SIZE)]++;
+    }
+
+    @Benchmark
+    public List<ByteRange> getDifferentRanges() {
+        return ConfigurationImageDiff.getDifferentRanges(current, newVersion);
+    }
+}
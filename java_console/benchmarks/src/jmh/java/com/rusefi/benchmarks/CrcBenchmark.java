@@ -0,0 +1,39 @@
+package com.rusefi.benchmarks;
+
+import com.rusefi.binaryprotocol.IoHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CRC is calculated for every packet in both directions
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CrcBenchmark {
+    /**
+     * typical command, typical output channels response, large image chunk
+     */
+    @Param({"5", "1024", "16384"})
+    public int size;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        payload = new byte[size];
+        new Random(size).nextBytes(payload);
+    }
+
+    @Benchmark
+    public int getCrc32() {
+        return IoHelper.getCrc32(payload);
+    }
+
+    @Benchmark
+    public byte[] makeCrc32Packet() {
+        return IoHelper.makeCrc32Packet(payload);
+    }
+}
@@ -0,0 +1,46 @@
+package com.rusefi.benchmarks;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.config.DecodePlan;
+import com.rusefi.config.Field;
+import com.rusefi.config.FieldType;
+import com.rusefi.config.generated.TsOutputs;
+import com.rusefi.config.generated.VariableRegistryValues;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of every output channel from one output channels response
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecodePlanBenchmark {
+    private final DecodePlan plan = DecodePlan.compile(TsOutputs.VALUES);
+    private final double[] values = new double[plan.size()];
+    private ConfigurationImage outputs;
+
+    @Setup
+    public void setup() {
+        outputs = new ConfigurationImage(VariableRegistryValues.TS_TOTAL_OUTPUT_SIZE);
+        new Random(1).nextBytes(outputs.getContent());
+    }
+
+    @Benchmark
+    public double[] fieldByField() {
+        for (int i = 0; i < TsOutputs.VALUES.length; i++) {
+            Field field = TsOutputs.VALUES[i];
+            if (field.getType() != FieldType.STRING)
+                values[i] = field.getValue(outputs, field.getScale());
+        }
+        return values;
+    }
+
+    @Benchmark
+    public double[] decodePlan() {
+        plan.decode(outputs.getContent(), 0, values);
+        return values;
+    }
+}
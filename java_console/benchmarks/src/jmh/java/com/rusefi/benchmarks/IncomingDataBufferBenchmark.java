@@ -0,0 +1,46 @@
+package com.rusefi.benchmarks;
+
+import com.rusefi.binaryprotocol.IncomingDataBuffer;
+import com.rusefi.binaryprotocol.IoHelper;
+import com.rusefi.io.loopback.LoopbackIoStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.EOFException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receiving side of each request: bytes arrive into the buffer and are taken out as a CRC-checked packet
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IncomingDataBufferBenchmark {
+    @Param({"16", "1024", "16384"})
+    public int size;
+
+    private LoopbackIoStream stream;
+    private IncomingDataBuffer buffer;
+    private byte[] packet;
+
+    @Setup
+    public void setup() {
+        stream = LoopbackIoStream.createPair().getClient();
+        buffer = stream.getDataBuffer();
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        payload[0] = 0;
+        packet = IoHelper.makeCrc32Packet(payload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        stream.close();
+    }
+
+    @Benchmark
+    public byte[] getPacket() throws EOFException {
+        buffer.addData(packet);
+        return buffer.getPacket("benchmark");
+    }
+}
@@ -0,0 +1,38 @@
+package com.rusefi.benchmarks;
+
+import com.opensr5.ConfigurationImage;
+import com.opensr5.ini.IniFileModelImpl;
+import com.rusefi.tune.xml.Msq;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Happens on each connect: .ini parsing and tune export
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IniFileBenchmark {
+    private static final String INI_FILE = System.getProperty("benchmark_ini_file", "../../firmware/tunerstudio/generated/rusefi.ini");
+
+    private IniFileModelImpl ini;
+    private ConfigurationImage image;
+
+    @Setup
+    public void setup() {
+        ini = IniFileModelImpl.readIniFile(INI_FILE);
+        // all zeroes is a valid value for every field
+        image = new ConfigurationImage(ini.getMetaInfo().getTotalSize());
+    }
+
+    @Benchmark
+    public IniFileModelImpl readIniFile() {
+        return IniFileModelImpl.readIniFile(INI_FILE);
+    }
+
+    @Benchmark
+    public Msq msqValueOf() {
+        return Msq.valueOf(image, image.getSize(), ini.getSignature(), ini);
+    }
+}
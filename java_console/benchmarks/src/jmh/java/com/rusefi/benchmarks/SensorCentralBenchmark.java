@@ -0,0 +1,32 @@
+package com.rusefi.benchmarks;
+
+import com.rusefi.config.generated.VariableRegistryValues;
+import com.rusefi.core.SensorCentral;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of each output channels response into all {@link com.rusefi.core.Sensor} values
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SensorCentralBenchmark {
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        response = new byte[1 + VariableRegistryValues.TS_TOTAL_OUTPUT_SIZE];
+        new Random(1).nextBytes(response);
+        response[0] = 0;
+    }
+
+    @Benchmark
+    public void grabSensorValues() {
+        // values are random so that listeners are notified like with a running engine
+        response[1 + (int) (System.nanoTime() & 0xFF)]++;
+        SensorCentral.getInstance().grabSensorValues(response);
+    }
+}
@@ -0,0 +1,78 @@
+package com.opensr5.ini;
+
+import com.opensr5.ini.field.IniField;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds configuration fields by byte range, for instance to tell which fields were changed by a configuration diff.
+ * <p>
+ * Fields could overlap (bit fields share same bytes) so each field has an entry and lookup is a binary search
+ * followed by a scan back bounded by the longest field ending before given range.
+ */
+public class IniFieldOffsetIndex {
+    private final IniField[] fields;
+    private final int[] offsets;
+    /**
+     * maximum end offset among fields with same or smaller index
+     */
+    private final int[] maxEnds;
+
+    public IniFieldOffsetIndex(Collection<IniField> input) {
+        fields = input.toArray(new IniField[0]);
+        Arrays.sort(fields, Comparator.comparingInt(IniField::getOffset));
+        offsets = new int[fields.length];
+        maxEnds = new int[fields.length];
+        int maxEnd = 0;
+        for (int i = 0; i < fields.length; i++) {
+            offsets[i] = fields[i].getOffset();
+            maxEnd = Math.max(maxEnd, offsets[i] + Math.max(1, fields[i].getSize()));
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    @NotNull
+    public static IniFieldOffsetIndex create(IniFileModel ini) {
+        return new IniFieldOffsetIndex(ini.getAllIniFields().values());
+    }
+
+    /**
+     * @return fields overlapping with [offset, offset + count) sorted by offset
+     */
+    @NotNull
+    public List<IniField> getFields(int offset, int count) {
+        int end = offset + count;
+        // index of first field starting at or after range end
+        int index = Arrays.binarySearch(offsets, end);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            while (index > 0 && offsets[index - 1] == end)
+                index--;
+        }
+
+        List<IniField> result = null;
+        for (int i = index - 1; i >= 0 && maxEnds[i] > offset; i--) {
+            IniField field = fields[i];
+            if (offsets[i] + Math.max(1, field.getSize()) > offset) {
+                if (result == null)
+                    result = new ArrayList<>();
+                result.add(field);
+            }
+        }
+        if (result == null)
+            return Collections.emptyList();
+        Collections.reverse(result);
+        return result;
+    }
+
+    public int size() {
+        return fields.length;
+    }
+}
@@ -1,6 +1,7 @@
 package com.opensr5.ini.field;
 
 import com.opensr5.ConfigurationImage;
+import com.rusefi.config.DecodePlan;
 import com.rusefi.config.Field;
 import com.rusefi.config.FieldType;
 import com.rusefi.tune.xml.Constant;
@@ -47,9 +48,8 @@ public class ScalarIniField extends IniField {
 
     @Override
     public String getValue(ConfigurationImage image) {
-        Field f = new Field(getName(), getOffset(), getType());
         try {
-            Double value = f.getValue(image, multiplier);
+            double value = DecodePlan.decodeValue(image.getContent(), getOffset(), type, Field.NO_BIT_OFFSET) * multiplier;
             return Field.niceToString(value, Field.FIELD_PRECISION);
         } catch (Throwable e) {
             throw new IllegalStateException("While getting " + getName(), e);
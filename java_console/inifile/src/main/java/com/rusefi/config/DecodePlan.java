@@ -0,0 +1,196 @@
+package com.rusefi.config;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.rusefi.config.FieldType.*;
+
+/**
+ * Offsets, types, bit positions and scales of a structure like TsOutputs flattened into primitive arrays once, so that
+ * whole output channels block is decoded in one pass without creating a {@link Field} or ByteBuffer per value.
+ * <pre>
+ * DecodePlan plan = DecodePlan.compile(TsOutputs.VALUES);
+ * double[] values = new double[plan.size()];
+ * plan.decode(response, 1, values);
+ * </pre>
+ * Values are the same as {@link Field#getValue} with {@link Field#getScale()} as multiplier. Fields are located by
+ * {@link Field#getTotalOffset()} since nested structures sit at their base offset within output channels block, while
+ * {@link Field#getValue} expects an image of the structure itself.
+ */
+public class DecodePlan {
+    private static final byte KIND_INT8 = 0;
+    private static final byte KIND_UINT8 = 1;
+    private static final byte KIND_INT16 = 2;
+    private static final byte KIND_UINT16 = 3;
+    private static final byte KIND_INT = 4;
+    private static final byte KIND_FLOAT = 5;
+    private static final byte KIND_BIT = 6;
+    /**
+     * strings are not numbers, always decoded as NaN
+     */
+    private static final byte KIND_NONE = 7;
+
+    private final Field[] fields;
+    private final int[] offsets;
+    private final byte[] kinds;
+    private final byte[] bits;
+    private final double[] scales;
+    private final Map<String, Integer> indexByName = new HashMap<>();
+    /**
+     * smallest block size covering all numeric fields
+     */
+    private final int blockSize;
+
+    private DecodePlan(Field[] fields) {
+        this.fields = fields.clone();
+        int count = fields.length;
+        offsets = new int[count];
+        kinds = new byte[count];
+        bits = new byte[count];
+        scales = new double[count];
+        int blockSize = 0;
+        for (int i = 0; i < count; i++) {
+            Field field = fields[i];
+            offsets[i] = field.getTotalOffset();
+            kinds[i] = getKind(field);
+            bits[i] = (byte) Math.max(0, field.getBitOffset());
+            scales[i] = field.getScale();
+            if (kinds[i] != KIND_NONE)
+                blockSize = Math.max(blockSize, offsets[i] + field.getType().getStorageSize());
+            indexByName.putIfAbsent(field.getName().toLowerCase(), i);
+        }
+        this.blockSize = blockSize;
+    }
+
+    @NotNull
+    public static DecodePlan compile(Field[] fields) {
+        return new DecodePlan(fields);
+    }
+
+    private static byte getKind(Field field) {
+        if (field.getBitOffset() != Field.NO_BIT_OFFSET)
+            return KIND_BIT;
+        switch (field.getType()) {
+            case INT8:
+                return KIND_INT8;
+            case UINT8:
+                return KIND_UINT8;
+            case INT16:
+                return KIND_INT16;
+            case UINT16:
+                return KIND_UINT16;
+            case INT:
+                return KIND_INT;
+            case FLOAT:
+                return KIND_FLOAT;
+            default:
+                return KIND_NONE;
+        }
+    }
+
+    /**
+     * Decodes all fields
+     *
+     * @param data       block with structure starting at dataOffset, for instance output channels response with
+     *                   response code at index zero and dataOffset one
+     * @param destination array at least {@link #size()} long, value of field N is stored at index N
+     */
+    public void decode(byte[] data, int dataOffset, double[] destination) {
+        if (dataOffset < 0 || dataOffset + blockSize > data.length)
+            throw new IllegalArgumentException(String.format("Need %d bytes at %d but got %d", blockSize, dataOffset, data.length));
+        for (int i = 0; i < kinds.length; i++)
+            destination[i] = decodeRaw(data, dataOffset + offsets[i], kinds[i], bits[i]) * scales[i];
+    }
+
+    /**
+     * @return scaled value of one field
+     */
+    public double decode(byte[] data, int dataOffset, int index) {
+        return decodeRaw(data, dataOffset + offsets[index], kinds[index], bits[index]) * scales[index];
+    }
+
+    /**
+     * @return raw value of field of given type at given offset, same as {@link Field#getValue} with multiplier one
+     */
+    public static double decodeValue(byte[] data, int offset, FieldType type, int bitOffset) {
+        if (bitOffset != Field.NO_BIT_OFFSET)
+            return decodeRaw(data, offset, KIND_BIT, bitOffset);
+        byte kind;
+        if (type == INT8) {
+            kind = KIND_INT8;
+        } else if (type == UINT8) {
+            kind = KIND_UINT8;
+        } else if (type == INT16) {
+            kind = KIND_INT16;
+        } else if (type == UINT16) {
+            kind = KIND_UINT16;
+        } else if (type == INT) {
+            kind = KIND_INT;
+        } else if (type == FLOAT) {
+            kind = KIND_FLOAT;
+        } else {
+            throw new IllegalStateException("Unexpected " + type);
+        }
+        return decodeRaw(data, offset, kind, 0);
+    }
+
+    private static double decodeRaw(byte[] data, int offset, byte kind, int bit) {
+        switch (kind) {
+            case KIND_INT8:
+                return data[offset];
+            case KIND_UINT8:
+                return data[offset] & 0xFF;
+            case KIND_INT16:
+                return (short) getShort(data, offset);
+            case KIND_UINT16:
+                return getShort(data, offset);
+            case KIND_INT:
+                return getInt(data, offset);
+            case KIND_FLOAT:
+                return Float.intBitsToFloat(getInt(data, offset));
+            case KIND_BIT:
+                return (getInt(data, offset) >> bit) & 1;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    private static int getShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+            | (data[offset + 1] & 0xFF) << 8
+            | (data[offset + 2] & 0xFF) << 16
+            | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * @return index of field with given name ignoring case, -1 if none
+     */
+    public int indexOf(String name) {
+        Integer index = indexByName.get(name.toLowerCase());
+        return index == null ? -1 : index;
+    }
+
+    public Field getField(int index) {
+        return fields[index];
+    }
+
+    /**
+     * @return number of fields
+     */
+    public int size() {
+        return fields.length;
+    }
+
+    /**
+     * @return smallest data block covering all numeric fields
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+}
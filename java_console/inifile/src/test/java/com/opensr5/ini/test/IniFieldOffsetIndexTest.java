@@ -0,0 +1,40 @@
+package com.opensr5.ini.test;
+
+import com.opensr5.ini.IniFieldOffsetIndex;
+import com.opensr5.ini.field.IniField;
+import com.opensr5.ini.field.StringIniField;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IniFieldOffsetIndexTest {
+    private static String names(List<IniField> fields) {
+        return fields.stream().map(IniField::getName).collect(Collectors.joining(","));
+    }
+
+    @Test
+    public void testLookup() {
+        IniFieldOffsetIndex index = new IniFieldOffsetIndex(Arrays.asList(
+            new StringIniField("table", 100, 64),
+            new StringIniField("a", 0, 4),
+            new StringIniField("b", 4, 4),
+            // bit field sharing bytes with 'b'
+            new StringIniField("bit", 6, 1),
+            new StringIniField("c", 200, 2)
+        ));
+        assertEquals(5, index.size());
+
+        assertEquals("a", names(index.getFields(0, 1)));
+        assertEquals("a,b", names(index.getFields(3, 2)));
+        assertEquals("b,bit", names(index.getFields(6, 1)));
+        assertEquals("table", names(index.getFields(150, 1)));
+        assertEquals("table,c", names(index.getFields(163, 40)));
+        assertTrue(index.getFields(8, 92).isEmpty());
+        assertTrue(index.getFields(1000, 10).isEmpty());
+    }
+}
@@ -1,9 +1,20 @@
 package com.opensr5.io;
 
+import java.util.Arrays;
+
 /**
 * @author Andrey Belomutskiy
 *         3/3/14
 */
 public interface DataListener {
     void onDataArrived(byte[] freshData);
+
+    /**
+     * Reader threads reuse their buffers: data is only valid for the duration of this call.
+     * Listeners which are able to consume a slice should override this to avoid a copy per read, legacy listeners
+     * always get their own copy since they could hold on to it.
+     */
+    default void onDataArrived(byte[] data, int offset, int length) {
+        onDataArrived(Arrays.copyOfRange(data, offset, offset + length));
+    }
 }
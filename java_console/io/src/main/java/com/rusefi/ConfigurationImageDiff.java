@@ -1,16 +1,32 @@
 package com.rusefi;
 
 import com.opensr5.ConfigurationImage;
+import com.opensr5.ini.IniFieldOffsetIndex;
+import com.opensr5.ini.field.IniField;
 import com.rusefi.core.Pair;
+import com.rusefi.io.commands.ByteRange;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * This class has the logic of finding all ranges of changes between who {@link ConfigurationImage}
  * It's used to send just the diff to the ECU.
+ * <p>
+ * Images are compared eight bytes at a time, we only go byte by byte to find exact boundaries of a change.
  *
  * Andrey Belomutskiy, (c) 2013-2020
  * 3/6/2015
  */
 public class ConfigurationImageDiff {
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
     private ConfigurationImageDiff() {
     }
 
@@ -24,8 +40,7 @@ public class ConfigurationImageDiff {
         if (length != c2.length)
             throw new IllegalArgumentException("Length mismatch");
 
-        while (position < length && c1[position] == c2[position])
-            position++;
+        position = new Comparison(c1, c2).findDifferent(position);
         if (position == length)
             return null; // no difference
 
@@ -41,4 +56,91 @@ public class ConfigurationImageDiff {
 
         return new Pair<>(startOfDiff, position);
     }
+
+    /**
+     * @return all ranges of different bytes, in a single pass
+     * @see com.rusefi.binaryprotocol.PatchPlanner
+     */
+    @NotNull
+    public static List<ByteRange> getDifferentRanges(ConfigurationImage image1, ConfigurationImage image2) {
+        byte[] c1 = image1.getContent();
+        byte[] c2 = image2.getContent();
+        int length = c1.length;
+        if (length != c2.length)
+            throw new IllegalArgumentException("Length mismatch");
+
+        Comparison comparison = new Comparison(c1, c2);
+        List<ByteRange> result = new ArrayList<>();
+        int position = comparison.findDifferent(0);
+        while (position < length) {
+            int end = comparison.findSame(position);
+            result.add(new ByteRange(position, end - position));
+            position = comparison.findDifferent(end);
+        }
+        return result;
+    }
+
+    /**
+     * @return fields touched by the difference in offset order, each field once
+     */
+    @NotNull
+    public static Set<IniField> getDifferentFields(ConfigurationImage image1, ConfigurationImage image2, IniFieldOffsetIndex index) {
+        Set<IniField> result = new LinkedHashSet<>();
+        for (ByteRange range : getDifferentRanges(image1, image2))
+            result.addAll(index.getFields(range.getOffset(), range.getCount()));
+        return result;
+    }
+
+    private static class Comparison {
+        private final byte[] c1;
+        private final byte[] c2;
+        private final ByteBuffer b1;
+        private final ByteBuffer b2;
+        /**
+         * last position from which a whole word could be read
+         */
+        private final int lastWord;
+
+        Comparison(byte[] c1, byte[] c2) {
+            this.c1 = c1;
+            this.c2 = c2;
+            // little-endian so that lowest byte of a word is the first byte in the array
+            b1 = ByteBuffer.wrap(c1).order(ByteOrder.LITTLE_ENDIAN);
+            b2 = ByteBuffer.wrap(c2).order(ByteOrder.LITTLE_ENDIAN);
+            lastWord = c1.length - Long.BYTES;
+        }
+
+        /**
+         * @return position of first different byte at or after given position, array length if none
+         */
+        int findDifferent(int position) {
+            while (position <= lastWord) {
+                long xor = b1.getLong(position) ^ b2.getLong(position);
+                if (xor != 0)
+                    return position + (Long.numberOfTrailingZeros(xor) >>> 3);
+                position += Long.BYTES;
+            }
+            while (position < c1.length && c1[position] == c2[position])
+                position++;
+            return position;
+        }
+
+        /**
+         * @return position of first equal byte at or after given position, array length if none
+         */
+        int findSame(int position) {
+            while (position <= lastWord) {
+                long xor = b1.getLong(position) ^ b2.getLong(position);
+                // high bit is set for each zero byte of xor, that's each equal byte. Borrow could only produce false
+                // positives above a true zero byte, lowest flagged byte is always exact
+                long equalBytes = (xor - LOW_BITS) & ~xor & HIGH_BITS;
+                if (equalBytes != 0)
+                    return position + (Long.numberOfTrailingZeros(equalBytes) >>> 3);
+                position += Long.BYTES;
+            }
+            while (position < c1.length && c1[position] != c2[position])
+                position++;
+            return position;
+        }
+    }
 }
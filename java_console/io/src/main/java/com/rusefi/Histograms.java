@@ -162,12 +162,16 @@ public final class Histograms {
         return l;
     }
 
+    /**
+     * Statistics of one thread, recording thread and dumping thread both hold the lock of this object
+     */
     public static final class LocalStats {
         public HashMap<ValueType, StatisticsGroup> stats; // Type -> StatisticsGroup
     }
 
     /**
-     * Adds specified samples to statistics.
+     * Adds specified samples to statistics. Does not allocate once this thread has recorded given name, unless
+     * thread has recorded nothing at all for a whole dump period.
      */
     public void addValue(ValueType t, String name, long value) {
         String type = t.getName();
@@ -175,71 +179,82 @@ public final class Histograms {
             value = 0;
         int index = getIndex(value);
         LocalStats ls = local_stats.get();
-        boolean create;
-        create = ls.stats == null;
-        if (create)
-            ls.stats = new HashMap<>();
-        StatisticsGroup sg = ls.stats.get(t);
-        if (sg == null)
-            ls.stats.put(t, sg = new StatisticsGroup(type));
-        sg.add(name, index, value);
-        if (create)
-            synchronized (all_local_stats) {
-                all_local_stats.add(ls);
+        synchronized (ls) {
+            if (ls.stats == null) {
+                ls.stats = new HashMap<>();
+                synchronized (all_local_stats) {
+                    all_local_stats.add(ls);
+                }
             }
+            StatisticsGroup sg = ls.stats.get(t);
+            if (sg == null)
+                ls.stats.put(t, sg = new StatisticsGroup(type));
+            sg.add(name, index, value);
+        }
     }
 
     /**
      * returns current statistics without resetting anything
      */
     private Collection<StatisticsGroup> getCurrentSnapshot() {
-        List<LocalStats> lss = getLocalStats(false);
         HashMap<String, StatisticsGroup> snapshot = new HashMap<>();
-        for (LocalStats ls : lss) {
-            // in case of a snapshot without reset, we have to merge under the lock
-            mergeStats(snapshot, ls.stats);
+        for (LocalStats ls : getLocalStats()) {
+            synchronized (ls) {
+                mergeStats(snapshot, ls.stats);
+            }
         }
         return snapshot.values();
     }
 
     /**
-     * Returns snapshot of all gathered statistics and clears them in process.
+     * Returns snapshot of all gathered statistics and clears them in process. Counts are reset in place so that
+     * recording threads keep their arrays, threads which have recorded nothing since previous reset are dropped.
      */
     private Collection<StatisticsGroup> takeAndResetSnapshot() {
-        List<LocalStats> lss = getLocalStats(true);
         HashMap<String, StatisticsGroup> snapshot = new HashMap<>();
-        for (LocalStats ls : lss) {
-            HashMap<ValueType, StatisticsGroup> stats;
-            stats = ls.stats;
-            /**
-             * we will re-register this LocalStats on next #add() invocation
-             * @see #add(String, String, int, long)
-             */
-            ls.stats = null;
-            mergeStats(snapshot, stats);
+        for (LocalStats ls : getLocalStats()) {
+            synchronized (ls) {
+                if (mergeStats(snapshot, ls.stats)) {
+                    for (StatisticsGroup sg : ls.stats.values()) {
+                        for (Statistics st : sg.data.values())
+                            st.reset();
+                    }
+                } else {
+                    // likely a thread which is gone, it would be registered again by next #addValue
+                    ls.stats = null;
+                    synchronized (all_local_stats) {
+                        all_local_stats.remove(ls);
+                    }
+                }
+            }
         }
         return snapshot.values();
     }
 
-    private static void mergeStats(HashMap<String, StatisticsGroup> snapshot, HashMap<ValueType, StatisticsGroup> stats) {
+    /**
+     * Adds copies of non-empty statistics into snapshot
+     *
+     * @return false if there was nothing to add
+     */
+    private static boolean mergeStats(HashMap<String, StatisticsGroup> snapshot, HashMap<ValueType, StatisticsGroup> stats) {
+        boolean isAnything = false;
         if (stats != null)
             for (StatisticsGroup source : stats.values()) {
                 StatisticsGroup dest = snapshot.get(source.type);
                 if (dest == null)
-                    snapshot.put(source.type, source);
-                else
-                    dest.add(source);
+                    dest = new StatisticsGroup(source.type);
+                if (dest.add(source)) {
+                    snapshot.put(source.type, dest);
+                    isAnything = true;
+                }
             }
+        return isAnything;
     }
 
-    private List<LocalStats> getLocalStats(boolean reset) {
-        List<LocalStats> lss;
+    private List<LocalStats> getLocalStats() {
         synchronized (all_local_stats) {
-            lss = new ArrayList<>(all_local_stats);
-            if (reset)
-                all_local_stats.clear();
+            return new ArrayList<>(all_local_stats);
         }
-        return lss;
     }
 
     /**
@@ -420,6 +435,12 @@ public final class Histograms {
             histogram[index] += count;
         }
 
+        private void reset() {
+            total_value = 0;
+            total_count = 0;
+            Arrays.fill(histogram, 0);
+        }
+
         public void add(Statistics st) {
             total_value += st.total_value;
             total_count += st.total_count;
@@ -453,15 +474,23 @@ public final class Histograms {
             st.add(index, 1, value);
         }
 
-        public void add(StatisticsGroup sg) {
+        /**
+         * @return false if there were no samples in given group
+         */
+        public boolean add(StatisticsGroup sg) {
+            boolean isAnything = false;
             for (Iterator<Statistics> it = sg.data.values().iterator(); it.hasNext(); ) {
                 Statistics source = it.next();
+                if (source.total_count == 0)
+                    continue;
+                isAnything = true;
                 Statistics dest = data.get(source.name);
                 if (dest == null)
                     data.put(source.name, new Statistics(source));
                 else
                     dest.add(source);
             }
+            return isAnything;
         }
     }
 
@@ -469,7 +498,11 @@ public final class Histograms {
      * The type of a value.
      */
     public enum ValueType {
-        INVOCATION("Invocation");
+        INVOCATION("Invocation"),
+        /**
+         * Controller round-trip by opcode, in microseconds
+         */
+        BINARY_PROTOCOL("Binary protocol latency us");
         /**
          * Value type that is used to mean a method call.
          */
@@ -8,13 +8,11 @@ import com.opensr5.ConfigurationImageWithMeta;
 import com.opensr5.ini.IniFileModel;
 import com.opensr5.io.ConfigurationImageFile;
 import com.opensr5.io.DataListener;
-import com.rusefi.ConfigurationImageDiff;
 import com.rusefi.NamedThreadFactory;
 import com.rusefi.config.generated.Integration;
 import com.rusefi.Timeouts;
 import com.rusefi.binaryprotocol.test.Bug3923;
 import com.rusefi.config.generated.Fields;
-import com.rusefi.core.Pair;
 import com.rusefi.core.SensorCentral;
 import com.rusefi.core.net.ConnectionAndMeta;
 import com.rusefi.io.*;
@@ -31,7 +29,11 @@ import javax.xml.bind.JAXBException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.*;
 
@@ -51,12 +53,50 @@ import static com.rusefi.config.generated.VariableRegistryValues.*;
 public class BinaryProtocol {
     private static final Logging log = getLogging(BinaryProtocol.class);
     private static final ThreadFactory THREAD_FACTORY = new NamedThreadFactory("ECU text pull", true);
+    /**
+     * How many read requests we keep in flight on streams which are able to queue requests
+     */
+    public static final int PIPELINE_WINDOW = Integer.getInteger("pipeline_window", 4);
+    /**
+     * once pipelined reply is lost we wait for this long without new bytes before assuming that remaining replies
+     * are either here or lost for good
+     */
+    private static final int PIPELINE_DRAIN_PERIOD = Integer.getInteger("pipeline_drain_period", 250);
+    /**
+     * opcode plus packed offset and size of read and write requests
+     */
+    private static final int PIPELINED_REQUEST_HEADER = 1 + 4;
+    /**
+     * gauge refresh period until link round-trip is measured
+     */
+    public static final int OUTPUT_CHANNELS_PERIOD = Integer.getInteger("output_channels_period", Timeouts.TEXT_PULL_PERIOD);
+    /**
+     * fastest gauge refresh period, only used while measured link utilization leaves room for it
+     *
+     * @see PollScheduler#MAX_LINK_UTILIZATION
+     */
+    public static final int OUTPUT_CHANNELS_MIN_PERIOD = Integer.getInteger("output_channels_min_period", 20);
+    /**
+     * while polling only subscribed ranges we still pull complete block this often so that plain
+     * {@link SensorCentral#getValue} readers never see values older than that
+     */
+    public static final int OUTPUT_CHANNELS_FULL_PERIOD = Integer.getInteger("output_channels_full_period", 1000);
+    private static final int POLL_BACKOFF_MS = 10;
+    /**
+     * completes {@link #submit} futures so that callbacks never run on communication thread
+     */
+    private static final ExecutorService CALLBACK_EXECUTOR = Executors.newCachedThreadPool(new NamedThreadFactory("ECU callbacks", true));
 
     private final LinkManager linkManager;
     private final IoStream stream;
     private boolean isBurnPending;
     public String signature;
     public boolean isGoodOutputChannels;
+    private long lastFullOutputsTime;
+    /**
+     * poll tasks are added once pull thread is started, link measurements are collected from the first request
+     */
+    private final PollScheduler pollScheduler = new PollScheduler();
     // NotNull once connected
     private IniFileModel iniFile;
 
@@ -64,6 +104,7 @@ public class BinaryProtocol {
 
 
     private final BinaryProtocolLogger binaryProtocolLogger;
+    private final RequestScheduler requestScheduler;
     public static IniFileProvider iniFileProvider = new RealIniFileProvider();
 
     public @NotNull IniFileModel getIniFile() {
@@ -111,6 +152,9 @@ public class BinaryProtocol {
 
         binaryProtocolLogger = new BinaryProtocolLogger(linkManager);
         stream.addCloseListener(binaryProtocolLogger::close);
+
+        requestScheduler = new RequestScheduler(linkManager::execute, CALLBACK_EXECUTOR, this::executeCommand);
+        stream.addCloseListener(() -> requestScheduler.cancelAll("Stream closed"));
     }
 
     public boolean isClosed() {
@@ -191,36 +235,23 @@ public class BinaryProtocol {
         if (!linkManager.COMMUNICATION_QUEUE.isEmpty()) {
             log.info("Current queue size: " + linkManager.COMMUNICATION_QUEUE.size());
         }
+        addPollTasks(textListener);
         Runnable textPull = new Runnable() {
             @Override
             public void run() {
                 while (!stream.isClosed()) {
-                    if (linkManager.COMMUNICATION_QUEUE.isEmpty() && linkManager.getNeedPullData()) {
-                        linkManager.submit(new Runnable() {
-                            @Override
-                            public void run() {
-                                isGoodOutputChannels = requestOutputChannels();
-                                log.debug("requestOutputChannels " + isGoodOutputChannels);
-                                if (isGoodOutputChannels)
-                                    HeartBeatListeners.onDataArrived();
-                                binaryProtocolLogger.compositeLogic(BinaryProtocol.this);
-                                if (linkManager.isNeedPullText()) {
-                                    String text = requestPendingTextMessages();
-                                    if (text != null) {
-                                        textListener.onDataArrived((text + "\r\n").getBytes());
-                                        log.debug("textListener");
-                                    }
-                                }
-
-                                if (linkManager.isNeedPullLiveData()) {
-                                    LiveDocsRegistry.LiveDataProvider liveDataProvider = LiveDocsRegistry.getLiveDataProvider();
-                                    LiveDocsRegistry.INSTANCE.refresh(liveDataProvider);
-                                    log.info("Got livedata");
-                                }
-                            }
-                        });
+                    // user commands and burns go first, we only poll while communication thread is idle
+                    if (!linkManager.COMMUNICATION_QUEUE.isEmpty() || !linkManager.getNeedPullData()) {
+                        sleep(POLL_BACKOFF_MS);
+                        continue;
                     }
-                    sleep(Timeouts.TEXT_PULL_PERIOD);
+                    List<PollScheduler.PollTask> dueTasks = pollScheduler.getDueTasks();
+                    if (dueTasks.isEmpty()) {
+                        sleep(Math.min(pollScheduler.getDelayUntilNextTask(), Timeouts.TEXT_PULL_PERIOD));
+                        continue;
+                    }
+                    // each task goes through request scheduler, see poll()
+                    pollScheduler.runCycle(dueTasks, () -> (long) stream.getBytesIn() + stream.getBytesOut());
                 }
                 log.info("Port shutdown: Stopping text pull");
             }
@@ -229,6 +260,53 @@ public class BinaryProtocol {
         tr.start();
     }
 
+    private void addPollTasks(DataListener textListener) {
+        pollScheduler
+            .add("output channels", OUTPUT_CHANNELS_PERIOD, OUTPUT_CHANNELS_MIN_PERIOD, () -> true, () -> poll("output channels", RequestPriority.OUTPUT_CHANNELS, () -> {
+                isGoodOutputChannels = requestOutputChannels();
+                log.debug("requestOutputChannels " + isGoodOutputChannels);
+                if (isGoodOutputChannels)
+                    HeartBeatListeners.onDataArrived();
+            }))
+            .add("composite log", Timeouts.TEXT_PULL_PERIOD, () -> true, () -> poll("composite log", RequestPriority.COMPOSITE_LOG,
+                () -> binaryProtocolLogger.compositeLogic(BinaryProtocol.this)))
+            .add("text", Timeouts.TEXT_PULL_PERIOD, linkManager::isNeedPullText, () -> poll("text", RequestPriority.TEXT_PULL, () -> {
+                String text = requestPendingTextMessages();
+                if (text != null) {
+                    textListener.onDataArrived((text + "\r\n").getBytes());
+                    log.debug("textListener");
+                }
+            }))
+            .add("live data", Timeouts.TEXT_PULL_PERIOD, linkManager::isNeedPullLiveData, () -> poll("live data", RequestPriority.TEXT_PULL, () -> {
+                // nothing to decode until next output channels frame arrives
+                if (LiveDocsRegistry.INSTANCE.refresh(state.getCurrentOutputs()))
+                    log.debug("Got livedata");
+            }));
+    }
+
+    /**
+     * Runs poll on communication thread via {@link RequestScheduler} and waits for it, invoked on pull thread
+     */
+    private void poll(String name, RequestPriority priority, Runnable action) {
+        try {
+            requestScheduler.submitTask(name, Executors.callable(action), priority,
+                System.currentTimeMillis() + Timeouts.COMMAND_TIMEOUT_SEC * Timeouts.SECOND).get();
+        } catch (ExecutionException e) {
+            log.error("Poll " + name + " failed: " + e.getCause());
+            sleep(Timeouts.TEXT_PULL_PERIOD);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return how many block requests to keep in flight, limited by stream and by measured link round-trip
+     */
+    public int getPipelineWindow() {
+        // block plus command and CRC framing
+        return pollScheduler.getPipelineWindow(BLOCKING_FACTOR + 16, stream.getMaxRequestsInFlight());
+    }
+
     private static void dropPending(IoStream stream) {
         synchronized (stream.getIoLock()) {
             if (stream.isClosed())
@@ -239,36 +317,129 @@ public class BinaryProtocol {
 
     /**
      * this method patches configuration inside ECU by writing only regions with different content
+     *
+     * @see PatchPlanner
      */
     public void uploadChanges(ConfigurationImage newVersion) {
         ConfigurationImage current = getControllerConfiguration();
         // let's have our own copy which no one would be able to change
         newVersion = newVersion.clone();
-        int offset = 0;
-        while (offset < current.getSize()) {
-            Pair<Integer, Integer> range = ConfigurationImageDiff.findDifferences(current, newVersion, offset);
-            if (range == null)
-                break;
-            int size = range.second - range.first;
-            log.info("Need to patch: " + range + ", size=" + size);
-            byte[] oldBytes = current.getRange(range.first, size);
-            log.info("old " + Arrays.toString(oldBytes));
+        List<ByteRange> ranges = PatchPlanner.plan(current, newVersion, BLOCKING_FACTOR);
+        log.info("Need to patch " + ranges.size() + " range(s), " + PatchPlanner.getTotalSize(ranges) + " byte(s)");
+        if (log.debugEnabled())
+            log.debug("Patch ranges " + ranges);
 
-            byte[] newBytes = newVersion.getRange(range.first, size);
-            log.info("new " + Arrays.toString(newBytes));
+        writeRanges(newVersion.getContent(), ranges);
+        burn();
+        setConfigurationImage(newVersion);
+    }
 
-            writeData(newVersion.getContent(), range.first, range.first, size);
+    /**
+     * Same as {@link #writeData} for each range but with a window of requests in flight for streams which are able to
+     * queue requests. Write replies carry nothing to tell them apart: once a reply is lost following ones are taken for
+     * confirmation of wrong ranges, so pipelined writes are confirmed by CRC of the whole image instead. Writes are
+     * idempotent so unconfirmed ranges are just written again one at a time.
+     */
+    private void writeRanges(byte[] content, List<ByteRange> ranges) {
+        int window = getPipelineWindow();
+        Deque<ByteRange> pending = new ArrayDeque<>(ranges);
+        if (window > 1 && pending.size() > 1) {
+            linkManager.assertCommunicationThread();
+            isBurnPending = true;
+            boolean isFramingLost = false;
+            Deque<ByteRange> inFlight = new ArrayDeque<>();
+            Deque<Long> sentNanos = new ArrayDeque<>();
+            dropPending(stream);
+            try {
+                while (!pending.isEmpty() || !inFlight.isEmpty()) {
+                    while (inFlight.size() < window && !pending.isEmpty()) {
+                        ByteRange range = pending.poll();
+                        byte[] packet = createWriteRequest(content, range.getOffset(), range.getOffset(), range.getCount());
+                        stream.sendPacket(getFullRequest((byte) Integration.TS_CHUNK_WRITE_COMMAND, packet));
+                        inFlight.add(range);
+                        sentNanos.add(System.nanoTime());
+                    }
+                    ByteRange range = inFlight.poll();
+                    PacketView response = receivePipelinedReply(Integration.TS_CHUNK_WRITE_COMMAND, PIPELINED_REQUEST_HEADER + range.getCount(), sentNanos.poll(), "writeImage", stream);
+                    if (response == null || !response.isResponseOk() || response.getLength() != 1) {
+                        log.info("writeRanges: unexpected response with " + inFlight.size() + " request(s) in flight, falling back to one request at a time");
+                        inFlight.addFirst(range);
+                        while (!inFlight.isEmpty())
+                            pending.addFirst(inFlight.pollLast());
+                        drainStaleReplies(stream);
+                        isFramingLost = true;
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                log.error("writeRanges: pipelined write failed: " + e);
+                stream.close();
+                return;
+            }
+            for (ByteRange range : pending)
+                writeData(content, range.getOffset(), range.getOffset(), range.getCount());
+            verifyWrites(content, ranges, isFramingLost);
+            return;
+        }
+        for (ByteRange range : pending)
+            writeData(content, range.getOffset(), range.getOffset(), range.getCount());
+    }
 
-            offset = range.second;
+    /**
+     * Compares controller image with what we have written, ranges which are still different are written again one
+     * request at a time
+     *
+     * @param isFramingLost true if some replies were lost, meaning that confirmed ranges could be unwritten
+     */
+    private void verifyWrites(byte[] content, List<ByteRange> ranges, boolean isFramingLost) {
+        if (stream.isClosed())
+            return;
+        Integer crcFromController = getCrcFromController(content.length);
+        if (crcFromController == null) {
+            if (isFramingLost) {
+                log.warn("writeRanges: controller did not provide CRC, writing all ranges again");
+                for (ByteRange range : ranges)
+                    writeData(content, range.getOffset(), range.getOffset(), range.getCount());
+            } else {
+                log.warn("writeRanges: controller did not provide CRC, writes not verified");
+            }
+            return;
+        }
+        if (crcFromController == IoHelper.getCrc32(content))
+            return;
+        log.error("writeRanges: CRC mismatch after pipelined write, checking " + ranges.size() + " range(s)");
+        for (ByteRange range : ranges) {
+            Integer rangeCrc = getCrcFromController(range.getOffset(), range.getCount());
+            if (rangeCrc == null || rangeCrc != IoHelper.getCrc32(content, range.getOffset(), range.getCount()))
+                writeData(content, range.getOffset(), range.getOffset(), range.getCount());
+        }
+    }
+
+    /**
+     * Receives reply to a request sent as part of a pipeline, latency in {@link ProtocolStats} includes time the
+     * request spent queued behind earlier requests
+     *
+     * @param requestLength payload including opcode
+     */
+    private static PacketView receivePipelinedReply(char opcode, int requestLength, long sentNanos, String msg, IoStream stream) throws IOException {
+        int crcFailureCount = stream.getDataBuffer().getCrcFailureCount();
+        PacketView response = null;
+        try {
+            response = receivePacketView(msg, stream);
+            return response;
+        } finally {
+            ProtocolStats.INSTANCE.onRequest((byte) opcode, requestLength, response, System.nanoTime() - sentNanos,
+                stream.getDataBuffer().getCrcFailureCount() != crcFailureCount);
         }
-        burn();
-        setConfigurationImage(newVersion);
     }
 
-    private static byte[] receivePacket(String msg, IoStream stream) throws IOException {
+    /**
+     * @see IncomingDataBuffer#getPacketView
+     */
+    private static PacketView receivePacketView(String msg, IoStream stream) throws IOException {
         long start = System.currentTimeMillis();
         synchronized (stream.getIoLock()) {
-            return stream.getDataBuffer().getPacket(Timeouts.BINARY_IO_TIMEOUT, msg, start);
+            return stream.getDataBuffer().getPacketView(Timeouts.BINARY_IO_TIMEOUT, msg, start);
         }
     }
 
@@ -276,7 +447,7 @@ public class BinaryProtocol {
      * read complete tune from physical data stream
      */
     public void readImage(final Arguments arguments, final ConfigurationImageMeta meta) {
-        ConfigurationImageWithMeta image = BinaryProtocolLocalCache.getAndValidateLocallyCached(this);
+        ConfigurationImageWithMeta image = BinaryProtocolLocalCache.getAndValidateLocallyCached(this, arguments, meta);
 
         if (image.isEmpty()) {
             image = readFullImageFromController(arguments, meta);
@@ -296,46 +467,180 @@ public class BinaryProtocol {
         }
     }
 
+    /**
+     * Reads complete tune in BLOCKING_FACTOR sized blocks.
+     * <p>
+     * Streams which are able to queue requests (see {@link IoStream#getMaxRequestsInFlight()}) get a window of read
+     * requests in flight so that we are not paying full round-trip for each block. Controller replies in the same
+     * order requests were sent so replies are matched to offsets in FIFO manner. Once we lose framing we fall back
+     * to one request at a time. Replies do not carry offset so a reply which was lost or came late could still end up
+     * in a wrong block, see {@link #verifyImage}. One request at a time has no such issue and is not verified.
+     */
     @NotNull
     public ConfigurationImageWithMeta readFullImageFromController(final ConfigurationImageMeta meta) {
         final ConfigurationImageWithMeta imageWithMeta = new ConfigurationImageWithMeta(meta);
         final ConfigurationImage image = imageWithMeta.getConfigurationImage();
 
-        int offset = 0;
+        int window = getPipelineWindow();
+        if (!readBlocksFromController(image, getBlockOffsets(image), window))
+            return ConfigurationImageWithMeta.VOID;
+        // stale replies are only drained after pipelined requests
+        if (window > 1 && !verifyImage(image))
+            return ConfigurationImageWithMeta.VOID;
+        return imageWithMeta;
+    }
 
-        long start = System.currentTimeMillis();
-        log.info("Reading from controller...");
+    /**
+     * Compares CRC of the whole image with controller, blocks with different CRC are read again one at a time.
+     *
+     * @return false if image is still different from controller
+     */
+    boolean verifyImage(ConfigurationImage image) {
+        Integer crcFromController = getCrcFromController(image.getSize());
+        if (crcFromController == null) {
+            log.warn("readImage: controller did not provide CRC, image not verified");
+            return true;
+        }
+        if (IoHelper.getCrc32(image.getContent()) == crcFromController)
+            return true;
+        List<Integer> staleBlocks = BinaryProtocolLocalCache.findStaleBlocks(image, BLOCKING_FACTOR, this::getCrcFromController);
+        log.error("readImage: CRC mismatch after reading image, stale blocks " + staleBlocks);
+        if (staleBlocks == null)
+            staleBlocks = getBlockOffsets(image);
+        if (!readBlocksFromController(image, staleBlocks, 1))
+            return false;
+        boolean isValid = isSameAsController(image);
+        if (!isValid)
+            log.error("readImage: image is still different from controller");
+        return isValid;
+    }
 
-        while (offset < image.getSize() && (System.currentTimeMillis() - start < Timeouts.READ_IMAGE_TIMEOUT)) {
-            if (stream.isClosed())
-                return ConfigurationImageWithMeta.VOID;
+    private static List<Integer> getBlockOffsets(ConfigurationImage image) {
+        List<Integer> offsets = new ArrayList<>();
+        for (int offset = 0; offset < image.getSize(); offset += BLOCKING_FACTOR)
+            offsets.add(offset);
+        return offsets;
+    }
 
-            int remainingSize = image.getSize() - offset;
-            int requestSize = Math.min(remainingSize, BLOCKING_FACTOR);
+    /**
+     * Reads given BLOCKING_FACTOR sized blocks of the image, see {@link #readFullImageFromController(ConfigurationImageMeta)}
+     *
+     * @param offsets offsets of blocks, each one a multiple of BLOCKING_FACTOR
+     * @param window  how many requests could be in flight
+     * @return false if stream was closed or failed
+     */
+    boolean readBlocksFromController(ConfigurationImage image, Collection<Integer> offsets, int window) {
+        window = Math.max(1, window);
+        Deque<Integer> pendingOffsets = new ArrayDeque<>(offsets);
+        Deque<Integer> inFlightOffsets = new ArrayDeque<>();
+        Deque<Long> sentNanos = new ArrayDeque<>();
 
-            byte[] packet = new byte[4];
-            ByteRange.packOffsetAndSize(offset, requestSize, packet);
+        long start = System.currentTimeMillis();
+        log.info("Reading " + offsets.size() + " block(s) from controller, window=" + window + "...");
 
-            byte[] response = executeCommand(Integration.TS_READ_COMMAND, packet, "load image offset=" + offset);
+        if (window > 1)
+            dropPending(stream);
+        long transferStartNanos = System.nanoTime();
+        long bytesBefore = (long) stream.getBytesIn() + stream.getBytesOut();
+        while ((!pendingOffsets.isEmpty() || !inFlightOffsets.isEmpty()) && (System.currentTimeMillis() - start < Timeouts.READ_IMAGE_TIMEOUT)) {
+            if (stream.isClosed())
+                return false;
 
-            if (!checkResponseCode(response) || response.length != requestSize + 1) {
-                if (extractCode(response) == TS_RESPONSE_OUT_OF_RANGE) {
-                    throw new IllegalStateException("TS_RESPONSE_OUT_OF_RANGE ECU/console version mismatch? " + offset + "/" + requestSize);
-                }
-                String code = (response == null || response.length == 0) ? "empty" : "ERROR_CODE=" + getCode(response);
-                String info = response == null ? "NO RESPONSE" : (code + " length=" + response.length);
-                log.info("readImage: ERROR UNEXPECTED Something is wrong, retrying... " + info);
-                // todo: looks like forever retry? that's weird
+            if (window == 1) {
+                int offset = pendingOffsets.peek();
+                int requestSize = getReadRequestSize(image, offset);
+                PacketView response = executeCommandView(Integration.TS_READ_COMMAND, createReadRequest(offset, requestSize), "load image offset=" + offset);
+                if (acceptImageBlock(image, offset, requestSize, response))
+                    pendingOffsets.poll();
                 continue;
             }
 
-            HeartBeatListeners.onDataArrived();
-            ConnectionStatusLogic.INSTANCE.markConnected();
-            System.arraycopy(response, 1, image.getContent(), offset, requestSize);
+            linkManager.assertCommunicationThread();
+            int offset;
+            PacketView response;
+            try {
+                while (inFlightOffsets.size() < window && !pendingOffsets.isEmpty()) {
+                    int requestOffset = pendingOffsets.poll();
+                    byte[] packet = createReadRequest(requestOffset, getReadRequestSize(image, requestOffset));
+                    stream.sendPacket(getFullRequest((byte) Integration.TS_READ_COMMAND, packet));
+                    inFlightOffsets.add(requestOffset);
+                    sentNanos.add(System.nanoTime());
+                }
+                offset = inFlightOffsets.poll();
+                response = receivePipelinedReply(Integration.TS_READ_COMMAND, PIPELINED_REQUEST_HEADER, sentNanos.poll(), "load image offset=" + offset, stream);
+            } catch (IOException e) {
+                log.error("readImage: pipelined read failed: " + e);
+                stream.close();
+                return false;
+            }
 
-            offset += requestSize;
+            if (!acceptImageBlock(image, offset, getReadRequestSize(image, offset), response)) {
+                // timeout, broken packet or reply which does not fit the request: we cannot trust that following
+                // replies are aligned with offsets anymore
+                log.info("readImage: lost framing with " + inFlightOffsets.size() + " request(s) in flight, falling back to one request at a time");
+                inFlightOffsets.addFirst(offset);
+                while (!inFlightOffsets.isEmpty())
+                    pendingOffsets.addFirst(inFlightOffsets.pollLast());
+                sentNanos.clear();
+                drainStaleReplies(stream);
+                window = 1;
+            }
         }
-        return imageWithMeta;
+        boolean isDone = pendingOffsets.isEmpty() && inFlightOffsets.isEmpty();
+        if (isDone && window > 1 && offsets.size() > 1) {
+            pollScheduler.onPipelinedTransfer((long) stream.getBytesIn() + stream.getBytesOut() - bytesBefore,
+                System.nanoTime() - transferStartNanos);
+        }
+        return isDone;
+    }
+
+    /**
+     * Replies to requests we no longer wait for could still be on their way: waits until the link is quiet and drops
+     * whatever has arrived so that next reply we read is a reply to our next request
+     */
+    private static void drainStaleReplies(IoStream stream) {
+        long deadline = System.currentTimeMillis() + Timeouts.BINARY_IO_TIMEOUT;
+        int pending = -1;
+        while (!stream.isClosed() && System.currentTimeMillis() < deadline) {
+            int current = stream.getDataBuffer().getPendingCount();
+            if (current == pending)
+                break;
+            pending = current;
+            sleep(PIPELINE_DRAIN_PERIOD);
+        }
+        dropPending(stream);
+    }
+
+    private static int getReadRequestSize(ConfigurationImage image, int offset) {
+        return Math.min(image.getSize() - offset, BLOCKING_FACTOR);
+    }
+
+    private static byte[] createReadRequest(int offset, int requestSize) {
+        byte[] packet = new byte[4];
+        ByteRange.packOffsetAndSize(offset, requestSize, packet);
+        return packet;
+    }
+
+    /**
+     * @return true if response is valid and was copied into the image, false if block needs to be requested again
+     */
+    private static boolean acceptImageBlock(ConfigurationImage image, int offset, int requestSize, PacketView responseView) {
+        if (responseView == null || !responseView.isResponseOk() || responseView.getLength() != requestSize + 1) {
+            byte[] response = responseView == null ? null : responseView.toByteArray();
+            if (extractCode(response) == TS_RESPONSE_OUT_OF_RANGE) {
+                throw new IllegalStateException("TS_RESPONSE_OUT_OF_RANGE ECU/console version mismatch? " + offset + "/" + requestSize);
+            }
+            String code = (response == null || response.length == 0) ? "empty" : "ERROR_CODE=" + getCode(response);
+            String info = response == null ? "NO RESPONSE" : (code + " length=" + response.length);
+            log.info("readImage: ERROR UNEXPECTED Something is wrong, retrying... " + info);
+            // todo: looks like forever retry? that's weird
+            return false;
+        }
+
+        HeartBeatListeners.onDataArrived();
+        ConnectionStatusLogic.INSTANCE.markConnected();
+        responseView.copyTo(1, image.getContent(), offset, requestSize);
+        return true;
     }
 
     @NotNull
@@ -345,21 +650,25 @@ public class BinaryProtocol {
     ) {
         Objects.requireNonNull(arguments);
         final ConfigurationImageWithMeta imageWithMeta = readFullImageFromController(meta);
-        if (arguments.saveFile) {
-            try {
-                saveConfigurationImageToFiles(
-                    imageWithMeta,
-                    iniFile,
-                    (ConnectionAndMeta.saveSettingsToFile() ? BinaryProtocolLocalCache.CONFIGURATION_RUSEFI_BINARY : null),
-                    BinaryProtocolLocalCache.CONFIGURATION_RUSEFI_XML
-                );
-            } catch (Exception e) {
-                log.error("Ignoring " + e);
-            }
-        }
+        saveLocalCopy(arguments, imageWithMeta);
         return imageWithMeta;
     }
 
+    void saveLocalCopy(Arguments arguments, ConfigurationImageWithMeta imageWithMeta) {
+        if (!arguments.saveFile || imageWithMeta.isEmpty())
+            return;
+        try {
+            saveConfigurationImageToFiles(
+                imageWithMeta,
+                iniFile,
+                (ConnectionAndMeta.saveSettingsToFile() ? BinaryProtocolLocalCache.CONFIGURATION_RUSEFI_BINARY : null),
+                BinaryProtocolLocalCache.CONFIGURATION_RUSEFI_XML
+            );
+        } catch (Exception e) {
+            log.error("Ignoring " + e);
+        }
+    }
+
     public static void saveConfigurationImageToFiles(
         final ConfigurationImageWithMeta imageWithMeta,
         final IniFileModel ini,
@@ -398,31 +707,79 @@ public class BinaryProtocol {
         return response[0] & 0xff;
     }
 
-    public int getCrcFromController(int configSize) {
-        byte[] packet = createRequestCrcPayload(configSize);
+    /**
+     * @return CRC32 of first configSize bytes of controller configuration, null if controller did not provide it
+     */
+    @Nullable
+    public Integer getCrcFromController(int configSize) {
+        Integer crc32FromController = getCrcFromController(0, configSize);
+        if (crc32FromController != null) {
+            short crc16FromController = (short) (int) crc32FromController;
+
+            log.info(String.format("rusEFI says tune CRC32 0x%x %d\n", crc32FromController, crc32FromController));
+            log.info(String.format("rusEFI says tune CRC16 0x%x %d\n", crc16FromController, crc16FromController));
+        }
+        return crc32FromController;
+    }
+
+    /**
+     * @return true if controller has provided CRC and it matches CRC of the whole image
+     */
+    boolean isSameAsController(ConfigurationImage image) {
+        Integer crcFromController = getCrcFromController(image.getSize());
+        return crcFromController != null && crcFromController == IoHelper.getCrc32(image.getContent());
+    }
+
+    /**
+     * @return CRC32 of given range of controller configuration, null if there was no valid response. Any int value
+     * is a valid CRC32 so there is no reserved error value
+     */
+    @Nullable
+    public Integer getCrcFromController(int offset, int size) {
+        byte[] packet = createRequestCrcPayload(offset, size);
         byte[] response = executeCommand(Integration.TS_CRC_CHECK_COMMAND, packet, "get CRC32");
 
         if (checkResponseCode(response) && response.length == 5) {
             ByteBuffer bb = ByteBuffer.wrap(response, 1, 4);
             // that's unusual - most of the protocol is LITTLE_ENDIAN
             bb.order(ByteOrder.BIG_ENDIAN);
-            int crc32FromController = bb.getInt();
-            short crc16FromController = (short) crc32FromController;
-
-            log.info(String.format("rusEFI says tune CRC32 0x%x %d\n", crc32FromController, crc32FromController));
-            log.info(String.format("rusEFI says tune CRC16 0x%x %d\n", crc16FromController, crc16FromController));
-            return crc32FromController;
+            return bb.getInt();
         } else {
-            return  -1;
+            return null;
         }
     }
 
-    private static byte[] createRequestCrcPayload(int size) {
+    private static byte[] createRequestCrcPayload(int offset, int size) {
         byte[] packet = new byte[4];
-        ByteRange.packOffsetAndSize(0, size, packet);
+        ByteRange.packOffsetAndSize(offset, size, packet);
         return packet;
     }
 
+    /**
+     * Non-blocking version of {@link #executeCommand(char, byte[], String)} which is fine to invoke from any thread
+     * except for blocking on the result from communication thread
+     *
+     * @return future which fails with {@link IOException} in case of IO issues, completed off communication thread
+     */
+    public CompletableFuture<byte[]> submit(char opcode, byte[] payload) {
+        return submit(opcode, payload, RequestPriority.INTERACTIVE, Timeouts.COMMAND_TIMEOUT_SEC * Timeouts.SECOND);
+    }
+
+    /**
+     * @param timeoutMs how long request is allowed to wait in the queue behind more important requests
+     * @see RequestScheduler
+     */
+    public CompletableFuture<byte[]> submit(char opcode, byte[] payload, RequestPriority priority, int timeoutMs) {
+        return requestScheduler.submit(opcode, payload, priority, System.currentTimeMillis() + timeoutMs);
+    }
+
+    /**
+     * @return true if invoked on communication thread where {@link #submit} futures should never be waited for
+     */
+    public boolean isCommunicationThread() {
+        return linkManager.isCommunicationThread();
+    }
+
     public byte[] executeCommand(char opcode, String msg) {
         return executeCommand(opcode, null, msg);
     }
@@ -433,26 +790,50 @@ public class BinaryProtocol {
      * @return null in case of IO issues
      */
     public byte[] executeCommand(char opcode, byte[] packet, String msg) {
+        PacketView response = executeCommandView(opcode, packet, msg);
+        return response == null ? null : response.toByteArray();
+    }
+
+    /**
+     * Same as {@link #executeCommand(char, byte[], String)} for callers which copy response right away
+     *
+     * @return view which is only valid until next command, null in case of IO issues
+     */
+    @Nullable
+    public PacketView executeCommandView(char opcode, byte[] packet, String msg) {
         linkManager.assertCommunicationThread();
-        return doExecute(opcode, packet, msg, stream);
+        long start = System.nanoTime();
+        PacketView response = doExecuteView(opcode, packet, msg, stream);
+        // burn reply waits for flash write, that is not link round-trip
+        if (response != null && opcode != Integration.TS_BURN_COMMAND)
+            pollScheduler.onRequestRoundTrip(System.nanoTime() - start);
+        return response;
     }
 
-    private static byte @Nullable [] doExecute(char opcode, byte[] packet, String msg, IoStream stream) {
+    @Nullable
+    private static PacketView doExecuteView(char opcode, byte[] packet, String msg, IoStream stream) {
         if (stream.isClosed())
             return null;
 
         byte[] fullRequest = getFullRequest((byte) opcode, packet);
 
+        long start = System.nanoTime();
+        int crcFailureCount = stream.getDataBuffer().getCrcFailureCount();
+        PacketView response = null;
         try {
             dropPending(stream);
             if (Bug3923.obscene)
                 log.info("Sending opcode " + opcode + " payload " + packet.length);
             stream.sendPacket(fullRequest);
-            return receivePacket(msg, stream);
+            response = receivePacketView(msg, stream);
+            return response;
         } catch (IOException e) {
             log.error(msg + ": executeCommand failed: " + e);
             stream.close();
             return null;
+        } finally {
+            ProtocolStats.INSTANCE.onRequest((byte) opcode, fullRequest.length, response, System.nanoTime() - start,
+                stream.getDataBuffer().getCrcFailureCount() != crcFailureCount);
         }
     }
 
@@ -478,10 +859,7 @@ public class BinaryProtocol {
     public void writeData(byte[] content, int contentOffset, int ecuOffset, int size) {
         isBurnPending = true;
 
-        byte[] packet = new byte[4 + size];
-        ByteRange.packOffsetAndSize(ecuOffset, size, packet);
-
-        System.arraycopy(content, contentOffset, packet, 4, size);
+        byte[] packet = createWriteRequest(content, contentOffset, ecuOffset, size);
 
         long start = System.currentTimeMillis();
         while (!stream.isClosed() && (System.currentTimeMillis() - start < Timeouts.BINARY_IO_TIMEOUT)) {
@@ -494,6 +872,13 @@ public class BinaryProtocol {
         }
     }
 
+    private static byte[] createWriteRequest(byte[] content, int contentOffset, int ecuOffset, int size) {
+        byte[] packet = new byte[4 + size];
+        ByteRange.packOffsetAndSize(ecuOffset, size, packet);
+        System.arraycopy(content, contentOffset, packet, 4, size);
+        return packet;
+    }
+
     public void burn() {
         if (!isBurnPending)
             return;
@@ -576,6 +961,13 @@ public class BinaryProtocol {
         }
     }
 
+    /**
+     * Pulls output channels block. Once we have the first complete block and nobody needs all of it we only request
+     * ranges of subscribed sensors, the rest of the block keeps values from the previous poll and gets refreshed by
+     * a complete poll every {@link #OUTPUT_CHANNELS_FULL_PERIOD}.
+     *
+     * @see OutputChannelRanges
+     */
     public boolean requestOutputChannels() {
         if (stream.isClosed())
             return false;
@@ -583,38 +975,56 @@ public class BinaryProtocol {
         // TODO: Get rid of the +1.  This adds a byte at the front to tack a fake TS response code on the front
         //  of the reassembled packet.
         int ochBlockSize = iniFile.getMetaInfo().getOchBlockSize();
-        byte[] reassemblyBuffer = new byte[ochBlockSize + 1];
+        OutputChannelsFrame previousOutputs = state.getCurrentOutputs();
+        long now = System.currentTimeMillis();
+        boolean isPartial = previousOutputs != null && previousOutputs.getLength() == ochBlockSize + 1
+            && now - lastFullOutputsTime < OUTPUT_CHANNELS_FULL_PERIOD
+            && !isFullOutputsNeeded();
+
+        List<ByteRange> ranges;
+        byte[] reassemblyBuffer;
+        if (isPartial) {
+            ranges = OutputChannelRanges.getRanges(SensorCentral.getInstance().getSubscribedSensors(), ochBlockSize);
+            if (ranges.isEmpty()) {
+                // success has to mean that controller has answered
+                ranges = OutputChannelRanges.getHeartbeatRanges(ochBlockSize);
+            }
+            reassemblyBuffer = previousOutputs.toByteArray();
+        } else {
+            ranges = OutputChannelRanges.getFullBlock(ochBlockSize);
+            reassemblyBuffer = new byte[ochBlockSize + 1];
+        }
         reassemblyBuffer[0] = Integration.TS_RESPONSE_OK;
 
-        int reassemblyIdx = 0;
-        int remaining = ochBlockSize;
-
-        while (remaining > 0) {
-            // If less than one full chunk left, do a smaller read
-            int chunkSize = Math.min(remaining, BLOCKING_FACTOR);
-
-            byte[] response = executeCommand(
+        for (ByteRange range : ranges) {
+            int chunkSize = range.getCount();
+            PacketView response = executeCommandView(
                 Integration.TS_OUTPUT_COMMAND,
-                GetOutputsCommand.createRequest(reassemblyIdx, chunkSize),
+                GetOutputsCommand.createRequest(range.getOffset(), chunkSize),
                 "output channels"
             );
 
-            if (response == null || response.length != (chunkSize + 1) || response[0] != Integration.TS_RESPONSE_OK) {
+            if (response == null || response.getLength() != (chunkSize + 1) || !response.isResponseOk()) {
                 return false;
             }
 
             // Copy this chunk in to the reassembly buffer
-            System.arraycopy(response, 1, reassemblyBuffer, reassemblyIdx + 1, chunkSize);
-            reassemblyIdx += chunkSize;
-            remaining -= chunkSize;
+            response.copyTo(1, reassemblyBuffer, range.getOffset() + 1, chunkSize);
         }
 
-        state.setCurrentOutputs(reassemblyBuffer);
+        if (!isPartial)
+            lastFullOutputsTime = now;
+        state.setCurrentOutputs(reassemblyBuffer, !isPartial);
 
         SensorCentral.getInstance().grabSensorValues(reassemblyBuffer);
         return true;
     }
 
+    private boolean isFullOutputsNeeded() {
+        return SensorCentral.getInstance().isFullResponseNeeded()
+            || (linkManager.isNeedPullLiveData() && LiveDocsRegistry.INSTANCE.isAnyVisible());
+    }
+
     public BinaryProtocolState getBinaryProtocolState() {
         return state;
     }
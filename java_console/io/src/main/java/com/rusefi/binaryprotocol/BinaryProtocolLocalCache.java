@@ -1,14 +1,22 @@
 package com.rusefi.binaryprotocol;
 
 import com.devexperts.logging.Logging;
+import com.opensr5.ConfigurationImage;
+import com.opensr5.ConfigurationImageMeta;
+import com.opensr5.ConfigurationImageMetaVersion0_0;
 import com.opensr5.ConfigurationImageWithMeta;
 import com.opensr5.io.ConfigurationImageFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
 import static com.devexperts.logging.Logging.getLogging;
+import static com.rusefi.config.generated.VariableRegistryValues.BLOCKING_FACTOR;
 
 public class BinaryProtocolLocalCache {
     private static final Logging log = getLogging(BinaryProtocol.class);
@@ -23,8 +31,15 @@ public class BinaryProtocolLocalCache {
         new File(BinaryProtocolLocalCache.STATE_FOLDER).mkdirs();
     }
 
+    /**
+     * Local copy is only used if it was made for the same firmware: same signature and image size. If it is outdated,
+     * for instance tune was changed by another tool, only changed blocks are read from controller: CRC of each
+     * BLOCKING_FACTOR sized block is compared with the same block of local copy.
+     *
+     * @param meta what controller reports now
+     */
     @NotNull
-    static ConfigurationImageWithMeta getAndValidateLocallyCached(BinaryProtocol binaryProtocol) {
+    static ConfigurationImageWithMeta getAndValidateLocallyCached(BinaryProtocol binaryProtocol, BinaryProtocol.Arguments arguments, ConfigurationImageMeta meta) {
         if (DISABLE_LOCAL_CONFIGURATION_CACHE)
             return ConfigurationImageWithMeta.VOID;
         ConfigurationImageWithMeta localCached;
@@ -36,17 +51,90 @@ public class BinaryProtocolLocalCache {
         }
 
         if (!localCached.isEmpty()) {
+            if (!isSameLayout(localCached, meta)) {
+                log.info("Local cache was made for different firmware, reading full image");
+                return ConfigurationImageWithMeta.VOID;
+            }
             int crcOfLocallyCachedConfiguration = IoHelper.getCrc32(localCached.getConfigurationImage().getContent());
             log.info(String.format(CONFIGURATION_RUSEFI_BINARY + " Local cache CRC %x\n", crcOfLocallyCachedConfiguration));
 
             // there is a local file! let's request CRC from controller so that we can compare it to local file (validate)
-            int crcFromController = binaryProtocol.getCrcFromController(localCached.getConfigurationImage().getSize());
+            Integer crcFromController = binaryProtocol.getCrcFromController(localCached.getConfigurationImage().getSize());
+            if (crcFromController == null) {
+                log.info("Local cache: controller did not provide CRC, reading full image");
+                return ConfigurationImageWithMeta.VOID;
+            }
 
             if (crcOfLocallyCachedConfiguration == crcFromController) {
                 return localCached;
             }
 
+            if (resynchronize(binaryProtocol, localCached.getConfigurationImage())) {
+                binaryProtocol.saveLocalCopy(arguments, localCached);
+                return localCached;
+            }
         }
         return ConfigurationImageWithMeta.VOID;
     }
+
+    /**
+     * Block by block repair only makes sense if blocks of both images mean the same thing
+     */
+    public static boolean isSameLayout(ConfigurationImageWithMeta localCached, ConfigurationImageMeta meta) {
+        ConfigurationImageMeta localMeta = localCached.getMeta();
+        if (localMeta == null || meta == null || localMeta.getClass() != meta.getClass())
+            return false;
+        if (localMeta.getImageSize() != meta.getImageSize() || localCached.getConfigurationImage().getSize() != meta.getImageSize())
+            return false;
+        if (meta instanceof ConfigurationImageMetaVersion0_0) {
+            String localSignature = ((ConfigurationImageMetaVersion0_0) localMeta).getEcuSignature();
+            return Objects.equals(localSignature, ((ConfigurationImageMetaVersion0_0) meta).getEcuSignature());
+        }
+        return true;
+    }
+
+    /**
+     * @return true if local image was brought in sync with controller
+     */
+    private static boolean resynchronize(BinaryProtocol binaryProtocol, ConfigurationImage image) {
+        List<Integer> staleBlocks = findStaleBlocks(image, BLOCKING_FACTOR, binaryProtocol::getCrcFromController);
+        int blockCount = (image.getSize() + BLOCKING_FACTOR - 1) / BLOCKING_FACTOR;
+        if (staleBlocks == null || staleBlocks.size() == blockCount) {
+            // ranged CRC is not supported or it's just a different tune
+            return false;
+        }
+        log.info("Local cache: " + staleBlocks.size() + " of " + blockCount + " block(s) changed");
+        if (!binaryProtocol.readBlocksFromController(image, staleBlocks, binaryProtocol.getPipelineWindow()))
+            return false;
+        boolean isValid = binaryProtocol.isSameAsController(image);
+        if (!isValid)
+            log.info("Local cache: still different after reading changed blocks");
+        return isValid;
+    }
+
+    /**
+     * @return offsets of blocks which are different in controller, null if controller did not provide CRC
+     */
+    @Nullable
+    public static List<Integer> findStaleBlocks(ConfigurationImage image, int blockSize, RangeCrcSource controller) {
+        byte[] content = image.getContent();
+        List<Integer> result = new ArrayList<>();
+        for (int offset = 0; offset < content.length; offset += blockSize) {
+            int size = Math.min(blockSize, content.length - offset);
+            Integer crcFromController = controller.getCrc(offset, size);
+            if (crcFromController == null)
+                return null;
+            if (crcFromController != IoHelper.getCrc32(content, offset, size))
+                result.add(offset);
+        }
+        return result;
+    }
+
+    public interface RangeCrcSource {
+        /**
+         * @return CRC32 of given range, null if it is not available
+         */
+        @Nullable
+        Integer getCrc(int offset, int size);
+    }
 }
@@ -3,7 +3,7 @@ package com.rusefi.binaryprotocol;
 import com.devexperts.logging.FileLogger;
 import com.rusefi.FileLog;
 import com.rusefi.Timeouts;
-import com.rusefi.composite.CompositeEvent;
+import com.rusefi.composite.CompositeEventBatch;
 import com.rusefi.composite.CompositeParser;
 import com.rusefi.config.generated.Integration;
 import com.rusefi.core.Sensor;
@@ -33,6 +33,11 @@ public class BinaryProtocolLogger {
     private long lastLowRpmTime = System.currentTimeMillis();
 
     private final List<StreamFile> compositeLogs = new CopyOnWriteArrayList();
+    /**
+     * timestamp wrap around state belongs to this connection, batch is reused for every response
+     */
+    private final CompositeParser compositeParser = new CompositeParser();
+    private final CompositeEventBatch compositeEvents = new CompositeEventBatch();
 
     private final SensorCentral.SensorListener rpmListener;
     private final Thread hook = new Thread(() -> closeComposites(), "BinaryProtocol::hook");
@@ -102,10 +107,10 @@ public class BinaryProtocolLogger {
 
         byte[] response = binaryProtocol.executeCommand(Integration.TS_GET_COMPOSITE_BUFFER_DONE_DIFFERENTLY, "composite log");
         if (checkResponseCode(response)) {
-            List<CompositeEvent> events = CompositeParser.parse(response);
+            compositeParser.parse(response, compositeEvents);
             createCompositesIfNeeded();
             for (StreamFile composite : compositeLogs)
-                composite.append(events);
+                composite.append(compositeEvents);
         }
     }
 
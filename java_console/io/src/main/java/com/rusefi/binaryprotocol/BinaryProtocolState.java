@@ -4,14 +4,21 @@ import com.opensr5.ConfigurationImage;
 import com.rusefi.config.generated.Fields;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class BinaryProtocolState {
+    /**
+     * shared by all connections so that a frame of new connection is never mistaken for an already processed one
+     */
+    private static final AtomicLong FRAME_IDS = new AtomicLong();
+
     private final Object imageLock = new Object();
     private ConfigurationImage configurationImage;
     /**
      * Snapshot of current gauges status
      * @see Fields#TS_OUTPUT_COMMAND
      */
-    private byte[] currentOutputs;
+    private volatile OutputChannelsFrame currentOutputs;
 
     public void setConfigurationImage(ConfigurationImage configurationImage) {
         synchronized (imageLock) {
@@ -19,12 +26,28 @@ public class BinaryProtocolState {
         }
     }
 
-    public byte[] getCurrentOutputs() {
+    /**
+     * @return latest output channels frame, null until first one
+     */
+    @Nullable
+    public OutputChannelsFrame getCurrentOutputs() {
         return currentOutputs;
     }
 
+    /**
+     * Publishes next frame, readers are never blocked
+     *
+     * @param currentOutputs ownership is transferred, array should not be modified after this call
+     */
     public void setCurrentOutputs(byte[] currentOutputs) {
-        this.currentOutputs = currentOutputs;
+        setCurrentOutputs(currentOutputs, true);
+    }
+
+    /**
+     * @param complete false if only some ranges were refreshed, see {@link OutputChannelsFrame#isComplete()}
+     */
+    public synchronized void setCurrentOutputs(byte[] currentOutputs, boolean complete) {
+        this.currentOutputs = new OutputChannelsFrame(FRAME_IDS.incrementAndGet(), currentOutputs, complete);
     }
 
     @Nullable
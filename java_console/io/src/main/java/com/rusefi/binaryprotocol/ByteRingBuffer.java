@@ -0,0 +1,220 @@
+package com.rusefi.binaryprotocol;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.EOFException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Checksum;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer/single-consumer byte queue.
+ * <p>
+ * Exactly one thread is allowed to {@link #put} at a time (socket or serial reader thread) and exactly one thread is
+ * allowed to read at a time (protocol thread). Positions are ever-growing sequence numbers so that producer and
+ * consumer only ever write their own counter. Once the buffer is full the producer replaces it with a bigger one up to
+ * {@link #maxCapacity}; the consumer keeps reading from whatever array it looked up after reading the head counter,
+ * older arrays are never modified after replacement.
+ * <p>
+ * Consumer waiting for data parks and is unparked by the producer only if it has announced itself as a waiter.
+ */
+@ThreadSafe
+public class ByteRingBuffer {
+    private final int maxCapacity;
+
+    private static class Storage {
+        final byte[] array;
+        final int mask;
+
+        Storage(int capacity) {
+            array = new byte[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Storage storage;
+    /**
+     * sequence number of next byte to be written, only producer writes this
+     */
+    private volatile long head;
+    /**
+     * sequence number of next byte to be read, only consumer writes this
+     */
+    private volatile long tail;
+    private volatile Thread waiter;
+
+    /**
+     * @param initialCapacity rounded up to power of two
+     * @param maxCapacity     we grow up to this size, {@link #put} throws once that is not enough
+     */
+    public ByteRingBuffer(int initialCapacity, int maxCapacity) {
+        if (initialCapacity <= 0 || maxCapacity < initialCapacity)
+            throw new IllegalArgumentException("Unexpected capacity " + initialCapacity + "/" + maxCapacity);
+        storage = new Storage(roundUpToPowerOfTwo(initialCapacity));
+        this.maxCapacity = roundUpToPowerOfTwo(maxCapacity);
+    }
+
+    static int roundUpToPowerOfTwo(int value) {
+        int highestOneBit = Integer.highestOneBit(value);
+        return highestOneBit == value ? value : highestOneBit << 1;
+    }
+
+    public int capacity() {
+        return storage.array.length;
+    }
+
+    /**
+     * @return number of bytes available for reading
+     */
+    public int length() {
+        return (int) (head - tail);
+    }
+
+    /**
+     * Producer side
+     *
+     * @throws IllegalStateException if even {@link #maxCapacity} is not enough to hold pending data
+     */
+    public void put(byte[] src, int offset, int length) {
+        long currentHead = head;
+        Storage s = ensureCapacity(currentHead, length);
+        int index = (int) currentHead & s.mask;
+        int firstPart = Math.min(length, s.array.length - index);
+        System.arraycopy(src, offset, s.array, index, firstPart);
+        System.arraycopy(src, offset + firstPart, s.array, 0, length - firstPart);
+        head = currentHead + length;
+
+        Thread w = waiter;
+        if (w != null)
+            LockSupport.unpark(w);
+    }
+
+    private Storage ensureCapacity(long currentHead, int extra) {
+        Storage s = storage;
+        long currentTail = tail;
+        int needed = (int) (currentHead - currentTail) + extra;
+        if (needed <= s.array.length)
+            return s;
+        int newCapacity = s.array.length;
+        while (newCapacity < needed && newCapacity < maxCapacity)
+            newCapacity <<= 1;
+        if (needed > newCapacity)
+            throw new IllegalStateException("buffer overflow not expected: " + needed + " byte(s) while max capacity is " + maxCapacity);
+
+        Storage bigger = new Storage(newCapacity);
+        // consumer might be moving tail while we copy, bytes which it has already read are just not needed anymore
+        for (long seq = currentTail; seq < currentHead; seq++)
+            bigger.array[(int) seq & bigger.mask] = s.array[(int) seq & s.mask];
+        storage = bigger;
+        return bigger;
+    }
+
+    /**
+     * Consumer side: blocks until at least count bytes are available
+     *
+     * @return true in case of timeout or interruption (interrupted status is cleared), false if we have count bytes
+     */
+    public boolean await(int count, long deadlineMs) {
+        if (length() >= count)
+            return false;
+        waiter = Thread.currentThread();
+        try {
+            while (length() < count) {
+                long remainingMs = deadlineMs - System.currentTimeMillis();
+                if (remainingMs <= 0)
+                    return true;
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(remainingMs));
+                if (Thread.interrupted())
+                    return true;
+            }
+            return false;
+        } finally {
+            waiter = null;
+        }
+    }
+
+    /**
+     * Consumer side: copies bytes without consuming them
+     */
+    public void peek(byte[] dst, int offset, int length) throws EOFException {
+        copy(tail, dst, offset, length, null);
+    }
+
+    /**
+     * Consumer side
+     */
+    public void get(byte[] dst, int offset, int length) throws EOFException {
+        get(dst, offset, length, null);
+    }
+
+    /**
+     * Consumer side: same as {@link #get(byte[], int, int)} also feeding consumed bytes into checksum
+     * while they are being copied so that there is no separate pass over the data
+     */
+    public void get(byte[] dst, int offset, int length, Checksum checksum) throws EOFException {
+        long currentTail = tail;
+        copy(currentTail, dst, offset, length, checksum);
+        tail = currentTail + length;
+    }
+
+    private void copy(long from, byte[] dst, int offset, int length, Checksum checksum) throws EOFException {
+        // head has to be read before storage so that we see the array which has all these bytes
+        if (head - from < length)
+            throw new EOFException("Expected " + length + " byte(s) but " + (head - from) + " available");
+        Storage s = storage;
+        int index = (int) from & s.mask;
+        int firstPart = Math.min(length, s.array.length - index);
+        System.arraycopy(s.array, index, dst, offset, firstPart);
+        System.arraycopy(s.array, 0, dst, offset + firstPart, length - firstPart);
+        if (checksum != null) {
+            checksum.update(s.array, index, firstPart);
+            checksum.update(s.array, 0, length - firstPart);
+        }
+    }
+
+    /**
+     * Consumer side
+     *
+     * @return byte at specified position relative to the next byte to be read, not consuming anything
+     */
+    public int peekByte(int position) throws EOFException {
+        long seq = tail + position;
+        if (seq >= head)
+            throw new EOFException("Position " + position + " while only " + length() + " available");
+        Storage s = storage;
+        return s.array[(int) seq & s.mask] & 0xFF;
+    }
+
+    public int getByte() throws EOFException {
+        int result = peekByte(0);
+        tail++;
+        return result;
+    }
+
+    /**
+     * @return little-endian 16-bit value
+     */
+    public int getShort() throws EOFException {
+        int result = peekByte(0) | (peekByte(1) << 8);
+        tail += 2;
+        return result;
+    }
+
+    /**
+     * @return little-endian 32-bit value
+     */
+    public int getInt() throws EOFException {
+        int result = peekByte(0) | (peekByte(1) << 8) | (peekByte(2) << 16) | (peekByte(3) << 24);
+        tail += 4;
+        return result;
+    }
+
+    /**
+     * Consumer side
+     */
+    public void skip(int count) throws EOFException {
+        if (length() < count)
+            throw new EOFException("Cannot skip " + count + " while only " + length() + " available");
+        tail += count;
+    }
+}
@@ -1,17 +1,18 @@
 package com.rusefi.binaryprotocol;
 
 import com.devexperts.logging.Logging;
+import com.opensr5.io.DataListener;
 import com.rusefi.Timeouts;
 import com.rusefi.binaryprotocol.test.Bug3923;
 import com.rusefi.util.HexBinary;
 import com.rusefi.io.serial.AbstractIoStream;
-import etch.util.CircularByteBuffer;
 import net.jcip.annotations.ThreadSafe;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.zip.CRC32;
 
 import static com.devexperts.logging.Logging.getLogging;
 import static com.rusefi.binaryprotocol.IoHelper.*;
@@ -19,6 +20,8 @@ import static com.rusefi.binaryprotocol.IoHelper.*;
 /**
  * Thread-safe byte queue with blocking {@link #waitForBytes} method
  * <p>
+ * Single reader thread adds data, single protocol thread consumes it, see {@link ByteRingBuffer}
+ * <p>
  * Andrey Belomutskiy, (c) 2013-2020
  * 6/20/2015.
  */
@@ -31,13 +34,24 @@ public class IncomingDataBuffer {
     }
 
     private static final int BUFFER_SIZE = 32768;
+    /**
+     * we grow instead of failing if controller is faster than our protocol thread for a moment
+     */
+    private static final int MAX_BUFFER_SIZE = Integer.getInteger("incoming_buffer_max_size", 4 * 1024 * 1024);
     private final String loggingPrefix;
 
     /**
      * buffer for queued response bytes from controller
      */
-    private final CircularByteBuffer cbb = new CircularByteBuffer(BUFFER_SIZE);
+    private final ByteRingBuffer cbb = new ByteRingBuffer(BUFFER_SIZE, Math.max(BUFFER_SIZE, MAX_BUFFER_SIZE));
     private final AbstractIoStream.StreamStats streamStats;
+    /**
+     * consumer side state, reused for each packet
+     */
+    private final CRC32 crc = new CRC32();
+    private final PacketView packetView = new PacketView();
+    private volatile int crcFailureCount;
+    private volatile DataListener tap;
 
     public IncomingDataBuffer(String loggingPrefix, AbstractIoStream.StreamStats streamStats) {
         this.loggingPrefix = loggingPrefix;
@@ -57,6 +71,17 @@ public class IncomingDataBuffer {
      * todo: there is a very similar BinaryProtocolServer#readPromisedBytes which throws exception in case of timeout
      */
     public byte[] getPacket(int timeoutMs, String msg, long start) throws EOFException {
+        PacketView packet = getPacketView(timeoutMs, msg, start);
+        return packet == null ? null : packet.toByteArray();
+    }
+
+    /**
+     * Same as {@link #getPacket(int, String, long)} without allocating: payload is copied out of the ring into
+     * a reused array while CRC is being computed.
+     *
+     * @return view which is only valid until next packet is read from this buffer, null in case of timeout or CRC mismatch
+     */
+    public PacketView getPacketView(int timeoutMs, String msg, long start) throws EOFException {
         boolean isTimeout = waitForBytes(msg + " header", start, 2);
         if (isTimeout) {
             if (Bug3923.obscene)
@@ -74,26 +99,42 @@ public class IncomingDataBuffer {
         if (isTimeout)
             return null;
 
-        byte[] packet = new byte[packetSize];
-        getData(packet);
+        crc.reset();
+        cbb.get(packetView.prepare(packetSize), 0, packetSize, crc);
+        streamStats.onArrived(packetSize);
 
         // Compare the sent and computed CRCs, make sure they match!
         int packetCrc = swap32(getInt());
-        int actualCrc = getCrc32(packet);
+        int actualCrc = (int) crc.getValue();
         if (actualCrc != packetCrc) {
             String errorMessage = String.format("CRC mismatch on recv packet for %s: got %x but expected %x", msg, actualCrc, packetCrc);
             System.out.println(errorMessage);
             log.warn(errorMessage);
+            crcFailureCount++;
             return null;
         }
-        if (Bug3923.obscene && packet.length < 10)
-            log.info("got packet: " + Arrays.toString(packet));
+        if (Bug3923.obscene && packetSize < 10)
+            log.info("got packet: " + Arrays.toString(packetView.toByteArray()));
 
         onPacketArrived();
         // if (log.debugEnabled())
         //     log.trace("packet arrived: " + Arrays.toString(packet) + ": crc OK");
 
-        return packet;
+        return packetView;
+    }
+
+    /**
+     * @param tap would see all incoming bytes on reader thread before they are queued, null to remove
+     */
+    public void setTap(DataListener tap) {
+        this.tap = tap;
+    }
+
+    /**
+     * @return number of packets dropped due to CRC mismatch so far
+     */
+    public int getCrcFailureCount() {
+        return crcFailureCount;
     }
 
     public void onPacketArrived() {
@@ -101,16 +142,24 @@ public class IncomingDataBuffer {
     }
 
     public void addData(byte[] freshData) {
-        synchronized (cbb) {
-            if (cbb.size() - cbb.length() < freshData.length) {
-                log.error("buffer overflow not expected");
-                throw new IllegalStateException("buffer overflow not expected");
-            }
-            cbb.put(freshData);
-            cbb.notifyAll();
+        addData(freshData, 0, freshData.length);
+    }
+
+    /**
+     * Bytes are copied into the ring right away so that reader thread could reuse its array
+     */
+    public void addData(byte[] data, int offset, int length) {
+        DataListener tap = this.tap;
+        if (tap != null)
+            tap.onDataArrived(data, offset, length);
+        try {
+            cbb.put(data, offset, length);
+        } catch (IllegalStateException e) {
+            log.error(e.getMessage());
+            throw e;
         }
         if (log.debugEnabled() || Bug3923.obscene)
-            log.info(freshData.length + " byte(s) arrived, total " + cbb.length());
+            log.info(length + " byte(s) arrived, total " + cbb.length());
     }
 
     /**
@@ -127,76 +176,59 @@ public class IncomingDataBuffer {
      */
     public boolean waitForBytes(int timeoutMs, String loggingMessage, long startTimestamp, int count) {
         //log.info(loggingMessage + ": waiting for " + count + " byte(s)");
-        synchronized (cbb) {
-            while (cbb.length() < count) {
-                int timeout = (int) (startTimestamp + timeoutMs - System.currentTimeMillis());
-                if (timeout <= 0) {
-                    log.info(loggingMessage + ": timeout " + timeoutMs + "ms. Got only " + cbb.length() + " byte(s) while expecting " + count);
-                    return true; // timeout. Sad face.
-                }
-                try {
-                    cbb.wait(timeout);
-                } catch (InterruptedException e) {
-                    return true; // thread thrown away, handling like a timeout
-                }
-            }
+        boolean isTimeout = cbb.await(count, startTimestamp + timeoutMs);
+        if (isTimeout && System.currentTimeMillis() >= startTimestamp + timeoutMs) {
+            // otherwise we were interrupted meaning thread thrown away, handling like a timeout without noise
+            log.info(loggingMessage + ": timeout " + timeoutMs + "ms. Got only " + cbb.length() + " byte(s) while expecting " + count);
         }
-        return false; // looks good!
+        return isTimeout;
     }
 
     public int getPendingCount() {
-        synchronized (cbb) {
-            return cbb.length();
-        }
+        return cbb.length();
     }
 
     public int dropPending() {
         // todo: when exactly do we need this logic?
-        synchronized (cbb) {
-            int pending = cbb.length();
-            if (pending > 0) {
-                log.error("dropPending: Unexpected pending data: " + pending + " byte(s)");
-                byte[] bytes = new byte[pending];
-                cbb.get(bytes);
-                log.error("DROPPED FROM BUFFER: " + HexBinary.printByteArray(bytes));
-            }
-            return pending;
+        int pending = cbb.length();
+        if (pending > 0) {
+            log.error("dropPending: Unexpected pending data: " + pending + " byte(s)");
+            byte[] bytes = new byte[pending];
+            getData(bytes);
+            log.error("DROPPED FROM BUFFER: " + HexBinary.printByteArray(bytes));
         }
+        return pending;
     }
 
     public int getByte() throws EOFException {
         streamStats.onArrived(1);
-        synchronized (cbb) {
-            return cbb.getByte();
-        }
+        return cbb.getByte();
     }
 
     public int getShort() throws EOFException {
         streamStats.onArrived(2);
-        synchronized (cbb) {
-            int result = cbb.getShort();
-            if (log.debugEnabled() || Bug3923.obscene)
-                log.info("Consumed short, " + cbb.length() + " remaining");
-            return result;
-        }
+        int result = cbb.getShort();
+        if (log.debugEnabled() || Bug3923.obscene)
+            log.info("Consumed short, " + cbb.length() + " remaining");
+        return result;
     }
 
     public int getInt() throws EOFException {
         streamStats.onArrived(4);
-        synchronized (cbb) {
-            int result = cbb.getInt();
-            if (log.debugEnabled() || Bug3923.obscene)
-                log.info("Consumed int, " + cbb.length() + " remaining");
-            return result;
-        }
+        int result = cbb.getInt();
+        if (log.debugEnabled() || Bug3923.obscene)
+            log.info("Consumed int, " + cbb.length() + " remaining");
+        return result;
     }
 
     public void getData(byte[] packet) {
-        synchronized (cbb) {
-            cbb.get(packet);
-            if (log.debugEnabled() || Bug3923.obscene)
-                log.info(packet.length + " consumed, " + cbb.length() + " remaining");
+        try {
+            cbb.get(packet, 0, packet.length);
+        } catch (EOFException e) {
+            throw new IllegalStateException(e);
         }
+        if (log.debugEnabled() || Bug3923.obscene)
+            log.info(packet.length + " consumed, " + cbb.length() + " remaining");
         streamStats.onArrived(packet.length);
     }
 
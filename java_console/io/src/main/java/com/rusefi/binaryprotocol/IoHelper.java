@@ -23,7 +23,7 @@ public class IoHelper {
         return getCrc32(packet, 0, packet.length);
     }
 
-    private static int getCrc32(byte[] packet, int offset, int length) {
+    public static int getCrc32(byte[] packet, int offset, int length) {
         CRC32 c = new CRC32();
         c.update(packet, offset, length);
         return (int) c.getValue();
@@ -0,0 +1,77 @@
+package com.rusefi.binaryprotocol;
+
+import com.rusefi.config.Field;
+import com.rusefi.core.Sensor;
+import com.rusefi.core.SensorCentral;
+import com.rusefi.io.commands.ByteRange;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static com.rusefi.config.generated.VariableRegistryValues.BLOCKING_FACTOR;
+
+/**
+ * Works out which parts of output channels block we actually need to poll: while only a couple of gauges are
+ * subscribed there is no reason to pull the whole block over a slow link.
+ *
+ * @see SensorCentral#getSubscribedSensors()
+ * @see SensorCentral#isFullResponseNeeded()
+ */
+public class OutputChannelRanges {
+    /**
+     * Each additional TS_OUTPUT_COMMAND costs us request and response framing plus a round-trip, reading a few
+     * unneeded bytes in between is cheaper than that
+     */
+    static final int MERGE_GAP = 32;
+    /**
+     * Polled when nothing is subscribed so that every poll is still a real round-trip
+     */
+    private static final Sensor HEARTBEAT_SENSOR = Sensor.TIME_SECONDS;
+
+    private OutputChannelRanges() {
+    }
+
+    /**
+     * @return ranges to request, each one not longer than BLOCKING_FACTOR
+     */
+    @NotNull
+    public static List<ByteRange> getFullBlock(int ochBlockSize) {
+        return ByteRange.merge(Collections.singletonList(new ByteRange(0, ochBlockSize)), 0, BLOCKING_FACTOR);
+    }
+
+    /**
+     * @return merged ranges covering all given sensors, each one not longer than BLOCKING_FACTOR
+     */
+    @NotNull
+    public static List<ByteRange> getRanges(Collection<Sensor> sensors, int ochBlockSize) {
+        List<ByteRange> ranges = new ArrayList<>();
+        for (Sensor sensor : sensors) {
+            Field field = sensor.getField();
+            if (field == null) {
+                // not an output channel, for instance a value calculated by console
+                continue;
+            }
+            // same layout ISensorHolder decodes from
+            int offset = field.getTotalOffset();
+            int size = sensor.getType().getStorageSize();
+            if (offset + size > ochBlockSize)
+                continue;
+            ranges.add(new ByteRange(offset, size));
+        }
+        return ByteRange.merge(ranges, MERGE_GAP, BLOCKING_FACTOR);
+    }
+
+    /**
+     * @return smallest request which still tells us that controller is alive and responding
+     */
+    @NotNull
+    public static List<ByteRange> getHeartbeatRanges(int ochBlockSize) {
+        List<ByteRange> ranges = getRanges(Collections.singleton(HEARTBEAT_SENSOR), ochBlockSize);
+        if (!ranges.isEmpty())
+            return ranges;
+        return Collections.singletonList(new ByteRange(0, Math.min(ochBlockSize, 4)));
+    }
+}
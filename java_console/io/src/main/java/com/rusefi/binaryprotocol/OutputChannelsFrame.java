@@ -0,0 +1,61 @@
+package com.rusefi.binaryprotocol;
+
+import java.util.Arrays;
+
+/**
+ * One complete output channels block as published by {@link BinaryProtocolState}, never modified once created.
+ * <p>
+ * Frame id only goes up and is unique across connections so proxy clients, live docs and loggers could read frames
+ * concurrently without locks and tell whether they have already processed a frame.
+ */
+public class OutputChannelsFrame {
+    private final long id;
+    private final byte[] content;
+    private final boolean complete;
+
+    /**
+     * @param content ownership is transferred to the frame, caller should never modify the array
+     */
+    OutputChannelsFrame(long id, byte[] content, boolean complete) {
+        this.id = id;
+        this.content = content;
+        this.complete = complete;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return false if only ranges of subscribed sensors were polled for this frame, remaining bytes are copied from
+     * an older frame and could be up to {@link BinaryProtocol#OUTPUT_CHANNELS_FULL_PERIOD} old
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int getLength() {
+        return content.length;
+    }
+
+    public byte getByte(int index) {
+        return content[index];
+    }
+
+    public void copyTo(int srcOffset, byte[] dst, int dstOffset, int length) {
+        System.arraycopy(content, srcOffset, dst, dstOffset, length);
+    }
+
+    public byte[] toByteArray() {
+        return content.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "OutputChannelsFrame{" +
+            "id=" + id +
+            ", length=" + content.length +
+            ", complete=" + complete +
+            '}';
+    }
+}
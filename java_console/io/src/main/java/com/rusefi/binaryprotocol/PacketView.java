@@ -0,0 +1,57 @@
+package com.rusefi.binaryprotocol;
+
+import com.rusefi.config.generated.Integration;
+
+import java.util.Arrays;
+
+/**
+ * Payload of the most recently received packet, backed by an array owned by {@link IncomingDataBuffer}
+ * <p>
+ * Content is only valid until next packet is read from the same buffer: consumers are expected to copy what they need
+ * right away, use {@link #toByteArray()} if packet has to be kept.
+ */
+public class PacketView {
+    private byte[] array = new byte[0];
+    private int length;
+
+    /**
+     * @return array with at least requested capacity, previous content is not preserved
+     */
+    byte[] prepare(int length) {
+        if (array.length < length)
+            array = new byte[length];
+        this.length = length;
+        return array;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public byte getByte(int index) {
+        if (index >= length)
+            throw new IndexOutOfBoundsException(index + "/" + length);
+        return array[index];
+    }
+
+    public boolean isResponseOk() {
+        return length > 0 && array[0] == Integration.TS_RESPONSE_OK;
+    }
+
+    public void copyTo(int srcOffset, byte[] dst, int dstOffset, int length) {
+        if (srcOffset + length > this.length)
+            throw new IndexOutOfBoundsException(srcOffset + "+" + length + "/" + this.length);
+        System.arraycopy(array, srcOffset, dst, dstOffset, length);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(array, length);
+    }
+
+    @Override
+    public String toString() {
+        return "PacketView{" +
+            "length=" + length +
+            '}';
+    }
+}
@@ -0,0 +1,54 @@
+package com.rusefi.binaryprotocol;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.ConfigurationImageDiff;
+import com.rusefi.io.commands.ByteRange;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Works out which TS_CHUNK_WRITE_COMMAND requests would bring controller configuration to the new version.
+ * <p>
+ * Tune import could touch hundreds of scattered table cells: instead of one request per changed cell we join changes
+ * separated by unchanged bytes as long as resending unchanged bytes is cheaper than one more request.
+ *
+ * @see BinaryProtocol#uploadChanges
+ */
+public class PatchPlanner {
+    /**
+     * Size prefix, opcode, offset/count and CRC of a write request plus framing of the response
+     */
+    static final int REQUEST_FRAMING = 2 + 1 + 4 + 4 + 2 + 1 + 4;
+    /**
+     * Price of one more write request expressed in bytes: framing plus bytes which could have been sent while waiting
+     * for the response. Over serial at 115200 round-trip of a few milliseconds is worth about a hundred bytes.
+     */
+    public static final int REQUEST_COST = Integer.getInteger("patch_request_cost", REQUEST_FRAMING + 100);
+
+    private PatchPlanner() {
+    }
+
+    /**
+     * @param maxSize longest write request, usually BLOCKING_FACTOR
+     * @return sorted ranges to write, empty if images are the same
+     */
+    @NotNull
+    public static List<ByteRange> plan(ConfigurationImage current, ConfigurationImage newVersion, int maxSize) {
+        return plan(current, newVersion, REQUEST_COST, maxSize);
+    }
+
+    @NotNull
+    public static List<ByteRange> plan(ConfigurationImage current, ConfigurationImage newVersion, int requestCost, int maxSize) {
+        List<ByteRange> differences = ConfigurationImageDiff.getDifferentRanges(current, newVersion);
+        // a gap shorter than request cost is cheaper to resend
+        return ByteRange.merge(differences, requestCost, maxSize);
+    }
+
+    public static int getTotalSize(List<ByteRange> ranges) {
+        int result = 0;
+        for (ByteRange range : ranges)
+            result += range.getCount();
+        return result;
+    }
+}
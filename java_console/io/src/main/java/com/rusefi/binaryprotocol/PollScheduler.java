@@ -0,0 +1,261 @@
+package com.rusefi.binaryprotocol;
+
+import com.devexperts.logging.Logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+import static com.devexperts.logging.Logging.getLogging;
+
+/**
+ * Decides which periodic controller requests (output channels, text, live data...) are due.
+ * <p>
+ * Each task has a default period used until its round-trip time is measured and a minimal period. Once round-trip
+ * times are known each task runs at its minimal period as long as all polls together keep link utilization under
+ * {@link #MAX_LINK_UTILIZATION}; on a slower link all periods are stretched by the same factor so that the remaining
+ * time is left for user commands. Caller is expected to not start a cycle while user commands are queued,
+ * see BinaryProtocol#startPullThread
+ * <p>
+ * Also keeps link measurements used to size pipelined transfers, see {@link #getPipelineWindow}
+ */
+public class PollScheduler {
+    private static final Logging log = getLogging(PollScheduler.class);
+    /**
+     * weight of latest sample in moving averages
+     */
+    private static final double ALPHA = 0.1;
+    private static final int STATS_LOG_PERIOD = 60 * 1000;
+    /**
+     * share of link time polls are allowed to take
+     */
+    static final double MAX_LINK_UTILIZATION = 0.7;
+
+    private final LongSupplier clock;
+    private final List<PollTask> tasks = new ArrayList<>();
+    private double averageCycleMs;
+    private double bytesPerSecond;
+    private double periodScale = 1;
+    private int cycleCount;
+    private long lastStatsLog;
+    /**
+     * moving average of single request round-trip, zero until measured
+     */
+    private double requestRoundTripMs;
+    /**
+     * moving average of throughput while more than one request was in flight, zero until measured
+     */
+    private double pipelinedBytesPerSecond;
+
+    public PollScheduler() {
+        this(System::currentTimeMillis);
+    }
+
+    public PollScheduler(LongSupplier clock) {
+        this.clock = clock;
+        lastStatsLog = clock.getAsLong();
+    }
+
+    public PollScheduler add(String name, int periodMs, BooleanSupplier isEnabled, Runnable action) {
+        return add(name, periodMs, periodMs, isEnabled, action);
+    }
+
+    /**
+     * @param periodMs    used until round-trip time is known
+     * @param minPeriodMs how often to run the task if link has capacity for that
+     */
+    public PollScheduler add(String name, int periodMs, int minPeriodMs, BooleanSupplier isEnabled, Runnable action) {
+        tasks.add(new PollTask(name, periodMs, Math.min(periodMs, minPeriodMs), isEnabled, action));
+        return this;
+    }
+
+    /**
+     * @return enabled tasks which are due now, empty if nothing is due
+     */
+    public List<PollTask> getDueTasks() {
+        long now = clock.getAsLong();
+        List<PollTask> result = new ArrayList<>();
+        for (PollTask task : tasks) {
+            if (task.nextDueMs <= now && task.isEnabled.getAsBoolean())
+                result.add(task);
+        }
+        return result;
+    }
+
+    /**
+     * @return how long to wait before any enabled task would be due
+     */
+    public long getDelayUntilNextTask() {
+        long now = clock.getAsLong();
+        long delay = Long.MAX_VALUE;
+        for (PollTask task : tasks) {
+            if (task.isEnabled.getAsBoolean())
+                delay = Math.min(delay, task.nextDueMs - now);
+        }
+        return Math.max(0, delay);
+    }
+
+    /**
+     * Invoked on pull thread, each task action blocks until its requests are done so measured durations include
+     * time spent queued behind more important requests
+     *
+     * @param bytesCounter total bytes in and out of the stream, used to measure poll throughput. With one request at a
+     *                     time that is not link capacity, see {@link #onPipelinedTransfer}
+     */
+    public void runCycle(List<PollTask> dueTasks, LongSupplier bytesCounter) {
+        long cycleStart = clock.getAsLong();
+        long bytesBefore = bytesCounter.getAsLong();
+        for (PollTask task : dueTasks) {
+            long start = clock.getAsLong();
+            task.action.run();
+            long duration = clock.getAsLong() - start;
+            task.averageDurationMs = average(task.averageDurationMs, duration, task.runCount);
+            task.runCount++;
+            task.lastStartMs = start;
+        }
+        updatePeriodScale();
+        for (PollTask task : dueTasks) {
+            // not accumulating debt
+            task.nextDueMs = task.lastStartMs + getEffectivePeriodMs(task);
+        }
+        long cycleDuration = clock.getAsLong() - cycleStart;
+        averageCycleMs = average(averageCycleMs, cycleDuration, cycleCount);
+        if (cycleDuration > 0)
+            bytesPerSecond = average(bytesPerSecond, (bytesCounter.getAsLong() - bytesBefore) * 1000.0 / cycleDuration, cycleCount);
+        cycleCount++;
+
+        if (cycleStart - lastStatsLog > STATS_LOG_PERIOD) {
+            lastStatsLog = cycleStart;
+            log.info(toString());
+        }
+    }
+
+    /**
+     * Sum of round-trip over period of all enabled tasks is how busy polls keep the link
+     */
+    private void updatePeriodScale() {
+        double utilization = 0;
+        for (PollTask task : tasks) {
+            if (task.runCount > 0 && task.isEnabled.getAsBoolean())
+                utilization += task.averageDurationMs / task.minPeriodMs;
+        }
+        periodScale = Math.max(1, utilization / MAX_LINK_UTILIZATION);
+    }
+
+    public long getEffectivePeriodMs(PollTask task) {
+        if (task.runCount == 0)
+            return task.periodMs;
+        return (long) Math.ceil(task.minPeriodMs * periodScale);
+    }
+
+    /**
+     * Invoked on communication thread for each request which was answered while it was the only one in flight
+     */
+    public synchronized void onRequestRoundTrip(long nanos) {
+        requestRoundTripMs = averageNonZero(requestRoundTripMs, nanos / 1e6);
+    }
+
+    /**
+     * Invoked on communication thread once pipelined transfer completed without losing replies
+     *
+     * @param bytes requests and replies of the transfer
+     */
+    public synchronized void onPipelinedTransfer(long bytes, long nanos) {
+        if (nanos > 0)
+            pipelinedBytesPerSecond = averageNonZero(pipelinedBytesPerSecond, bytes * 1e9 / nanos);
+    }
+
+    /**
+     * Requests in flight needed to keep the link busy: as many requests as link throughput transfers during one request
+     * round-trip, plus the one being answered. Throughput measured with one request at a time is bound by round-trip and
+     * would only ever suggest one more request than that, so only pipelined transfers are trusted. Until both values are
+     * measured stream maximum is used.
+     *
+     * @param requestBytes typical request plus response size
+     * @param maxWindow what stream is able to queue, see IoStream#getMaxRequestsInFlight
+     */
+    public synchronized int getPipelineWindow(int requestBytes, int maxWindow) {
+        if (requestRoundTripMs <= 0 || pipelinedBytesPerSecond <= 0)
+            return Math.max(1, maxWindow);
+        int window = 1 + (int) Math.ceil(pipelinedBytesPerSecond * requestRoundTripMs / 1000 / requestBytes);
+        return Math.max(1, Math.min(window, maxWindow));
+    }
+
+    private static double averageNonZero(double previous, double sample) {
+        return previous == 0 ? sample : previous + ALPHA * (sample - previous);
+    }
+
+    private static double average(double previous, double sample, int samplesSoFar) {
+        return samplesSoFar == 0 ? sample : previous + ALPHA * (sample - previous);
+    }
+
+    public double getAverageCycleMs() {
+        return averageCycleMs;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public List<PollTask> getTasks() {
+        return tasks;
+    }
+
+    @Override
+    public String toString() {
+        return "PollScheduler{" +
+            "tasks=" + tasks +
+            ", averageCycleMs=" + (int) averageCycleMs +
+            ", bytesPerSecond=" + (int) bytesPerSecond +
+            ", periodScale=" + periodScale +
+            ", requestRoundTripMs=" + requestRoundTripMs +
+            ", pipelinedBytesPerSecond=" + (int) pipelinedBytesPerSecond +
+            '}';
+    }
+
+    public static class PollTask {
+        private final String name;
+        private final int periodMs;
+        private final int minPeriodMs;
+        private final BooleanSupplier isEnabled;
+        private final Runnable action;
+        private long nextDueMs;
+        private long lastStartMs;
+        private double averageDurationMs;
+        private int runCount;
+
+        private PollTask(String name, int periodMs, int minPeriodMs, BooleanSupplier isEnabled, Runnable action) {
+            this.name = name;
+            this.periodMs = periodMs;
+            this.minPeriodMs = Math.max(1, minPeriodMs);
+            this.isEnabled = isEnabled;
+            this.action = action;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return moving average of round-trip time
+         */
+        public double getAverageDurationMs() {
+            return averageDurationMs;
+        }
+
+        public int getRunCount() {
+            return runCount;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{" +
+                "periodMs=" + periodMs +
+                ", minPeriodMs=" + minPeriodMs +
+                ", averageDurationMs=" + (int) averageDurationMs +
+                ", runCount=" + runCount +
+                '}';
+        }
+    }
+}
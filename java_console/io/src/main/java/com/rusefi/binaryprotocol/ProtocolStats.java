@@ -0,0 +1,158 @@
+package com.rusefi.binaryprotocol;
+
+import com.devexperts.logging.Logging;
+import com.rusefi.Histograms;
+import com.rusefi.NamedThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.devexperts.logging.Logging.getLogging;
+
+/**
+ * Per-opcode request statistics: latency histogram, failure/retry/CRC failure counts and traffic in both directions.
+ * <p>
+ * Recording does not allocate once opcode was seen on recording thread and latency fits histogram so far: dump resets
+ * histograms in place under a lock, see {@link Histograms#dumpStats}. Once anything was recorded {@link #INSTANCE}
+ * logs summary every {@link #DUMP_PERIOD_SEC} seconds, zero to disable.
+ *
+ * @see BinaryProtocol#doExecuteView
+ */
+public class ProtocolStats {
+    private static final Logging log = getLogging(ProtocolStats.class);
+    private static final int DUMP_PERIOD_SEC = Integer.getInteger("protocol_stats_dump_period", 60);
+    public static final ProtocolStats INSTANCE = new ProtocolStats(DUMP_PERIOD_SEC);
+    /**
+     * size prefix and CRC suffix
+     */
+    private static final int FRAMING_OVERHEAD = 6;
+    private static final int OPCODES = 256;
+    private static final String[] NAMES = new String[OPCODES];
+
+    static {
+        for (int i = 0; i < OPCODES; i++)
+            NAMES[i] = BinaryProtocol.findCommand((byte) i);
+    }
+
+    private final Histograms histograms = new Histograms();
+    private final AtomicLongArray requests = new AtomicLongArray(OPCODES);
+    private final AtomicLongArray failures = new AtomicLongArray(OPCODES);
+    private final AtomicLongArray retries = new AtomicLongArray(OPCODES);
+    private final AtomicLongArray crcFailures = new AtomicLongArray(OPCODES);
+    private final AtomicLongArray bytesOut = new AtomicLongArray(OPCODES);
+    private final AtomicLongArray bytesIn = new AtomicLongArray(OPCODES);
+    private final AtomicLongArray totalLatencyNanos = new AtomicLongArray(OPCODES);
+    private final AtomicBoolean isDumpStarted = new AtomicBoolean();
+    /**
+     * -1 if previous request was fine
+     */
+    private volatile int lastFailedOpcode = -1;
+
+    private final long[] previousBytesOut = new long[OPCODES];
+    private final long[] previousBytesIn = new long[OPCODES];
+    private long previousDumpTime = System.currentTimeMillis();
+    private final int dumpPeriodSec;
+
+    /**
+     * @param dumpPeriodSec how often to log summary once anything was recorded, zero for no background logging
+     */
+    public ProtocolStats(int dumpPeriodSec) {
+        this.dumpPeriodSec = dumpPeriodSec;
+    }
+
+    /**
+     * @param requestLength payload including opcode
+     * @param response      null in case of timeout, IO issue or CRC failure
+     */
+    public void onRequest(byte opcode, int requestLength, PacketView response, long latencyNanos, boolean isCrcFailure) {
+        int index = opcode & 0xFF;
+        requests.incrementAndGet(index);
+        bytesOut.addAndGet(index, requestLength + FRAMING_OVERHEAD);
+        totalLatencyNanos.addAndGet(index, latencyNanos);
+        if (lastFailedOpcode == index)
+            retries.incrementAndGet(index);
+        if (response == null) {
+            failures.incrementAndGet(index);
+            lastFailedOpcode = index;
+        } else {
+            bytesIn.addAndGet(index, response.getLength() + FRAMING_OVERHEAD);
+            lastFailedOpcode = -1;
+        }
+        if (isCrcFailure)
+            crcFailures.incrementAndGet(index);
+        histograms.addValue(Histograms.ValueType.BINARY_PROTOCOL, NAMES[index], TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+
+        if (dumpPeriodSec > 0 && !isDumpStarted.get() && isDumpStarted.compareAndSet(false, true)) {
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ECU protocol stats", true))
+                .scheduleAtFixedRate(() -> {
+                    for (String line : dump())
+                        log.info(line);
+                }, dumpPeriodSec, dumpPeriodSec, TimeUnit.SECONDS);
+        }
+    }
+
+    public long getRequestCount(byte opcode) {
+        return requests.get(opcode & 0xFF);
+    }
+
+    public long getFailureCount(byte opcode) {
+        return failures.get(opcode & 0xFF);
+    }
+
+    /**
+     * @return number of requests which went right after a failed request with the same opcode
+     */
+    public long getRetryCount(byte opcode) {
+        return retries.get(opcode & 0xFF);
+    }
+
+    public long getCrcFailureCount(byte opcode) {
+        return crcFailures.get(opcode & 0xFF);
+    }
+
+    public long getBytesOut(byte opcode) {
+        return bytesOut.get(opcode & 0xFF);
+    }
+
+    public long getBytesIn(byte opcode) {
+        return bytesIn.get(opcode & 0xFF);
+    }
+
+    public double getAverageLatencyMs(byte opcode) {
+        long count = getRequestCount(opcode);
+        return count == 0 ? 0 : totalLatencyNanos.get(opcode & 0xFF) / 1e6 / count;
+    }
+
+    /**
+     * Counters summary with traffic since previous dump followed by latency histograms, histograms are reset
+     */
+    public synchronized List<String> dump() {
+        long now = System.currentTimeMillis();
+        double seconds = Math.max(1, now - previousDumpTime) / 1000.0;
+        previousDumpTime = now;
+
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < OPCODES; i++) {
+            long count = requests.get(i);
+            if (count == 0)
+                continue;
+            long out = bytesOut.get(i);
+            long in = bytesIn.get(i);
+            result.add(NAMES[i] + ": requests=" + count +
+                " failures=" + failures.get(i) +
+                " retries=" + retries.get(i) +
+                " crcFailures=" + crcFailures.get(i) +
+                String.format(" avgLatency=%.2fms", getAverageLatencyMs((byte) i)) +
+                " out=" + (int) ((out - previousBytesOut[i]) / seconds) + "B/s" +
+                " in=" + (int) ((in - previousBytesIn[i]) / seconds) + "B/s");
+            previousBytesOut[i] = out;
+            previousBytesIn[i] = in;
+        }
+        result.addAll(histograms.dumpStats());
+        return result;
+    }
+}
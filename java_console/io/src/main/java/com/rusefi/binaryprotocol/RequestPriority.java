@@ -0,0 +1,14 @@
+package com.rusefi.binaryprotocol;
+
+/**
+ * Order in which queued {@link RequestScheduler} requests are sent to the controller, most important first
+ */
+public enum RequestPriority {
+    /**
+     * user commands, tune changes
+     */
+    INTERACTIVE,
+    OUTPUT_CHANNELS,
+    TEXT_PULL,
+    COMPOSITE_LOG,
+}
@@ -0,0 +1,151 @@
+package com.rusefi.binaryprotocol;
+
+import com.devexperts.logging.Logging;
+import com.rusefi.NamedThreadFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.devexperts.logging.Logging.getLogging;
+
+/**
+ * Asynchronous requests to the controller ordered by {@link RequestPriority} and then by submission order.
+ * <p>
+ * Actual IO still happens on the single communication thread: each submitted request schedules one task which sends
+ * whichever pending request is the most important at that moment. Periodic polls are submitted here as tasks so that
+ * they queue up behind interactive requests.
+ * <p>
+ * Futures are completed on callback executor and never on communication thread, so dependent stages may block on
+ * other futures of this scheduler. Futures fail with {@link TimeoutException} once deadline passes, no matter if the
+ * request was still queued or already waiting for response.
+ */
+public class RequestScheduler {
+    private static final Logging log = getLogging(RequestScheduler.class);
+    private static final ScheduledThreadPoolExecutor DEADLINES = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("Request deadlines", true));
+
+    static {
+        DEADLINES.setRemoveOnCancelPolicy(true);
+    }
+
+    public interface RequestExecutor {
+        /**
+         * @return null in case of IO issues
+         */
+        byte[] execute(char opcode, byte[] payload, String msg);
+    }
+
+    private final Executor communicationExecutor;
+    private final Executor callbackExecutor;
+    private final RequestExecutor requestExecutor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final PriorityBlockingQueue<PendingRequest<?>> pending = new PriorityBlockingQueue<>();
+
+    /**
+     * @param callbackExecutor completes futures, has to be a different thread than communication executor
+     */
+    public RequestScheduler(Executor communicationExecutor, Executor callbackExecutor, RequestExecutor requestExecutor) {
+        this.communicationExecutor = communicationExecutor;
+        this.callbackExecutor = callbackExecutor;
+        this.requestExecutor = requestExecutor;
+    }
+
+    /**
+     * @param deadlineMs request is failed with {@link TimeoutException} if it was not answered by this time
+     */
+    public CompletableFuture<byte[]> submit(char opcode, byte[] payload, RequestPriority priority, long deadlineMs) {
+        String msg = BinaryProtocol.findCommand((byte) opcode);
+        return submitTask(msg, () -> {
+            byte[] response = requestExecutor.execute(opcode, payload, msg);
+            if (response == null)
+                throw new IOException(msg + ": no response");
+            return response;
+        }, priority, deadlineMs);
+    }
+
+    /**
+     * Runs arbitrary exchange with the controller on communication thread, for instance a poll which takes several
+     * requests
+     *
+     * @param deadlineMs task is failed with {@link TimeoutException} if it was not finished by this time
+     */
+    public <T> CompletableFuture<T> submitTask(String name, Callable<T> task, RequestPriority priority, long deadlineMs) {
+        PendingRequest<T> request = new PendingRequest<>(name, task, priority, deadlineMs, sequence.incrementAndGet());
+        long delay = deadlineMs - System.currentTimeMillis();
+        ScheduledFuture<?> timeout = DEADLINES.schedule(() -> {
+            if (request.result.completeExceptionally(new TimeoutException(name + ": deadline missed")))
+                pending.remove(request);
+        }, delay, TimeUnit.MILLISECONDS);
+        request.result.whenComplete((result, error) -> timeout.cancel(false));
+        pending.add(request);
+        communicationExecutor.execute(this::executeNext);
+        return request.result;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * fails everything which was not sent yet, for instance once stream is closed
+     */
+    public void cancelAll(String reason) {
+        PendingRequest<?> request;
+        while ((request = pending.poll()) != null)
+            request.result.completeExceptionally(new IOException(reason));
+    }
+
+    private void executeNext() {
+        PendingRequest<?> request = pending.poll();
+        if (request == null) {
+            // already handled by cancelAll or deadline
+            return;
+        }
+        execute(request);
+    }
+
+    private <T> void execute(PendingRequest<T> request) {
+        if (request.result.isDone()) {
+            // cancelled by caller, no need to bother controller
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now > request.deadlineMs) {
+            log.info(request.name + ": deadline missed by " + (now - request.deadlineMs) + "ms, not sending");
+            request.result.completeExceptionally(new TimeoutException(request.name + ": not sent before deadline"));
+            return;
+        }
+        try {
+            T result = request.task.call();
+            callbackExecutor.execute(() -> request.result.complete(result));
+        } catch (Throwable e) {
+            callbackExecutor.execute(() -> request.result.completeExceptionally(e));
+        }
+    }
+
+    private static class PendingRequest<T> implements Comparable<PendingRequest<?>> {
+        private final String name;
+        private final Callable<T> task;
+        private final RequestPriority priority;
+        private final long deadlineMs;
+        private final long sequence;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private PendingRequest(String name, Callable<T> task, RequestPriority priority, long deadlineMs, long sequence) {
+            this.name = name;
+            this.task = task;
+            this.priority = priority;
+            this.deadlineMs = deadlineMs;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(@NotNull PendingRequest<?> o) {
+            int result = priority.compareTo(o.priority);
+            if (result != 0)
+                return result;
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -7,7 +7,6 @@ import com.rusefi.io.serial.AbstractIoStream;
 import com.rusefi.io.tcp.BinaryProtocolServer;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -33,7 +32,7 @@ public interface ByteReader {
                     int result = reader.read(inputBuffer);
                     if (result == -1)
                         throw new IOException("TcpIoStream: End of input?");
-                    listener.onDataArrived(Arrays.copyOf(inputBuffer, result));
+                    listener.onDataArrived(inputBuffer, 0, result);
                 } catch (IOException e) {
                     log.error("TcpIoStream: End of connection " + e);
                     ioStream.close();
@@ -41,6 +41,14 @@ public interface IoStream extends WriteStream, Closeable, StreamStatistics {
 
     long latestActivityTime();
 
+    /**
+     * @return how many requests could be sent before reading replies, 1 means strict stop-and-wait
+     * @see BinaryProtocol#readFullImageFromController
+     */
+    default int getMaxRequestsInFlight() {
+        return 1;
+    }
+
     void addCloseListener(Runnable listener);
 
     Object getIoLock();
@@ -7,6 +7,7 @@ import com.rusefi.NamedThreadFactory;
 import com.rusefi.binaryprotocol.BinaryProtocol;
 import com.rusefi.binaryprotocol.BinaryProtocolState;
 import com.rusefi.core.EngineState;
+import com.rusefi.io.capture.ReplayIoStream;
 import com.rusefi.io.serial.BufferedSerialIoStream;
 import com.rusefi.io.serial.StreamConnector;
 import com.rusefi.io.can.PCanIoStream;
@@ -17,6 +18,7 @@ import com.rusefi.util.IoUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
@@ -207,8 +209,12 @@ public class LinkManager implements Closeable {
             COMMUNICATION_QUEUE,
             new NamedThreadFactory("ECU Communication Executor", true));
 
+    public boolean isCommunicationThread() {
+        return Thread.currentThread() == communicationThread;
+    }
+
     public void assertCommunicationThread() {
-        if (Thread.currentThread() != communicationThread) {
+        if (!isCommunicationThread()) {
             IllegalStateException e = new IllegalStateException("Communication on wrong thread. Use linkManager.execute or linkManager.submit");
             e.printStackTrace();
             log.error(e.getMessage(), e);
@@ -257,6 +263,18 @@ public class LinkManager implements Closeable {
         } else if (SOCKET_CAN.equals(port)) {
             Callable<IoStream> streamFactory = SocketCANIoStream::createStream;
             setConnector(new StreamConnector(this, streamFactory));
+        } else if (ReplayIoStream.isReplayPort(port)) {
+            Callable<IoStream> streamFactory = () -> {
+                messageListener.postMessage(getClass(), "Replaying " + port);
+                try {
+                    return ReplayIoStream.open(port);
+                } catch (IOException e) {
+                    log.error("Replay error " + e);
+                    stateListener.onConnectionFailed("Error " + e);
+                    return null;
+                }
+            };
+            setConnector(new StreamConnector(this, streamFactory));
         } else if (TcpConnector.isTcpPort(port)) {
             Callable<IoStream> streamFactory = new Callable<IoStream>() {
                 @Override
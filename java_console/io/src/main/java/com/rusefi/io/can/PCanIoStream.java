@@ -119,8 +119,7 @@ public class PCanIoStream extends AbstractIoStream {
             }
             PCanHelper.debugPacket(rx);
             isoTpCounter.add();
-            byte[] decode = canDecoder.decodePacket(rx.getData());
-            listener.onDataArrived(decode);
+            canDecoder.decodePacket(rx.getData(), listener);
 
             //            log.info("Decoded " + IoStream.printByteArray(decode));
         } else {
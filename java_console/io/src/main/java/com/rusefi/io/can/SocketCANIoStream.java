@@ -84,13 +84,20 @@ public class SocketCANIoStream extends AbstractIoStream {
                     log.debug("Skipping non " + String.format("%X", CAN_ECU_SERIAL_TX_ID) + " packet: " + String.format("%X", rx.id()));
                 return;
             }
-            byte[] decode = canDecoder.decodePacket(rx.payload());
-            listener.onDataArrived(decode);
+            canDecoder.decodePacket(rx.payload(), listener);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
     }
 
+    /**
+     * ISO-TP segmentation of several requests in flight is not verified with real hardware, so this is opt-in
+     */
+    @Override
+    public int getMaxRequestsInFlight() {
+        return Integer.getInteger("can_pipeline_window", 1);
+    }
+
     @Override
     public IncomingDataBuffer getDataBuffer() {
         return dataBuffer;
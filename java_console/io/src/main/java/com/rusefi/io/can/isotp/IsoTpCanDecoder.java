@@ -1,6 +1,7 @@
 package com.rusefi.io.can.isotp;
 
 import com.devexperts.logging.Logging;
+import com.opensr5.io.DataListener;
 import com.rusefi.util.HexBinary;
 
 import java.util.Arrays;
@@ -25,6 +26,15 @@ public class IsoTpCanDecoder {
     private int waitingForFrameIndex = 0;
 
     public byte[] decodePacket(byte[] data) {
+        byte[][] result = {new byte[0]};
+        decodePacket(data, freshData -> result[0] = freshData);
+        return result[0];
+    }
+
+    /**
+     * Passes payload to the listener as a slice of CAN frame data, without copying
+     */
+    public void decodePacket(byte[] data, DataListener listener) {
         int frameType = (data[0] >> 4) & 0xf;
         int numBytesAvailable;
         int frameIdx;
@@ -64,15 +74,14 @@ public class IsoTpCanDecoder {
                 int blockSize = data[1];
                 int separationTime = data[2];
                 if (flowStatus == FC_ContinueToSend && blockSize == 0 && separationTime == 0)
-                    return new byte[0];
+                    return;
                 throw new IllegalStateException("ISO_TP_FRAME_FLOW_CONTROL: should we just ignore the FC frame? " + flowStatus + " " + blockSize + " " + separationTime);
             default:
                 throw new IllegalStateException("Unknown frame type");
         }
-        byte[] bytes = Arrays.copyOfRange(data, dataOffset, dataOffset + numBytesAvailable);
         if (log.debugEnabled())
-            log.debug(numBytesAvailable + " bytes(s) arrived in this packet: " + HexBinary.printByteArray(bytes));
-        return bytes;
+            log.debug(numBytesAvailable + " bytes(s) arrived in this packet: " + HexBinary.printByteArray(Arrays.copyOfRange(data, dataOffset, dataOffset + numBytesAvailable)));
+        listener.onDataArrived(data, dataOffset, numBytesAvailable);
     }
 
     protected void onTpFirstFrame() {
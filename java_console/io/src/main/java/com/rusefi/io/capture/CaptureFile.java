@@ -0,0 +1,161 @@
+package com.rusefi.io.capture;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Compact binary capture of both directions of a controller stream.
+ * <p>
+ * File starts with {@link #MAGIC} and {@link #VERSION} followed by records: direction byte, nanoseconds since previous
+ * record and data length as unsigned LEB128 varints, data.
+ *
+ * @see CapturingIoStream
+ * @see ReplayIoStream
+ */
+public final class CaptureFile {
+    static final byte[] MAGIC = {'R', 'C', 'A', 'P'};
+    static final int VERSION = 1;
+
+    public enum Direction {
+        /**
+         * bytes received by the stream owner
+         */
+        IN('I'),
+        /**
+         * bytes written by the stream owner
+         */
+        OUT('O');
+
+        private final byte code;
+
+        Direction(char code) {
+            this.code = (byte) code;
+        }
+
+        static Direction valueOf(int code) throws IOException {
+            for (Direction direction : values()) {
+                if (direction.code == code)
+                    return direction;
+            }
+            throw new IOException("Unexpected direction " + code);
+        }
+    }
+
+    private CaptureFile() {
+    }
+
+    public static class Record {
+        private final Direction direction;
+        private final long timestampNanos;
+        private final byte[] data;
+
+        public Record(Direction direction, long timestampNanos, byte[] data) {
+            this.direction = direction;
+            this.timestampNanos = timestampNanos;
+            this.data = data;
+        }
+
+        public Direction getDirection() {
+            return direction;
+        }
+
+        /**
+         * @return nanoseconds since capture start
+         */
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    /**
+     * Thread-safe: reader thread and communication thread both record into the same file
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream output;
+        private final long startNanos = System.nanoTime();
+        private long previousNanos = startNanos;
+
+        public Writer(OutputStream output) throws IOException {
+            this.output = new DataOutputStream(new BufferedOutputStream(output));
+            this.output.write(MAGIC);
+            this.output.write(VERSION);
+        }
+
+        public synchronized void write(Direction direction, byte[] data, int offset, int length) throws IOException {
+            long now = System.nanoTime();
+            output.write(direction.code);
+            writeVarLong(output, now - previousNanos);
+            writeVarLong(output, length);
+            output.write(data, offset, length);
+            previousNanos = now;
+        }
+
+        public synchronized void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            output.close();
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final DataInputStream input;
+        private long timestampNanos;
+
+        public Reader(InputStream input) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(input));
+            byte[] magic = new byte[MAGIC.length];
+            this.input.readFully(magic);
+            int version = this.input.read();
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION)
+                throw new IOException("Not a capture file or unsupported version " + version);
+        }
+
+        /**
+         * @return null at the end of capture
+         */
+        @Nullable
+        public Record read() throws IOException {
+            int code = input.read();
+            if (code == -1)
+                return null;
+            Direction direction = Direction.valueOf(code);
+            timestampNanos += readVarLong(input);
+            byte[] data = new byte[(int) readVarLong(input)];
+            input.readFully(data);
+            return new Record(direction, timestampNanos, data);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    static long readVarLong(DataInput input) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
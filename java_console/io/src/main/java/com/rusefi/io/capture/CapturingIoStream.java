@@ -0,0 +1,162 @@
+package com.rusefi.io.capture;
+
+import com.devexperts.logging.Logging;
+import com.opensr5.io.DataListener;
+import com.rusefi.binaryprotocol.IncomingDataBuffer;
+import com.rusefi.io.IoStream;
+import com.rusefi.io.serial.AbstractIoStream;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static com.devexperts.logging.Logging.getLogging;
+
+/**
+ * Decorator which records every byte in and out of the underlying stream into {@link CaptureFile}
+ *
+ * @see ReplayIoStream
+ */
+public class CapturingIoStream implements IoStream {
+    private static final Logging log = getLogging(CapturingIoStream.class);
+    /**
+     * if set, all controller connections are captured into this file
+     */
+    public static final String CAPTURE_FILE = System.getProperty("capture_file");
+    /**
+     * if set, each client connection of BinaryProtocolServer is captured into a file with this prefix and connection
+     * number, see {@link ReplayIoStream}
+     */
+    public static final String SERVER_CAPTURE_FILE = System.getProperty("server_capture_file");
+
+    private final IoStream delegate;
+    private final CaptureFile.Writer writer;
+
+    public CapturingIoStream(IoStream delegate, CaptureFile.Writer writer) {
+        this.delegate = delegate;
+        this.writer = writer;
+        delegate.getDataBuffer().setTap(new DataListener() {
+            @Override
+            public void onDataArrived(byte[] freshData) {
+                onDataArrived(freshData, 0, freshData.length);
+            }
+
+            @Override
+            public void onDataArrived(byte[] data, int offset, int length) {
+                record(CaptureFile.Direction.IN, data, offset, length);
+            }
+        });
+        delegate.addCloseListener(() -> {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.error("Error closing capture " + e);
+            }
+        });
+    }
+
+    /**
+     * @return stream wrapped into capture if {@link #CAPTURE_FILE} is configured
+     */
+    public static IoStream wrapIfConfigured(IoStream stream) {
+        return wrapIfConfigured(stream, CAPTURE_FILE);
+    }
+
+    /**
+     * @param fileName null for no capture
+     */
+    public static IoStream wrapIfConfigured(IoStream stream, String fileName) {
+        if (fileName == null || stream == null)
+            return stream;
+        try {
+            log.info("Capturing into " + fileName);
+            return new CapturingIoStream(stream, new CaptureFile.Writer(new FileOutputStream(fileName)));
+        } catch (IOException e) {
+            log.error("Not capturing: " + e);
+            return stream;
+        }
+    }
+
+    private void record(CaptureFile.Direction direction, byte[] data, int offset, int length) {
+        try {
+            writer.write(direction, data, offset, length);
+        } catch (IOException e) {
+            log.error("Capture failed " + e);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        record(CaptureFile.Direction.OUT, bytes, 0, bytes.length);
+        delegate.write(bytes);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    @Override
+    public long latestActivityTime() {
+        return delegate.latestActivityTime();
+    }
+
+    @Override
+    public int getMaxRequestsInFlight() {
+        return delegate.getMaxRequestsInFlight();
+    }
+
+    @Override
+    public void addCloseListener(Runnable listener) {
+        delegate.addCloseListener(listener);
+    }
+
+    @Override
+    public Object getIoLock() {
+        return delegate.getIoLock();
+    }
+
+    @Override
+    public void onActivity() {
+        delegate.onActivity();
+    }
+
+    @Override
+    public void setInputListener(DataListener listener) {
+        delegate.setInputListener(listener);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public AbstractIoStream.StreamStats getStreamStats() {
+        return delegate.getStreamStats();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public IncomingDataBuffer getDataBuffer() {
+        return delegate.getDataBuffer();
+    }
+
+    @Override
+    public int getBytesIn() {
+        return delegate.getBytesIn();
+    }
+
+    @Override
+    public int getBytesOut() {
+        return delegate.getBytesOut();
+    }
+
+    @Override
+    public String toString() {
+        return "CapturingIoStream{" + delegate + '}';
+    }
+}
@@ -0,0 +1,149 @@
+package com.rusefi.io.capture;
+
+import com.devexperts.logging.Logging;
+import com.opensr5.io.DataListener;
+import com.rusefi.Timeouts;
+import com.rusefi.binaryprotocol.IncomingDataBuffer;
+import com.rusefi.io.tcp.BinaryProtocolServer;
+import com.rusefi.io.serial.AbstractIoStream;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.devexperts.logging.Logging.getLogging;
+
+/**
+ * Plays back {@link CaptureFile}: captured incoming bytes are fed to whoever owns this stream, each incoming record is
+ * only released once the owner has written as many bytes as were written before it in the original session.
+ * <p>
+ * Could be used in place of a controller for BinaryProtocol/LinkManager or in place of a client for BinaryProtocolServer
+ * depending on which side the capture was made.
+ */
+public class ReplayIoStream extends AbstractIoStream {
+    private static final Logging log = getLogging(ReplayIoStream.class);
+    public static final String PREFIX = "replay:";
+
+    private final CaptureFile.Reader reader;
+    private final boolean isOriginalSpeed;
+    private final IncomingDataBuffer dataBuffer;
+    private final Object writeLock = new Object();
+    private final ExecutorService replayExecutor = Executors.newSingleThreadExecutor(BinaryProtocolServer.getThreadFactory("Replay"));
+    private long bytesWritten;
+
+    /**
+     * @param isOriginalSpeed true to keep original delays between requests and responses, false to replay as fast as possible
+     */
+    public ReplayIoStream(CaptureFile.Reader reader, boolean isOriginalSpeed) {
+        this.reader = reader;
+        this.isOriginalSpeed = isOriginalSpeed;
+        dataBuffer = createDataBuffer();
+    }
+
+    public static boolean isReplayPort(String port) {
+        return port.startsWith(PREFIX);
+    }
+
+    /**
+     * @param port {@link #PREFIX} followed by file name
+     */
+    public static ReplayIoStream open(String port) throws IOException {
+        String fileName = port.substring(PREFIX.length());
+        return new ReplayIoStream(new CaptureFile.Reader(new FileInputStream(fileName)), !Boolean.getBoolean("replay_fast"));
+    }
+
+    @Override
+    public void setInputListener(DataListener listener) {
+        replayExecutor.execute(() -> {
+            try {
+                play(listener);
+            } catch (IOException | InterruptedException e) {
+                log.error("Replay failed " + e);
+            } finally {
+                log.info("Replay done");
+                close();
+            }
+        });
+    }
+
+    private void play(DataListener listener) throws IOException, InterruptedException {
+        long expectedWritten = 0;
+        // moment at which previous record happened in capture and during replay
+        long anchorCaptureNanos = 0;
+        long anchorReplayNanos = System.nanoTime();
+        CaptureFile.Record record;
+        while (!isClosed() && (record = reader.read()) != null) {
+            if (record.getDirection() == CaptureFile.Direction.OUT) {
+                expectedWritten += record.getData().length;
+                if (!waitForWrites(expectedWritten))
+                    log.info("Replay diverged: expected " + expectedWritten + " byte(s) written, got " + getWritten());
+            } else {
+                if (isOriginalSpeed) {
+                    long delayNanos = record.getTimestampNanos() - anchorCaptureNanos - (System.nanoTime() - anchorReplayNanos);
+                    if (delayNanos > 0)
+                        TimeUnit.NANOSECONDS.sleep(delayNanos);
+                }
+                listener.onDataArrived(record.getData(), 0, record.getData().length);
+            }
+            anchorCaptureNanos = record.getTimestampNanos();
+            anchorReplayNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return false if owner did not write expected amount within {@link Timeouts#BINARY_IO_TIMEOUT}
+     */
+    private boolean waitForWrites(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + Timeouts.BINARY_IO_TIMEOUT;
+        synchronized (writeLock) {
+            while (bytesWritten < expected) {
+                long timeout = deadline - System.currentTimeMillis();
+                if (timeout <= 0 || isClosed())
+                    return false;
+                writeLock.wait(timeout);
+            }
+        }
+        return true;
+    }
+
+    private long getWritten() {
+        synchronized (writeLock) {
+            return bytesWritten;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        super.write(bytes);
+        synchronized (writeLock) {
+            bytesWritten += bytes.length;
+            writeLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        // also interrupts original speed delay
+        replayExecutor.shutdownNow();
+        synchronized (writeLock) {
+            writeLock.notifyAll();
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.error("Error closing capture " + e);
+        }
+    }
+
+    boolean awaitReplayThread(long timeout, TimeUnit unit) throws InterruptedException {
+        return replayExecutor.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public IncomingDataBuffer getDataBuffer() {
+        return dataBuffer;
+    }
+}
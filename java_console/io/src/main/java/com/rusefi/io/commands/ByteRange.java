@@ -5,6 +5,10 @@ import org.jetbrains.annotations.NotNull;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 
 import static com.rusefi.binaryprotocol.IoHelper.putShort;
 import static com.rusefi.binaryprotocol.IoHelper.swap16;
@@ -13,7 +17,7 @@ public class ByteRange {
     private final int offset;
     private final int count;
 
-    private ByteRange(int offset, int count) {
+    public ByteRange(int offset, int count) {
         this.offset = offset;
         this.count = count;
     }
@@ -36,6 +40,26 @@ public class ByteRange {
         return count;
     }
 
+    /**
+     * @return offset right after the last byte of this range
+     */
+    public int getEnd() {
+        return offset + count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ByteRange that = (ByteRange) o;
+        return offset == that.offset && count == that.count;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(offset, count);
+    }
+
     @Override
     public String toString() {
         return "{" +
@@ -51,4 +75,39 @@ public class ByteRange {
             return new ByteRange(offset, count);
         }
     }
+
+    /**
+     * @param maxGap  ranges separated by up to this many bytes are joined into one
+     * @param maxSize longer ranges are split into chunks of this size
+     * @return sorted non-overlapping ranges covering all input ranges
+     */
+    @NotNull
+    public static List<ByteRange> merge(Collection<ByteRange> input, int maxGap, int maxSize) {
+        List<ByteRange> sorted = new ArrayList<>(input);
+        sorted.sort((o1, o2) -> Integer.compare(o1.getOffset(), o2.getOffset()));
+
+        List<ByteRange> merged = new ArrayList<>();
+        int start = -1;
+        int end = -1;
+        for (ByteRange range : sorted) {
+            if (range.getCount() <= 0)
+                continue;
+            if (start != -1 && range.getOffset() - end <= maxGap) {
+                end = Math.max(end, range.getEnd());
+                continue;
+            }
+            if (start != -1)
+                split(merged, start, end, maxSize);
+            start = range.getOffset();
+            end = range.getEnd();
+        }
+        if (start != -1)
+            split(merged, start, end, maxSize);
+        return merged;
+    }
+
+    private static void split(List<ByteRange> result, int start, int end, int maxSize) {
+        for (int offset = start; offset < end; offset += maxSize)
+            result.add(new ByteRange(offset, Math.min(maxSize, end - offset)));
+    }
 }
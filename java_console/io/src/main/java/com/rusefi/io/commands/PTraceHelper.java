@@ -6,25 +6,35 @@ import com.rusefi.tracing.Entry;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import static com.rusefi.binaryprotocol.IoHelper.checkResponseCode;
 
 public class PTraceHelper {
+    /**
+     * Blocks caller while trace is recorded. Invoked on any other thread communication thread stays free for polls in
+     * the meantime, on communication thread requests are executed directly.
+     */
     @NotNull
     public static List<Entry> requestWaitAndGetPTrace(BinaryProtocol bp) {
-        bp.executeCommand(Integration.TS_PERF_TRACE_BEGIN, "begin trace");
         try {
+            request(bp, Integration.TS_PERF_TRACE_BEGIN);
             Thread.sleep(500);
-        } catch (InterruptedException e) {
+            return executeGetPTraceCommand(request(bp, Integration.TS_PERF_TRACE_GET_BUFFER));
+        } catch (InterruptedException | ExecutionException e) {
             throw new IllegalStateException(e);
         }
+    }
 
-        return executeGetPTraceCommand(bp);
+    private static byte[] request(BinaryProtocol bp, char opcode) throws ExecutionException, InterruptedException {
+        // waiting for a future here would wait for ourselves
+        if (bp.isCommunicationThread())
+            return bp.executeCommand(opcode, BinaryProtocol.findCommand((byte) opcode));
+        return bp.submit(opcode, null).get();
     }
 
     @NotNull
-    private static List<Entry> executeGetPTraceCommand(BinaryProtocol bp) {
-        byte[] packet = bp.executeCommand(Integration.TS_PERF_TRACE_GET_BUFFER, "get trace");
+    private static List<Entry> executeGetPTraceCommand(byte[] packet) {
         if (!checkResponseCode(packet, (byte) Integration.TS_RESPONSE_OK) || ((packet.length - 1) % 8) != 0)
             throw new IllegalStateException("Unsupported command or error? packet length=" + (packet != null ? 0 : packet.length));
 
@@ -0,0 +1,191 @@
+package com.rusefi.io.loopback;
+
+import com.opensr5.io.DataListener;
+import com.rusefi.NamedThreadFactory;
+import com.rusefi.binaryprotocol.BinaryProtocol;
+import com.rusefi.binaryprotocol.IncomingDataBuffer;
+import com.rusefi.io.serial.AbstractIoStream;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One end of an in-memory bi-directional pipe: whatever is written into one end arrives at the other end.
+ * <p>
+ * Without {@link Link} limits bytes are delivered right from the writing thread, with limits each direction has its own
+ * delivery thread which simulates wire time and latency.
+ *
+ * @see VirtualEcu
+ */
+public class LoopbackIoStream extends AbstractIoStream {
+    private final String name;
+    private final Link link;
+    /**
+     * delivery thread for bytes written into this end, null if there are no limits
+     */
+    private final ScheduledExecutorService delivery;
+    private LoopbackIoStream peer;
+    private volatile DataListener listener;
+    private final IncomingDataBuffer dataBuffer;
+    /**
+     * moment when previously written bytes are done going through the wire, only used with bandwidth limit
+     */
+    private long wireFreeNanos;
+
+    private LoopbackIoStream(String name, Link link) {
+        this.name = name;
+        this.link = link;
+        delivery = link.isUnlimited() ? null : Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Loopback " + name, true));
+        dataBuffer = createDataBuffer();
+    }
+
+    public static Pair createPair() {
+        return createPair(Link.UNLIMITED);
+    }
+
+    public static Pair createPair(Link link) {
+        LoopbackIoStream client = new LoopbackIoStream("client", link);
+        LoopbackIoStream ecu = new LoopbackIoStream("ecu", link);
+        client.peer = ecu;
+        ecu.peer = client;
+        return new Pair(client, ecu);
+    }
+
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        if (isClosed())
+            throw new IOException(name + " loopback is closed");
+        super.write(bytes);
+        if (delivery == null) {
+            // one writer at a time, same as a socket would do
+            synchronized (this) {
+                peer.onDataArrived(bytes, bytes.length);
+            }
+            return;
+        }
+        byte[] copy = bytes.clone();
+        long deliveryNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, wireFreeNanos);
+            wireFreeNanos = start + link.getWireTimeNanos(copy.length);
+            deliveryNanos = wireFreeNanos + TimeUnit.MILLISECONDS.toNanos(link.latencyMs);
+            try {
+                // delivery times never decrease so the order of writes is preserved
+                delivery.schedule(() -> peer.onDataArrived(copy, copy.length), deliveryNanos - now, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                throw new IOException(name + " loopback is closed", e);
+            }
+        }
+    }
+
+    private void onDataArrived(byte[] bytes, int length) {
+        DataListener listener = this.listener;
+        if (listener != null && !isClosed())
+            listener.onDataArrived(bytes, 0, length);
+    }
+
+    @Override
+    public int getMaxRequestsInFlight() {
+        return BinaryProtocol.PIPELINE_WINDOW;
+    }
+
+    @Override
+    public void setInputListener(DataListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public IncomingDataBuffer getDataBuffer() {
+        return dataBuffer;
+    }
+
+    /**
+     * Closing either end closes both, same as a broken cable
+     */
+    @Override
+    public void close() {
+        if (isClosed())
+            return;
+        super.close();
+        if (delivery != null)
+            delivery.shutdownNow();
+        peer.close();
+    }
+
+    @Override
+    public String toString() {
+        return "LoopbackIoStream{" + name + ", " + link + '}';
+    }
+
+    public static class Pair {
+        private final LoopbackIoStream client;
+        private final LoopbackIoStream ecu;
+
+        private Pair(LoopbackIoStream client, LoopbackIoStream ecu) {
+            this.client = client;
+            this.ecu = ecu;
+        }
+
+        /**
+         * @return end for console side, for instance LinkManager or proxy
+         */
+        public LoopbackIoStream getClient() {
+            return client;
+        }
+
+        /**
+         * @return end for controller side, see {@link VirtualEcu#start}
+         */
+        public LoopbackIoStream getEcu() {
+            return ecu;
+        }
+    }
+
+    /**
+     * Simulated link properties, same in both directions
+     */
+    public static class Link {
+        public static final Link UNLIMITED = new Link(0, 0);
+
+        private final int latencyMs;
+        private final int bytesPerSecond;
+
+        /**
+         * @param latencyMs      one-way delay added to each write
+         * @param bytesPerSecond wire throughput, zero for unlimited
+         */
+        public Link(int latencyMs, int bytesPerSecond) {
+            if (latencyMs < 0 || bytesPerSecond < 0)
+                throw new IllegalArgumentException("Negative link limits " + latencyMs + "/" + bytesPerSecond);
+            this.latencyMs = latencyMs;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        /**
+         * @param baudRate serial port speed, 10 bits on the wire per byte
+         */
+        public static Link serial(int baudRate) {
+            return new Link(0, baudRate / 10);
+        }
+
+        boolean isUnlimited() {
+            return latencyMs == 0 && bytesPerSecond == 0;
+        }
+
+        long getWireTimeNanos(int length) {
+            return bytesPerSecond == 0 ? 0 : length * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "Link{" +
+                "latencyMs=" + latencyMs +
+                ", bytesPerSecond=" + bytesPerSecond +
+                '}';
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.rusefi.io.loopback;
+
+import com.devexperts.logging.Logging;
+import com.opensr5.ConfigurationImage;
+import com.rusefi.Timeouts;
+import com.rusefi.binaryprotocol.BinaryProtocol;
+import com.rusefi.binaryprotocol.BinaryProtocolState;
+import com.rusefi.binaryprotocol.IncomingDataBuffer;
+import com.rusefi.config.generated.Integration;
+import com.rusefi.io.IoStream;
+import com.rusefi.io.commands.ByteRange;
+import com.rusefi.io.commands.WriteChunkCommand;
+import com.rusefi.io.tcp.BinaryProtocolServer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.devexperts.logging.Logging.getLogging;
+import static com.rusefi.config.generated.VariableRegistryValues.*;
+import static com.rusefi.io.tcp.BinaryProtocolServer.TS_OK;
+
+/**
+ * Controller simulation good enough for console: serves configuration image reads, writes and CRC, output channels
+ * from {@link OutputChannelGenerator}, everything else is acknowledged.
+ * <p>
+ * Together with {@link LoopbackIoStream} allows to run complete console stack against a controller at memory speed or
+ * over a link with given limits, without firmware simulator or network.
+ * <pre>
+ * LoopbackIoStream.Pair pair = LoopbackIoStream.createPair();
+ * new VirtualEcu(image).start(pair.getEcu());
+ * linkManager.setConnector(new StreamConnector(linkManager, pair::getClient));
+ * </pre>
+ */
+public class VirtualEcu {
+    private static final Logging log = getLogging(VirtualEcu.class);
+
+    private final ConfigurationImage image;
+    private final byte[] outputs = new byte[TS_TOTAL_OUTPUT_SIZE];
+    /**
+     * frames served to console, {@link #outputs} is modified by generator in place
+     */
+    private final BinaryProtocolState outputsState = new BinaryProtocolState();
+    private String signature = TS_SIGNATURE;
+    private OutputChannelGenerator outputChannelGenerator = OutputChannelGenerator.VOID;
+    private ReplyFilter replyFilter = ReplyFilter.VOID;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger outputRequestCount = new AtomicInteger();
+    private final AtomicInteger unknownCommands = new AtomicInteger();
+    private int frame;
+
+    public VirtualEcu(ConfigurationImage image) {
+        this.image = image;
+    }
+
+    public VirtualEcu setSignature(String signature) {
+        this.signature = signature;
+        return this;
+    }
+
+    public VirtualEcu setOutputChannelGenerator(OutputChannelGenerator outputChannelGenerator) {
+        this.outputChannelGenerator = outputChannelGenerator;
+        return this;
+    }
+
+    public VirtualEcu setReplyFilter(ReplyFilter replyFilter) {
+        this.replyFilter = replyFilter;
+        return this;
+    }
+
+    /**
+     * Starts a new thread serving requests from given stream until the stream is closed
+     */
+    public void start(IoStream stream) {
+        BinaryProtocolServer.getThreadFactory("VirtualEcu").newThread(() -> {
+            try {
+                runLoop(stream);
+            } catch (IOException e) {
+                log.info("VirtualEcu: " + e);
+            } finally {
+                stream.close();
+            }
+        }).start();
+    }
+
+    private void runLoop(IoStream stream) throws IOException {
+        IncomingDataBuffer in = stream.getDataBuffer();
+        while (!stream.isClosed()) {
+            // an idle client is fine, unlike partial packet
+            if (in.waitForBytes(Timeouts.BINARY_IO_TIMEOUT, "VirtualEcu idle", System.currentTimeMillis(), 1))
+                continue;
+            int length = BinaryProtocolServer.getPacketLength(in, () -> {
+                stream.write(TS_PROTOCOL.getBytes());
+                stream.flush();
+            });
+            if (length == 0)
+                continue;
+            byte[] payload = BinaryProtocolServer.getPacketContent(in, length);
+            requestCount.incrementAndGet();
+            byte[] reply;
+            try {
+                reply = replyFilter.filter(payload, handle(payload));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (reply != null)
+                stream.sendPacket(reply);
+        }
+    }
+
+    @NotNull
+    private byte[] handle(byte[] payload) throws IOException {
+        byte command = payload[0];
+        if (log.debugEnabled())
+            log.debug("Got command " + BinaryProtocol.findCommand(command));
+
+        if (command == Integration.TS_HELLO_COMMAND) {
+            return (TS_OK + signature).getBytes();
+        } else if (command == Integration.TS_GET_PROTOCOL_VERSION_COMMAND_F) {
+            return (TS_OK + TS_PROTOCOL).getBytes();
+        } else if (command == Integration.TS_GET_FIRMWARE_VERSION) {
+            return (TS_OK + "rusEFI virtual").getBytes();
+        } else if (command == Integration.TS_CRC_CHECK_COMMAND) {
+            ByteRange range = ByteRange.valueOf(payload);
+            if (!isInImage(range))
+                return new byte[]{(byte) TS_RESPONSE_OUT_OF_RANGE};
+            byte[] content = image.getContent();
+            return BinaryProtocolServer.createCrcResponse(Arrays.copyOfRange(content, range.getOffset(), range.getEnd()));
+        } else if (command == Integration.TS_READ_COMMAND) {
+            ByteRange range = ByteRange.valueOf(payload);
+            if (!isInImage(range))
+                return new byte[]{(byte) TS_RESPONSE_OUT_OF_RANGE};
+            byte[] response = new byte[1 + range.getCount()];
+            response[0] = (byte) TS_OK.charAt(0);
+            System.arraycopy(image.getContent(), range.getOffset(), response, 1, range.getCount());
+            return response;
+        } else if (command == Integration.TS_CHUNK_WRITE_COMMAND) {
+            ByteRange range = ByteRange.valueOf(payload);
+            if (!isInImage(range) || payload.length < WriteChunkCommand.SCR_POS_WITH + range.getCount())
+                return new byte[]{(byte) TS_RESPONSE_OUT_OF_RANGE};
+            System.arraycopy(payload, WriteChunkCommand.SCR_POS_WITH, image.getContent(), range.getOffset(), range.getCount());
+            return TS_OK.getBytes();
+        } else if (command == Integration.TS_BURN_COMMAND) {
+            return new byte[]{TS_RESPONSE_BURN_OK};
+        } else if (command == Integration.TS_OUTPUT_COMMAND) {
+            ByteRange range = ByteRange.valueOf(payload);
+            if (range.getOffset() < 0 || range.getEnd() > outputs.length)
+                return new byte[]{(byte) TS_RESPONSE_OUT_OF_RANGE};
+            outputRequestCount.incrementAndGet();
+            outputChannelGenerator.update(outputs, frame++);
+            outputsState.setCurrentOutputs(outputs.clone());
+            return BinaryProtocolServer.getOutputCommandResponse(payload, outputsState.getCurrentOutputs());
+        } else if (command == Integration.TS_GET_TEXT || command == Integration.TS_GET_COMPOSITE_BUFFER_DONE_DIFFERENTLY
+            || command == Integration.TS_EXECUTE || command == Integration.TS_PERF_TRACE_BEGIN
+            || command == Integration.TS_PERF_TRACE_GET_BUFFER) {
+            // nothing to report, commands are just acknowledged, performance trace is empty
+            return TS_OK.getBytes();
+        }
+        unknownCommands.incrementAndGet();
+        log.info("Unexpected " + BinaryProtocol.findCommand(command));
+        return new byte[]{(byte) TS_RESPONSE_UNRECOGNIZED_COMMAND};
+    }
+
+    private boolean isInImage(ByteRange range) {
+        return range.getOffset() >= 0 && range.getCount() > 0 && range.getEnd() <= image.getSize();
+    }
+
+    public ConfigurationImage getImage() {
+        return image;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getOutputRequestCount() {
+        return outputRequestCount.get();
+    }
+
+    public int getUnknownCommandCount() {
+        return unknownCommands.get();
+    }
+
+    /**
+     * Synthetic sensor data
+     */
+    public interface OutputChannelGenerator {
+        OutputChannelGenerator VOID = (outputs, frame) -> {
+        };
+
+        /**
+         * Invoked on ECU thread before serving each output channels request
+         *
+         * @param outputs whole output channels block to modify
+         * @param frame   number of output channels requests served so far
+         */
+        void update(byte[] outputs, int frame);
+    }
+
+    /**
+     * Fault injection for tests: lost and late replies
+     */
+    public interface ReplyFilter {
+        ReplyFilter VOID = (request, reply) -> reply;
+
+        /**
+         * Invoked on ECU thread before each reply is sent, sleeping here makes this and all following replies late
+         *
+         * @return reply to send, null to lose it
+         */
+        byte[] filter(byte[] request, byte[] reply) throws InterruptedException;
+    }
+}
@@ -1,5 +1,6 @@
 package com.rusefi.io.serial;
 
+import com.opensr5.io.DataListener;
 import com.rusefi.binaryprotocol.IncomingDataBuffer;
 import com.rusefi.io.IoStream;
 
@@ -20,7 +21,17 @@ public abstract class AbstractIoStream implements IoStream {
 
     public IncomingDataBuffer createDataBuffer() {
         IncomingDataBuffer incomingData = new IncomingDataBuffer(getClass().getSimpleName(), getStreamStats());
-        setInputListener(incomingData::addData);
+        setInputListener(new DataListener() {
+            @Override
+            public void onDataArrived(byte[] freshData) {
+                incomingData.addData(freshData);
+            }
+
+            @Override
+            public void onDataArrived(byte[] data, int offset, int length) {
+                incomingData.addData(data, offset, length);
+            }
+        });
         return incomingData;
     }
 
@@ -7,6 +7,7 @@ import com.rusefi.io.ConnectionStateListener;
 import com.opensr5.io.DataListener;
 import com.rusefi.io.IoStream;
 import com.rusefi.io.LinkManager;
+import com.rusefi.io.capture.CapturingIoStream;
 import com.rusefi.util.IoUtils;
 import org.jetbrains.annotations.Nullable;
 
@@ -46,7 +47,7 @@ public class PortHolder {
      */
     void connectAndReadConfiguration(BinaryProtocol.Arguments arguments) {
         Objects.requireNonNull(arguments);
-        IoStream stream = ioStreamFactory.call();
+        IoStream stream = CapturingIoStream.wrapIfConfigured(ioStreamFactory.call());
         if (stream == null) {
             // error already reported
             return;
@@ -93,6 +93,10 @@ public abstract class SerialIoStream extends AbstractIoStream {
         if (sp == null)
             return;
         sp.addDataListener(new SerialPortDataListener() {
+            /**
+             * only touched by jSerialComm event thread, grows to the largest chunk seen
+             */
+            private byte[] data = new byte[0];
 
             @Override
             public int getListeningEvents() {
@@ -119,17 +123,13 @@ requires jSerialComm newer than 2.7
                     log.info("serialEvent bytesAvailable " + bytesAvailable);
                 if (bytesAvailable <= 0)
                     return; // sometimes negative value is returned at least on Mac
-                byte[] data = new byte[bytesAvailable];
-                int numRead = sp.readBytes(data, data.length);
-
-                // Copy in to a smaller array if the read was incomplete
-                if (numRead != bytesAvailable) {
-                    byte[] dataSmaller = new byte[numRead];
-                    System.arraycopy(data, 0, dataSmaller, 0, numRead);
-                    data = dataSmaller;
-                }
+                if (data.length < bytesAvailable)
+                    data = new byte[bytesAvailable];
+                int numRead = sp.readBytes(data, bytesAvailable);
+                if (numRead <= 0)
+                    return;
 
-                listener.onDataArrived(data);
+                listener.onDataArrived(data, 0, numRead);
             }
         });
     }
@@ -10,10 +10,14 @@ import com.rusefi.binaryprotocol.BinaryProtocol;
 import com.rusefi.binaryprotocol.BinaryProtocolState;
 import com.rusefi.binaryprotocol.IncomingDataBuffer;
 import com.rusefi.binaryprotocol.IoHelper;
+import com.rusefi.binaryprotocol.OutputChannelsFrame;
 import com.rusefi.config.generated.Fields;
 import com.rusefi.config.generated.Integration;
+import com.rusefi.core.SensorCentral;
 import com.rusefi.util.HexBinary;
+import com.rusefi.io.IoStream;
 import com.rusefi.io.LinkManager;
+import com.rusefi.io.capture.CapturingIoStream;
 import com.rusefi.io.commands.ByteRange;
 import com.rusefi.io.commands.HelloCommand;
 import com.rusefi.io.commands.WriteChunkCommand;
@@ -57,6 +61,7 @@ public class BinaryProtocolServer {
     }
 
     public final AtomicInteger unknownCommands = new AtomicInteger();
+    private final AtomicInteger connectionCounter = new AtomicInteger();
 
     public static final ServerSocketFunction SECURE_SOCKET_FACTORY = rusEFISSLContext::getSSLServerSocket;
 
@@ -143,14 +148,33 @@ public class BinaryProtocolServer {
         }
     }
 
-    @SuppressWarnings("InfiniteLoopStatement")
     private void runProxy(LinkManager linkManager, Socket clientSocket, Context context) throws IOException {
-        TcpIoStream stream = new TcpIoStream("[proxy] ", clientSocket);
+        int connection = connectionCounter.incrementAndGet();
+        IoStream stream = CapturingIoStream.wrapIfConfigured(new TcpIoStream("[proxy] ", clientSocket),
+            CapturingIoStream.SERVER_CAPTURE_FILE == null ? null : CapturingIoStream.SERVER_CAPTURE_FILE + "." + connection);
 
         IncomingDataBuffer in = stream.getDataBuffer();
 
+        // proxy clients read arbitrary parts of output channels so we need to keep polling all of them
+        SensorCentral.getInstance().addFullResponseConsumer(stream);
+        try {
+            runProxyLoop(linkManager, context, stream, in);
+        } finally {
+            SensorCentral.getInstance().removeFullResponseConsumer(stream);
+            // also completes capture file
+            stream.close();
+        }
+    }
+
+    @SuppressWarnings("InfiniteLoopStatement")
+    private void runProxyLoop(LinkManager linkManager, Context context, IoStream stream, IncomingDataBuffer in) throws IOException {
+        // through the stream so that capture has the reply
+        Handler protocolCommandHandler = () -> {
+            stream.write(TS_PROTOCOL.getBytes());
+            stream.flush();
+        };
         while (true) {
-            Integer length = getPendingPacketLengthOrHandleProtocolCommand(clientSocket, context, in);
+            Integer length = getPendingPacketLengthOrHandleProtocolCommand(protocolCommandHandler, context, in);
             if (length == null)
                 continue;
 
@@ -182,7 +206,7 @@ public class BinaryProtocolServer {
                 stream.sendPacket(TS_OK.getBytes());
             } else if (command == Integration.TS_OUTPUT_COMMAND) {
                 BinaryProtocolState binaryProtocolState = linkManager.getBinaryProtocolState();
-                byte[] currentOutputs = binaryProtocolState.getCurrentOutputs();
+                OutputChannelsFrame currentOutputs = binaryProtocolState.getCurrentOutputs();
 
                 byte[] response = getOutputCommandResponse(payload, currentOutputs);
                 stream.sendPacket(response);
@@ -199,20 +223,32 @@ public class BinaryProtocolServer {
     }
 
     @NotNull
-    public static byte[] getOutputCommandResponse(byte[] payload, byte[] currentOutputs) throws IOException {
+    public static byte[] getOutputCommandResponse(byte[] payload, OutputChannelsFrame currentOutputs) throws IOException {
         ByteRange byteRange = ByteRange.valueOf(payload);
+        byte[] response = createOutputCommandResponse(byteRange);
+        if (currentOutputs != null)
+            currentOutputs.copyTo(byteRange.getOffset(), response, 1, byteRange.getCount());
+        mockSdCard(byteRange, response);
+        return response;
+    }
+
+    @NotNull
+    private static byte[] createOutputCommandResponse(ByteRange byteRange) {
         if (log.debugEnabled())
             log.debug("TS_OUTPUT_COMMAND offset=" + byteRange);
-
         byte[] response = new byte[1 + byteRange.getCount()];
         response[0] = (byte) TS_OK.charAt(0);
-        if (MOCK_SD_CARD)
-            currentOutputs[SD_STATUS_OFFSET] = 1 + 4;
-        if (currentOutputs != null)
-            System.arraycopy(currentOutputs, byteRange.getOffset(), response, 1, byteRange.getCount());
         return response;
     }
 
+    /**
+     * Patches the response and not current outputs which are shared with other readers
+     */
+    private static void mockSdCard(ByteRange byteRange, byte[] response) {
+        if (MOCK_SD_CARD && SD_STATUS_OFFSET >= byteRange.getOffset() && SD_STATUS_OFFSET < byteRange.getEnd())
+            response[1 + SD_STATUS_OFFSET - byteRange.getOffset()] = 1 + 4;
+    }
+
     @NotNull
     public static byte[] getPacketContent(IncomingDataBuffer in, Integer length) throws IOException {
         if (log.debugEnabled())
@@ -231,9 +267,17 @@ public class BinaryProtocolServer {
      */
     @Nullable
     public static Integer getPendingPacketLengthOrHandleProtocolCommand(Socket clientSocket, Context context, IncomingDataBuffer in) throws IOException {
+        return getPendingPacketLengthOrHandleProtocolCommand(() -> handleProtocolCommand(clientSocket), context, in);
+    }
+
+    /**
+     * @return null if we have handled GET_PROTOCOL_VERSION_COMMAND command with given handler
+     */
+    @Nullable
+    public static Integer getPendingPacketLengthOrHandleProtocolCommand(Handler protocolHandler, Context context, IncomingDataBuffer in) throws IOException {
         AtomicBoolean handled = new AtomicBoolean();
         Handler protocolCommandHandler = () -> {
-            handleProtocolCommand(clientSocket);
+            protocolHandler.handle();
             handled.set(true);
         };
 
@@ -296,7 +340,7 @@ public class BinaryProtocolServer {
         outputStream.flush();
     }
 
-    private void handleWrite(LinkManager linkManager, byte[] packet, ByteRange byteRange, TcpIoStream stream) throws IOException {
+    private void handleWrite(LinkManager linkManager, byte[] packet, ByteRange byteRange, IoStream stream) throws IOException {
         int offset = byteRange.getOffset();
         int count = byteRange.getCount();
         log.info("TS_CHUNK_WRITE_COMMAND: offset=" + byteRange);
@@ -305,7 +349,7 @@ public class BinaryProtocolServer {
         stream.sendPacket(TS_OK.getBytes());
     }
 
-    private void handleRead(LinkManager linkManager, ByteRange byteRange, TcpIoStream stream) throws IOException {
+    private void handleRead(LinkManager linkManager, ByteRange byteRange, IoStream stream) throws IOException {
         int offset = byteRange.getOffset();
         int count = byteRange.getCount();
         if (count <= 0) {
@@ -324,7 +368,7 @@ public class BinaryProtocolServer {
         }
     }
 
-    private void handleCrc(LinkManager linkManager, TcpIoStream stream) throws IOException {
+    private void handleCrc(LinkManager linkManager, IoStream stream) throws IOException {
         log.info("CRC check");
         BinaryProtocolState bp = linkManager.getBinaryProtocolState();
         byte[] content = bp.getConfigurationImage().getContent();
@@ -1,6 +1,7 @@
 package com.rusefi.io.tcp;
 
 import com.opensr5.io.DataListener;
+import com.rusefi.binaryprotocol.BinaryProtocol;
 import com.rusefi.binaryprotocol.IncomingDataBuffer;
 import com.rusefi.io.ByteReader;
 import com.rusefi.io.serial.AbstractIoStream;
@@ -59,6 +60,11 @@ public class TcpIoStream extends AbstractIoStream {
         FileUtil.close(socket);
     }
 
+    @Override
+    public int getMaxRequestsInFlight() {
+        return BinaryProtocol.PIPELINE_WINDOW;
+    }
+
     @Override
     public IncomingDataBuffer getDataBuffer() {
         return dataBuffer;
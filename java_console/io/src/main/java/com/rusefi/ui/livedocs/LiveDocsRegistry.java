@@ -1,11 +1,12 @@
 package com.rusefi.ui.livedocs;
 
+import com.rusefi.binaryprotocol.OutputChannelsFrame;
 import com.rusefi.config.Field;
-import com.rusefi.core.SensorCentral;
 import com.rusefi.enums.live_data_e;
 import com.rusefi.io.commands.ByteRange;
 import com.rusefi.ldmp.StateDictionary;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -18,11 +19,36 @@ public enum LiveDocsRegistry {
     INSTANCE;
 
     private final List<LiveDocHolder> liveDocs = new ArrayList<>();
+    /**
+     * id of the output channels frame visible holders were last refreshed from
+     */
+    private volatile long lastFrameId;
 
     public void register(LiveDocHolder holder) {
         liveDocs.add(holder);
     }
 
+    public boolean isAnyVisible() {
+        for (LiveDocHolder holder : liveDocs) {
+            if (holder.isVisible())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Refreshes visible holders from given frame, does nothing if they were already refreshed from this frame
+     *
+     * @return true if holders were refreshed
+     */
+    public boolean refresh(@Nullable OutputChannelsFrame frame) {
+        if (frame == null || frame.getId() == lastFrameId)
+            return false;
+        lastFrameId = frame.getId();
+        refresh(getLiveDataProvider(frame));
+        return true;
+    }
+
     public void refresh(LiveDataProvider liveDataProvider) {
         for (LiveDocHolder holder : liveDocs) {
             boolean visible = holder.isVisible();
@@ -43,7 +69,7 @@ public enum LiveDocsRegistry {
     }
 
     @NotNull
-    public static LiveDataProvider getLiveDataProvider() {
+    public static LiveDataProvider getLiveDataProvider(OutputChannelsFrame frame) {
         return context -> {
             Field[] values = StateDictionary.INSTANCE.getFields(context);
             int size = Field.getStructureSize(values);
@@ -52,11 +78,10 @@ public enum LiveDocsRegistry {
             ByteRange.packOffsetAndSize(offset, size, packet);
 
             int structOffset = StateDictionary.INSTANCE.getOffset(context);
-            byte[] overallOutputs = SensorCentral.getInstance().getResponse();
-
             byte[] response = new byte[size];
 
-            System.arraycopy(overallOutputs, structOffset, overallOutputs, 0, size);
+            // first byte of output channels response is response code
+            frame.copyTo(1 + structOffset, response, 0, size);
             return response;
         };
     }
@@ -0,0 +1,40 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.opensr5.ConfigurationImage;
+import com.opensr5.ConfigurationImageMetaVersion0_0;
+import com.opensr5.ConfigurationImageWithMeta;
+import com.rusefi.binaryprotocol.BinaryProtocolLocalCache;
+import com.rusefi.binaryprotocol.IoHelper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryProtocolLocalCacheTest {
+    @Test
+    public void testFindStaleBlocks() {
+        ConfigurationImage local = new ConfigurationImage(2500);
+        ConfigurationImage controller = local.clone();
+        controller.getContent()[10] = 1;
+        controller.getContent()[2499] = 1;
+
+        BinaryProtocolLocalCache.RangeCrcSource source = (offset, size) -> IoHelper.getCrc32(controller.getContent(), offset, size);
+        assertEquals(Arrays.asList(0, 2048), BinaryProtocolLocalCache.findStaleBlocks(local, 1024, source));
+        assertEquals(Collections.emptyList(), BinaryProtocolLocalCache.findStaleBlocks(controller, 1024, source));
+
+        assertNull(BinaryProtocolLocalCache.findStaleBlocks(local, 1024, (offset, size) -> null));
+    }
+
+    @Test
+    public void testSameLayout() {
+        ConfigurationImageWithMeta local = new ConfigurationImageWithMeta(new ConfigurationImageMetaVersion0_0(2500, "rusEFI 1"), new byte[2500]);
+
+        assertTrue(BinaryProtocolLocalCache.isSameLayout(local, new ConfigurationImageMetaVersion0_0(2500, "rusEFI 1")));
+        assertFalse(BinaryProtocolLocalCache.isSameLayout(local, new ConfigurationImageMetaVersion0_0(2500, "rusEFI 2")));
+        assertFalse(BinaryProtocolLocalCache.isSameLayout(local, new ConfigurationImageMetaVersion0_0(3000, "rusEFI 1")));
+        ConfigurationImageWithMeta noMeta = new ConfigurationImageWithMeta(null, new byte[2500]);
+        assertFalse(BinaryProtocolLocalCache.isSameLayout(noMeta, new ConfigurationImageMetaVersion0_0(2500, "rusEFI 1")));
+    }
+}
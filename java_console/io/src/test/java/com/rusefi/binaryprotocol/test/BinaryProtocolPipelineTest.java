@@ -0,0 +1,207 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.opensr5.ConfigurationImage;
+import com.opensr5.ConfigurationImageMetaVersion0_0;
+import com.opensr5.ConfigurationImageWithMeta;
+import com.rusefi.Timeouts;
+import com.rusefi.binaryprotocol.BinaryProtocol;
+import com.rusefi.binaryprotocol.ProtocolStats;
+import com.rusefi.config.generated.Integration;
+import com.rusefi.io.IoStream;
+import com.rusefi.io.LinkManager;
+import com.rusefi.io.capture.CaptureFile;
+import com.rusefi.io.capture.CapturingIoStream;
+import com.rusefi.io.commands.ByteRange;
+import com.rusefi.io.loopback.LoopbackIoStream;
+import com.rusefi.io.loopback.VirtualEcu;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.rusefi.config.generated.VariableRegistryValues.BLOCKING_FACTOR;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pipelined image reads and writes over a loopback link with a misbehaving controller
+ */
+public class BinaryProtocolPipelineTest {
+    private static final int SIZE = 10 * BLOCKING_FACTOR - 100;
+
+    private final LinkManager linkManager = new LinkManager();
+    private final LoopbackIoStream.Pair pair = LoopbackIoStream.createPair();
+
+    @AfterEach
+    public void close() {
+        pair.getClient().close();
+    }
+
+    private static ConfigurationImage createImage() {
+        ConfigurationImage image = new ConfigurationImage(SIZE);
+        new Random(1).nextBytes(image.getContent());
+        return image;
+    }
+
+    private VirtualEcu startEcu(VirtualEcu.ReplyFilter filter) {
+        VirtualEcu ecu = new VirtualEcu(createImage()).setReplyFilter(filter);
+        ecu.start(pair.getEcu());
+        return ecu;
+    }
+
+    /**
+     * @param n zero-based number of read request to apply given action to
+     */
+    private static VirtualEcu.ReplyFilter onRead(int n, VirtualEcu.ReplyFilter action) {
+        return onRequest(Integration.TS_READ_COMMAND, n, action);
+    }
+
+    private static VirtualEcu.ReplyFilter onWrite(int n, VirtualEcu.ReplyFilter action) {
+        return onRequest(Integration.TS_CHUNK_WRITE_COMMAND, n, action);
+    }
+
+    private static VirtualEcu.ReplyFilter onRequest(char opcode, int n, VirtualEcu.ReplyFilter action) {
+        AtomicInteger count = new AtomicInteger();
+        return (request, reply) -> {
+            if (request[0] == opcode && count.getAndIncrement() == n)
+                return action.filter(request, reply);
+            return reply;
+        };
+    }
+
+    private ConfigurationImageWithMeta readImage() throws Exception {
+        BinaryProtocol binaryProtocol = new BinaryProtocol(linkManager, pair.getClient());
+        assertTrue(pair.getClient().getMaxRequestsInFlight() > 1);
+        return linkManager.COMMUNICATION_EXECUTOR.submit(
+            () -> binaryProtocol.readFullImageFromController(new ConfigurationImageMetaVersion0_0(SIZE, "test"))
+        ).get();
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        VirtualEcu ecu = startEcu(VirtualEcu.ReplyFilter.VOID);
+        long readsBefore = ProtocolStats.INSTANCE.getRequestCount((byte) Integration.TS_READ_COMMAND);
+        ConfigurationImageWithMeta image = readImage();
+        assertArrayEquals(ecu.getImage().getContent(), image.getConfigurationImage().getContent());
+        // ten blocks and one CRC check
+        assertEquals(11, ecu.getRequestCount());
+        // pipelined replies are accounted for
+        assertEquals(10, ProtocolStats.INSTANCE.getRequestCount((byte) Integration.TS_READ_COMMAND) - readsBefore);
+    }
+
+    @Test
+    public void testHighLatencyLinkKeepsWindow() throws Exception {
+        LoopbackIoStream.Pair slowPair = LoopbackIoStream.createPair(new LoopbackIoStream.Link(50, 0));
+        try {
+            new VirtualEcu(createImage()).start(slowPair.getEcu());
+            BinaryProtocol binaryProtocol = new BinaryProtocol(linkManager, slowPair.getClient());
+            ConfigurationImageWithMeta image = linkManager.COMMUNICATION_EXECUTOR.submit(
+                () -> binaryProtocol.readFullImageFromController(new ConfigurationImageMetaVersion0_0(SIZE, "test"))
+            ).get();
+            assertFalse(image.isEmpty());
+            // pipelined read and CRC check round-trip are both measured by now
+            assertTrue(binaryProtocol.getPipelineWindow() > 1, "window " + binaryProtocol.getPipelineWindow());
+        } finally {
+            slowPair.getClient().close();
+        }
+    }
+
+    @Test
+    public void testSerialReadIsNotVerified() throws Exception {
+        VirtualEcu ecu = startEcu(VirtualEcu.ReplyFilter.VOID);
+        IoStream serial = new CapturingIoStream(pair.getClient(), new CaptureFile.Writer(new ByteArrayOutputStream())) {
+            @Override
+            public int getMaxRequestsInFlight() {
+                return 1;
+            }
+        };
+        BinaryProtocol binaryProtocol = new BinaryProtocol(linkManager, serial);
+        ConfigurationImageWithMeta image = linkManager.COMMUNICATION_EXECUTOR.submit(
+            () -> binaryProtocol.readFullImageFromController(new ConfigurationImageMetaVersion0_0(SIZE, "test"))
+        ).get();
+        assertArrayEquals(ecu.getImage().getContent(), image.getConfigurationImage().getContent());
+        // ten blocks and no CRC check
+        assertEquals(10, ecu.getRequestCount());
+    }
+
+    @Test
+    public void testLostReply() throws Exception {
+        // following replies get matched to wrong offsets until last one times out
+        VirtualEcu ecu = startEcu(onRead(2, (request, reply) -> null));
+        ConfigurationImageWithMeta image = readImage();
+        assertFalse(image.isEmpty());
+        assertArrayEquals(ecu.getImage().getContent(), image.getConfigurationImage().getContent());
+    }
+
+    @Test
+    public void testLateReply() throws Exception {
+        // reply comes after we gave up waiting, with replies to following requests right behind it
+        VirtualEcu ecu = startEcu(onRead(2, (request, reply) -> {
+            Thread.sleep(Timeouts.BINARY_IO_TIMEOUT + 300);
+            return reply;
+        }));
+        ConfigurationImageWithMeta image = readImage();
+        assertFalse(image.isEmpty());
+        assertArrayEquals(ecu.getImage().getContent(), image.getConfigurationImage().getContent());
+    }
+
+    /**
+     * @return tune with one byte changed in each block so that every block is a separate write
+     */
+    private static ConfigurationImage createNewVersion() {
+        ConfigurationImage newVersion = createImage();
+        for (int offset = 0; offset < SIZE; offset += BLOCKING_FACTOR)
+            newVersion.getContent()[offset + 7]++;
+        return newVersion;
+    }
+
+    private void uploadChanges(ConfigurationImage newVersion) throws Exception {
+        BinaryProtocol binaryProtocol = new BinaryProtocol(linkManager, pair.getClient());
+        binaryProtocol.setConfigurationImage(createImage());
+        linkManager.COMMUNICATION_EXECUTOR.submit(() -> binaryProtocol.uploadChanges(newVersion)).get();
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        VirtualEcu ecu = startEcu(VirtualEcu.ReplyFilter.VOID);
+        ConfigurationImage newVersion = createNewVersion();
+        uploadChanges(newVersion);
+        assertArrayEquals(newVersion.getContent(), ecu.getImage().getContent());
+        // ten writes, one CRC check and burn
+        assertEquals(12, ecu.getRequestCount());
+    }
+
+    @Test
+    public void testLostWriteRequest() throws Exception {
+        // controller never got the request: following replies confirm wrong ranges, only CRC tells us
+        byte[] original = createImage().getContent();
+        AtomicReference<VirtualEcu> ecu = new AtomicReference<>();
+        ecu.set(startEcu(onWrite(2, (request, reply) -> {
+            ByteRange range;
+            try {
+                range = ByteRange.valueOf(request);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            System.arraycopy(original, range.getOffset(), ecu.get().getImage().getContent(), range.getOffset(), range.getCount());
+            return null;
+        })));
+        ConfigurationImage newVersion = createNewVersion();
+        uploadChanges(newVersion);
+        assertArrayEquals(newVersion.getContent(), ecu.get().getImage().getContent());
+    }
+
+    @Test
+    public void testLateWriteReply() throws Exception {
+        VirtualEcu ecu = startEcu(onWrite(2, (request, reply) -> {
+            Thread.sleep(Timeouts.BINARY_IO_TIMEOUT + 300);
+            return reply;
+        }));
+        ConfigurationImage newVersion = createNewVersion();
+        uploadChanges(newVersion);
+        assertArrayEquals(newVersion.getContent(), ecu.getImage().getContent());
+    }
+}
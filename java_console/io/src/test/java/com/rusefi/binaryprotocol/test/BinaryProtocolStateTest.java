@@ -0,0 +1,51 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.rusefi.binaryprotocol.BinaryProtocolState;
+import com.rusefi.binaryprotocol.OutputChannelsFrame;
+import com.rusefi.config.generated.Integration;
+import com.rusefi.io.commands.ByteRange;
+import com.rusefi.io.tcp.BinaryProtocolServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryProtocolStateTest {
+    @Test
+    public void testFrameIds() {
+        BinaryProtocolState state = new BinaryProtocolState();
+        assertNull(state.getCurrentOutputs());
+
+        state.setCurrentOutputs(new byte[]{1, 2, 3});
+        OutputChannelsFrame first = state.getCurrentOutputs();
+        assertEquals(3, first.getLength());
+
+        byte[] copy = first.toByteArray();
+        copy[0] = 42;
+        assertEquals(1, first.getByte(0));
+
+        state.setCurrentOutputs(new byte[]{4, 5, 6});
+        assertTrue(state.getCurrentOutputs().getId() > first.getId());
+        // readers holding older frame still see consistent content
+        assertEquals(1, first.getByte(0));
+    }
+
+    @Test
+    public void testOutputCommandDoesNotModifyFrame() throws IOException {
+        BinaryProtocolState state = new BinaryProtocolState();
+        state.setCurrentOutputs(new byte[1000]);
+        OutputChannelsFrame frame = state.getCurrentOutputs();
+
+        byte[] packet = new byte[5];
+        packet[0] = Integration.TS_OUTPUT_COMMAND;
+        byte[] range = new byte[4];
+        ByteRange.packOffsetAndSize(0, 1000, range);
+        System.arraycopy(range, 0, packet, 1, range.length);
+
+        byte[] response = BinaryProtocolServer.getOutputCommandResponse(packet, frame);
+        assertEquals(1001, response.length);
+        for (int i = 0; i < frame.getLength(); i++)
+            assertEquals(0, frame.getByte(i));
+    }
+}
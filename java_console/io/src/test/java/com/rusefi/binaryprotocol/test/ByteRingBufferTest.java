@@ -0,0 +1,123 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.rusefi.binaryprotocol.ByteRingBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteRingBufferTest {
+    @Test
+    public void testWrapAround() throws EOFException {
+        ByteRingBuffer buffer = new ByteRingBuffer(8, 8);
+        buffer.put(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        buffer.skip(5);
+        buffer.put(new byte[]{7, 8, 9, 10, 11}, 0, 5);
+        assertEquals(6, buffer.length());
+
+        byte[] result = new byte[6];
+        buffer.peek(result, 0, 6);
+        assertArrayEquals(new byte[]{6, 7, 8, 9, 10, 11}, result);
+        assertEquals(10, buffer.peekByte(4));
+
+        buffer.get(result, 0, 6);
+        assertArrayEquals(new byte[]{6, 7, 8, 9, 10, 11}, result);
+        assertEquals(0, buffer.length());
+    }
+
+    @Test
+    public void testChecksumAcrossWrap() throws EOFException {
+        ByteRingBuffer buffer = new ByteRingBuffer(8, 8);
+        buffer.put(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        buffer.skip(4);
+        buffer.put(new byte[]{7, 8, 9, 10, 11}, 0, 5);
+
+        CRC32 expected = new CRC32();
+        expected.update(new byte[]{5, 6, 7, 8, 9, 10, 11});
+        CRC32 actual = new CRC32();
+        byte[] result = new byte[7];
+        buffer.get(result, 0, 7, actual);
+        assertArrayEquals(new byte[]{5, 6, 7, 8, 9, 10, 11}, result);
+        assertEquals(expected.getValue(), actual.getValue());
+    }
+
+    @Test
+    public void testLittleEndian() throws EOFException {
+        ByteRingBuffer buffer = new ByteRingBuffer(4, 16);
+        buffer.put(new byte[]{(byte) 0xFE, 0x34, 0x12, 0x78, 0x56, 0x34, (byte) 0x92}, 0, 7);
+        assertEquals(0xFE, buffer.getByte());
+        assertEquals(0x1234, buffer.getShort());
+        assertEquals(0x92345678, buffer.getInt());
+        assertThrows(EOFException.class, buffer::getByte);
+    }
+
+    @Test
+    public void testGrowKeepsPendingData() throws EOFException {
+        ByteRingBuffer buffer = new ByteRingBuffer(4, 64);
+        buffer.put(new byte[]{1, 2, 3}, 0, 3);
+        buffer.skip(2);
+        buffer.put(new byte[]{4, 5, 6, 7, 8, 9, 10}, 0, 7);
+        assertEquals(8, buffer.length());
+        assertEquals(8, buffer.capacity());
+
+        byte[] result = new byte[8];
+        buffer.get(result, 0, 8);
+        assertArrayEquals(new byte[]{3, 4, 5, 6, 7, 8, 9, 10}, result);
+    }
+
+    @Test
+    public void testOverflow() {
+        ByteRingBuffer buffer = new ByteRingBuffer(4, 8);
+        buffer.put(new byte[6], 0, 6);
+        assertThrows(IllegalStateException.class, () -> buffer.put(new byte[3], 0, 3));
+        assertEquals(6, buffer.length());
+    }
+
+    @Test
+    public void testAwaitTimeout() {
+        ByteRingBuffer buffer = new ByteRingBuffer(4, 8);
+        buffer.put(new byte[1], 0, 1);
+        assertFalse(buffer.await(1, System.currentTimeMillis()));
+        assertTrue(buffer.await(2, System.currentTimeMillis() + 20));
+    }
+
+    @Test
+    public void testProducerConsumer() throws Exception {
+        int total = 1_000_000;
+        ByteRingBuffer buffer = new ByteRingBuffer(16, 1024 * 1024);
+        AtomicReference<Throwable> producerError = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                byte[] chunk = new byte[37];
+                int value = 0;
+                while (value < total) {
+                    int size = Math.min(chunk.length, total - value);
+                    for (int i = 0; i < size; i++)
+                        chunk[i] = (byte) (value + i);
+                    buffer.put(chunk, 0, size);
+                    value += size;
+                }
+            } catch (Throwable e) {
+                producerError.set(e);
+            }
+        });
+        producer.start();
+
+        byte[] chunk = new byte[100];
+        int expected = 0;
+        while (expected < total) {
+            int size = Math.min(chunk.length, total - expected);
+            assertFalse(buffer.await(size, System.currentTimeMillis() + 10_000), "Timeout at " + expected);
+            buffer.get(chunk, 0, size);
+            for (int i = 0; i < size; i++)
+                assertEquals((byte) (expected + i), chunk[i]);
+            expected += size;
+        }
+        producer.join();
+        assertNull(producerError.get());
+        assertEquals(0, buffer.length());
+    }
+}
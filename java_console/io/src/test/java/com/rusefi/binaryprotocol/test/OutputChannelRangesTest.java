@@ -0,0 +1,59 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.rusefi.binaryprotocol.OutputChannelRanges;
+import com.rusefi.config.generated.TsOutputs;
+import com.rusefi.core.Sensor;
+import com.rusefi.io.commands.ByteRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutputChannelRangesTest {
+    @Test
+    public void testMergeCloseRanges() {
+        List<ByteRange> ranges = ByteRange.merge(Arrays.asList(
+            new ByteRange(100, 4),
+            new ByteRange(0, 2),
+            new ByteRange(4, 2),
+            new ByteRange(108, 2)
+        ), 4, 1024);
+        assertEquals(Arrays.asList(new ByteRange(0, 6), new ByteRange(100, 10)), ranges);
+    }
+
+    @Test
+    public void testOverlappingAndSplit() {
+        List<ByteRange> ranges = ByteRange.merge(Arrays.asList(
+            new ByteRange(0, 10),
+            new ByteRange(5, 20)
+        ), 0, 10);
+        assertEquals(Arrays.asList(new ByteRange(0, 10), new ByteRange(10, 10), new ByteRange(20, 5)), ranges);
+    }
+
+    @Test
+    public void testFullBlock() {
+        List<ByteRange> ranges = OutputChannelRanges.getFullBlock(2500);
+        assertEquals(Arrays.asList(new ByteRange(0, 1024), new ByteRange(1024, 1024), new ByteRange(2048, 452)), ranges);
+    }
+
+    @Test
+    public void testSensors() {
+        assertTrue(OutputChannelRanges.getRanges(Collections.emptySet(), 1000).isEmpty());
+
+        List<ByteRange> ranges = OutputChannelRanges.getRanges(EnumSet.of(Sensor.RPMValue), 10000);
+        assertEquals(Collections.singletonList(new ByteRange(TsOutputs.RPMVALUE.getTotalOffset(), 2)), ranges);
+    }
+
+    @Test
+    public void testHeartbeat() {
+        List<ByteRange> ranges = OutputChannelRanges.getHeartbeatRanges(10000);
+        assertEquals(Collections.singletonList(new ByteRange(TsOutputs.SECONDS.getTotalOffset(), 4)), ranges);
+        // tiny block still gets a real request
+        assertEquals(Collections.singletonList(new ByteRange(0, 2)), OutputChannelRanges.getHeartbeatRanges(2));
+    }
+}
@@ -0,0 +1,60 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.binaryprotocol.PatchPlanner;
+import com.rusefi.io.commands.ByteRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatchPlannerTest {
+    @Test
+    public void testSameImage() {
+        ConfigurationImage image = new ConfigurationImage(100);
+        assertTrue(PatchPlanner.plan(image, image.clone(), 1024).isEmpty());
+    }
+
+    @Test
+    public void testGapCost() {
+        ConfigurationImage current = new ConfigurationImage(100);
+        ConfigurationImage newVersion = current.clone();
+        newVersion.getContent()[10] = 1;
+        newVersion.getContent()[11] = 1;
+        newVersion.getContent()[15] = 1;
+        newVersion.getContent()[90] = 1;
+
+        List<ByteRange> ranges = PatchPlanner.plan(current, newVersion, 10, 1024);
+        assertEquals(Arrays.asList(new ByteRange(10, 6), new ByteRange(90, 1)), ranges);
+
+        ranges = PatchPlanner.plan(current, newVersion, 100, 1024);
+        assertEquals(Collections.singletonList(new ByteRange(10, 81)), ranges);
+        assertEquals(81, PatchPlanner.getTotalSize(ranges));
+    }
+
+    @Test
+    public void testScatteredTableCells() {
+        ConfigurationImage current = new ConfigurationImage(20000);
+        ConfigurationImage newVersion = current.clone();
+        // every fourth byte of a 16x16 float table is touched
+        for (int i = 0; i < 256; i++)
+            newVersion.getContent()[5000 + i * 4] = 1;
+
+        List<ByteRange> ranges = PatchPlanner.plan(current, newVersion, 1024);
+        assertEquals(Collections.singletonList(new ByteRange(5000, 1021)), ranges);
+    }
+
+    @Test
+    public void testBlockingFactor() {
+        ConfigurationImage current = new ConfigurationImage(3000);
+        ConfigurationImage newVersion = current.clone();
+        Arrays.fill(newVersion.getContent(), (byte) 1);
+
+        List<ByteRange> ranges = PatchPlanner.plan(current, newVersion, 1024);
+        assertEquals(Arrays.asList(new ByteRange(0, 1024), new ByteRange(1024, 1024), new ByteRange(2048, 952)), ranges);
+    }
+}
@@ -0,0 +1,113 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.rusefi.binaryprotocol.PollScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PollSchedulerTest {
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final AtomicLong bytes = new AtomicLong();
+
+    private static String names(List<PollScheduler.PollTask> tasks) {
+        return tasks.stream().map(PollScheduler.PollTask::getName).collect(Collectors.joining(","));
+    }
+
+    @Test
+    public void testEachTaskHasOwnRate() {
+        AtomicBoolean textEnabled = new AtomicBoolean(true);
+        PollScheduler scheduler = new PollScheduler(clock::get)
+            .add("fast", 20, () -> true, () -> clock.addAndGet(5))
+            .add("slow", 100, textEnabled::get, () -> clock.addAndGet(5));
+
+        List<PollScheduler.PollTask> due = scheduler.getDueTasks();
+        assertEquals("fast,slow", names(due));
+        scheduler.runCycle(due, bytes::get);
+        assertEquals(10, scheduler.getAverageCycleMs(), 0.1);
+        assertEquals(5, scheduler.getTasks().get(0).getAverageDurationMs(), 0.1);
+
+        assertTrue(scheduler.getDueTasks().isEmpty());
+        assertEquals(10, scheduler.getDelayUntilNextTask());
+
+        clock.addAndGet(10);
+        due = scheduler.getDueTasks();
+        assertEquals("fast", names(due));
+        scheduler.runCycle(due, bytes::get);
+
+        textEnabled.set(false);
+        clock.set(2000);
+        assertEquals("fast", names(scheduler.getDueTasks()));
+    }
+
+    @Test
+    public void testSlowLinkLeavesRoomForCommands() {
+        PollScheduler scheduler = new PollScheduler(clock::get)
+            .add("outputs", 20, () -> true, () -> {
+                clock.addAndGet(50);
+                bytes.addAndGet(1000);
+            });
+
+        for (int i = 0; i < 3; i++) {
+            List<PollScheduler.PollTask> due = scheduler.getDueTasks();
+            assertEquals(1, due.size());
+            scheduler.runCycle(due, bytes::get);
+            // polls keep link busy 70% of the time, not 100%
+            assertEquals(72, scheduler.getEffectivePeriodMs(due.get(0)));
+            assertEquals(22, scheduler.getDelayUntilNextTask());
+            clock.addAndGet(scheduler.getDelayUntilNextTask());
+        }
+        assertEquals(3, scheduler.getTasks().get(0).getRunCount());
+        assertEquals(20_000, scheduler.getBytesPerSecond(), 1);
+    }
+
+    @Test
+    public void testFastLinkUsesMinPeriod() {
+        PollScheduler scheduler = new PollScheduler(clock::get)
+            .add("outputs", 100, 20, () -> true, () -> clock.addAndGet(2));
+        PollScheduler.PollTask outputs = scheduler.getTasks().get(0);
+        // nothing measured yet
+        assertEquals(100, scheduler.getEffectivePeriodMs(outputs));
+
+        scheduler.runCycle(scheduler.getDueTasks(), bytes::get);
+        assertEquals(20, scheduler.getEffectivePeriodMs(outputs));
+    }
+
+    @Test
+    public void testPipelineWindow() {
+        PollScheduler scheduler = new PollScheduler(clock::get)
+            .add("outputs", 100, () -> true, () -> {
+                clock.addAndGet(100);
+                bytes.addAndGet(5000);
+            })
+            // no I/O at all
+            .add("live data", 100, () -> true, () -> {
+            });
+        assertEquals(8, scheduler.getPipelineWindow(1000, 8), "not measured yet");
+
+        scheduler.runCycle(scheduler.getDueTasks(), bytes::get);
+        scheduler.onRequestRoundTrip(TimeUnit.MILLISECONDS.toNanos(100));
+        // polls go one request at a time, that says nothing about link capacity
+        assertEquals(8, scheduler.getPipelineWindow(1000, 8), "no pipelined transfer yet");
+
+        // 50 KB/s over 100 ms round-trip is five kilobyte requests in flight plus one being answered
+        scheduler.onPipelinedTransfer(50_000, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(6, scheduler.getPipelineWindow(1000, 8));
+        assertEquals(2, scheduler.getPipelineWindow(1000, 2));
+    }
+
+    @Test
+    public void testHighLatencyLinkKeepsWindow() {
+        PollScheduler scheduler = new PollScheduler(clock::get);
+        // four kilobyte requests in flight on a link which is all latency and no bandwidth limit
+        scheduler.onRequestRoundTrip(TimeUnit.MILLISECONDS.toNanos(200));
+        scheduler.onPipelinedTransfer(4 * 1000, TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(5, scheduler.getPipelineWindow(1000, 8));
+    }
+}
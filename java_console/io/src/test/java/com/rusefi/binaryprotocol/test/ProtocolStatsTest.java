@@ -0,0 +1,34 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.rusefi.binaryprotocol.PacketView;
+import com.rusefi.binaryprotocol.ProtocolStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProtocolStatsTest {
+    @Test
+    public void testCounters() {
+        // own instance without background dump
+        ProtocolStats stats = new ProtocolStats(0);
+        byte opcode = (byte) 0xF7;
+
+        stats.onRequest(opcode, 5, null, TimeUnit.MILLISECONDS.toNanos(3), true);
+        stats.onRequest(opcode, 5, new PacketView(), TimeUnit.MILLISECONDS.toNanos(1), false);
+
+        assertEquals(2, stats.getRequestCount(opcode));
+        assertEquals(1, stats.getFailureCount(opcode));
+        assertEquals(1, stats.getRetryCount(opcode));
+        assertEquals(1, stats.getCrcFailureCount(opcode));
+        assertEquals(22, stats.getBytesOut(opcode));
+        assertEquals(6, stats.getBytesIn(opcode));
+        assertEquals(2, stats.getAverageLatencyMs(opcode), 0.01);
+
+        List<String> dump = stats.dump();
+        assertTrue(dump.stream().anyMatch(line -> line.contains("requests=2 failures=1 retries=1 crcFailures=1")), dump.toString());
+    }
+}
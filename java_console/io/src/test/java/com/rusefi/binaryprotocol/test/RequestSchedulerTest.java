@@ -0,0 +1,117 @@
+package com.rusefi.binaryprotocol.test;
+
+import com.rusefi.binaryprotocol.RequestPriority;
+import com.rusefi.binaryprotocol.RequestScheduler;
+import com.rusefi.config.generated.Integration;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestSchedulerTest {
+    private final Queue<Runnable> communicationQueue = new ArrayDeque<>();
+    private final List<Character> sent = new ArrayList<>();
+
+    private final RequestScheduler scheduler = new RequestScheduler(communicationQueue::add, Runnable::run, (opcode, payload, msg) -> {
+        sent.add(opcode);
+        return opcode == Integration.TS_GET_TEXT ? null : new byte[]{(byte) opcode};
+    });
+
+    private void runCommunicationThread() {
+        Runnable task;
+        while ((task = communicationQueue.poll()) != null)
+            task.run();
+    }
+
+    @Test
+    public void testPriorityThenSubmissionOrder() throws Exception {
+        long deadline = System.currentTimeMillis() + 60_000;
+        CompletableFuture<byte[]> composite = scheduler.submit('a', null, RequestPriority.COMPOSITE_LOG, deadline);
+        scheduler.submit('b', null, RequestPriority.OUTPUT_CHANNELS, deadline);
+        scheduler.submit('c', null, RequestPriority.INTERACTIVE, deadline);
+        scheduler.submit('d', null, RequestPriority.OUTPUT_CHANNELS, deadline);
+        assertEquals(4, scheduler.getPendingCount());
+
+        runCommunicationThread();
+
+        assertEquals("cbda", sent.stream().map(String::valueOf).reduce("", String::concat));
+        assertArrayEquals(new byte[]{'a'}, composite.get());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testDeadlineAndFailure() {
+        CompletableFuture<byte[]> late = scheduler.submit('a', null, RequestPriority.INTERACTIVE, System.currentTimeMillis() - 1);
+        CompletableFuture<byte[]> failed = scheduler.submit(Integration.TS_GET_TEXT, null, RequestPriority.TEXT_PULL, System.currentTimeMillis() + 60_000);
+
+        runCommunicationThread();
+
+        assertEquals(1, sent.size());
+        ExecutionException e = assertThrows(ExecutionException.class, late::get);
+        assertTrue(e.getCause() instanceof TimeoutException);
+        e = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    public void testCancel() {
+        long deadline = System.currentTimeMillis() + 60_000;
+        CompletableFuture<byte[]> cancelledByCaller = scheduler.submit('a', null, RequestPriority.INTERACTIVE, deadline);
+        cancelledByCaller.cancel(false);
+        runCommunicationThread();
+
+        CompletableFuture<byte[]> cancelledOnClose = scheduler.submit('b', null, RequestPriority.INTERACTIVE, deadline);
+        scheduler.cancelAll("closed");
+        runCommunicationThread();
+
+        assertTrue(sent.isEmpty());
+        assertTrue(cancelledOnClose.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testBlockingInCallback() throws Exception {
+        ExecutorService communication = Executors.newSingleThreadExecutor();
+        ExecutorService callbacks = Executors.newCachedThreadPool();
+        try {
+            RequestScheduler scheduler = new RequestScheduler(communication, callbacks, (opcode, payload, msg) -> new byte[]{(byte) opcode});
+            long deadline = System.currentTimeMillis() + 60_000;
+            // dependent stage waits for another request, that would never complete if we were on communication thread
+            CompletableFuture<byte[]> chained = scheduler.submit('a', null, RequestPriority.INTERACTIVE, deadline)
+                .thenApply(first -> scheduler.submit('b', null, RequestPriority.INTERACTIVE, deadline).join());
+            assertArrayEquals(new byte[]{'b'}, chained.get(10, TimeUnit.SECONDS));
+        } finally {
+            communication.shutdownNow();
+            callbacks.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDeadlineWhileWaitingForResponse() throws Exception {
+        ExecutorService communication = Executors.newSingleThreadExecutor();
+        CountDownLatch responded = new CountDownLatch(1);
+        try {
+            RequestScheduler scheduler = new RequestScheduler(communication, Runnable::run, (opcode, payload, msg) -> {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                responded.countDown();
+                return new byte[0];
+            });
+            CompletableFuture<byte[]> slow = scheduler.submit('a', null, RequestPriority.INTERACTIVE, System.currentTimeMillis() + 100);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> slow.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof TimeoutException);
+            // failed before the controller got to answer
+            assertEquals(1, responded.getCount());
+        } finally {
+            communication.shutdownNow();
+        }
+    }
+}
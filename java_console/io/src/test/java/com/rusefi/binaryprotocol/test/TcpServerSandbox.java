@@ -5,6 +5,7 @@ import com.opensr5.ini.IniFileModeSingleton;
 import com.rusefi.CompatibleFunction;
 import com.rusefi.Listener;
 import com.rusefi.binaryprotocol.BinaryProtocol;
+import com.rusefi.binaryprotocol.BinaryProtocolState;
 import com.rusefi.binaryprotocol.IncomingDataBuffer;
 import com.rusefi.config.generated.Fields;
 import com.rusefi.config.generated.Integration;
@@ -78,6 +79,7 @@ public class TcpServerSandbox {
 
     static class EcuState {
         private final byte[] outputs = new byte[VariableRegistryValues.TS_TOTAL_OUTPUT_SIZE];
+        private final BinaryProtocolState state = new BinaryProtocolState();
 
         final long startUpTime = System.currentTimeMillis();
 
@@ -85,6 +87,7 @@ public class TcpServerSandbox {
             int seconds = (int) ((System.currentTimeMillis() - startUpTime) / 1000);
 
             TsOutputs.SECONDS.setValueU32(outputs, seconds);
+            state.setCurrentOutputs(outputs.clone());
 
         }
     }
@@ -124,7 +127,7 @@ public class TcpServerSandbox {
                 stream.sendPacket(TS_OK.getBytes());
             }
         } else if (command == Integration.TS_OUTPUT_COMMAND) {
-            byte[] response = getOutputCommandResponse(payload, ecuState.outputs);
+            byte[] response = getOutputCommandResponse(payload, ecuState.state.getCurrentOutputs());
             stream.sendPacket(response);
         } else if (command == Integration.TS_GET_SCATTERED_GET_COMMAND) {
 //            System.out.println("Cool TS_GET_SCATTERED_GET_COMMAND");
@@ -1,12 +1,15 @@
 package com.rusefi.io.can;
 
+import com.opensr5.io.DataListener;
 import com.rusefi.config.generated.Fields;
 import com.rusefi.config.generated.VariableRegistryValues;
+import com.rusefi.io.can.isotp.IsoTpCanDecoder;
 import com.rusefi.io.can.isotp.IsoTpConnector;
 import com.rusefi.util.HexBinary;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,4 +37,34 @@ public class IsoTpConnectorTest {
         assertEquals("10 0B 00 05 6B 00 00 50 ", packets.get(0));
         assertEquals("21 5F 69 AF A0 70 ", packets.get(1));
     }
+
+    @Test
+    public void testDecodeSlices() {
+        byte[] payload = new byte[]{
+                0, 5, 107, 0, 0, 80, 95, 105, -81, -96, 112};
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        DataListener listener = new DataListener() {
+            @Override
+            public void onDataArrived(byte[] freshData) {
+                Assertions.fail("Slice expected");
+            }
+
+            @Override
+            public void onDataArrived(byte[] data, int offset, int length) {
+                decoded.write(data, offset, length);
+            }
+        };
+        IsoTpCanDecoder decoder = new IsoTpCanDecoder();
+        IsoTpConnector testConnector = new IsoTpConnector(VariableRegistryValues.CAN_ECU_SERIAL_RX_ID) {
+            @Override
+            public void sendCanData(byte[] total) {
+                decoder.decodePacket(total, listener);
+            }
+        };
+
+        IsoTpConnector.sendStrategy(payload, testConnector);
+
+        Assertions.assertArrayEquals(payload, decoded.toByteArray());
+    }
 }
@@ -0,0 +1,66 @@
+package com.rusefi.io.capture;
+
+import com.rusefi.Timeouts;
+import com.rusefi.binaryprotocol.IoHelper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CaptureReplayTest {
+    @Test
+    public void testFileRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CaptureFile.Writer writer = new CaptureFile.Writer(bytes)) {
+            writer.write(CaptureFile.Direction.OUT, new byte[]{1, 2, 3}, 1, 2);
+            writer.write(CaptureFile.Direction.IN, new byte[300], 0, 300);
+        }
+
+        CaptureFile.Reader reader = new CaptureFile.Reader(new ByteArrayInputStream(bytes.toByteArray()));
+        CaptureFile.Record first = reader.read();
+        assertEquals(CaptureFile.Direction.OUT, first.getDirection());
+        assertArrayEquals(new byte[]{2, 3}, first.getData());
+        CaptureFile.Record second = reader.read();
+        assertEquals(CaptureFile.Direction.IN, second.getDirection());
+        assertEquals(300, second.getData().length);
+        assertTrue(second.getTimestampNanos() >= first.getTimestampNanos());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void testReplayWaitsForRequest() throws IOException, InterruptedException {
+        byte[] request = IoHelper.makeCrc32Packet(new byte[]{'S'});
+        byte[] response = {0, 'O', 'K'};
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CaptureFile.Writer writer = new CaptureFile.Writer(bytes)) {
+            writer.write(CaptureFile.Direction.OUT, request, 0, request.length);
+            byte[] packet = IoHelper.makeCrc32Packet(response);
+            writer.write(CaptureFile.Direction.IN, packet, 0, packet.length);
+        }
+
+        ReplayIoStream stream = new ReplayIoStream(new CaptureFile.Reader(new ByteArrayInputStream(bytes.toByteArray())), false);
+        Thread.sleep(50);
+        assertEquals(0, stream.getDataBuffer().getPendingCount(), "Response is not expected before request");
+
+        stream.sendPacket(new byte[]{'S'});
+        assertArrayEquals(response, stream.getDataBuffer().getPacket("replay"));
+    }
+
+    @Test
+    public void testCloseStopsReplayThread() throws IOException, InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CaptureFile.Writer writer = new CaptureFile.Writer(bytes)) {
+            // request which never comes
+            writer.write(CaptureFile.Direction.OUT, new byte[10], 0, 10);
+        }
+
+        ReplayIoStream stream = new ReplayIoStream(new CaptureFile.Reader(new ByteArrayInputStream(bytes.toByteArray())), true);
+        stream.close();
+        assertTrue(stream.awaitReplayThread(Timeouts.BINARY_IO_TIMEOUT / 2, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,90 @@
+package com.rusefi.io.loopback;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.binaryprotocol.IoHelper;
+import com.rusefi.config.generated.Integration;
+import com.rusefi.io.IoStream;
+import com.rusefi.io.commands.ByteRange;
+import com.rusefi.io.commands.HelloCommand;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.rusefi.config.generated.VariableRegistryValues.TS_RESPONSE_OUT_OF_RANGE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualEcuTest {
+    private static final int SIZE = 1000;
+
+    private static byte[] request(char command, int offset, int count) {
+        byte[] range = new byte[4];
+        ByteRange.packOffsetAndSize(offset, count, range);
+        byte[] packet = new byte[5];
+        packet[0] = (byte) command;
+        System.arraycopy(range, 0, packet, 1, range.length);
+        return packet;
+    }
+
+    private static VirtualEcu createEcu(IoStream ecuEnd) {
+        ConfigurationImage image = new ConfigurationImage(SIZE);
+        for (int i = 0; i < SIZE; i++)
+            image.getContent()[i] = (byte) i;
+        VirtualEcu ecu = new VirtualEcu(image)
+            .setSignature("virtual test")
+            .setOutputChannelGenerator((outputs, frame) -> outputs[0] = (byte) frame);
+        ecu.start(ecuEnd);
+        return ecu;
+    }
+
+    @Test
+    public void testRequests() throws IOException {
+        LoopbackIoStream.Pair pair = LoopbackIoStream.createPair();
+        VirtualEcu ecu = createEcu(pair.getEcu());
+        IoStream client = pair.getClient();
+
+        HelloCommand.send(client);
+        assertEquals("virtual test", HelloCommand.getHelloResponse(client.getDataBuffer()));
+
+        byte[] read = client.sendAndGetPacket(request(Integration.TS_READ_COMMAND, 10, 3), "read");
+        assertArrayEquals(new byte[]{0, 10, 11, 12}, read);
+
+        byte[] crc = client.sendAndGetPacket(request(Integration.TS_CRC_CHECK_COMMAND, 0, SIZE), "crc");
+        assertEquals(IoHelper.getCrc32(ecu.getImage().getContent()), ByteBuffer.wrap(crc, 1, 4).getInt());
+
+        byte[] write = Arrays.copyOf(request(Integration.TS_CHUNK_WRITE_COMMAND, 20, 2), 7);
+        write[5] = 42;
+        write[6] = 43;
+        assertArrayEquals(new byte[]{0}, client.sendAndGetPacket(write, "write"));
+        assertEquals(42, ecu.getImage().getContent()[20]);
+        assertEquals(43, ecu.getImage().getContent()[21]);
+
+        assertEquals(0, client.sendAndGetPacket(request(Integration.TS_OUTPUT_COMMAND, 0, 4), "outputs")[1]);
+        assertEquals(1, client.sendAndGetPacket(request(Integration.TS_OUTPUT_COMMAND, 0, 4), "outputs")[1]);
+
+        byte[] outOfRange = client.sendAndGetPacket(request(Integration.TS_READ_COMMAND, SIZE - 1, 2), "read");
+        assertArrayEquals(new byte[]{(byte) TS_RESPONSE_OUT_OF_RANGE}, outOfRange);
+
+        assertEquals(7, ecu.getRequestCount());
+        assertEquals(2, ecu.getOutputRequestCount());
+
+        client.close();
+        assertTrue(pair.getEcu().isClosed());
+    }
+
+    @Test
+    public void testLinkLimits() throws IOException {
+        // 10 ms each way plus 1000 bytes at 100KB/s
+        LoopbackIoStream.Pair pair = LoopbackIoStream.createPair(new LoopbackIoStream.Link(10, 100_000));
+        createEcu(pair.getEcu());
+        IoStream client = pair.getClient();
+
+        long start = System.currentTimeMillis();
+        byte[] read = client.sendAndGetPacket(request(Integration.TS_READ_COMMAND, 0, SIZE), "read");
+        long duration = System.currentTimeMillis() - start;
+        assertEquals(1 + SIZE, read.length);
+        assertTrue(duration >= 30, "Round trip " + duration);
+        client.close();
+    }
+}
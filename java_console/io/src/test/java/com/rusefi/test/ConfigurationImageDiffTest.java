@@ -2,10 +2,17 @@ package com.rusefi.test;
 
 import com.opensr5.ConfigurationImage;
 import com.rusefi.core.Pair;
+import com.rusefi.io.commands.ByteRange;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import static com.rusefi.ConfigurationImageDiff.findDifferences;
+import static com.rusefi.ConfigurationImageDiff.getDifferentRanges;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -41,4 +48,37 @@ public class ConfigurationImageDiffTest {
             assertEquals(18, (int) p.second);
         }
     }
+
+    @Test
+    public void testDifferentRanges() {
+        byte[] data1 = {1, 2, 3, 4, 5, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3, 4, 5, 6};
+        byte[] data2 = {0, 2, 3, 4, 5, 6, 7, 0, 9, 0, 0, 0, 1, 2, 3, 4, 5, 7};
+        assertEquals(Arrays.asList(new ByteRange(0, 1), new ByteRange(5, 2), new ByteRange(8, 1), new ByteRange(17, 1)),
+            getDifferentRanges(new ConfigurationImage(data1), new ConfigurationImage(data2)));
+        assertTrue(getDifferentRanges(new ConfigurationImage(data1), new ConfigurationImage(data1.clone())).isEmpty());
+    }
+
+    @Test
+    public void testWordBoundaries() {
+        Random random = new Random(1);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            byte[] data1 = new byte[random.nextInt(100)];
+            byte[] data2 = data1.clone();
+            for (int i = 0; i < data2.length; i++) {
+                if (random.nextInt(4) == 0)
+                    data2[i] = (byte) (1 + random.nextInt(255));
+            }
+
+            List<ByteRange> expected = new ArrayList<>();
+            for (int i = 0; i < data1.length; i++) {
+                if (data1[i] == data2[i])
+                    continue;
+                int start = i;
+                while (i < data1.length && data1[i] != data2[i])
+                    i++;
+                expected.add(new ByteRange(start, i - start));
+            }
+            assertEquals(expected, getDifferentRanges(new ConfigurationImage(data1), new ConfigurationImage(data2)));
+        }
+    }
 }
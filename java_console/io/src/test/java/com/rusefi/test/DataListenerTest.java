@@ -0,0 +1,29 @@
+package com.rusefi.test;
+
+import com.opensr5.io.DataListener;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see DataListener
+ */
+public class DataListenerTest {
+    @Test
+    public void testLegacyListenerGetsCopy() {
+        List<byte[]> received = new ArrayList<>();
+        DataListener listener = received::add;
+        byte[] buffer = {1, 2, 3};
+
+        listener.onDataArrived(buffer, 0, buffer.length);
+        // reader thread reuses its buffer for the next read
+        buffer[0] = 4;
+        listener.onDataArrived(buffer, 1, 2);
+
+        assertArrayEquals(new byte[]{1, 2, 3}, received.get(0));
+        assertArrayEquals(new byte[]{2, 3}, received.get(1));
+    }
+}
@@ -0,0 +1,51 @@
+package com.rusefi.test;
+
+import com.rusefi.binaryprotocol.BinaryProtocolState;
+import com.rusefi.enums.live_data_e;
+import com.rusefi.ldmp.StateDictionary;
+import com.rusefi.ui.livedocs.LiveDocHolder;
+import com.rusefi.ui.livedocs.LiveDocsRegistry;
+import com.rusefi.ui.livedocs.RefreshActions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.rusefi.config.generated.VariableRegistryValues.TS_TOTAL_OUTPUT_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiveDocsRegistryTest {
+    @Test
+    public void testSameFrameIsSkipped() {
+        List<Byte> updates = new ArrayList<>();
+        LiveDocsRegistry.INSTANCE.register(new LiveDocHolder(live_data_e.LDS_ac_control, new RefreshActions() {
+            @Override
+            public void refresh(byte[] response) {
+                updates.add(response[0]);
+            }
+        }) {
+            @Override
+            public boolean isVisible() {
+                return true;
+            }
+        });
+
+        int offset = 1 + StateDictionary.INSTANCE.getOffset(live_data_e.LDS_ac_control);
+        BinaryProtocolState state = new BinaryProtocolState();
+        byte[] outputs = new byte[TS_TOTAL_OUTPUT_SIZE + 1];
+        outputs[offset] = 42;
+        state.setCurrentOutputs(outputs);
+
+        assertTrue(LiveDocsRegistry.INSTANCE.refresh(state.getCurrentOutputs()));
+        assertFalse(LiveDocsRegistry.INSTANCE.refresh(state.getCurrentOutputs()));
+        assertEquals(1, updates.size());
+        assertEquals(42, (byte) updates.get(0));
+
+        outputs = new byte[TS_TOTAL_OUTPUT_SIZE + 1];
+        outputs[offset] = 43;
+        state.setCurrentOutputs(outputs);
+        assertTrue(LiveDocsRegistry.INSTANCE.refresh(state.getCurrentOutputs()));
+        assertEquals(2, updates.size());
+        assertEquals(43, (byte) updates.get(1));
+    }
+}
@@ -0,0 +1,36 @@
+package com.rusefi.test;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.binaryprotocol.BinaryProtocol;
+import com.rusefi.io.LinkManager;
+import com.rusefi.io.commands.PTraceHelper;
+import com.rusefi.io.loopback.LoopbackIoStream;
+import com.rusefi.io.loopback.VirtualEcu;
+import com.rusefi.tracing.Entry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @see PTraceHelper
+ */
+public class PTraceHelperTest {
+    @Test
+    public void testFromCommunicationThread() throws Exception {
+        LinkManager linkManager = new LinkManager();
+        LoopbackIoStream.Pair pair = LoopbackIoStream.createPair();
+        new VirtualEcu(new ConfigurationImage(100)).start(pair.getEcu());
+        try {
+            BinaryProtocol bp = new BinaryProtocol(linkManager, pair.getClient());
+            // waiting on communication thread for requests queued to communication thread would never finish
+            List<Entry> entries = linkManager.COMMUNICATION_EXECUTOR.submit(() -> PTraceHelper.requestWaitAndGetPTrace(bp))
+                .get(5, TimeUnit.SECONDS);
+            assertTrue(entries.isEmpty());
+        } finally {
+            pair.getClient().close();
+        }
+    }
+}
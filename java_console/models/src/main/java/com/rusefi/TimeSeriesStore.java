@@ -0,0 +1,260 @@
+package com.rusefi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Last N frames of named channels: one primitive ring column per channel plus a shared timestamp column, so that
+ * appending a frame is a few array stores and history of a channel is kept once no matter how many graphs look at it.
+ * <p>
+ * Columns are only allocated for channels somebody asked for with {@link #track}, history of a channel starts at that
+ * moment. Reading a channel which is not tracked gives NaN values.
+ * <p>
+ * Timestamps are expected to be non-decreasing, time ranges are inclusive on both ends.
+ *
+ * @see com.rusefi.core.SensorCentral#getHistory()
+ */
+public class TimeSeriesStore {
+    private final String[] channelNames;
+    private final Map<String, Integer> channelByName = new HashMap<>();
+    private final int capacity;
+    private final long[] timestamps;
+    /**
+     * [channel][slot], null for channels which are not tracked
+     */
+    private final double[][] columns;
+    /**
+     * total number of frames ever appended, slot of frame N is N % capacity
+     */
+    private long appended;
+
+    public TimeSeriesStore(String[] channelNames, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity " + capacity);
+        this.channelNames = channelNames.clone();
+        for (int i = 0; i < channelNames.length; i++)
+            channelByName.putIfAbsent(channelNames[i], i);
+        this.capacity = capacity;
+        timestamps = new long[capacity];
+        columns = new double[channelNames.length][];
+    }
+
+    /**
+     * Starts keeping history of channel, does nothing if it is already tracked
+     */
+    public synchronized void track(int channel) {
+        if (columns[channel] != null)
+            return;
+        double[] column = new double[capacity];
+        // frames appended before tracking started
+        Arrays.fill(column, Double.NaN);
+        columns[channel] = column;
+    }
+
+    public synchronized boolean isTracked(int channel) {
+        return columns[channel] != null;
+    }
+
+    /**
+     * @return index of channel with given name, -1 if none
+     */
+    public int getChannel(String name) {
+        Integer channel = channelByName.get(name);
+        return channel == null ? -1 : channel;
+    }
+
+    public String getChannelName(int channel) {
+        return channelNames[channel];
+    }
+
+    /**
+     * @param values value of channel N at index N, only values of tracked channels are stored
+     */
+    public synchronized void append(long timestamp, double[] values) {
+        int slot = (int) (appended % capacity);
+        if (appended > 0)
+            timestamp = Math.max(timestamp, timestamps[(int) ((appended - 1) % capacity)]);
+        timestamps[slot] = timestamp;
+        for (int channel = 0; channel < columns.length; channel++) {
+            double[] column = columns[channel];
+            if (column != null)
+                column[slot] = values[channel];
+        }
+        appended++;
+    }
+
+    public synchronized void clear() {
+        appended = 0;
+    }
+
+    /**
+     * @return number of frames currently kept
+     */
+    public synchronized int getSize() {
+        return (int) Math.min(appended, capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getChannelCount() {
+        return columns.length;
+    }
+
+    /**
+     * @return timestamp of oldest frame kept, Long.MIN_VALUE if empty
+     */
+    public synchronized long getFirstTime() {
+        return getSize() == 0 ? Long.MIN_VALUE : timestamps[slotOf(0)];
+    }
+
+    /**
+     * @return timestamp of newest frame, Long.MIN_VALUE if empty
+     */
+    public synchronized long getLastTime() {
+        return getSize() == 0 ? Long.MIN_VALUE : timestamps[slotOf(getSize() - 1)];
+    }
+
+    /**
+     * @return latest value of channel at or before given time, NaN if nothing that old is kept
+     */
+    public synchronized double getValueAt(int channel, long time) {
+        int index = upperBound(time) - 1;
+        double[] column = columns[channel];
+        if (index < 0 || column == null)
+            return Double.NaN;
+        return column[slotOf(index)];
+    }
+
+    /**
+     * Walks over kept values in place from older to newer
+     *
+     * @return number of values visited
+     */
+    public synchronized int forEach(int channel, long from, long to, SampleConsumer consumer) {
+        double[] column = columns[channel];
+        int start = lowerBound(from);
+        int end = upperBound(to);
+        for (int i = start; i < end; i++) {
+            int slot = slotOf(i);
+            consumer.accept(timestamps[slot], column == null ? Double.NaN : column[slot]);
+        }
+        return end - start;
+    }
+
+    /**
+     * @return count, min, max and mean of channel values within time range, NaN values are skipped
+     */
+    public synchronized Summary getSummary(int channel, long from, long to) {
+        double[] column = columns[channel];
+        int start = lowerBound(from);
+        int end = upperBound(to);
+        int count = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        double sum = 0;
+        for (int i = start; column != null && i < end; i++) {
+            double value = column[slotOf(i)];
+            if (Double.isNaN(value))
+                continue;
+            if (count == 0 || value < min)
+                min = value;
+            if (count == 0 || value > max)
+                max = value;
+            sum += value;
+            count++;
+        }
+        return new Summary(count, min, max, count == 0 ? Double.NaN : sum / count);
+    }
+
+    /**
+     * @return copy of channel values within time range
+     */
+    public synchronized double[] getValues(int channel, long from, long to) {
+        int start = lowerBound(from);
+        int end = upperBound(to);
+        double[] result = new double[end - start];
+        double[] column = columns[channel];
+        for (int i = start; i < end; i++)
+            result[i - start] = column == null ? Double.NaN : column[slotOf(i)];
+        return result;
+    }
+
+    /**
+     * @param index zero for oldest frame kept
+     */
+    private int slotOf(int index) {
+        long oldest = appended - getSize();
+        return (int) ((oldest + index) % capacity);
+    }
+
+    /**
+     * @return index of first kept frame with timestamp at or after given time, size if none
+     */
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = getSize();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[slotOf(middle)] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return index of first kept frame with timestamp after given time, size if none
+     */
+    private int upperBound(long time) {
+        return time == Long.MAX_VALUE ? getSize() : lowerBound(time + 1);
+    }
+
+    public interface SampleConsumer {
+        void accept(long timestamp, double value);
+    }
+
+    public static class Summary {
+        private final int count;
+        private final double min;
+        private final double max;
+        private final double mean;
+
+        public Summary(int count, double min, double max, double mean) {
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{" +
+                "count=" + count +
+                ", min=" + min +
+                ", max=" + max +
+                ", mean=" + mean +
+                '}';
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.rusefi.composite;
+
+import java.util.Arrays;
+
+/**
+ * Composite (tooth) logger events as parallel primitive arrays: one timestamp and one flags byte per event, bits as
+ * sent by the controller. Meant to be cleared and refilled so that steady state logging allocates nothing.
+ *
+ * @see CompositeParser
+ */
+public class CompositeEventBatch {
+    public static final int PRIMARY_TRIGGER = 1;
+    public static final int SECONDARY_TRIGGER = 1 << 1;
+    public static final int TRG = 1 << 2;
+    public static final int SYNC = 1 << 3;
+    public static final int COIL = 1 << 4;
+    public static final int INJECTOR = 1 << 5;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] timestamps;
+    private byte[] flags;
+    private int size;
+
+    public CompositeEventBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public CompositeEventBatch(int capacity) {
+        timestamps = new long[Math.max(capacity, 1)];
+        flags = new byte[timestamps.length];
+    }
+
+    public static int toFlags(boolean primaryTrigger, boolean secondaryTrigger, boolean trg, boolean sync, boolean coil, boolean injector) {
+        return (primaryTrigger ? PRIMARY_TRIGGER : 0)
+            | (secondaryTrigger ? SECONDARY_TRIGGER : 0)
+            | (trg ? TRG : 0)
+            | (sync ? SYNC : 0)
+            | (coil ? COIL : 0)
+            | (injector ? INJECTOR : 0);
+    }
+
+    public void add(long timestamp, int flags) {
+        ensureCapacity(size + 1);
+        timestamps[size] = timestamp;
+        this.flags[size] = (byte) flags;
+        size++;
+    }
+
+    public void add(long timestamp, boolean primaryTrigger, boolean secondaryTrigger, boolean trg, boolean sync, boolean coil, boolean injector) {
+        add(timestamp, toFlags(primaryTrigger, secondaryTrigger, trg, sync, coil, injector));
+    }
+
+    public void addAll(CompositeEventBatch other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+        System.arraycopy(other.flags, 0, flags, size, other.size);
+        size += other.size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[checkIndex(index)];
+    }
+
+    public int getFlags(int index) {
+        return flags[checkIndex(index)] & 0xFF;
+    }
+
+    public int isPrimaryTriggerAsInt(int index) {
+        return getBit(index, PRIMARY_TRIGGER);
+    }
+
+    public int isSecondaryTriggerAsInt(int index) {
+        return getBit(index, SECONDARY_TRIGGER);
+    }
+
+    public int isTrgAsInt(int index) {
+        return getBit(index, TRG);
+    }
+
+    public int isSyncAsInt(int index) {
+        return getBit(index, SYNC);
+    }
+
+    public int isCoil(int index) {
+        return getBit(index, COIL);
+    }
+
+    public int isInjector(int index) {
+        return getBit(index, INJECTOR);
+    }
+
+    private int getBit(int index, int mask) {
+        return (getFlags(index) & mask) != 0 ? 1 : 0;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        return index;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= timestamps.length)
+            return;
+        int newCapacity = Math.max(capacity, timestamps.length * 2);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        flags = Arrays.copyOf(flags, newCapacity);
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeEventBatch{size=" + size + '}';
+    }
+}
@@ -1,42 +1,29 @@
 package com.rusefi.composite;
 
-import com.devexperts.logging.Logging;
-import com.opensr5.ini.field.EnumIniField;
-import com.rusefi.config.generated.Fields;
 import com.rusefi.config.generated.Integration;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * Turns composite logger responses into {@link CompositeEventBatch}. Controller sends 32 bit microsecond timestamps,
+ * wrap around is tracked per instance so each connection needs its own parser.
+ */
 public class CompositeParser {
-    private static final Logging log = Logging.getLogging(CompositeParser.class);
-
-	private static long prevTime = 0;
-	private static long timeAdder = 0;
-
-    public static List<CompositeEvent> parse(byte[] response) {
-        ByteBuffer byteBuffer = ByteBuffer.wrap(response);
-        byteBuffer.order(ByteOrder.BIG_ENDIAN);
+    private long prevTime = 0;
+    private long timeAdder = 0;
+
+    /**
+     * @param events cleared and filled with events of this response
+     */
+    public void parse(byte[] response, CompositeEventBatch events) {
+        events.clear();
         int ptr = 1;
 
-        List<CompositeEvent> events = new ArrayList<>();
-
         while (ptr + Integration.COMPOSITE_PACKET_SIZE <= response.length) {
-
-            // Convert the int to a long since java can't do unsigned ints,
-            // so we have to use a long (but still only want 32 bits read)
-            long timestamp = Integer.toUnsignedLong (byteBuffer.getInt(ptr));
-            byte flags = byteBuffer.get(ptr + 4);
-//            log.debug(timestamp + " " + flags);
-
-            boolean primaryTrigger = EnumIniField.getBit(flags, 0);
-            boolean secondaryTrigger = EnumIniField.getBit(flags, 1);
-            boolean trg = EnumIniField.getBit(flags, 2);
-            boolean sync = EnumIniField.getBit(flags, 3);
-            boolean coil = EnumIniField.getBit(flags, 4);
-            boolean injector  = EnumIniField.getBit(flags, 5);
+            // unsigned big endian 32 bit
+            long timestamp = ((response[ptr] & 0xFFL) << 24)
+                | ((response[ptr + 1] & 0xFF) << 16)
+                | ((response[ptr + 2] & 0xFF) << 8)
+                | (response[ptr + 3] & 0xFF);
+            byte flags = response[ptr + 4];
 
             ptr += Integration.COMPOSITE_PACKET_SIZE;
 
@@ -48,10 +35,12 @@ public class CompositeParser {
 
             prevTime = timestamp;
 
-            long curTime = timeAdder + timestamp;
-
-            events.add(new CompositeEvent(curTime, primaryTrigger, secondaryTrigger, trg, sync, coil, injector));
+            events.add(timeAdder + timestamp, flags);
         }
-        return events;
+    }
+
+    public void reset() {
+        prevTime = 0;
+        timeAdder = 0;
     }
 }
@@ -0,0 +1,97 @@
+package com.rusefi.core;
+
+import com.devexperts.logging.Logging;
+
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.devexperts.logging.Logging.getLogging;
+
+/**
+ * Delivers {@link SensorSnapshot} to one {@link SensorCentral.FrameListener} on its own executor.
+ * <p>
+ * At most one delivery is queued at a time: if the listener is still busy when next frame is decoded the pending
+ * snapshot is replaced by the newer one, with changes of both, so that a slow consumer skips frames instead of
+ * stalling ECU polling or accumulating a backlog.
+ */
+public class FrameSubscription {
+    private static final Logging log = getLogging(FrameSubscription.class);
+
+    private final SensorCentral sensorCentral;
+    private final Set<Sensor> sensors;
+    /**
+     * null to get every frame
+     */
+    private final long[] mask;
+    private final Executor executor;
+    private final SensorCentral.FrameListener listener;
+    private final AtomicReference<SensorSnapshot> pending = new AtomicReference<>();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private volatile boolean isRemoved;
+
+    FrameSubscription(SensorCentral sensorCentral, Set<Sensor> sensors, Executor executor, SensorCentral.FrameListener listener) {
+        this.sensorCentral = sensorCentral;
+        this.sensors = sensors;
+        this.executor = executor;
+        this.listener = listener;
+        if (sensors == null) {
+            mask = null;
+        } else {
+            mask = SensorsHolder.createBitset();
+            for (Sensor sensor : sensors)
+                mask[sensor.ordinal() >>> 6] |= 1L << sensor.ordinal();
+        }
+    }
+
+    /**
+     * @return sensors of interest, null for whole frame
+     */
+    Set<Sensor> getSensors() {
+        return sensors;
+    }
+
+    /**
+     * Invoked on communication thread
+     */
+    void publish(SensorSnapshot snapshot) {
+        if (mask != null && !snapshot.isAnyChanged(mask))
+            return;
+        while (true) {
+            SensorSnapshot previous = pending.get();
+            SensorSnapshot next = previous == null ? snapshot : snapshot.withChangesOf(previous);
+            if (pending.compareAndSet(previous, next)) {
+                if (previous == null) {
+                    executor.execute(this::deliver);
+                } else {
+                    skippedFrames.incrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    private void deliver() {
+        SensorSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot == null || isRemoved)
+            return;
+        try {
+            listener.onFrame(snapshot);
+        } catch (Throwable e) {
+            log.error("Frame listener failed", e);
+        }
+    }
+
+    /**
+     * @return number of frames replaced by a newer frame before the listener got to them
+     */
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    public void remove() {
+        isRemoved = true;
+        sensorCentral.removeFrameSubscription(this);
+    }
+}
@@ -8,32 +8,44 @@ import static com.rusefi.core.FileUtil.littleEndianWrap;
 
 public interface ISensorHolder {
     default void grabSensorValues(byte[] response) {
-        for (Sensor sensor : Sensor.values()) {
+        for (Sensor sensor : SensorsHolder.SENSORS) {
             if (sensor.getType() == null) {
                 // for example ETB_CONTROL_QUALITY, weird use-case
                 continue;
             }
 
-            ByteBuffer bb = getByteBufferForSensor(response, sensor);
-
-            double rawValue = sensor.getValueForChannel(bb);
-            double scaledValue = rawValue * sensor.getScale();
-            setValue(scaledValue, sensor);
+            setValue(getSensorValue(response, sensor), sensor);
         }
     }
 
+    /**
+     * @return scaled value of given sensor, decoded in place without allocation at the same offset as
+     * {@link com.rusefi.config.DecodePlan} uses
+     */
+    static double getSensorValue(byte[] response, Sensor sensor) {
+        int offset = checkOffset(response, sensor.toString(), sensor.getField().getTotalOffset());
+        return sensor.getValueForChannel(response, offset) * sensor.getScale();
+    }
+
     @Deprecated
     static @NotNull ByteBuffer getByteBufferForSensor(byte[] response, Sensor sensor) {
         return getByteBuffer(response, sensor.toString(), sensor.getOffset());
     }
 
     static @NotNull ByteBuffer getByteBuffer(byte[] response, String message, int fieldOffset) {
+        return littleEndianWrap(response, checkOffset(response, message, fieldOffset), 4);
+    }
+
+    /**
+     * @return offset of four byte field within response
+     */
+    static int checkOffset(byte[] response, String message, int fieldOffset) {
         int offset = fieldOffset + 1; // first byte is response code
         int size = 4;
         if (offset + size > response.length) {
             throw new IllegalArgumentException(message + String.format(" but %d+%d in %d", offset, size, response.length));
         }
-        return littleEndianWrap(response, offset, size);
+        return offset;
     }
 
     double getValue(Sensor sensor);
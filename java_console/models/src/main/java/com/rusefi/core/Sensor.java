@@ -194,6 +194,8 @@ public enum Sensor implements BinaryLogEntry {
     private final double maxValue;
     @Nullable
     private final FieldType type;
+    @Nullable
+    private final Field field;
     private final int offset;
     private final double scale;
 
@@ -209,6 +211,7 @@ public enum Sensor implements BinaryLogEntry {
     Sensor(String name, SensorCategory category, FieldType type, Field field, double scale, double minValue, double maxValue, String units) {
         this.name = name == null ? name() : name;
         this.type = type;
+        this.field = field;
         this.offset = field.getTotalOffset();
         this.scale = scale;
         this.category = category;
@@ -243,6 +246,7 @@ public enum Sensor implements BinaryLogEntry {
         this.maxValue = maxValue;
         this.scale = 1.0;
         type = null;
+        field = null;
         offset = -1;
     }
 
@@ -282,23 +286,40 @@ public enum Sensor implements BinaryLogEntry {
     }
 
     public double getValueForChannel(ByteBuffer bb) {
+        return getValueForChannel(bb.getInt());
+    }
+
+    /**
+     * Same as {@link #getValueForChannel(ByteBuffer)} without a ByteBuffer wrapper
+     *
+     * @param offset of little-endian four byte value
+     */
+    public double getValueForChannel(byte[] response, int offset) {
+        int raw = (response[offset] & 0xFF)
+            | (response[offset + 1] & 0xFF) << 8
+            | (response[offset + 2] & 0xFF) << 16
+            | (response[offset + 3] & 0xFF) << 24;
+        return getValueForChannel(raw);
+    }
+
+    private double getValueForChannel(int raw) {
         switch (getType()) {
             case FLOAT:
-                return bb.getFloat();
+                return Float.intBitsToFloat(raw);
             case INT:
-                return bb.getInt();
+                return raw;
             case UINT16:
                 // no cast - we want to discard sign
-                return bb.getInt() & 0xFFFF;
+                return raw & 0xFFFF;
             case INT16:
                 // cast - we want to retain sign
-                return  (short)(bb.getInt() & 0xFFFF);
+                return  (short)(raw & 0xFFFF);
             case UINT8:
                 // no cast - discard sign
-                return bb.getInt() & 0xFF;
+                return raw & 0xFF;
             case INT8:
                 // cast - retain sign
-                return (byte)(bb.getInt() & 0xFF);
+                return (byte)(raw & 0xFF);
             default:
                 throw new UnsupportedOperationException("type " + getType());
         }
@@ -352,6 +373,14 @@ public enum Sensor implements BinaryLogEntry {
         return maxValue;
     }
 
+    /**
+     * @return generated output channel layout this sensor is decoded from, null for console only channels
+     */
+    @Nullable
+    public Field getField() {
+        return field;
+    }
+
     @Deprecated // this takes (wrong!) hard-coded offset, TODO migrate to IniModel approach!
     public int getOffset() {
         return offset;
@@ -391,6 +420,28 @@ public enum Sensor implements BinaryLogEntry {
         }
     }
 
+    @Override
+    public void writeToLog(ByteBuffer buffer, double value) {
+        switch (type) {
+            case INT8:
+            case UINT8:
+                buffer.put((byte) value);
+                return;
+            case FLOAT:
+                buffer.putFloat((float) value);
+                return;
+            case UINT16:
+            case INT16:
+                buffer.putShort((short) value);
+                return;
+            case INT:
+                buffer.putInt((int) value);
+                return;
+            default:
+                throw new UnsupportedOperationException("Type " + type);
+        }
+    }
+
     public String getLogValue(double value) {
         if (scale == 1 && type != null) {
             // only handle sensors without scale, i.e. not packed floats
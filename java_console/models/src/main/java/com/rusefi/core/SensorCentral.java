@@ -1,9 +1,15 @@
 package com.rusefi.core;
 
+import com.rusefi.TimeSeriesStore;
+
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 
 /**
  * This class keeps track of {@link Sensor} current values and {@link SensorCentral.SensorListener}
@@ -15,13 +21,24 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * @see SensorLog
  */
 public class SensorCentral implements ISensorCentral {
+    /**
+     * about three minutes at default polling rate
+     */
+    private static final int HISTORY_SIZE = Integer.getInteger("sensor_history_size", 8192);
     private static final SensorCentral INSTANCE = new SensorCentral();
 
     private final SensorsHolder sensorsHolder = new SensorsHolder();
+    private final TimeSeriesStore history = new TimeSeriesStore(SensorsHolder.getDecodedNames(), HISTORY_SIZE);
 
     private final Map<Sensor, List<SensorListener>> sensorListeners = new EnumMap<>(Sensor.class);
     private final List<ResponseListener> listeners = new CopyOnWriteArrayList<>();
-    private byte[] response;
+    private final Set<Object> fullResponseConsumers = new CopyOnWriteArraySet<>();
+    private final List<FrameSubscription> frameSubscriptions = new CopyOnWriteArrayList<>();
+    private final Set<Sensor> polledSensors = new CopyOnWriteArraySet<>();
+    /**
+     * Latest output channels response, never modified once received
+     */
+    private volatile byte[] response;
 
     public static SensorCentral getInstance() {
         return INSTANCE;
@@ -33,15 +50,38 @@ public class SensorCentral implements ISensorCentral {
     @Override
     public void grabSensorValues(byte[] response) {
         this.response = response;
-        ISensorCentral.super.grabSensorValues(response);
+        sensorsHolder.grabSensorValues(response);
+        for (Sensor sensor : SensorsHolder.SENSORS) {
+            if (sensor.getType() != null)
+                notifyListeners(sensor, sensorsHolder.getValue(sensor));
+        }
+        history.append(System.currentTimeMillis(), sensorsHolder.getDecoded());
+        if (!frameSubscriptions.isEmpty()) {
+            // after SensorListeners so that values derived by SensorStats are part of the same frame
+            SensorSnapshot snapshot = sensorsHolder.createSnapshot();
+            for (FrameSubscription subscription : frameSubscriptions)
+                subscription.publish(snapshot);
+        }
         for (ResponseListener listener : listeners)
             listener.onSensorUpdate();
     }
 
+    /**
+     * @return latest output channels response, should not be modified. Use {@link #getVersion()} to tell whether it
+     * is a new one.
+     */
     public byte[] getResponse() {
         return response;
     }
 
+    /**
+     * @return decoded output channels of each frame, one channel per {@link Sensor} which has a field, named by
+     * {@link Sensor#name()}. Sensors are kept once {@link TimeSeriesStore#track tracked}.
+     */
+    public TimeSeriesStore getHistory() {
+        return history;
+    }
+
     @Override
     public double getValue(Sensor sensor) {
         return sensorsHolder.getValue(sensor);
@@ -50,22 +90,109 @@ public class SensorCentral implements ISensorCentral {
     @Override
     public boolean setValue(double value, final Sensor sensor) {
         boolean isUpdated = sensorsHolder.setValue(value, sensor);
+        notifyListeners(sensor, value);
+        return isUpdated;
+    }
+
+    private void notifyListeners(Sensor sensor, double value) {
         List<SensorListener> listeners;
         synchronized (sensorListeners) {
             listeners = sensorListeners.get(sensor);
         }
 
         if (listeners == null)
-            return isUpdated;
+            return;
         for (SensorListener listener : listeners)
             listener.onSensorUpdate(value);
-        return isUpdated;
+    }
+
+    /**
+     * @return true if sensor value was changed by latest output channels frame
+     */
+    public boolean isChanged(Sensor sensor) {
+        return sensorsHolder.isChanged(sensor);
+    }
+
+    /**
+     * @return number of output channels frames decoded so far
+     */
+    public long getVersion() {
+        return sensorsHolder.getVersion();
     }
 
     public void addListener(ResponseListener listener) {
         listeners.add(listener);
     }
 
+    /**
+     * Subscribes to whole decoded frames. Unlike {@link SensorListener} which is invoked on communication thread for
+     * each sensor, listener is invoked on given executor once per frame and skips frames if it cannot keep up, so
+     * this is the way for Swing and other slow consumers.
+     *
+     * @param sensors  sensors of interest: frames without changes of these sensors are not delivered and only these
+     *                 sensors are polled if no one needs whole output channels block. null for every frame.
+     * @param executor for instance SwingUtilities::invokeLater
+     */
+    public FrameSubscription addFrameListener(Set<Sensor> sensors, Executor executor, FrameListener listener) {
+        FrameSubscription subscription = new FrameSubscription(this, sensors, executor, listener);
+        frameSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    void removeFrameSubscription(FrameSubscription subscription) {
+        frameSubscriptions.remove(subscription);
+    }
+
+    /**
+     * Consumers which look at complete output channels block and not just at individual {@link Sensor} values,
+     * for instance loggers or proxy clients. While there are none only ranges of subscribed sensors are polled.
+     */
+    public void addFullResponseConsumer(Object consumer) {
+        fullResponseConsumers.add(consumer);
+    }
+
+    public void removeFullResponseConsumer(Object consumer) {
+        fullResponseConsumers.remove(consumer);
+    }
+
+    public boolean isFullResponseNeeded() {
+        if (!listeners.isEmpty() || !fullResponseConsumers.isEmpty())
+            return true;
+        for (FrameSubscription subscription : frameSubscriptions) {
+            if (subscription.getSensors() == null)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Keeps sensor polled for code which reads {@link #getValue} at random moments without subscribing, without
+     * this such values are only refreshed by periodic complete polls.
+     */
+    public void addPolledSensor(Sensor sensor) {
+        polledSensors.add(sensor);
+    }
+
+    /**
+     * @return sensors with at least one {@link SensorListener} or frame subscription, plus polled sensors
+     * @see #addPolledSensor
+     */
+    public Set<Sensor> getSubscribedSensors() {
+        Set<Sensor> result = EnumSet.noneOf(Sensor.class);
+        synchronized (sensorListeners) {
+            for (Map.Entry<Sensor, List<SensorListener>> e : sensorListeners.entrySet()) {
+                if (!e.getValue().isEmpty())
+                    result.add(e.getKey());
+            }
+        }
+        for (FrameSubscription subscription : frameSubscriptions) {
+            if (subscription.getSensors() != null)
+                result.addAll(subscription.getSensors());
+        }
+        result.addAll(polledSensors);
+        return result;
+    }
+
     @Override
     public ListenerToken addListener(Sensor sensor, SensorListener listener) {
         List<SensorListener> listeners;
@@ -102,4 +229,8 @@ public class SensorCentral implements ISensorCentral {
     public interface ResponseListener {
         void onSensorUpdate();
     }
+
+    public interface FrameListener {
+        void onFrame(SensorSnapshot snapshot);
+    }
 }
@@ -0,0 +1,56 @@
+package com.rusefi.core;
+
+/**
+ * Immutable copy of all {@link Sensor} values as of one output channels frame together with the set of sensors
+ * changed since previous snapshot delivered to the same subscriber.
+ *
+ * @see SensorCentral#addFrameListener
+ */
+public class SensorSnapshot {
+    private final long version;
+    private final double[] values;
+    private final long[] changed;
+
+    SensorSnapshot(long version, double[] values, long[] changed) {
+        this.version = version;
+        this.values = values;
+        this.changed = changed;
+    }
+
+    /**
+     * @return number of frames decoded up to this one, a gap between consecutive snapshots means skipped frames
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public double getValue(Sensor sensor) {
+        return values[sensor.ordinal()];
+    }
+
+    public boolean isChanged(Sensor sensor) {
+        int index = sensor.ordinal();
+        return (changed[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @param mask bitset of sensor ordinals
+     */
+    boolean isAnyChanged(long[] mask) {
+        for (int i = 0; i < changed.length; i++) {
+            if ((changed[i] & mask[i]) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return this snapshot which also reports changes of an older snapshot which was never delivered
+     */
+    SensorSnapshot withChangesOf(SensorSnapshot older) {
+        long[] merged = changed.clone();
+        for (int i = 0; i < merged.length; i++)
+            merged[i] |= older.changed[i];
+        return new SensorSnapshot(version, values, merged);
+    }
+}
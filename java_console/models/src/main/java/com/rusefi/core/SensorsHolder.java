@@ -1,22 +1,135 @@
 package com.rusefi.core;
 
-import java.util.EnumMap;
-import java.util.Map;
+import com.rusefi.config.DecodePlan;
+import com.rusefi.config.Field;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Current {@link Sensor} values in a primitive array indexed by ordinal so that decoding an output channels frame
+ * does not box anything.
+ * <p>
+ * Sensors which got a new value during latest frame are tracked in a bitset, each decoded frame increments
+ * {@link #getVersion()} so that readers could tell whether anything happened since they looked last time.
+ */
 public class SensorsHolder implements ISensorHolder {
-    private final Map<Sensor, Double> values = new EnumMap<>(Sensor.class);
+    /**
+     * {@link Sensor#values()} clones the array on each invocation
+     */
+    static final Sensor[] SENSORS = Sensor.values();
+    /**
+     * sensors which come from output channels block, in {@link #DECODE_PLAN} order
+     */
+    private static final Sensor[] DECODED_SENSORS;
+    /**
+     * same type, offset and scale as {@link ISensorHolder#getSensorValue}
+     */
+    private static final DecodePlan DECODE_PLAN;
+
+    static {
+        List<Sensor> sensors = new ArrayList<>();
+        List<Field> fields = new ArrayList<>();
+        for (Sensor sensor : SENSORS) {
+            Field field = sensor.getField();
+            if (field == null || sensor.getType() == null)
+                continue;
+            sensors.add(sensor);
+            fields.add(Field.create(sensor.name(), field.getTotalOffset(), sensor.getType()).setScale(sensor.getScale()));
+        }
+        DECODED_SENSORS = sensors.toArray(new Sensor[0]);
+        DECODE_PLAN = DecodePlan.compile(fields.toArray(new Field[0]));
+    }
+
+    private final double[] values = new double[SENSORS.length];
+    private final long[] assigned = createBitset();
+    private final long[] changed = createBitset();
+    private final AtomicLong version = new AtomicLong();
+    /**
+     * decode buffer, frames are decoded one at a time
+     */
+    private final double[] decoded = new double[DECODE_PLAN.size()];
+
+    public SensorsHolder() {
+        Arrays.fill(values, Double.NaN);
+    }
+
+    /**
+     * @return empty bitset with a bit for each sensor ordinal
+     */
+    static long[] createBitset() {
+        return new long[(SENSORS.length + Long.SIZE - 1) / Long.SIZE];
+    }
 
     public double getValue(Sensor sensor) {
-        Double value = values.get(sensor);
-        if (value == null)
-            return Double.NaN;
-        return value;
+        return values[sensor.ordinal()];
     }
 
     public boolean setValue(double value, final Sensor sensor) {
-        Double oldValue = values.get(sensor);
-        boolean isUpdated = oldValue == null || !oldValue.equals(value);
-        values.put(sensor, value);
+        int index = sensor.ordinal();
+        long mask = 1L << index;
+        int word = index >>> 6;
+        // same as Double#equals: NaN is equal to NaN, 0.0 is not equal to -0.0
+        boolean isUpdated = (assigned[word] & mask) == 0
+            || Double.doubleToLongBits(values[index]) != Double.doubleToLongBits(value);
+        values[index] = value;
+        assigned[word] |= mask;
+        if (isUpdated)
+            changed[word] |= mask;
         return isUpdated;
     }
+
+    /**
+     * Decodes all sensors from output channels response as one frame
+     */
+    @Override
+    public synchronized void grabSensorValues(byte[] response) {
+        Arrays.fill(changed, 0);
+        // response code goes first
+        DECODE_PLAN.decode(response, 1, decoded);
+        for (int i = 0; i < DECODED_SENSORS.length; i++)
+            setValue(decoded[i], DECODED_SENSORS[i]);
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return true if sensor value was changed by latest frame
+     */
+    public boolean isChanged(Sensor sensor) {
+        int index = sensor.ordinal();
+        return (changed[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return number of frames decoded so far
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return names of sensors decoded from output channels block in {@link #getDecoded()} order
+     */
+    static String[] getDecodedNames() {
+        String[] names = new String[DECODED_SENSORS.length];
+        for (int i = 0; i < names.length; i++)
+            names[i] = DECODE_PLAN.getField(i).getName();
+        return names;
+    }
+
+    /**
+     * @return values of latest frame as decoded by plan, not a copy
+     */
+    double[] getDecoded() {
+        return decoded;
+    }
+
+    /**
+     * @return copy of current values and of latest frame changes
+     */
+    public SensorSnapshot createSnapshot() {
+        return new SensorSnapshot(version.get(), values.clone(), changed.clone());
+    }
 }
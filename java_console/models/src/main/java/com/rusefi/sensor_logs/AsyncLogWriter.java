@@ -0,0 +1,281 @@
+package com.rusefi.sensor_logs;
+
+import com.devexperts.logging.Logging;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.devexperts.logging.Logging.getLogging;
+
+/**
+ * Moves log file writes off the caller's thread: records are encoded straight into one of a few preallocated direct
+ * buffers and complete buffers are handed to a dedicated writer thread.
+ * <p>
+ * A buffer is handed over once it cannot take another record. Writer thread takes a buffer which is older than
+ * {@link #FLUSH_PERIOD_MS} by itself, so the file catches up even if records stop coming. If the disk cannot keep up
+ * and all buffers are waiting to be written, new records are dropped and counted instead of blocking the caller.
+ * <p>
+ * Once the file could not be opened or written {@link #beginRecord} fails with the reason.
+ * <p>
+ * Records are supposed to come from one thread at a time.
+ */
+public class AsyncLogWriter implements Closeable {
+    private static final Logging log = getLogging(AsyncLogWriter.class);
+
+    private static final int CHUNK_SIZE = Integer.getInteger("log_writer_chunk_size", 64 * 1024);
+    private static final int CHUNK_COUNT = Integer.getInteger("log_writer_chunk_count", 8);
+    static final long FLUSH_PERIOD_MS = Integer.getInteger("log_writer_flush_period", 1000);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final String fileName;
+    private final byte[] header;
+    private final Output output;
+    private final ChunkQueue fullChunks = new ChunkQueue(CHUNK_COUNT);
+    private final ChunkQueue freeChunks = new ChunkQueue(CHUNK_COUNT);
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean isClosing;
+    /**
+     * first error of writer thread, nothing is written after it
+     */
+    private volatile IOException failure;
+    /**
+     * partially filled buffer between records, producer takes it for the duration of a record and writer thread
+     * takes it once it is stale
+     */
+    private final AtomicReference<ByteBuffer> current = new AtomicReference<>();
+    private volatile long currentSince;
+    /**
+     * owned by the producer between {@link #beginRecord} and {@link #endRecord}
+     */
+    private ByteBuffer recording;
+
+    /**
+     * @param header written before any record
+     */
+    public AsyncLogWriter(String fileName, byte[] header) {
+        this(fileName, header, () -> new FileOutputStream(fileName).getChannel());
+    }
+
+    /**
+     * @param output opened on writer thread
+     */
+    public AsyncLogWriter(String fileName, byte[] header, Output output) {
+        this.fileName = fileName;
+        this.header = header;
+        this.output = output;
+        for (int i = 0; i < CHUNK_COUNT; i++)
+            freeChunks.offer(ByteBuffer.allocateDirect(CHUNK_SIZE));
+        thread = new Thread(this::run, "AsyncLogWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param maxSize longest record which could be written
+     * @return buffer to put one record into followed by {@link #endRecord()}, null if the record has to be dropped
+     * @throws IOException if writer thread could not open or write the file
+     */
+    public ByteBuffer beginRecord(int maxSize) throws IOException {
+        if (maxSize > CHUNK_SIZE)
+            throw new IllegalArgumentException("Record " + maxSize + " does not fit into " + CHUNK_SIZE);
+        if (isClosing)
+            throw new IllegalStateException("Closed " + fileName);
+        IOException failure = this.failure;
+        if (failure != null)
+            throw new IOException("Error writing " + fileName, failure);
+        ByteBuffer chunk = current.getAndSet(null);
+        if (chunk != null && chunk.remaining() < maxSize) {
+            handOver(chunk);
+            chunk = null;
+        }
+        if (chunk == null) {
+            chunk = freeChunks.poll();
+            if (chunk == null) {
+                droppedRecords.incrementAndGet();
+                return null;
+            }
+            currentSince = System.currentTimeMillis();
+        }
+        recording = chunk;
+        return chunk;
+    }
+
+    public void endRecord() {
+        if (System.currentTimeMillis() - currentSince >= FLUSH_PERIOD_MS) {
+            handOver(recording);
+        } else {
+            current.set(recording);
+        }
+        recording = null;
+    }
+
+    private void handOver(ByteBuffer chunk) {
+        // there are as many slots as buffers so this never fails
+        fullChunks.offer(chunk);
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        WritableByteChannel channel = null;
+        try {
+            channel = output.open();
+            write(channel, ByteBuffer.wrap(header));
+        } catch (IOException e) {
+            log.error("Error opening " + fileName, e);
+            failure = e;
+            channel = close(channel);
+        }
+        while (true) {
+            // read flag before polling so that the chunk handed over by close() is not missed
+            boolean isLast = isClosing;
+            ByteBuffer chunk = fullChunks.poll();
+            if (chunk == null) {
+                if (isLast)
+                    break;
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                channel = writeStale(channel);
+                continue;
+            }
+            channel = writeChunk(channel, chunk);
+        }
+        close(channel);
+    }
+
+    /**
+     * Takes partially filled buffer once it is older than {@link #FLUSH_PERIOD_MS} and no records are coming
+     */
+    private WritableByteChannel writeStale(WritableByteChannel channel) {
+        if (System.currentTimeMillis() - currentSince < FLUSH_PERIOD_MS)
+            return channel;
+        ByteBuffer stale = current.getAndSet(null);
+        if (stale == null)
+            return channel;
+        // buffers handed over before this one was taken are older
+        ByteBuffer older;
+        while ((older = fullChunks.poll()) != null)
+            channel = writeChunk(channel, older);
+        return writeChunk(channel, stale);
+    }
+
+    /**
+     * @return channel to keep writing to, null once it failed
+     */
+    private WritableByteChannel writeChunk(WritableByteChannel channel, ByteBuffer chunk) {
+        chunk.flip();
+        if (channel != null) {
+            try {
+                write(channel, chunk);
+            } catch (IOException e) {
+                log.error("Error writing " + fileName, e);
+                failure = e;
+                channel = close(channel);
+            }
+        }
+        chunk.clear();
+        freeChunks.offer(chunk);
+        return channel;
+    }
+
+    private void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        int size = buffer.remaining();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        writtenBytes.addAndGet(size);
+    }
+
+    private static WritableByteChannel close(WritableByteChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Error closing", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes everything accepted so far and closes the file
+     */
+    @Override
+    public void close() {
+        if (isClosing)
+            return;
+        ByteBuffer chunk = current.getAndSet(null);
+        if (chunk != null)
+            handOver(chunk);
+        isClosing = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (droppedRecords.get() > 0)
+            log.info(fileName + ": dropped " + droppedRecords.get() + " record(s)");
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return number of records dropped because writer thread was behind
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    /**
+     * @return number of bytes which reached the file including header
+     */
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    public interface Output {
+        WritableByteChannel open() throws IOException;
+    }
+
+    /**
+     * Bounded single producer single consumer queue
+     */
+    private static class ChunkQueue {
+        private final ByteBuffer[] slots;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        ChunkQueue(int capacity) {
+            slots = new ByteBuffer[capacity];
+        }
+
+        boolean offer(ByteBuffer chunk) {
+            long t = tail.get();
+            if (t - head.get() == slots.length)
+                return false;
+            slots[(int) (t % slots.length)] = chunk;
+            tail.lazySet(t + 1);
+            return true;
+        }
+
+        ByteBuffer poll() {
+            long h = head.get();
+            if (h == tail.get())
+                return null;
+            int index = (int) (h % slots.length);
+            ByteBuffer chunk = slots[index];
+            slots[index] = null;
+            head.lazySet(h + 1);
+            return chunk;
+        }
+    }
+}
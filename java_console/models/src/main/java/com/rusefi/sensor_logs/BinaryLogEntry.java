@@ -2,8 +2,10 @@ package com.rusefi.sensor_logs;
 
 import com.rusefi.core.SensorCategory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface BinaryLogEntry {
     String getName();
@@ -16,4 +18,17 @@ public interface BinaryLogEntry {
     int getByteSize();
 
     void writeToLog(DataOutputStream dos, double value) throws IOException;
+
+    /**
+     * Same bytes as {@link #writeToLog(DataOutputStream, double)}, big-endian buffer expected
+     */
+    default void writeToLog(ByteBuffer buffer, double value) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            writeToLog(new DataOutputStream(baos), value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        buffer.put(baos.toByteArray());
+    }
 }
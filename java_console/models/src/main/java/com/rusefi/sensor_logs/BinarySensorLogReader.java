@@ -0,0 +1,414 @@
+package com.rusefi.sensor_logs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.rusefi.config.generated.VariableRegistryValues.GAUGE_NAME_TIME;
+
+/**
+ * Read-only view of MLV .mlg binary log file as written by BinarySensorLog, see mlq_file_format.txt
+ * <p>
+ * The file is memory mapped and only headers are parsed on open, values are decoded straight from the mapping on
+ * request. A sparse index over the "Time" column (every {@link #INDEX_STEP}th record) is built on open so that seeking
+ * to a point in time touches a handful of pages no matter how long the log is.
+ * <p>
+ * Record length from file header is not trusted: it is computed from field types. A partially written last record is
+ * ignored. Instances are safe to use from many threads.
+ */
+public class BinarySensorLogReader {
+    public static final String MAGIC = "MLVLG\0";
+    static final int INDEX_STEP = Integer.getInteger("mlg_index_step", 256);
+
+    private static final int NAME_LENGTH = 34;
+    private static final int UNIT_LENGTH = 11;
+    private static final int CATEGORY_LENGTH = 34;
+    /**
+     * block type, counter and timestamp
+     */
+    private static final int RECORD_PREFIX_SIZE = 4;
+    private static final int BLOCK_TYPE_FIELDS = 0;
+
+    private final String fileName;
+    private final ByteBuffer data;
+    private final int version;
+    private final long unixTimestamp;
+    private final List<LogField> fields;
+    private final String headerText;
+    private final int dataStart;
+    private final int recordSize;
+    private final int recordCount;
+    /**
+     * -1 if there is no time column
+     */
+    private final int timeField;
+    /**
+     * value of time column at record N * INDEX_STEP
+     */
+    private final double[] timeIndex;
+
+    private BinarySensorLogReader(String fileName, ByteBuffer data) throws IOException {
+        this.fileName = fileName;
+        this.data = data;
+        for (int i = 0; i < MAGIC.length(); i++) {
+            if (data.limit() <= i || data.get(i) != MAGIC.charAt(i))
+                throw new IOException(fileName + ": not a MLG file");
+        }
+        version = data.getShort(0x06);
+        unixTimestamp = data.getInt(0x08) & 0xFFFFFFFFL;
+        int infoStart = data.getInt(0x0C);
+        int dataBegin = data.getInt(0x10);
+        int fieldCount = data.getShort(0x16) & 0xFFFF;
+
+        int headerSize = 0x18 + fieldCount * LogField.HEADER_SIZE;
+        if (headerSize > data.limit())
+            throw new IOException(fileName + ": truncated header");
+        List<LogField> fields = new ArrayList<>(fieldCount);
+        int offset = RECORD_PREFIX_SIZE;
+        for (int i = 0; i < fieldCount; i++) {
+            LogField field = new LogField(i, data, 0x18 + i * LogField.HEADER_SIZE, offset);
+            fields.add(field);
+            offset += field.getSize();
+        }
+        this.fields = Collections.unmodifiableList(fields);
+        recordSize = offset + 1;
+
+        if (dataBegin == infoStart) {
+            // older consoles pointed data begin at header text, records start right after text
+            while (dataBegin < data.limit() && data.get(dataBegin) != BLOCK_TYPE_FIELDS)
+                dataBegin++;
+        }
+        if (infoStart < 0 || dataBegin < infoStart || dataBegin > data.limit())
+            throw new IOException(fileName + ": unexpected data begin " + dataBegin);
+        headerText = readString(data, infoStart, dataBegin - infoStart);
+        dataStart = dataBegin;
+        recordCount = (data.limit() - dataStart) / recordSize;
+
+        timeField = indexOf(GAUGE_NAME_TIME);
+        timeIndex = new double[timeField == -1 ? 0 : (recordCount + INDEX_STEP - 1) / INDEX_STEP];
+        for (int i = 0; i < timeIndex.length; i++) {
+            int record = i * INDEX_STEP;
+            if (data.get(getRecordOffset(record)) != BLOCK_TYPE_FIELDS)
+                throw new IOException(fileName + ": unsupported block at record " + record);
+            timeIndex[i] = getValue(record, timeField);
+        }
+    }
+
+    @NotNull
+    public static BinarySensorLogReader open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(file + ": files over 2GB are not supported");
+            // mapping stays valid after channel is closed
+            return new BinarySensorLogReader(file.getPath(), channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * @param data whole file or just headers
+     */
+    @NotNull
+    static BinarySensorLogReader wrap(String fileName, ByteBuffer data) throws IOException {
+        return new BinarySensorLogReader(fileName, data);
+    }
+
+    private static String readString(ByteBuffer data, int offset, int length) {
+        byte[] bytes = new byte[length];
+        int size = 0;
+        while (size < length && data.get(offset + size) != 0) {
+            bytes[size] = data.get(offset + size);
+            size++;
+        }
+        return new String(bytes, 0, size, StandardCharsets.ISO_8859_1);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return capture time from file header, seconds since epoch
+     */
+    public long getUnixTimestamp() {
+        return unixTimestamp;
+    }
+
+    public String getHeaderText() {
+        return headerText;
+    }
+
+    public List<LogField> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return index of field with given name ignoring case, -1 if none
+     */
+    public int indexOf(String name) {
+        for (LogField field : fields) {
+            if (field.getName().equalsIgnoreCase(name))
+                return field.getIndex();
+        }
+        return -1;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * @return file offset of first record
+     */
+    public int getDataStart() {
+        return dataStart;
+    }
+
+    private int getRecordOffset(int record) {
+        return dataStart + record * recordSize;
+    }
+
+    /**
+     * @return rolling record counter as written by the logger
+     */
+    public int getCounter(int record) {
+        return data.get(getRecordOffset(record) + 1) & 0xFF;
+    }
+
+    public double getValue(int record, int field) {
+        return fields.get(field).getValue(data, getRecordOffset(record));
+    }
+
+    /**
+     * @return true if stored checksum matches packed fields data
+     */
+    public boolean isChecksumValid(int record) {
+        int offset = getRecordOffset(record);
+        byte checkSum = 0;
+        for (int i = RECORD_PREFIX_SIZE; i < recordSize - 1; i++)
+            checkSum += data.get(offset + i);
+        return checkSum == data.get(offset + recordSize - 1);
+    }
+
+    /**
+     * Walks over values of one field straight from the mapped file
+     *
+     * @param to exclusive
+     */
+    public void forEach(int field, int from, int to, ValueConsumer consumer) {
+        LogField logField = fields.get(field);
+        for (int record = from; record < to; record++)
+            consumer.accept(record, logField.getValue(data, getRecordOffset(record)));
+    }
+
+    public boolean hasTime() {
+        return timeField != -1;
+    }
+
+    /**
+     * @return value of "Time" column, NaN if there is no such column
+     */
+    public double getTime(int record) {
+        return timeField == -1 ? Double.NaN : getValue(record, timeField);
+    }
+
+    /**
+     * @return value of "Time" column of record stored elsewhere, NaN if there is no such column
+     */
+    double getTime(ByteBuffer records, int recordOffset) {
+        return timeField == -1 ? Double.NaN : fields.get(timeField).getValue(records, recordOffset);
+    }
+
+    /**
+     * Time is expected to be non-decreasing
+     *
+     * @return last record with time at or before given time, zero if all records are later
+     */
+    public int findRecord(double time) {
+        if (timeField == -1)
+            throw new IllegalStateException(fileName + ": no " + GAUGE_NAME_TIME + " column");
+        if (recordCount == 0)
+            throw new IllegalStateException(fileName + ": no records");
+        // last index block starting at or before time
+        int low = 0;
+        int high = timeIndex.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (timeIndex[middle] <= time) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        // same within block
+        low = low * INDEX_STEP;
+        high = Math.min(low + INDEX_STEP, recordCount) - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (getTime(middle) <= time) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "BinarySensorLogReader{" +
+            "fileName='" + fileName + '\'' +
+            ", fields=" + fields.size() +
+            ", records=" + recordCount +
+            '}';
+    }
+
+    public interface ValueConsumer {
+        void accept(int record, double value);
+    }
+
+    public static class LogField {
+        static final int HEADER_SIZE = 89;
+
+        private final int index;
+        private final int type;
+        private final String name;
+        private final String unit;
+        private final float scale;
+        private final float shift;
+        private final int precision;
+        private final String category;
+        /**
+         * offset within record
+         */
+        private final int offset;
+
+        LogField(int index, ByteBuffer data, int headerOffset, int offset) throws IOException {
+            this.index = index;
+            this.offset = offset;
+            type = data.get(headerOffset);
+            name = readString(data, headerOffset + 0x01, NAME_LENGTH);
+            unit = readString(data, headerOffset + 0x23, UNIT_LENGTH);
+            scale = data.getFloat(headerOffset + 0x2E);
+            shift = data.getFloat(headerOffset + 0x32);
+            precision = data.get(headerOffset + 0x36);
+            category = readString(data, headerOffset + 0x37, CATEGORY_LENGTH);
+            if (getStorageSize(type) == -1)
+                throw new IOException("Field " + name + ": unsupported type " + type);
+        }
+
+        /**
+         * @return number of bytes of given MLG type code, -1 if unknown
+         */
+        public static int getStorageSize(int type) {
+            switch (type) {
+                case 0:
+                case 1:
+                    return 1;
+                case 2:
+                case 3:
+                    return 2;
+                case 4:
+                case 5:
+                case 7:
+                    return 4;
+                default:
+                    return -1;
+            }
+        }
+
+        double getValue(ByteBuffer data, int recordOffset) {
+            int position = recordOffset + offset;
+            double raw;
+            switch (type) {
+                case 0:
+                    raw = data.get(position) & 0xFF;
+                    break;
+                case 1:
+                    raw = data.get(position);
+                    break;
+                case 2:
+                    raw = data.getShort(position) & 0xFFFF;
+                    break;
+                case 3:
+                    raw = data.getShort(position);
+                    break;
+                case 4:
+                    raw = data.getInt(position) & 0xFFFFFFFFL;
+                    break;
+                case 5:
+                    raw = data.getInt(position);
+                    break;
+                default:
+                    raw = data.getFloat(position);
+                    break;
+            }
+            return (raw + shift) * scale;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return MLG type code, see {@link #getStorageSize(int)}
+         */
+        public int getType() {
+            return type;
+        }
+
+        public int getSize() {
+            return getStorageSize(type);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public float getScale() {
+            return scale;
+        }
+
+        public float getShift() {
+            return shift;
+        }
+
+        public int getPrecision() {
+            return precision;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        @Override
+        public String toString() {
+            return "LogField{" +
+                "name='" + name + '\'' +
+                ", type=" + type +
+                ", unit='" + unit + '\'' +
+                '}';
+        }
+    }
+}
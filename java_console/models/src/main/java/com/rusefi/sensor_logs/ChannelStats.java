@@ -0,0 +1,158 @@
+package com.rusefi.sensor_logs;
+
+/**
+ * Mergeable summary of one channel over one or many logs: count, min, max, mean, approximate percentiles and time
+ * spent above threshold.
+ * <p>
+ * Percentiles come from a log-linear histogram with 64 buckets per power of two, which is within 1.6% of the exact
+ * value for magnitudes between 2^-16 and 2^32, so that fleet-wide numbers do not require keeping every value.
+ */
+public class ChannelStats {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int MIN_EXPONENT = -16;
+    private static final int MAX_EXPONENT = 31;
+    private static final int BUCKETS_PER_SIGN = (MAX_EXPONENT - MIN_EXPONENT + 1) << SUB_BUCKET_BITS;
+    /**
+     * zero and magnitudes below 2^MIN_EXPONENT
+     */
+    private static final int ZERO_BUCKET = BUCKETS_PER_SIGN;
+
+    private final String name;
+    private final double threshold;
+    private final long[] histogram = new long[2 * BUCKETS_PER_SIGN + 1];
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double sum;
+    private double timeAbove;
+
+    /**
+     * @param threshold for {@link #getTimeAbove()}, NaN if not needed
+     */
+    public ChannelStats(String name, double threshold) {
+        this.name = name;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param duration seconds this value lasted
+     */
+    public void add(double value, double duration) {
+        if (Double.isNaN(value))
+            return;
+        if (count == 0 || value < min)
+            min = value;
+        if (count == 0 || value > max)
+            max = value;
+        count++;
+        sum += value;
+        histogram[getBucket(value)]++;
+        if (value > threshold)
+            timeAbove += duration;
+    }
+
+    public void merge(ChannelStats other) {
+        if (other.count == 0)
+            return;
+        if (count == 0 || other.min < min)
+            min = other.min;
+        if (count == 0 || other.max > max)
+            max = other.max;
+        count += other.count;
+        sum += other.sum;
+        timeAbove += other.timeAbove;
+        for (int i = 0; i < histogram.length; i++)
+            histogram[i] += other.histogram[i];
+    }
+
+    private static int getBucket(double value) {
+        double magnitude = Math.abs(value);
+        int exponent = Math.getExponent(magnitude);
+        if (exponent < MIN_EXPONENT)
+            return ZERO_BUCKET;
+        int index;
+        if (exponent > MAX_EXPONENT) {
+            index = BUCKETS_PER_SIGN - 1;
+        } else {
+            int subBucket = (int) (Double.doubleToRawLongBits(magnitude) >>> (52 - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+            index = (exponent - MIN_EXPONENT) << SUB_BUCKET_BITS | subBucket;
+        }
+        return value > 0 ? ZERO_BUCKET + 1 + index : ZERO_BUCKET - 1 - index;
+    }
+
+    /**
+     * @return middle of bucket
+     */
+    private static double getBucketValue(int bucket) {
+        if (bucket == ZERO_BUCKET)
+            return 0;
+        int index = bucket > ZERO_BUCKET ? bucket - ZERO_BUCKET - 1 : ZERO_BUCKET - 1 - bucket;
+        int exponent = (index >> SUB_BUCKET_BITS) + MIN_EXPONENT;
+        int subBucket = index & ((1 << SUB_BUCKET_BITS) - 1);
+        double magnitude = Math.scalb(1 + (subBucket + 0.5) / (1 << SUB_BUCKET_BITS), exponent);
+        return bucket > ZERO_BUCKET ? magnitude : -magnitude;
+    }
+
+    /**
+     * @param percent 0 to 100
+     * @return approximate value below which given percent of values fall, NaN if there are no values
+     */
+    public double getPercentile(double percent) {
+        if (count == 0)
+            return Double.NaN;
+        if (percent <= 0)
+            return min;
+        if (percent >= 100)
+            return max;
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank)
+                return Math.min(max, Math.max(min, getBucketValue(i)));
+        }
+        return max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return seconds spent above threshold
+     */
+    public double getTimeAbove() {
+        return timeAbove;
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelStats{" +
+            "name='" + name + '\'' +
+            ", count=" + count +
+            ", min=" + min +
+            ", max=" + max +
+            ", mean=" + getMean() +
+            '}';
+    }
+}
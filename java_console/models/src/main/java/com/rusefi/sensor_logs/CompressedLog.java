@@ -0,0 +1,321 @@
+package com.rusefi.sensor_logs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * .mlgz container: classic MLG header followed by independently compressed blocks of records and a trailing block index
+ * <pre>
+ * "MLGZ" version:u16 mlgHeaderLength:u32 mlgHeader
+ * block* : "BLK1" recordCount:u32 compressedLength:u32 crc32:u32 payload
+ * index  : "IDX1" blockCount:u32 (offset:u64 firstRecord:u64 recordCount:u32 firstTime:f64 lastTime:f64)*
+ * footer : indexOffset:u64 "END1"
+ * </pre>
+ * Block payload is records transposed into byte columns, each column delta-encoded and the whole thing deflated, so
+ * that slowly changing channels shrink to almost nothing.
+ * <p>
+ * Index is only written on close. If it is missing or damaged, for instance after power loss, blocks are found by
+ * walking the file and everything after the last intact block is ignored.
+ */
+public class CompressedLog {
+    public static final String SUFFIX = ".mlgz";
+
+    static final int FILE_MAGIC = 0x4D4C475A; // MLGZ
+    static final int BLOCK_MAGIC = 0x424C4B31; // BLK1
+    static final int INDEX_MAGIC = 0x49445831; // IDX1
+    static final int FOOTER_MAGIC = 0x454E4431; // END1
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 10;
+    static final int BLOCK_HEADER_SIZE = 16;
+    static final int INDEX_ENTRY_SIZE = 36;
+    static final int FOOTER_SIZE = 12;
+    /**
+     * classic header up to field headers
+     */
+    private static final int MLG_FIXED_HEADER_SIZE = 0x18;
+    /**
+     * covers header text of older consoles
+     */
+    private static final int LAYOUT_READ_AHEAD = 64 * 1024;
+
+    private CompressedLog() {
+    }
+
+    /**
+     * Streams classic .mlg file into .mlgz file. Source is read with plain reads and never mapped so that it could be
+     * deleted right after, mapping would keep the file locked on Windows until garbage collected.
+     */
+    public static void compress(File mlg, File out) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(mlg, "r")) {
+            FileChannel channel = in.getChannel();
+            BinarySensorLogReader layout = readLayout(mlg.getPath(), channel);
+            int recordSize = layout.getRecordSize();
+            byte[] header = read(channel, 0, layout.getDataStart()).array();
+            // incomplete trailing record is dropped
+            long end = header.length + (channel.size() - header.length) / recordSize * recordSize;
+            try (CompressedLogWriter writer = CompressedLogWriter.create(out, header)) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                long position = header.length;
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = channel.read(buffer, position);
+                    if (read <= 0)
+                        throw new EOFException(mlg.getPath());
+                    position += read;
+                    buffer.flip();
+                    writer.write(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return reader of header and whatever records follow it within {@link #LAYOUT_READ_AHEAD}
+     */
+    private static BinarySensorLogReader readLayout(String fileName, FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < MLG_FIXED_HEADER_SIZE)
+            throw new IOException(fileName + ": not a MLG file");
+        ByteBuffer fixed = read(channel, 0, MLG_FIXED_HEADER_SIZE);
+        int dataBegin = fixed.getInt(0x10);
+        int fieldCount = fixed.getShort(0x16) & 0xFFFF;
+        // older consoles did not write data begin, records are found after header text
+        long headerSize = Math.max(dataBegin, MLG_FIXED_HEADER_SIZE + fieldCount * BinarySensorLogReader.LogField.HEADER_SIZE);
+        return BinarySensorLogReader.wrap(fileName, read(channel, 0, (int) Math.min(size, headerSize + LAYOUT_READ_AHEAD)));
+    }
+
+    /**
+     * Streams .mlgz file into classic .mlg file which existing viewers understand
+     */
+    public static void decompress(File in, File mlg) throws IOException {
+        try (CompressedLogReader reader = CompressedLogReader.open(in);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(mlg))) {
+            reader.writeMlg(out);
+        }
+    }
+
+    /**
+     * Transposes records into byte columns and replaces each byte with difference from previous one in same column
+     */
+    static void encode(byte[] records, int recordSize, int recordCount, byte[] destination) {
+        for (int column = 0; column < recordSize; column++) {
+            byte previous = 0;
+            int target = column * recordCount;
+            for (int record = 0; record < recordCount; record++) {
+                byte value = records[record * recordSize + column];
+                destination[target + record] = (byte) (value - previous);
+                previous = value;
+            }
+        }
+    }
+
+    static void decode(byte[] encoded, int recordSize, int recordCount, byte[] records) {
+        for (int column = 0; column < recordSize; column++) {
+            byte value = 0;
+            int source = column * recordCount;
+            for (int record = 0; record < recordCount; record++) {
+                value += encoded[source + record];
+                records[record * recordSize + column] = value;
+            }
+        }
+    }
+
+    static int crc(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    static void inflate(Inflater inflater, byte[] data, int length, byte[] destination, int expected) throws IOException {
+        inflater.reset();
+        inflater.setInput(data, 0, length);
+        try {
+            int size = inflater.inflate(destination, 0, expected);
+            if (size != expected || !inflater.finished())
+                throw new IOException("Block size mismatch " + size + " vs " + expected);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Header, block index and where valid data ends
+     */
+    static class Structure {
+        final byte[] mlgHeader;
+        final BinarySensorLogReader layout;
+        final List<BlockInfo> blocks;
+        /**
+         * end of last intact block
+         */
+        final long dataEnd;
+        /**
+         * true if index had to be rebuilt by walking the blocks
+         */
+        final boolean recovered;
+
+        private Structure(byte[] mlgHeader, BinarySensorLogReader layout, List<BlockInfo> blocks, long dataEnd, boolean recovered) {
+            this.mlgHeader = mlgHeader;
+            this.layout = layout;
+            this.blocks = blocks;
+            this.dataEnd = dataEnd;
+            this.recovered = recovered;
+        }
+    }
+
+    @NotNull
+    static Structure readStructure(String fileName, FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer fileHeader = read(channel, 0, FILE_HEADER_SIZE);
+        if (fileHeader.getInt() != FILE_MAGIC)
+            throw new IOException(fileName + ": not a " + SUFFIX + " file");
+        int version = fileHeader.getShort();
+        if (version != VERSION)
+            throw new IOException(fileName + ": unsupported version " + version);
+        int headerLength = fileHeader.getInt();
+        if (headerLength < 0 || FILE_HEADER_SIZE + (long) headerLength > size)
+            throw new IOException(fileName + ": truncated header");
+        byte[] mlgHeader = read(channel, FILE_HEADER_SIZE, headerLength).array();
+        BinarySensorLogReader layout = BinarySensorLogReader.wrap(fileName, ByteBuffer.wrap(mlgHeader));
+        long dataStart = FILE_HEADER_SIZE + (long) headerLength;
+
+        List<BlockInfo> blocks = readIndex(channel, dataStart, size);
+        if (blocks != null) {
+            // index starts right after last block
+            long dataEnd = read(channel, size - FOOTER_SIZE, 8).getLong();
+            return new Structure(mlgHeader, layout, blocks, dataEnd, false);
+        }
+        return recover(channel, mlgHeader, layout, dataStart, size);
+    }
+
+    /**
+     * @return null if there is no intact index
+     */
+    private static List<BlockInfo> readIndex(FileChannel channel, long dataStart, long size) throws IOException {
+        if (size < dataStart + FOOTER_SIZE)
+            return null;
+        ByteBuffer footer = read(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+        long indexOffset = footer.getLong();
+        if (footer.getInt() != FOOTER_MAGIC || indexOffset < dataStart || indexOffset + 8 > size - FOOTER_SIZE)
+            return null;
+        ByteBuffer index = read(channel, indexOffset, (int) (size - FOOTER_SIZE - indexOffset));
+        int blockCount = index.getInt() == INDEX_MAGIC ? index.getInt() : -1;
+        if (blockCount < 0 || index.remaining() != (long) blockCount * INDEX_ENTRY_SIZE)
+            return null;
+        List<BlockInfo> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++)
+            blocks.add(new BlockInfo(index.getLong(), index.getLong(), index.getInt(), index.getDouble(), index.getDouble()));
+        return blocks;
+    }
+
+    private static Structure recover(FileChannel channel, byte[] mlgHeader, BinarySensorLogReader layout, long position, long size) throws IOException {
+        List<BlockInfo> blocks = new ArrayList<>();
+        int recordSize = layout.getRecordSize();
+        long firstRecord = 0;
+        Inflater inflater = new Inflater(true);
+        try {
+            while (position + BLOCK_HEADER_SIZE <= size) {
+                ByteBuffer blockHeader = read(channel, position, BLOCK_HEADER_SIZE);
+                int magic = blockHeader.getInt();
+                int recordCount = blockHeader.getInt();
+                int compressedLength = blockHeader.getInt();
+                int crc = blockHeader.getInt();
+                if (magic != BLOCK_MAGIC || recordCount <= 0 || compressedLength < 0
+                    || position + BLOCK_HEADER_SIZE + compressedLength > size
+                    || (long) recordCount * recordSize > Integer.MAX_VALUE)
+                    break;
+                byte[] compressed = read(channel, position + BLOCK_HEADER_SIZE, compressedLength).array();
+                if (crc(compressed, compressedLength) != crc)
+                    break;
+                byte[] encoded = new byte[recordCount * recordSize];
+                byte[] records = new byte[encoded.length];
+                inflate(inflater, compressed, compressedLength, encoded, encoded.length);
+                decode(encoded, recordSize, recordCount, records);
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                blocks.add(new BlockInfo(position, firstRecord, recordCount,
+                    layout.getTime(buffer, 0), layout.getTime(buffer, (recordCount - 1) * recordSize)));
+                firstRecord += recordCount;
+                position += BLOCK_HEADER_SIZE + compressedLength;
+            }
+        } catch (IOException e) {
+            // damaged block, everything before it is still good
+        } finally {
+            inflater.end();
+        }
+        return new Structure(mlgHeader, layout, blocks, position, true);
+    }
+
+    static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static void write(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    public static class BlockInfo {
+        private final long offset;
+        private final long firstRecord;
+        private final int recordCount;
+        private final double firstTime;
+        private final double lastTime;
+
+        BlockInfo(long offset, long firstRecord, int recordCount, double firstTime, double lastTime) {
+            this.offset = offset;
+            this.firstRecord = firstRecord;
+            this.recordCount = recordCount;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+        }
+
+        void writeTo(ByteBuffer index) {
+            index.putLong(offset);
+            index.putLong(firstRecord);
+            index.putInt(recordCount);
+            index.putDouble(firstTime);
+            index.putDouble(lastTime);
+        }
+
+        /**
+         * @return file offset of block header
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getFirstRecord() {
+            return firstRecord;
+        }
+
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return "Time" of first record, NaN if log has no time column
+         */
+        public double getFirstTime() {
+            return firstTime;
+        }
+
+        public double getLastTime() {
+            return lastTime;
+        }
+    }
+}
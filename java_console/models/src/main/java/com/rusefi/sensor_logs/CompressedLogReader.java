@@ -0,0 +1,156 @@
+package com.rusefi.sensor_logs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import static com.rusefi.sensor_logs.CompressedLog.*;
+
+/**
+ * Random access to records of {@link CompressedLog} container one block at a time
+ */
+public class CompressedLogReader implements Closeable {
+    private final String fileName;
+    private final FileChannel channel;
+    private final Structure structure;
+    private final long recordCount;
+
+    private CompressedLogReader(String fileName, FileChannel channel) throws IOException {
+        this.fileName = fileName;
+        this.channel = channel;
+        structure = readStructure(fileName, channel);
+        long recordCount = 0;
+        for (BlockInfo info : structure.blocks)
+            recordCount += info.getRecordCount();
+        this.recordCount = recordCount;
+    }
+
+    @NotNull
+    public static CompressedLogReader open(File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            return new CompressedLogReader(file.getPath(), channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return classic header up to the first record
+     */
+    public byte[] getMlgHeader() {
+        return structure.mlgHeader.clone();
+    }
+
+    public List<BinarySensorLogReader.LogField> getFields() {
+        return structure.layout.getFields();
+    }
+
+    public int getRecordSize() {
+        return structure.layout.getRecordSize();
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public List<BlockInfo> getBlocks() {
+        return Collections.unmodifiableList(structure.blocks);
+    }
+
+    /**
+     * @return true if block index was missing or damaged and was rebuilt from blocks
+     */
+    public boolean isRecovered() {
+        return structure.recovered;
+    }
+
+    /**
+     * @return records of given block one after another exactly like in classic .mlg file
+     */
+    public byte[] readBlock(int block) throws IOException {
+        BlockInfo info = structure.blocks.get(block);
+        ByteBuffer header = CompressedLog.read(channel, info.getOffset(), BLOCK_HEADER_SIZE);
+        if (header.getInt() != BLOCK_MAGIC || header.getInt() != info.getRecordCount())
+            throw new IOException(fileName + ": unexpected block header at " + info.getOffset());
+        int compressedLength = header.getInt();
+        int crc = header.getInt();
+        byte[] compressed = CompressedLog.read(channel, info.getOffset() + BLOCK_HEADER_SIZE, compressedLength).array();
+        if (crc(compressed, compressedLength) != crc)
+            throw new IOException(fileName + ": checksum mismatch in block " + block);
+        int recordSize = getRecordSize();
+        byte[] encoded = new byte[info.getRecordCount() * recordSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflate(inflater, compressed, compressedLength, encoded, encoded.length);
+        } finally {
+            inflater.end();
+        }
+        byte[] records = new byte[encoded.length];
+        decode(encoded, recordSize, info.getRecordCount(), records);
+        return records;
+    }
+
+    /**
+     * @return block containing given record, -1 if out of range
+     */
+    public int findBlock(long record) {
+        int low = 0;
+        int high = structure.blocks.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            BlockInfo info = structure.blocks.get(middle);
+            if (record < info.getFirstRecord()) {
+                high = middle - 1;
+            } else if (record >= info.getFirstRecord() + info.getRecordCount()) {
+                low = middle + 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Time is expected to be non-decreasing
+     *
+     * @return last block starting at or before given time, zero if all blocks are later
+     */
+    public int findBlockByTime(double time) {
+        int low = 0;
+        int high = structure.blocks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (structure.blocks.get(middle).getFirstTime() <= time) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes classic .mlg file one block at a time
+     */
+    public void writeMlg(OutputStream out) throws IOException {
+        out.write(structure.mlgHeader);
+        for (int block = 0; block < structure.blocks.size(); block++)
+            out.write(readBlock(block));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,192 @@
+package com.rusefi.sensor_logs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static com.rusefi.sensor_logs.CompressedLog.*;
+
+/**
+ * Writes MLG records into {@link CompressedLog} container
+ * <p>
+ * Bytes written are the same bytes which would follow the header in a classic .mlg file, they do not have to be
+ * aligned with records. Every {@link #BLOCK_RECORDS} records are compressed and written as one block.
+ */
+public class CompressedLogWriter implements WritableByteChannel {
+    static final int BLOCK_RECORDS = Integer.getInteger("mlgz_block_records", 1024);
+
+    private final FileChannel channel;
+    private final BinarySensorLogReader layout;
+    private final int recordSize;
+    private final List<BlockInfo> blocks;
+    private final byte[] block;
+    private final byte[] encoded;
+    private byte[] compressed;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private int blockFill;
+    private long position;
+    private long recordCount;
+    private boolean isOpen = true;
+
+    private CompressedLogWriter(FileChannel channel, BinarySensorLogReader layout, List<BlockInfo> blocks, long position) {
+        this.channel = channel;
+        this.layout = layout;
+        this.blocks = blocks;
+        this.position = position;
+        recordSize = layout.getRecordSize();
+        block = new byte[BLOCK_RECORDS * recordSize];
+        encoded = new byte[block.length];
+        compressed = new byte[block.length / 2];
+        for (BlockInfo info : blocks)
+            recordCount += info.getRecordCount();
+    }
+
+    /**
+     * Creates new file or overwrites existing one
+     *
+     * @param mlgHeader classic header up to the first record
+     */
+    @NotNull
+    public static CompressedLogWriter create(File file, byte[] mlgHeader) throws IOException {
+        BinarySensorLogReader layout = BinarySensorLogReader.wrap(file.getPath(), ByteBuffer.wrap(mlgHeader));
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE + mlgHeader.length);
+            header.putInt(FILE_MAGIC);
+            header.putShort((short) VERSION);
+            header.putInt(mlgHeader.length);
+            header.put(mlgHeader);
+            header.flip();
+            CompressedLog.write(channel, 0, header);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new CompressedLogWriter(channel, layout, new ArrayList<>(), FILE_HEADER_SIZE + mlgHeader.length);
+    }
+
+    /**
+     * Continues existing file, anything after last intact block like index or half-written block is cut off
+     */
+    @NotNull
+    public static CompressedLogWriter append(File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            Structure structure = readStructure(file.getPath(), channel);
+            channel.truncate(structure.dataEnd);
+            return new CompressedLogWriter(channel, structure.layout, new ArrayList<>(structure.blocks), structure.dataEnd);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!isOpen)
+            throw new ClosedChannelException();
+        int size = src.remaining();
+        while (src.hasRemaining()) {
+            int length = Math.min(src.remaining(), block.length - blockFill);
+            src.get(block, blockFill, length);
+            blockFill += length;
+            if (blockFill == block.length)
+                writeBlock();
+        }
+        return size;
+    }
+
+    private void writeBlock() throws IOException {
+        int count = blockFill / recordSize;
+        if (count == 0)
+            return;
+        encode(block, recordSize, count, encoded);
+        int compressedLength = deflate(count * recordSize);
+
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        header.putInt(BLOCK_MAGIC);
+        header.putInt(count);
+        header.putInt(compressedLength);
+        header.putInt(crc(compressed, compressedLength));
+        header.flip();
+        CompressedLog.write(channel, position, header);
+        CompressedLog.write(channel, position + BLOCK_HEADER_SIZE, ByteBuffer.wrap(compressed, 0, compressedLength));
+
+        ByteBuffer records = ByteBuffer.wrap(block);
+        blocks.add(new BlockInfo(position, recordCount, count,
+            layout.getTime(records, 0), layout.getTime(records, (count - 1) * recordSize)));
+        position += BLOCK_HEADER_SIZE + compressedLength;
+        recordCount += count;
+        // partial record stays for next block
+        int tail = blockFill - count * recordSize;
+        System.arraycopy(block, count * recordSize, block, 0, tail);
+        blockFill = tail;
+    }
+
+    private int deflate(int length) {
+        deflater.reset();
+        deflater.setInput(encoded, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == compressed.length) {
+                byte[] grown = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, grown, 0, size);
+                compressed = grown;
+            }
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        return size;
+    }
+
+    private void writeIndex() throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(8 + blocks.size() * INDEX_ENTRY_SIZE + FOOTER_SIZE);
+        index.putInt(INDEX_MAGIC);
+        index.putInt(blocks.size());
+        for (BlockInfo info : blocks)
+            info.writeTo(index);
+        index.putLong(position);
+        index.putInt(FOOTER_MAGIC);
+        index.flip();
+        CompressedLog.write(channel, position, index);
+    }
+
+    /**
+     * @return number of complete records written into blocks so far
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    /**
+     * Writes last partial block and block index
+     */
+    @Override
+    public void close() throws IOException {
+        if (!isOpen)
+            return;
+        isOpen = false;
+        try {
+            writeBlock();
+            writeIndex();
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+}
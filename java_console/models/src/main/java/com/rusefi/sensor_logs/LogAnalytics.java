@@ -0,0 +1,304 @@
+package com.rusefi.sensor_logs;
+
+import com.devexperts.logging.Logging;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static com.devexperts.logging.Logging.getLogging;
+
+/**
+ * Answers questions over many .mlg and .mlgz logs at once: per-channel statistics, time above threshold and time
+ * windows matching a {@link LogFilter}.
+ * <p>
+ * Logs are split between fork-join workers, each .mlg log is read through a {@link BinarySensorLogReader} mapping
+ * record by record, {@link CompressedLog} logs one block at a time. Partial results are merged on the way back up.
+ * <pre>
+ * LogAnalytics.Result result = new LogAnalytics(LogFilter.parse("RPMValue > 6000 && CLT > 100"), thresholds)
+ *     .analyze(LogAnalytics.listLogs(new File(FileLogger.DIR)));
+ * </pre>
+ */
+public class LogAnalytics {
+    private static final Logging log = getLogging(LogAnalytics.class);
+
+    public static final String LOG_SUFFIX = ".mlg";
+
+    @Nullable
+    private final LogFilter filter;
+    private final Map<String, Double> thresholds;
+
+    /**
+     * @param filter     time windows to look for, null if none
+     * @param thresholds channel name to threshold for {@link ChannelStats#getTimeAbove()}
+     */
+    public LogAnalytics(@Nullable LogFilter filter, Map<String, Double> thresholds) {
+        this.filter = filter;
+        this.thresholds = new HashMap<>(thresholds);
+    }
+
+    /**
+     * @return .mlg and .mlgz files in given folder sorted by name
+     */
+    @NotNull
+    public static List<File> listLogs(File folder) {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(LOG_SUFFIX) || name.endsWith(CompressedLog.SUFFIX));
+        if (files == null)
+            return Collections.emptyList();
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    @NotNull
+    public Result analyze(List<File> files) {
+        return analyze(files, ForkJoinPool.commonPool());
+    }
+
+    @NotNull
+    public Result analyze(List<File> files, ForkJoinPool pool) {
+        return pool.invoke(new Task(this, files));
+    }
+
+    @NotNull
+    Result analyze(File file) {
+        try {
+            if (file.getName().endsWith(CompressedLog.SUFFIX))
+                return analyzeCompressed(file);
+            BinarySensorLogReader reader = BinarySensorLogReader.open(file);
+            FileScan scan = new FileScan(file, reader);
+            scan.add(reader, Double.NaN);
+            return scan.finish();
+        } catch (IOException e) {
+            log.error("Skipping " + file + ": " + e);
+            Result result = new Result();
+            result.failedFiles.add(file);
+            return result;
+        }
+    }
+
+    private Result analyzeCompressed(File file) throws IOException {
+        try (CompressedLogReader reader = CompressedLogReader.open(file)) {
+            byte[] header = reader.getMlgHeader();
+            FileScan scan = new FileScan(file, BinarySensorLogReader.wrap(file.getPath(), ByteBuffer.wrap(header)));
+            List<CompressedLog.BlockInfo> blocks = reader.getBlocks();
+            for (int block = 0; block < blocks.size(); block++) {
+                byte[] records = reader.readBlock(block);
+                // block records look exactly like the records of a classic file
+                ByteBuffer data = ByteBuffer.allocate(header.length + records.length);
+                data.put(header).put(records).flip();
+                double nextBlockTime = block + 1 < blocks.size() ? blocks.get(block + 1).getFirstTime() : Double.NaN;
+                scan.add(BinarySensorLogReader.wrap(file.getPath(), data), nextBlockTime);
+            }
+            return scan.finish();
+        }
+    }
+
+    /**
+     * Statistics and windows of one log which is read in one or more consecutive parts
+     */
+    private class FileScan {
+        private final File file;
+        private final Result result = new Result();
+        private final ChannelStats[] stats;
+        private int recordCount;
+        /**
+         * first record of currently open window, -1 if none
+         */
+        private int windowStart = -1;
+        private double windowStartTime;
+        private double lastTime = Double.NaN;
+
+        FileScan(File file, BinarySensorLogReader layout) {
+            this.file = file;
+            List<BinarySensorLogReader.LogField> fields = layout.getFields();
+            stats = new ChannelStats[fields.size()];
+            for (int i = 0; i < stats.length; i++)
+                stats[i] = new ChannelStats(fields.get(i).getName(), Double.NaN);
+            for (Map.Entry<String, Double> threshold : thresholds.entrySet()) {
+                int field = LogFilter.resolveChannel(layout, threshold.getKey());
+                if (field != -1)
+                    stats[field] = new ChannelStats(fields.get(field).getName(), threshold.getValue());
+            }
+        }
+
+        /**
+         * @param nextTime time of the record following this part, NaN if this is the last part
+         */
+        void add(BinarySensorLogReader reader, double nextTime) {
+            LogFilter.RecordPredicate predicate = filter == null ? null : filter.bind(reader);
+            int count = reader.getRecordCount();
+            double time = count == 0 ? Double.NaN : reader.getTime(0);
+            for (int record = 0; record < count; record++) {
+                double recordTime = time;
+                double next;
+                if (record + 1 < count) {
+                    next = reader.getTime(record + 1);
+                } else {
+                    next = Double.isNaN(nextTime) ? time : nextTime;
+                }
+                // without time column durations are unknown
+                double duration = Double.isNaN(time) ? 0 : next - time;
+                for (int field = 0; field < stats.length; field++)
+                    stats[field].add(reader.getValue(record, field), duration);
+
+                if (predicate != null) {
+                    boolean matches = predicate.test(record);
+                    if (matches && windowStart == -1) {
+                        windowStart = recordCount + record;
+                        windowStartTime = recordTime;
+                    } else if (!matches && windowStart != -1) {
+                        result.windows.add(new TimeWindow(file, windowStart, recordCount + record, windowStartTime, recordTime));
+                        windowStart = -1;
+                    }
+                }
+                lastTime = recordTime;
+                time = next;
+            }
+            recordCount += count;
+        }
+
+        Result finish() {
+            if (windowStart != -1)
+                result.windows.add(new TimeWindow(file, windowStart, recordCount, windowStartTime, lastTime));
+            for (ChannelStats channel : stats)
+                result.add(channel);
+            result.fileCount = 1;
+            result.recordCount = recordCount;
+            return result;
+        }
+    }
+
+    private static class Task extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient LogAnalytics analytics;
+        private final transient List<File> files;
+
+        Task(LogAnalytics analytics, List<File> files) {
+            this.analytics = analytics;
+            this.files = files;
+        }
+
+        @Override
+        protected Result compute() {
+            if (files.isEmpty())
+                return new Result();
+            if (files.size() == 1)
+                return analytics.analyze(files.get(0));
+            int middle = files.size() / 2;
+            Task left = new Task(analytics, files.subList(0, middle));
+            left.fork();
+            Result right = new Task(analytics, files.subList(middle, files.size())).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Records with matching filter one after another
+     */
+    public static class TimeWindow {
+        private final File file;
+        private final int fromRecord;
+        private final int toRecord;
+        private final double fromTime;
+        private final double toTime;
+
+        /**
+         * @param toRecord exclusive
+         * @param toTime   time of toRecord, of last record if window goes till the end of log
+         */
+        TimeWindow(File file, int fromRecord, int toRecord, double fromTime, double toTime) {
+            this.file = file;
+            this.fromRecord = fromRecord;
+            this.toRecord = toRecord;
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getFromRecord() {
+            return fromRecord;
+        }
+
+        /**
+         * @return first record after window
+         */
+        public int getToRecord() {
+            return toRecord;
+        }
+
+        public double getFromTime() {
+            return fromTime;
+        }
+
+        public double getToTime() {
+            return toTime;
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + " " + fromTime + "-" + toTime + "s (records " + fromRecord + "-" + toRecord + ")";
+        }
+    }
+
+    public static class Result {
+        private final Map<String, ChannelStats> channels = new TreeMap<>();
+        private final List<TimeWindow> windows = new ArrayList<>();
+        private final List<File> failedFiles = new ArrayList<>();
+        private int fileCount;
+        private long recordCount;
+
+        private void add(ChannelStats stats) {
+            ChannelStats existing = channels.putIfAbsent(stats.getName(), stats);
+            if (existing != null)
+                existing.merge(stats);
+        }
+
+        /**
+         * @param other results of files which go after files of this result
+         */
+        Result merge(Result other) {
+            for (ChannelStats stats : other.channels.values())
+                add(stats);
+            windows.addAll(other.windows);
+            failedFiles.addAll(other.failedFiles);
+            fileCount += other.fileCount;
+            recordCount += other.recordCount;
+            return this;
+        }
+
+        /**
+         * @return stats by log field name
+         */
+        public Map<String, ChannelStats> getChannels() {
+            return channels;
+        }
+
+        public List<TimeWindow> getWindows() {
+            return windows;
+        }
+
+        /**
+         * @return files which could not be read
+         */
+        public List<File> getFailedFiles() {
+            return failedFiles;
+        }
+
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        public long getRecordCount() {
+            return recordCount;
+        }
+    }
+}
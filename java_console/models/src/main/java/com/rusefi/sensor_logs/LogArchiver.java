@@ -0,0 +1,152 @@
+package com.rusefi.sensor_logs;
+
+import com.devexperts.logging.Logging;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import static com.devexperts.logging.Logging.getLogging;
+
+/**
+ * Takes care of log files once they are closed: optionally compresses them on a low priority background thread and
+ * deletes the oldest ones once log files of this session take more than {@link RotationPolicy#getMaxTotalSize()}.
+ * <p>
+ * Compression is off unless log_archive_compression system property is set. .mlg files become {@link CompressedLog}
+ * .mlgz files, other formats are gzipped. Compressed copy is written under a temporary name and moved into place
+ * before the original is deleted so a crash never leaves a half-written archive.
+ * <p>
+ * Only files which went through {@link #onSegmentStarted} are counted and deleted, files of earlier sessions and of
+ * other tools are left alone. Files between {@link #onSegmentStarted} and {@link #onSegmentClosed} are never touched.
+ */
+public class LogArchiver {
+    private static final Logging log = getLogging(LogArchiver.class);
+
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final boolean COMPRESSION = Boolean.getBoolean("log_archive_compression");
+
+    private static final LogArchiver INSTANCE = new LogArchiver(RotationPolicy.DEFAULT, COMPRESSION);
+
+    private final RotationPolicy policy;
+    private final boolean compression;
+    private final Set<File> active = ConcurrentHashMap.newKeySet();
+    /**
+     * closed files of this session, accessed on archiver thread only
+     */
+    private final Set<File> archived = new HashSet<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "LogArchiver");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    public LogArchiver(RotationPolicy policy, boolean compression) {
+        this.policy = policy;
+        this.compression = compression;
+    }
+
+    public static LogArchiver getInstance() {
+        return INSTANCE;
+    }
+
+    public RotationPolicy getPolicy() {
+        return policy;
+    }
+
+    public void onSegmentStarted(File file) {
+        active.add(file.getAbsoluteFile());
+    }
+
+    /**
+     * @return completes once file is compressed and quota is enforced
+     */
+    public Future<?> onSegmentClosed(File file) {
+        File segment = file.getAbsoluteFile();
+        return executor.submit(() -> {
+            File result = segment;
+            try {
+                if (compression && segment.exists())
+                    result = compress(segment);
+            } catch (IOException e) {
+                log.error("Error compressing " + segment, e);
+            } finally {
+                archived.add(result);
+                active.remove(segment);
+            }
+            enforceQuota();
+        });
+    }
+
+    /**
+     * @return compressed file, same file if it is compressed already
+     */
+    @NotNull
+    File compress(File file) throws IOException {
+        String name = file.getName();
+        if (name.endsWith(CompressedLog.SUFFIX) || name.endsWith(".gz"))
+            return file;
+        boolean isMlg = name.endsWith(".mlg");
+        File target = new File(file.getParentFile(), isMlg ? name + "z" : name + ".gz");
+        File tmp = new File(file.getParentFile(), target.getName() + TMP_SUFFIX);
+        try {
+            if (isMlg) {
+                CompressedLog.compress(file, tmp);
+            } else {
+                try (InputStream in = new FileInputStream(file);
+                     OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp))) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int length;
+                    while ((length = in.read(buffer)) > 0)
+                        out.write(buffer, 0, length);
+                }
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+        if (!file.delete())
+            log.info("Failed to delete " + file);
+        return target;
+    }
+
+    /**
+     * Deletes oldest closed log files of this session while files of this session take more than quota
+     */
+    void enforceQuota() {
+        if (policy.getMaxTotalSize() <= 0)
+            return;
+        long total = 0;
+        for (File file : active)
+            total += file.length();
+        List<File> candidates = new ArrayList<>();
+        for (File file : archived) {
+            if (file.exists()) {
+                total += file.length();
+                candidates.add(file);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : candidates) {
+            if (total <= policy.getMaxTotalSize())
+                break;
+            long size = file.length();
+            if (file.delete()) {
+                log.info("Quota: deleted " + file + " " + size + " byte(s)");
+                total -= size;
+                archived.remove(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.rusefi.sensor_logs;
+
+import com.rusefi.core.Sensor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Record filter like {@code RPMValue > 6000 && CLT > 100}
+ * <p>
+ * Supports comparisons {@code > >= < <= == !=} of a channel with a number, {@code && || !} and parentheses. Channel is
+ * either a log field name or a {@link Sensor} name, names with spaces go into double quotes.
+ */
+public class LogFilter {
+    private final String text;
+    private final Expression root;
+    private final List<Comparison> comparisons;
+
+    private LogFilter(String text, Expression root, List<Comparison> comparisons) {
+        this.text = text;
+        this.root = root;
+        this.comparisons = comparisons;
+    }
+
+    /**
+     * @throws IllegalArgumentException on syntax error
+     */
+    @NotNull
+    public static LogFilter parse(String text) {
+        Parser parser = new Parser(text);
+        Expression root = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.position != text.length())
+            throw parser.error("Unexpected");
+        return new LogFilter(text, root, Collections.unmodifiableList(parser.comparisons));
+    }
+
+    /**
+     * @return predicate over records of given log, null if log does not have some of the channels
+     */
+    @Nullable
+    public RecordPredicate bind(BinarySensorLogReader reader) {
+        for (Comparison comparison : comparisons) {
+            if (resolveChannel(reader, comparison.channel) == -1)
+                return null;
+        }
+        return root.bind(reader);
+    }
+
+    /**
+     * @return threshold of each {@code channel > value} or {@code channel >= value} comparison
+     */
+    public Map<String, Double> getLowerBounds() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Comparison comparison : comparisons) {
+            if (comparison.operator.equals(">") || comparison.operator.equals(">="))
+                result.put(comparison.channel, comparison.value);
+        }
+        return result;
+    }
+
+    /**
+     * @return index of field with given name, falling back to field of {@link Sensor} with given name, -1 if none
+     */
+    public static int resolveChannel(BinarySensorLogReader reader, String channel) {
+        int index = reader.indexOf(channel);
+        if (index != -1)
+            return index;
+        for (Sensor sensor : Sensor.values()) {
+            if (sensor.name().equalsIgnoreCase(channel))
+                return reader.indexOf(sensor.getName());
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    public interface RecordPredicate {
+        boolean test(int record);
+    }
+
+    private interface Expression {
+        RecordPredicate bind(BinarySensorLogReader reader);
+    }
+
+    private static class Comparison implements Expression {
+        private final String channel;
+        private final String operator;
+        private final double value;
+
+        Comparison(String channel, String operator, double value) {
+            this.channel = channel;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        public RecordPredicate bind(BinarySensorLogReader reader) {
+            int field = resolveChannel(reader, channel);
+            switch (operator) {
+                case ">":
+                    return record -> reader.getValue(record, field) > value;
+                case ">=":
+                    return record -> reader.getValue(record, field) >= value;
+                case "<":
+                    return record -> reader.getValue(record, field) < value;
+                case "<=":
+                    return record -> reader.getValue(record, field) <= value;
+                case "==":
+                    return record -> reader.getValue(record, field) == value;
+                default:
+                    return record -> reader.getValue(record, field) != value;
+            }
+        }
+    }
+
+    private static class Parser {
+        private final String text;
+        private final List<Comparison> comparisons = new ArrayList<>();
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Expression parseOr() {
+            Expression left = parseAnd();
+            while (consume("||")) {
+                Expression l = left;
+                Expression r = parseAnd();
+                left = reader -> {
+                    RecordPredicate a = l.bind(reader);
+                    RecordPredicate b = r.bind(reader);
+                    return record -> a.test(record) || b.test(record);
+                };
+            }
+            return left;
+        }
+
+        Expression parseAnd() {
+            Expression left = parseNot();
+            while (consume("&&")) {
+                Expression l = left;
+                Expression r = parseNot();
+                left = reader -> {
+                    RecordPredicate a = l.bind(reader);
+                    RecordPredicate b = r.bind(reader);
+                    return record -> a.test(record) && b.test(record);
+                };
+            }
+            return left;
+        }
+
+        Expression parseNot() {
+            if (consume("!")) {
+                Expression e = parseNot();
+                return reader -> {
+                    RecordPredicate a = e.bind(reader);
+                    return record -> !a.test(record);
+                };
+            }
+            if (consume("(")) {
+                Expression e = parseOr();
+                if (!consume(")"))
+                    throw error("Expected )");
+                return e;
+            }
+            return parseComparison();
+        }
+
+        Comparison parseComparison() {
+            String channel = parseChannel();
+            String operator = null;
+            for (String candidate : new String[]{">=", "<=", "==", "!=", ">", "<"}) {
+                if (consume(candidate)) {
+                    operator = candidate;
+                    break;
+                }
+            }
+            if (operator == null)
+                throw error("Expected comparison");
+            Comparison comparison = new Comparison(channel, operator, parseNumber());
+            comparisons.add(comparison);
+            return comparison;
+        }
+
+        String parseChannel() {
+            skipSpaces();
+            int start = position;
+            if (consume("\"")) {
+                int end = text.indexOf('"', position);
+                if (end == -1)
+                    throw error("Expected \"");
+                position = end + 1;
+                return text.substring(start + 1, end);
+            }
+            while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_'))
+                position++;
+            if (start == position)
+                throw error("Expected channel");
+            return text.substring(start, position);
+        }
+
+        double parseNumber() {
+            skipSpaces();
+            int start = position;
+            while (position < text.length() && "+-.0123456789eE".indexOf(text.charAt(position)) != -1)
+                position++;
+            try {
+                return Double.parseDouble(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("Expected number");
+            }
+        }
+
+        boolean consume(String token) {
+            skipSpaces();
+            if (!text.startsWith(token, position))
+                return false;
+            position += token.length();
+            return true;
+        }
+
+        void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+                position++;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + position + ": " + text);
+        }
+    }
+}
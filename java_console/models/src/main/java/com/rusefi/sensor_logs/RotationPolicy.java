@@ -0,0 +1,62 @@
+package com.rusefi.sensor_logs;
+
+/**
+ * When an open log file should be closed and a new one started, and how much disk all closed log files may take
+ *
+ * @see LogArchiver
+ */
+public class RotationPolicy {
+    /**
+     * Rotation is opt-in: only the last file of a session gets uploaded, so by default the whole session stays in one
+     * file. Quota only applies to files of current session.
+     */
+    public static final RotationPolicy DEFAULT = new RotationPolicy(
+        Long.getLong("log_segment_size", 0),
+        Long.getLong("log_segment_duration", 0),
+        Long.getLong("log_quota", 2L << 30));
+
+    private final long maxSegmentSize;
+    private final long maxSegmentDuration;
+    private final long maxTotalSize;
+
+    /**
+     * @param maxSegmentSize     bytes, zero for no limit
+     * @param maxSegmentDuration milliseconds, zero for no limit
+     * @param maxTotalSize       bytes of all log files in folder, zero for no limit
+     */
+    public RotationPolicy(long maxSegmentSize, long maxSegmentDuration, long maxTotalSize) {
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxSegmentDuration = maxSegmentDuration;
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    /**
+     * @param size      bytes written into current file so far
+     * @param startTime when current file was started
+     */
+    public boolean isRotationNeeded(long size, long startTime, long now) {
+        return (maxSegmentSize > 0 && size >= maxSegmentSize)
+            || (maxSegmentDuration > 0 && now - startTime >= maxSegmentDuration);
+    }
+
+    public long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    public long getMaxSegmentDuration() {
+        return maxSegmentDuration;
+    }
+
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    @Override
+    public String toString() {
+        return "RotationPolicy{" +
+            "maxSegmentSize=" + maxSegmentSize +
+            ", maxSegmentDuration=" + maxSegmentDuration +
+            ", maxTotalSize=" + maxTotalSize +
+            '}';
+    }
+}
@@ -1,12 +1,9 @@
 package com.rusefi.stream;
 
-import com.rusefi.composite.CompositeEvent;
+import com.rusefi.composite.CompositeEventBatch;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Support for Saleae .logicdata format.
@@ -55,7 +52,9 @@ public class LogicdataStreamFile extends StreamFile {
     private static int scaledDurationInSamples = 0;
 
 	private final String fileName;
-	private final List<CompositeEvent> eventsBuffer = new ArrayList<>();
+	private final CompositeEventBatch eventsBuffer = new CompositeEventBatch();
+	// edges of one channel, reused for all channels
+	private long[] chDeltas = new long[64];
 
 	private static final String [] channelNames = {
 			"Primary", "Secondary", "Trg", "Sync", "Coil", "Injector", "Channel 6", "Channel 7",
@@ -68,7 +67,7 @@ public class LogicdataStreamFile extends StreamFile {
 	}
 
 	/*
-        public static void writeLogicdata(List<CompositeEvent> events, OutputStream stream) throws IOException {
+        public static void writeLogicdata(CompositeEventBatch events, OutputStream stream) throws IOException {
             LogicdataStreamFile saver = new LogicdataStreamFile();
             saver.stream = stream;
             saver.writeHeader();
@@ -77,10 +76,11 @@ public class LogicdataStreamFile extends StreamFile {
         }
     */
     @Override
-    public void append(List<CompositeEvent> events) {
+    public void append(CompositeEventBatch events) {
+        rotateIfNeeded();
         try {
             if (stream == null) {
-                stream = new LogicdataOutputStream(Files.newOutputStream(Paths.get(fileName)));
+                stream = new LogicdataOutputStream(createOutputStream(fileName));
                 writeHeader();
             }
             eventsBuffer.addAll(events);
@@ -92,12 +92,12 @@ public class LogicdataStreamFile extends StreamFile {
 	/**
 	 * this file format is not streaming, we have to write everything at once
 	 */
-	private void writeEvents(List<CompositeEvent> events) throws IOException {
+	private void writeEvents(CompositeEventBatch events) throws IOException {
     	// we need at least 2 records
     	if (events == null || events.size() < 2)
     		return;
-		long firstRecordTs = events.get(0).getTimestamp();
-		long lastRecordTs = events.get(events.size() - 1).getTimestamp();
+		long firstRecordTs = events.getTimestamp(0);
+		long lastRecordTs = events.getTimestamp(events.size() - 1);
 	    // we don't know the total duration, so we create a margin after the last record which equals to the duration of the first event
 		// TODO: why do we jump from timestamps to samples?
 	    realDurationInSamples = (int)(lastRecordTs + firstRecordTs);
@@ -105,19 +105,18 @@ public class LogicdataStreamFile extends StreamFile {
 
 		writeChannelDataHeader();
 
-		// the initial state should have zero timestamp
-		if (events.get(0).getTimestamp() > 0)
-			events.add(0, new CompositeEvent(0, false, false, false, false, false, false));
+		// the initial state should have zero timestamp: index -1 stands for an all-zero event at zero time
+		int first = firstRecordTs > 0 ? -1 : 0;
 
     	// we need to split the combined events into separate channels
     	for (int ch = 0; ch < numChannels; ch++) {
 			boolean useLongDeltas = false;
-			List<Long> chDeltas = new ArrayList<>();
+			int numDeltas = 0;
 			int chPrevState = -1, chInitialState = -1;
 			long prevTs = -1, initialTs = 0;
-        	for (CompositeEvent event : events) {
-        		int chState = getChannelState(ch, event);
-        		long ts = event.getTimestamp();
+        	for (int i = first; i < events.size(); i++) {
+        		int chState = i < 0 ? 0 : getChannelState(ch, events, i);
+        		long ts = i < 0 ? 0 : events.getTimestamp(i);
 
         		if (chPrevState == -1) {
         			chPrevState = chState;
@@ -138,7 +137,9 @@ public class LogicdataStreamFile extends StreamFile {
 					if (chState == 0)
 						delta |= SIGN_FLAG;
 
-					chDeltas.add(delta);
+					if (numDeltas == chDeltas.length)
+						chDeltas = Arrays.copyOf(chDeltas, numDeltas * 2);
+					chDeltas[numDeltas++] = delta;
 
 					prevTs = ts;
 					chPrevState = chState;
@@ -150,29 +151,31 @@ public class LogicdataStreamFile extends StreamFile {
 			}
 
 	    	// TODO: why do we pass a timestamp as a record index?
-			writeChannelData(ch, chDeltas, chPrevState, (int)prevTs, chInitialState, (int)initialTs, useLongDeltas);
+			writeChannelData(ch, chDeltas, numDeltas, chPrevState, (int)prevTs, chInitialState, (int)initialTs, useLongDeltas);
         }
 
         writeChannelDataFooter();
         stream.flush();
     }
 
-    private int getChannelState(int ch, CompositeEvent event) {
+    private int getChannelState(int ch, CompositeEventBatch events, int index) {
 		switch (ch) {
 			case 0:
-				return event.isPrimaryTriggerAsInt();
+				return events.isPrimaryTriggerAsInt(index);
 			case 1:
-				return event.isSecondaryTriggerAsInt();
+				return events.isSecondaryTriggerAsInt(index);
 			case 2:
-				return event.isTrgAsInt();
+				return events.isTrgAsInt(index);
 			case 3:
-				return event.isSyncAsInt();
+				return events.isSyncAsInt(index);
+			case 4:
+				return events.isCoil(index);
+			case 10:
+				return events.isInjector(index);
 		}
-		if (ch >= 4 && ch < 4 + 6) {
-			return event.isCoil(ch - 4);
-		}
-		if (ch >= 10 && ch < 10 + 6) {
-            return event.isInjector(ch - 10);
+		// only first coil and first injector are reported by controller
+		if (ch > 4 && ch < 4 + 6 || ch > 10 && ch < 10 + 6) {
+			return 0;
 		}
 		return -1;
 	}
@@ -301,8 +304,7 @@ public class LogicdataStreamFile extends StreamFile {
 		write(new int[]{ 1, 0, 1 });
 	}
 
-	private void writeChannelData(int ch, List<Long> chDeltas, int chLastState, int lastRecord, int chInitialState, int initialRecord, boolean useLongDeltas) throws IOException {
-    	int numEdges = chDeltas.size();
+	private void writeChannelData(int ch, long[] chDeltas, int numEdges, int chLastState, int lastRecord, int chInitialState, int initialRecord, boolean useLongDeltas) throws IOException {
     	if (numEdges == 0) {
 			initialRecord = 0;
 			lastRecord = 0;
@@ -352,7 +354,7 @@ public class LogicdataStreamFile extends StreamFile {
 		stream.writeVarLength(numEdges >> 15);
 		stream.writeVarLength(numEdges & 0x7fff);
 
-		writeEdges(chDeltas, useLongDeltas);
+		writeEdges(chDeltas, numEdges, useLongDeltas);
 
 		if (ch == 0) {
 			stream.writeVarLength(BLOCK);
@@ -383,8 +385,9 @@ public class LogicdataStreamFile extends StreamFile {
 		writeRecord(0, 0, -1, chFlag);
     }
 
-	private void writeEdges(List<Long> chDeltas, boolean useLongDeltas) throws IOException {
-		for (long d : chDeltas) {
+	private void writeEdges(long[] chDeltas, int numEdges, boolean useLongDeltas) throws IOException {
+		for (int i = 0; i < numEdges; i++) {
+			long d = chDeltas[i];
 			// set 16-bit 'sign' flag
 			if (!useLongDeltas && (d & SIGN_FLAG) == SIGN_FLAG)
 				d = (d & 0x7fff) | (SIGN_FLAG >> 16);
@@ -480,6 +483,15 @@ public class LogicdataStreamFile extends StreamFile {
 
         stream.flush();
 		System.out.println("writeFooter " + fileName);
+		eventsBuffer.clear();
+    }
+
+    /**
+     * events are only written on close, each one takes a few bytes per channel
+     */
+    @Override
+    protected long getSegmentSize() {
+        return super.getSegmentSize() + eventsBuffer.size() * 8L;
     }
 
     private void writeTimingMarker() throws IOException {
@@ -1,13 +1,11 @@
 package com.rusefi.stream;
 
-import com.rusefi.composite.CompositeEvent;
+import com.rusefi.composite.CompositeEventBatch;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 public class LogicdataStreamFileCsvSandbox {
 
@@ -19,7 +17,7 @@ public class LogicdataStreamFileCsvSandbox {
             throw new IllegalArgumentException("I want file name parameter please");
 
         String filename = args[0];
-        List<CompositeEvent> events = readCsvFile(filename);
+        CompositeEventBatch events = readCsvFile(filename);
 
 
         LogicdataStreamFile file = new LogicdataStreamFile(args[1]);
@@ -28,8 +26,8 @@ public class LogicdataStreamFileCsvSandbox {
     }
 
     @NotNull
-    private static List<CompositeEvent> readCsvFile(String filename) {
-        List<CompositeEvent> events = new ArrayList<>();
+    private static CompositeEventBatch readCsvFile(String filename) {
+        CompositeEventBatch events = new CompositeEventBatch();
 
         try {
             System.out.println("Reading " + filename);
@@ -61,7 +59,7 @@ public class LogicdataStreamFileCsvSandbox {
                 cur_time = Math.addExact(cur_time, dt);
 
                 System.out.println("* " + cur_time);
-                events.add(new CompositeEvent(cur_time, v1 == 1, v2 == 1, v3 == 1, v4 == 1, v5 == 1, v6 == 1));
+                events.add(cur_time, v1 == 1, v2 == 1, v3 == 1, v4 == 1, v5 == 1, v6 == 1);
             }
         } catch (IOException e) {
             throw new IllegalStateException(e);
@@ -1,20 +1,18 @@
 package com.rusefi.stream;
 
-import com.rusefi.composite.CompositeEvent;
+import com.rusefi.composite.CompositeEventBatch;
 
-import java.util.ArrayList;
-import java.util.List;
 
 public class LogicdataStreamFileSandbox {
     public static void main(String[] args) {
-        List<CompositeEvent> events = new ArrayList<>();
+        CompositeEventBatch events = new CompositeEventBatch();
 
         long timestamp = 10;
 
-        events.add(new CompositeEvent(timestamp, false, false, false, false, false, false));
+        events.add(timestamp, false, false, false, false, false, false);
 
-        events.add(new CompositeEvent(20, true, false, true, false, false, false));
-        events.add(new CompositeEvent(30, false, false, false, false, false, false));
+        events.add(20, true, false, true, false, false, false);
+        events.add(30, false, false, false, false, false, false);
 
         for (int i = 0; i < 63000; i++) {
 
@@ -22,11 +20,11 @@ public class LogicdataStreamFileSandbox {
 
             boolean primary = (i % 2) == 0;
 
-            events.add(new CompositeEvent(timestamp, primary, false, false, false, false, false));
+            events.add(timestamp, primary, false, false, false, false, false);
         }
 
-        events.add(new CompositeEvent(timestamp + 1000, false, false, false, false, true, false));
-        events.add(new CompositeEvent(timestamp + 2030, false, false, true, false, false, true));
+        events.add(timestamp + 1000, false, false, false, false, true, false);
+        events.add(timestamp + 2030, false, false, true, false, false, true);
 
         LogicdataStreamFile file = new LogicdataStreamFile("sandbox.logicdata");
         file.append(events);
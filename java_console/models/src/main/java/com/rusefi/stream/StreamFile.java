@@ -1,25 +1,46 @@
 package com.rusefi.stream;
 
-import com.rusefi.composite.CompositeEvent;
+import com.rusefi.composite.CompositeEventBatch;
+import com.rusefi.sensor_logs.LogArchiver;
 
 import java.io.*;
-import java.util.List;
 
+/**
+ * File is closed and handed to {@link LogArchiver} once {@link #rotateIfNeeded()} finds it too big or too old, next
+ * append goes into a new file with "_N" added to the name.
+ */
 public abstract class StreamFile {
     // todo: always write into Writer since it has better API, it's insane to have to references into same stream
     protected LogicdataOutputStream stream;
     protected Writer writer;
 
+    private final LogArchiver archiver;
+    /**
+     * only registered while there is an open file
+     */
+    private final Thread hook = new Thread(this::close, "StreamFile::hook");
+    private File currentFile;
+    private long segmentStart;
+    private CountingOutputStream counter;
+    private int segment;
+    /**
+     * text of current append, reused so that steady state appends allocate nothing
+     */
+    protected final StringBuilder text = new StringBuilder();
+    private final char[] chars = new char[8192];
+
     public StreamFile() {
-        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
-            @Override
-            public void run() {
-                close();
-            }
-        }));
+        this(LogArchiver.getInstance());
+    }
+
+    protected StreamFile(LogArchiver archiver) {
+        this.archiver = archiver;
     }
 
-    public abstract void append(List<CompositeEvent> events);
+    /**
+     * @param events only valid during this call, caller reuses the batch
+     */
+    public abstract void append(CompositeEventBatch events);
 
     public synchronized void close() {
         try {
@@ -43,14 +64,104 @@ public abstract class StreamFile {
             }
             stream = null;
         }
+        if (currentFile != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // we are the hook
+            }
+            archiver.onSegmentClosed(currentFile);
+            currentFile = null;
+        }
+    }
+
+    /**
+     * Closes current file if rotation policy says so, invoked before appending
+     */
+    protected synchronized void rotateIfNeeded() {
+        if (currentFile != null && archiver.getPolicy().isRotationNeeded(getSegmentSize(), segmentStart, System.currentTimeMillis()))
+            close();
+    }
+
+    /**
+     * @return bytes written into current file
+     */
+    protected long getSegmentSize() {
+        return counter == null ? 0 : counter.count;
     }
 
     protected void createFileWriter(String fileName) throws FileNotFoundException {
-        FileOutputStream fileOutputStream = new FileOutputStream(fileName);
-        stream = new LogicdataOutputStream(fileOutputStream);
-        writer = new OutputStreamWriter(fileOutputStream);
+        OutputStream outputStream = createOutputStream(fileName);
+        stream = new LogicdataOutputStream(outputStream);
+        writer = new OutputStreamWriter(outputStream);
+    }
+
+    /**
+     * @param fileName name of first file, following files get "_N" suffix
+     */
+    protected synchronized OutputStream createOutputStream(String fileName) throws FileNotFoundException {
+        File file = new File(getSegmentFileName(fileName, segment++));
+        counter = new CountingOutputStream(new FileOutputStream(file));
+        currentFile = file;
+        segmentStart = System.currentTimeMillis();
+        archiver.onSegmentStarted(file);
+        try {
+            // fragile or just scary: here we install a JVM level callback for gradual file footer
+            Runtime.getRuntime().addShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // already shutting down
+        }
+        return counter;
+    }
+
+    static String getSegmentFileName(String fileName, int segment) {
+        if (segment == 0)
+            return fileName;
+        int dot = fileName.lastIndexOf('.');
+        if (dot <= fileName.lastIndexOf('/'))
+            return fileName + "_" + segment;
+        return fileName.substring(0, dot) + "_" + segment + fileName.substring(dot);
+    }
+
+    /**
+     * Writes and clears {@link #text}
+     */
+    protected void writeText() throws IOException {
+        write(writer, text, chars);
+        text.setLength(0);
+    }
+
+    /**
+     * Same as {@code writer.write(text.toString())} without a copy of the whole text
+     */
+    static void write(Writer writer, StringBuilder text, char[] buffer) throws IOException {
+        for (int offset = 0; offset < text.length(); offset += buffer.length) {
+            int length = Math.min(buffer.length, text.length() - offset);
+            text.getChars(offset, offset + length, buffer, 0);
+            writer.write(buffer, 0, length);
+        }
     }
 
     protected void writeFooter() throws IOException {
     }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
 }
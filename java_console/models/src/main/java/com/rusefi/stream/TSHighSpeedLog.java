@@ -1,10 +1,9 @@
 package com.rusefi.stream;
 
-import com.rusefi.composite.CompositeEvent;
+import com.rusefi.composite.CompositeEventBatch;
 import com.rusefi.core.rusEFIVersion;
 
 import java.io.*;
-import java.util.List;
 
 public class TSHighSpeedLog extends StreamFile {
     private final String fileName;
@@ -21,22 +20,27 @@ public class TSHighSpeedLog extends StreamFile {
     }
 
     @Override
-    public void append(List<CompositeEvent> events) {
+    public void append(CompositeEventBatch events) {
+        rotateIfNeeded();
         try {
             if (writer == null) {
                 createFileWriter(fileName);
                 writeHeader(writer);
             }
-            for (CompositeEvent event : events) {
-                writer.write(event.isPrimaryTriggerAsInt() + "," + event.isSecondaryTriggerAsInt() + "," + event.isTrgAsInt() + "," + event.isSyncAsInt() + ",");
-                long delta = event.getTimestamp() - prevTime;
-                writer.write(event.getTimestamp() / 1000.0 + "," + delta / 1000.0);
-
-                writer.write("," + event.isCoil() + "," + event.isInjector());
-
-                writer.write("\n");
-                prevTime = event.getTimestamp();
+            for (int i = 0; i < events.size(); i++) {
+                long timestamp = events.getTimestamp(i);
+                long delta = timestamp - prevTime;
+                text.append(events.isPrimaryTriggerAsInt(i)).append(',')
+                    .append(events.isSecondaryTriggerAsInt(i)).append(',')
+                    .append(events.isTrgAsInt(i)).append(',')
+                    .append(events.isSyncAsInt(i)).append(',')
+                    .append(timestamp / 1000.0).append(',')
+                    .append(delta / 1000.0).append(',')
+                    .append(events.isCoil(i)).append(',')
+                    .append(events.isInjector(i)).append('\n');
+                prevTime = timestamp;
             }
+            writeText();
             writer.flush();
 
         } catch (IOException e) {
@@ -1,12 +1,11 @@
 package com.rusefi.stream;
 
-import com.rusefi.composite.CompositeEvent;
+import com.rusefi.composite.CompositeEventBatch;
 
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Date;
-import java.util.List;
 
 /**
  * https://en.wikipedia.org/wiki/Value_change_dump
@@ -48,36 +47,45 @@ public class VcdStreamFile extends StreamFile {
                 "$dumpvars\n");
     }
 
-    public static void appendEvents(List<CompositeEvent> events, Writer writer) throws IOException {
-        for (CompositeEvent event : events) {
-            writer.write("#" + event.getTimestamp() + "\n");
-            writer.write(event.isPrimaryTriggerAsInt() + TAG_PRIMARY + "\n");
-            writer.write(event.isSecondaryTriggerAsInt() + TAG_SECONDARY + "\n");
-            writer.write(event.isTrgAsInt() + TAG_TRG + "\n");
-            writer.write(event.isSyncAsInt() + TAG_SYNC + "\n");
-            writer.write(event.isCoil() + TAG_COIL + "\n");
-            writer.write(event.isInjector() + TAG_INJ + "\n");
-        }
+    public static void appendEvents(CompositeEventBatch events, Writer writer) throws IOException {
+        StringBuilder text = new StringBuilder(events.size() * 24);
+        appendEvents(events, text);
+        write(writer, text, new char[Math.min(text.length(), 8192)]);
         writer.flush();
     }
 
-    public static void writeVCD(List<CompositeEvent> events, Writer writer, Date date) throws IOException {
+    private static void appendEvents(CompositeEventBatch events, StringBuilder text) {
+        for (int i = 0; i < events.size(); i++) {
+            text.append('#').append(events.getTimestamp(i)).append('\n');
+            text.append(events.isPrimaryTriggerAsInt(i)).append(TAG_PRIMARY).append('\n');
+            text.append(events.isSecondaryTriggerAsInt(i)).append(TAG_SECONDARY).append('\n');
+            text.append(events.isTrgAsInt(i)).append(TAG_TRG).append('\n');
+            text.append(events.isSyncAsInt(i)).append(TAG_SYNC).append('\n');
+            text.append(events.isCoil(i)).append(TAG_COIL).append('\n');
+            text.append(events.isInjector(i)).append(TAG_INJ).append('\n');
+        }
+    }
+
+    public static void writeVCD(CompositeEventBatch events, Writer writer, Date date) throws IOException {
         writeHeader(writer, date);
         appendEvents(events, writer);
     }
 
-    public static void writeVCD(List<CompositeEvent> events, FileWriter fileWriter) throws IOException {
+    public static void writeVCD(CompositeEventBatch events, FileWriter fileWriter) throws IOException {
         writeVCD(events, fileWriter, new Date());
     }
 
     @Override
-    public void append(List<CompositeEvent> events) {
+    public void append(CompositeEventBatch events) {
+        rotateIfNeeded();
         try {
             if (writer == null) {
                 createFileWriter(fileName);
                 writeHeader(writer, new Date());
             }
-            appendEvents(events, writer);
+            appendEvents(events, text);
+            writeText();
+            writer.flush();
         } catch (IOException e) {
             // ignoring this one
         }
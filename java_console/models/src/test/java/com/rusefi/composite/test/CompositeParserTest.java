@@ -1,24 +1,58 @@
 package com.rusefi.composite.test;
 
+import com.rusefi.composite.CompositeEventBatch;
 import com.rusefi.stream.VcdStreamFile;
-import com.rusefi.composite.CompositeEvent;
 import com.rusefi.composite.CompositeParser;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.Date;
-import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class CompositeParserTest {
     @Test
     public void testParseAndExportToVCD() throws IOException {
         byte[] input = {0, 1, 110, -101, 53, 58, 1, 110, -86, -43, 42, 1, 110, -78, 14, 10, 1, 110, -74, -67, 8, 1, 110, -23, -30, 9, 1};
 
-        List<CompositeEvent> events = CompositeParser.parse(input);
+        CompositeEventBatch events = new CompositeEventBatch();
+        new CompositeParser().parse(input, events);
+        assertEquals(5, events.size());
+        assertEquals(0x016E9B35, events.getTimestamp(0));
+        assertEquals(58, events.getFlags(0));
+        assertEquals(0, events.isPrimaryTriggerAsInt(0));
+        assertEquals(1, events.isSecondaryTriggerAsInt(0));
+        assertEquals(1, events.isCoil(0));
+        assertEquals(1, events.isInjector(0));
+        assertEquals(1, events.isPrimaryTriggerAsInt(4));
+        assertEquals(1, events.isSyncAsInt(4));
 
         StringWriter writer = new StringWriter();
         //FileWriter writer = new FileWriter("rusEFI.vcd");
         VcdStreamFile.writeVCD(events, writer, new Date(1590847552574L));
+        assertTrue(writer.toString().endsWith("#24046050\n1t\n0s\n0r\n1y\n0c\n0i\n"), writer.toString());
+    }
+
+    @Test
+    public void testWrapAroundPerSession() {
+        byte[] beforeWrap = {0, -1, -1, -1, -16, 1};
+        byte[] afterWrap = {0, 0, 0, 0, 16, 1, 0, 0, 1, 0, 1};
+
+        CompositeParser first = new CompositeParser();
+        CompositeParser second = new CompositeParser();
+        CompositeEventBatch events = new CompositeEventBatch(1);
+
+        first.parse(beforeWrap, events);
+        assertEquals(0xFFFFFFF0L, events.getTimestamp(0));
+        first.parse(afterWrap, events);
+        assertEquals(2, events.size());
+        assertEquals(0x100000010L, events.getTimestamp(0));
+        assertEquals(0x100000100L, events.getTimestamp(1));
+
+        // another connection is not affected by wrap around seen by first one
+        second.parse(afterWrap, events);
+        assertEquals(0x10L, events.getTimestamp(0));
     }
 }
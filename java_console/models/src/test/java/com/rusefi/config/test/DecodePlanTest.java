@@ -0,0 +1,81 @@
+package com.rusefi.config.test;
+
+import com.opensr5.ConfigurationImage;
+import com.rusefi.config.DecodePlan;
+import com.rusefi.config.Field;
+import com.rusefi.config.FieldType;
+import com.rusefi.config.generated.AcControl;
+import com.rusefi.config.generated.TsOutputs;
+import com.rusefi.config.generated.VariableRegistryValues;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see DecodePlan
+ */
+public class DecodePlanTest {
+    @Test
+    public void testSameAsField() {
+        DecodePlan plan = DecodePlan.compile(TsOutputs.VALUES);
+        assertEquals(TsOutputs.VALUES.length, plan.size());
+        assertTrue(plan.getBlockSize() <= VariableRegistryValues.TS_TOTAL_OUTPUT_SIZE);
+
+        byte[] response = new byte[1 + VariableRegistryValues.TS_TOTAL_OUTPUT_SIZE];
+        new Random(1).nextBytes(response);
+        double[] values = new double[plan.size()];
+        plan.decode(response, 1, values);
+
+        ConfigurationImage outputs = new ConfigurationImage(Arrays.copyOfRange(response, 1, response.length));
+        for (int i = 0; i < plan.size(); i++) {
+            Field field = plan.getField(i);
+            if (field.getType() == FieldType.STRING)
+                continue;
+            double expected = field.getValue(outputs, field.getScale());
+            assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(values[i]), field.getName());
+            assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(plan.decode(response, 1, i)), field.getName());
+        }
+    }
+
+    /**
+     * Live data structures sit inside output channels block at their base offset: plan decodes the whole block by
+     * total offset while {@link Field#getValue} expects an image of the structure itself
+     */
+    @Test
+    public void testNestedStructure() {
+        int base = AcControl.ACBUTTONSTATE.getTotalOffset();
+        assertTrue(base > 0);
+        DecodePlan plan = DecodePlan.compile(AcControl.VALUES);
+
+        byte[] response = new byte[1 + VariableRegistryValues.TS_TOTAL_OUTPUT_SIZE];
+        new Random(2).nextBytes(response);
+        double[] values = new double[plan.size()];
+        plan.decode(response, 1, values);
+
+        ConfigurationImage structure = new ConfigurationImage(Arrays.copyOfRange(response, 1 + base, response.length));
+        for (int i = 0; i < plan.size(); i++) {
+            Field field = plan.getField(i);
+            if (field.getType() == FieldType.STRING)
+                continue;
+            double expected = field.getValue(structure, field.getScale());
+            assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(values[i]), field.getName());
+        }
+    }
+
+    @Test
+    public void testIndexOf() {
+        DecodePlan plan = DecodePlan.compile(TsOutputs.VALUES);
+        int index = plan.indexOf("rpmValue");
+        assertSame(TsOutputs.RPMVALUE, plan.getField(index));
+        assertEquals(-1, plan.indexOf("noSuchChannel"));
+    }
+
+    @Test
+    public void testShortBlock() {
+        DecodePlan plan = DecodePlan.compile(TsOutputs.VALUES);
+        assertThrows(IllegalArgumentException.class, () -> plan.decode(new byte[10], 1, new double[plan.size()]));
+    }
+}
@@ -0,0 +1,81 @@
+package com.rusefi.core.test;
+
+import com.rusefi.config.generated.VariableRegistryValues;
+import com.rusefi.core.FrameSubscription;
+import com.rusefi.core.Sensor;
+import com.rusefi.core.SensorCentral;
+import com.rusefi.core.SensorSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see FrameSubscription
+ */
+public class FrameSubscriptionTest {
+    private final byte[] response = new byte[1 + VariableRegistryValues.TS_TOTAL_OUTPUT_SIZE];
+
+    private void grabFrame(Sensor sensor, int value) {
+        response[1 + sensor.getField().getTotalOffset()] = (byte) value;
+        SensorCentral.getInstance().grabSensorValues(response);
+    }
+
+    @Test
+    public void testCoalescing() {
+        // SensorCentral is shared: start from known values
+        SensorCentral.getInstance().grabSensorValues(response);
+        List<Runnable> queue = new ArrayList<>();
+        List<SensorSnapshot> delivered = new ArrayList<>();
+        FrameSubscription subscription = SensorCentral.getInstance().addFrameListener(null, queue::add, delivered::add);
+        try {
+            grabFrame(Sensor.RPMValue, 1);
+            long firstVersion = SensorCentral.getInstance().getVersion();
+            grabFrame(Sensor.RPMValue, 1);
+            grabFrame(Sensor.VBATT, 1);
+            // slow listener did not get to the first frame yet
+            assertEquals(1, queue.size());
+            assertEquals(2, subscription.getSkippedFrames());
+
+            queue.remove(0).run();
+            assertEquals(1, delivered.size());
+            SensorSnapshot snapshot = delivered.get(0);
+            assertEquals(firstVersion + 2, snapshot.getVersion());
+            // change from the skipped frame is still reported
+            assertTrue(snapshot.isChanged(Sensor.RPMValue));
+            assertTrue(snapshot.isChanged(Sensor.VBATT));
+            assertFalse(snapshot.isChanged(Sensor.CLT));
+
+            grabFrame(Sensor.VBATT, 1);
+            assertEquals(1, queue.size());
+            queue.remove(0).run();
+            assertFalse(delivered.get(1).isChanged(Sensor.RPMValue));
+        } finally {
+            subscription.remove();
+        }
+        grabFrame(Sensor.VBATT, 2);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testSensorsOfInterest() {
+        List<SensorSnapshot> delivered = new ArrayList<>();
+        FrameSubscription subscription = SensorCentral.getInstance().addFrameListener(EnumSet.of(Sensor.CLT), Runnable::run, delivered::add);
+        try {
+            assertTrue(SensorCentral.getInstance().getSubscribedSensors().contains(Sensor.CLT));
+
+            grabFrame(Sensor.CLT, 3);
+            assertEquals(1, delivered.size());
+            assertEquals(SensorCentral.getInstance().getValue(Sensor.CLT), delivered.get(0).getValue(Sensor.CLT));
+
+            grabFrame(Sensor.VBATT, 3);
+            assertEquals(1, delivered.size());
+        } finally {
+            subscription.remove();
+        }
+        assertFalse(SensorCentral.getInstance().getSubscribedSensors().contains(Sensor.CLT));
+    }
+}
@@ -0,0 +1,84 @@
+package com.rusefi.core.test;
+
+import com.rusefi.config.generated.VariableRegistryValues;
+import com.rusefi.core.ISensorHolder;
+import com.rusefi.core.Sensor;
+import com.rusefi.core.SensorsHolder;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see SensorsHolder
+ */
+public class SensorsHolderTest {
+    private static byte[] createResponse() {
+        return new byte[1 + VariableRegistryValues.TS_TOTAL_OUTPUT_SIZE];
+    }
+
+    @Test
+    public void testSetValue() {
+        SensorsHolder holder = new SensorsHolder();
+        assertTrue(Double.isNaN(holder.getValue(Sensor.CLT)));
+
+        // first value is always an update, even NaN
+        assertTrue(holder.setValue(Double.NaN, Sensor.CLT));
+        assertFalse(holder.setValue(Double.NaN, Sensor.CLT));
+        assertTrue(holder.setValue(0.0, Sensor.CLT));
+        assertFalse(holder.setValue(0.0, Sensor.CLT));
+        assertTrue(holder.setValue(-0.0, Sensor.CLT));
+        assertEquals(-0.0, holder.getValue(Sensor.CLT));
+    }
+
+    @Test
+    public void testFrames() {
+        SensorsHolder holder = new SensorsHolder();
+        byte[] response = createResponse();
+        response[1 + Sensor.RPMValue.getField().getTotalOffset()] = (byte) 0xE8;
+        response[1 + Sensor.RPMValue.getField().getTotalOffset() + 1] = 0x03;
+
+        holder.grabSensorValues(response);
+        assertEquals(1, holder.getVersion());
+        assertEquals(1000, holder.getValue(Sensor.RPMValue));
+        assertTrue(holder.isChanged(Sensor.RPMValue));
+        assertTrue(holder.isChanged(Sensor.CLT));
+
+        response[1 + Sensor.RPMValue.getField().getTotalOffset()] = (byte) 0xE9;
+        holder.grabSensorValues(response);
+        assertEquals(2, holder.getVersion());
+        assertEquals(1001, holder.getValue(Sensor.RPMValue));
+        assertTrue(holder.isChanged(Sensor.RPMValue));
+        assertFalse(holder.isChanged(Sensor.CLT));
+
+        holder.grabSensorValues(response);
+        assertEquals(3, holder.getVersion());
+        assertFalse(holder.isChanged(Sensor.RPMValue));
+    }
+
+    @Test
+    public void testDecodingMatchesByteBuffer() {
+        byte[] response = createResponse();
+        new Random(1).nextBytes(response);
+        for (Sensor sensor : Sensor.values()) {
+            if (sensor.getType() == null)
+                continue;
+            double expected = sensor.getValueForChannel(ISensorHolder.getByteBuffer(response, sensor.name(), sensor.getField().getTotalOffset())) * sensor.getScale();
+            assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(ISensorHolder.getSensorValue(response, sensor)), sensor.name());
+        }
+    }
+
+    @Test
+    public void testFrameDecodingMatchesSensor() {
+        byte[] response = createResponse();
+        new Random(2).nextBytes(response);
+        SensorsHolder holder = new SensorsHolder();
+        holder.grabSensorValues(response);
+        for (Sensor sensor : Sensor.values()) {
+            if (sensor.getType() == null)
+                continue;
+            assertEquals(Double.doubleToLongBits(ISensorHolder.getSensorValue(response, sensor)), Double.doubleToLongBits(holder.getValue(sensor)), sensor.name());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.rusefi.sensor_logs.test;
+
+import com.rusefi.core.Sensor;
+import com.rusefi.sensor_logs.AsyncLogWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see AsyncLogWriter
+ */
+public class AsyncLogWriterTest {
+    @Test
+    public void testHeaderAndRecords() throws IOException {
+        File file = File.createTempFile("async_log", ".mlg");
+        try {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            byte[] header = {'M', 'L', 'V', 'L', 'G', 0};
+            expected.write(header);
+
+            AsyncLogWriter writer = new AsyncLogWriter(file.getPath(), header);
+            for (int i = 0; i < 30000; i++) {
+                ByteBuffer buffer = writer.beginRecord(8);
+                assertNotNull(buffer);
+                buffer.putInt(i);
+                buffer.put((byte) i);
+                writer.endRecord();
+                expected.write(new byte[]{(byte) (i >> 24), (byte) (i >> 16), (byte) (i >> 8), (byte) i, (byte) i});
+            }
+            writer.close();
+
+            assertEquals(0, writer.getDroppedRecords());
+            assertEquals(expected.size(), writer.getWrittenBytes());
+            assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+            assertThrows(IllegalStateException.class, () -> writer.beginRecord(1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFlushWithoutNextRecord() throws Exception {
+        File file = File.createTempFile("async_log", ".mlg");
+        AsyncLogWriter writer = new AsyncLogWriter(file.getPath(), new byte[]{1});
+        try {
+            writer.beginRecord(1).put((byte) 2);
+            writer.endRecord();
+            // no more records are coming, writer thread has to flush by itself
+            long deadline = System.currentTimeMillis() + 5000;
+            while (writer.getWrittenBytes() < 2 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertEquals(2, writer.getWrittenBytes());
+        } finally {
+            writer.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testOpenFailure() throws Exception {
+        AsyncLogWriter writer = new AsyncLogWriter("failing.mlg", new byte[]{1}, () -> {
+            throw new IOException("disk is gone");
+        });
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            IOException failure = null;
+            while (failure == null && System.currentTimeMillis() < deadline) {
+                try {
+                    ByteBuffer buffer = writer.beginRecord(1);
+                    buffer.put((byte) 2);
+                    writer.endRecord();
+                    Thread.sleep(10);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            assertNotNull(failure);
+            assertEquals("disk is gone", failure.getCause().getMessage());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testSensorEncoding() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        for (Sensor sensor : new Sensor[]{Sensor.RPMValue, Sensor.CLT, Sensor.TPS, Sensor.FIRMWARE_VERSION}) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            sensor.writeToLog(new DataOutputStream(baos), -1234.5);
+            buffer.clear();
+            sensor.writeToLog(buffer, -1234.5);
+            buffer.flip();
+            byte[] actual = new byte[buffer.remaining()];
+            buffer.get(actual);
+            assertArrayEquals(baos.toByteArray(), actual, sensor.name());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.rusefi.sensor_logs.test;
+
+import com.rusefi.sensor_logs.ChannelStats;
+import com.rusefi.sensor_logs.LogFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see ChannelStats
+ * @see LogFilter
+ */
+public class ChannelStatsTest {
+    @Test
+    public void testPercentiles() {
+        ChannelStats left = new ChannelStats("RPM", 7000);
+        ChannelStats right = new ChannelStats("RPM", 7000);
+        for (int rpm = 1; rpm <= 8000; rpm++)
+            (rpm % 2 == 0 ? left : right).add(rpm, 0.01);
+        left.add(Double.NaN, 1);
+        left.merge(right);
+
+        assertEquals(8000, left.getCount());
+        assertEquals(1, left.getMin());
+        assertEquals(8000, left.getMax());
+        assertEquals(4000.5, left.getMean(), 1e-9);
+        assertEquals(4000, left.getPercentile(50), 4000 * 0.016);
+        assertEquals(7920, left.getPercentile(99), 7920 * 0.016);
+        assertEquals(1, left.getPercentile(0));
+        assertEquals(8000, left.getPercentile(100));
+        assertEquals(10, left.getTimeAbove(), 1e-6);
+    }
+
+    @Test
+    public void testNegativeValues() {
+        ChannelStats stats = new ChannelStats("CLT", Double.NaN);
+        for (int clt = -40; clt <= 40; clt++)
+            stats.add(clt, 1);
+        assertEquals(0, stats.getPercentile(50), 1e-9);
+        assertEquals(-36, stats.getPercentile(5), 36 * 0.016);
+        assertEquals(0, stats.getTimeAbove());
+        assertTrue(Double.isNaN(new ChannelStats("x", Double.NaN).getPercentile(50)));
+    }
+
+    @Test
+    public void testFilterSyntax() {
+        LogFilter filter = LogFilter.parse("RPMValue > 6000 && (CLT >= 100 || !(\"Boost PID pTerm\" < -1.5e1))");
+        Map<String, Double> expected = new HashMap<>();
+        expected.put("RPMValue", 6000.0);
+        expected.put("CLT", 100.0);
+        assertEquals(expected, filter.getLowerBounds());
+
+        assertThrows(IllegalArgumentException.class, () -> LogFilter.parse("RPMValue >"));
+        assertThrows(IllegalArgumentException.class, () -> LogFilter.parse("RPMValue > 1 &&"));
+        assertThrows(IllegalArgumentException.class, () -> LogFilter.parse("(RPMValue > 1"));
+        assertThrows(IllegalArgumentException.class, () -> LogFilter.parse("RPMValue 1"));
+    }
+}
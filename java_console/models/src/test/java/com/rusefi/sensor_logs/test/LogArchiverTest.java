@@ -0,0 +1,105 @@
+package com.rusefi.sensor_logs.test;
+
+import com.rusefi.sensor_logs.LogArchiver;
+import com.rusefi.sensor_logs.RotationPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see LogArchiver
+ */
+public class LogArchiverTest {
+    @Test
+    public void testRotationPolicy() {
+        RotationPolicy policy = new RotationPolicy(1000, 60_000, 0);
+        assertFalse(policy.isRotationNeeded(999, 0, 59_999));
+        assertTrue(policy.isRotationNeeded(1000, 0, 59_999));
+        assertTrue(policy.isRotationNeeded(0, 0, 60_000));
+        assertFalse(new RotationPolicy(0, 0, 0).isRotationNeeded(Long.MAX_VALUE, 0, Long.MAX_VALUE));
+        assertFalse(RotationPolicy.DEFAULT.isRotationNeeded(Long.MAX_VALUE, 0, Long.MAX_VALUE), "rotation is opt-in");
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        File folder = Files.createTempDirectory("archive").toFile();
+        try {
+            LogArchiver archiver = new LogArchiver(new RotationPolicy(0, 0, 0), true);
+            File closed = write(folder, "rusEFI_gauges_3.msl", 1000, 3);
+            archiver.onSegmentStarted(closed);
+
+            archiver.onSegmentClosed(closed).get();
+            File archived = new File(folder, closed.getName() + ".gz");
+            assertFalse(closed.exists());
+            assertTrue(archived.exists());
+            try (InputStream in = new GZIPInputStream(new FileInputStream(archived))) {
+                byte[] content = new byte[1000];
+                int length = 0;
+                while (length < content.length) {
+                    int read = in.read(content, length, content.length - length);
+                    assertTrue(read > 0);
+                    length += read;
+                }
+                assertEquals(-1, in.read());
+                assertEquals('x', content[999]);
+            }
+        } finally {
+            for (File f : folder.listFiles())
+                f.delete();
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void testQuota() throws Exception {
+        File folder = Files.createTempDirectory("archive").toFile();
+        try {
+            LogArchiver archiver = new LogArchiver(new RotationPolicy(0, 0, 2500), false);
+            File previousSession = write(folder, "rusEFI_gauges_0.msl", 5000, 0);
+            File active = write(folder, "rusEFI_gauges_1.msl", 1000, 1);
+            File oldest = write(folder, "rusEFI_gauges_2.msl", 1000, 2);
+            File closed = write(folder, "rusEFI_gauges_3.msl", 1000, 3);
+            File other = write(folder, "efi_log_1.log", 5000, 0);
+            archiver.onSegmentStarted(active);
+            archiver.onSegmentStarted(oldest);
+
+            // files of earlier sessions are not counted
+            archiver.onSegmentClosed(oldest).get();
+            assertTrue(oldest.exists());
+
+            archiver.onSegmentStarted(closed);
+            archiver.onSegmentClosed(closed).get();
+            // oldest closed file of this session goes first, file still being written, files of earlier sessions and
+            // foreign files are never deleted
+            Set<String> names = new HashSet<>(Arrays.asList(folder.list()));
+            assertFalse(names.contains(oldest.getName()), names.toString());
+            assertTrue(names.contains(active.getName()));
+            assertTrue(names.contains(closed.getName()));
+            assertTrue(names.contains(previousSession.getName()));
+            assertTrue(names.contains(other.getName()));
+        } finally {
+            for (File f : folder.listFiles())
+                f.delete();
+            folder.delete();
+        }
+    }
+
+    private static File write(File folder, String name, int size, int age) throws IOException {
+        File file = new File(folder, name);
+        byte[] content = new byte[size];
+        Arrays.fill(content, (byte) 'x');
+        Files.write(file.toPath(), content);
+        assertTrue(file.setLastModified(1_000_000_000_000L + age * 1000L));
+        return file;
+    }
+}
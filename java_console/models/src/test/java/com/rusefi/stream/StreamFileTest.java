@@ -0,0 +1,77 @@
+package com.rusefi.stream;
+
+import com.rusefi.composite.CompositeEventBatch;
+import com.rusefi.sensor_logs.LogArchiver;
+import com.rusefi.sensor_logs.RotationPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see StreamFile
+ */
+public class StreamFileTest {
+    @Test
+    public void testSegmentFileName() {
+        assertEquals("logs/a.vcd", StreamFile.getSegmentFileName("logs/a.vcd", 0));
+        assertEquals("logs/a_2.vcd", StreamFile.getSegmentFileName("logs/a.vcd", 2));
+        assertEquals("logs.d/a_1", StreamFile.getSegmentFileName("logs.d/a", 1));
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        File folder = Files.createTempDirectory("stream").toFile();
+        LogArchiver archiver = new LogArchiver(new RotationPolicy(100, 0, 0), false);
+        String fileName = new File(folder, "rusEFI_trigger_log_.csv").getPath();
+        StreamFile file = new StreamFile(archiver) {
+            @Override
+            public void append(CompositeEventBatch events) {
+                rotateIfNeeded();
+                try {
+                    if (writer == null)
+                        createFileWriter(fileName);
+                    for (int i = 0; i < events.size(); i++)
+                        writer.write(events.getTimestamp(i) + "\n");
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            protected void writeFooter() throws IOException {
+                if (writer != null)
+                    writer.write("END\n");
+            }
+        };
+        try {
+            CompositeEventBatch events = new CompositeEventBatch();
+            for (int i = 0; i < 3; i++)
+                events.add(1234567890, 0);
+            for (int i = 0; i < 25; i++)
+                file.append(events);
+            file.close();
+
+            String[] names = folder.list();
+            Arrays.sort(names);
+            // 33 bytes per append, new file every 4 appends
+            assertEquals(7, names.length, Arrays.toString(names));
+            assertEquals("rusEFI_trigger_log_.csv", names[0]);
+            assertEquals("rusEFI_trigger_log__6.csv", names[6]);
+            for (String name : names) {
+                List<String> lines = Files.readAllLines(new File(folder, name).toPath());
+                assertEquals("END", lines.get(lines.size() - 1), name);
+            }
+        } finally {
+            for (File f : folder.listFiles())
+                f.delete();
+            folder.delete();
+        }
+    }
+}
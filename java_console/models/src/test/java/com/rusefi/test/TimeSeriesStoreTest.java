@@ -0,0 +1,93 @@
+package com.rusefi.test;
+
+import com.rusefi.TimeSeriesStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeSeriesStoreTest {
+    private static TimeSeriesStore createStore(int capacity, String... channels) {
+        TimeSeriesStore store = new TimeSeriesStore(channels, capacity);
+        for (int i = 0; i < channels.length; i++)
+            store.track(i);
+        return store;
+    }
+
+    @Test
+    public void testRing() {
+        TimeSeriesStore store = createStore(3, "a", "b");
+        assertEquals(0, store.getSize());
+        assertTrue(Double.isNaN(store.getValueAt(0, 100)));
+
+        for (int i = 1; i <= 5; i++)
+            store.append(i * 10, new double[]{i, -i});
+        assertEquals(3, store.getSize());
+        assertEquals(30, store.getFirstTime());
+        assertEquals(50, store.getLastTime());
+
+        assertArrayEquals(new double[]{3, 4, 5}, store.getValues(0, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertArrayEquals(new double[]{-4, -5}, store.getValues(1, 35, 50));
+        assertArrayEquals(new double[0], store.getValues(1, 51, 60));
+
+        // older than everything kept
+        assertTrue(Double.isNaN(store.getValueAt(0, 25)));
+        assertEquals(3, store.getValueAt(0, 30));
+        assertEquals(4, store.getValueAt(0, 49));
+        assertEquals(5, store.getValueAt(0, 1000));
+    }
+
+    @Test
+    public void testSummaryAndIteration() {
+        TimeSeriesStore store = createStore(10, "a");
+        store.append(1, new double[]{2});
+        store.append(2, new double[]{Double.NaN});
+        store.append(3, new double[]{6});
+        store.append(4, new double[]{1});
+
+        TimeSeriesStore.Summary summary = store.getSummary(0, 1, 3);
+        assertEquals(2, summary.getCount());
+        assertEquals(2, summary.getMin());
+        assertEquals(6, summary.getMax());
+        assertEquals(4, summary.getMean());
+
+        assertEquals(0, store.getSummary(0, 5, 10).getCount());
+
+        List<Long> times = new ArrayList<>();
+        assertEquals(3, store.forEach(0, 2, 4, (timestamp, value) -> times.add(timestamp)));
+        assertEquals(3, times.size());
+        assertEquals(2L, times.get(0));
+    }
+
+    @Test
+    public void testTimeGoingBackwards() {
+        TimeSeriesStore store = createStore(10, "a");
+        store.append(100, new double[]{1});
+        // wall clock adjustment should not break ordering
+        store.append(50, new double[]{2});
+        assertEquals(100, store.getLastTime());
+        assertEquals(2, store.getValueAt(0, 100));
+    }
+
+    @Test
+    public void testOnlyTrackedChannelsAreKept() {
+        TimeSeriesStore store = new TimeSeriesStore(new String[]{"rpm", "clt"}, 10);
+        assertEquals(1, store.getChannel("clt"));
+        assertEquals(-1, store.getChannel("iat"));
+
+        store.append(1, new double[]{1000, 80});
+        store.track(store.getChannel("rpm"));
+        store.append(2, new double[]{2000, 81});
+
+        assertTrue(store.isTracked(0));
+        assertFalse(store.isTracked(1));
+        // history starts once channel is tracked
+        assertTrue(Double.isNaN(store.getValueAt(0, 1)));
+        assertEquals(2000, store.getValueAt(0, 2));
+        assertTrue(Double.isNaN(store.getValueAt(1, 2)));
+        assertEquals(0, store.getSummary(1, 1, 2).getCount());
+        assertEquals(2, store.getValues(1, 1, 2).length);
+    }
+}
@@ -34,6 +34,7 @@ public class AverageAnglePanel {
             }
         }, BorderLayout.CENTER);
 
+        SensorCentral.getInstance().addPolledSensor(Sensor.RPMValue);
         uiContext.sensorSnifferCentral.addListener(new SensorSnifferCentral.AnalogChartListener() {
                                            @Override
                                            public void onAnalogChart(String message) {
@@ -52,10 +52,11 @@ public class BenchTestPane {
 
     private Component grabPerformanceTrace() {
         JButton button = new JButton("Grab PTrace");
-        ActionListener actionListener = e -> uiContext.getLinkManager().COMMUNICATION_EXECUTOR.execute(() -> {
+        // not on communication thread: trace requests are queued there while this thread waits
+        ActionListener actionListener = e -> new Thread(() -> {
             BinaryProtocol bp = uiContext.getLinkManager().getCurrentStreamState();
             PerformanceTraceHelper.grabPerformanceTrace(button, bp);
-        });
+        }, "PTrace").start();
         button.addActionListener(actionListener);
         return UiUtils.wrap(button);
     }
@@ -7,8 +7,9 @@ import com.rusefi.config.generated.Integration;
 import com.rusefi.core.rusEFIVersion;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 /**
  * MLV .mlq binary log file
@@ -16,29 +17,55 @@ import java.util.function.Function;
  * Andrey Belomutskiy, (c) 2013-2020
  */
 public class BinarySensorLog<T extends BinaryLogEntry> implements SensorLog {
-    private final Function<T, Double> valueProvider;
-    private final Collection<T> entries;
+    /**
+     * zero byte, counter and timestamp
+     */
+    private static final int RECORD_PREFIX_SIZE = 4;
+    /**
+     * see {@link CompressedLog}
+     */
+    private static final boolean COMPRESSED = Boolean.getBoolean("compressed_sensor_log");
+
+    private final ToDoubleFunction<T> valueProvider;
+    private final List<T> entries;
     private final TimeProvider timeProvider;
+    /**
+     * prefix, up to four bytes per entry and checksum
+     */
+    private final int maxRecordSize;
+    private AsyncLogWriter writer;
     private DataOutputStream stream;
 
     private String fileName;
 
     private int counter;
+    private long startTime;
 
-    public BinarySensorLog(Function<T, Double> valueProvider, Collection<T> sensors) {
+    private boolean compressed = COMPRESSED;
+
+    public BinarySensorLog(ToDoubleFunction<T> valueProvider, Collection<T> sensors) {
         this(valueProvider, sensors, System::currentTimeMillis);
     }
 
-    public BinarySensorLog(Function<T, Double> valueProvider, Collection<T> sensors, TimeProvider timeProvider) {
+    public BinarySensorLog(ToDoubleFunction<T> valueProvider, Collection<T> sensors, TimeProvider timeProvider) {
         this.valueProvider = Objects.requireNonNull(valueProvider, "valueProvider");
-        this.entries = Objects.requireNonNull(sensors, "entries");
+        this.entries = new ArrayList<>(Objects.requireNonNull(sensors, "entries"));
         this.timeProvider = timeProvider;
+        maxRecordSize = RECORD_PREFIX_SIZE + 4 * entries.size() + 1;
     }
 
     interface TimeProvider {
         long currentTimestamp();
     }
 
+    /**
+     * @param compressed true to write .mlgz instead of .mlg, has to be invoked before first line
+     */
+    public BinarySensorLog<T> setCompressed(boolean compressed) {
+        this.compressed = compressed;
+        return this;
+    }
+
     @Override
     public double getSecondsSinceFileStart() {
         throw new UnsupportedOperationException();
@@ -46,52 +73,61 @@ public class BinarySensorLog<T extends BinaryLogEntry> implements SensorLog {
 
     @Override
     public void writeSensorLogLine() {
-        if (stream == null) {
+        if (writer == null) {
             FileLogger.createFolderIfNeeded();
-            fileName = FileLogger.DIR + "rusEFI_gauges_" + FileLog.getDate() + ".mlg";
+            fileName = FileLogger.DIR + "rusEFI_gauges_" + FileLog.getDate() + (compressed ? CompressedLog.SUFFIX : ".mlg");
 
             try {
-                stream = new DataOutputStream(new FileOutputStream(fileName));
+                ByteArrayOutputStream header = new ByteArrayOutputStream();
+                stream = new DataOutputStream(header);
                 writeHeader();
+                if (compressed) {
+                    File file = new File(fileName);
+                    writer = new AsyncLogWriter(fileName, new byte[0], () -> CompressedLogWriter.create(file, header.toByteArray()));
+                } else {
+                    writer = new AsyncLogWriter(fileName, header.toByteArray());
+                }
+                startTime = System.currentTimeMillis();
+                LogArchiver.getInstance().onSegmentStarted(new File(fileName));
             } catch (Throwable e) {
                 e.printStackTrace();
+                writer = null;
+                return;
+            } finally {
                 stream = null;
             }
         }
 
-        if (stream != null) {
-            try {
-                stream.write(0);
-                stream.write(counter++);
-                stream.writeShort((int) (timeProvider.currentTimestamp() * 100));
-
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                DataOutputStream dos = new DataOutputStream(baos);
-
-                for (T sensor : entries) {
-                    Double value = valueProvider.apply(sensor);
-                    if (value == null)
-                        throw new NullPointerException("No value for " + sensor);
-                    sensor.writeToLog(dos, value);
-                }
-
-                byte[] byteArray = baos.toByteArray();
-                byte checkSum = 0;
-                for (byte b : byteArray) {
-                    checkSum += b;
-                }
-                stream.write(byteArray);
-                stream.write(checkSum);
-
-                if (counter % 20 == 0) {
-                    // for not flush on each block of data but still flush
-                    stream.flush();
-                }
+        int index = counter++;
+        ByteBuffer buffer;
+        try {
+            buffer = writer.beginRecord(maxRecordSize);
+        } catch (IOException e) {
+            // same as failing to create the file: next line starts a new one
+            e.printStackTrace();
+            close();
+            return;
+        }
+        if (buffer == null) {
+            // writer is behind, record is counted as dropped
+            return;
+        }
+        buffer.put((byte) 0);
+        buffer.put((byte) index);
+        buffer.putShort((short) (timeProvider.currentTimestamp() * 100));
+
+        int dataStart = buffer.position();
+        for (int i = 0; i < entries.size(); i++) {
+            T sensor = entries.get(i);
+            sensor.writeToLog(buffer, valueProvider.applyAsDouble(sensor));
+        }
 
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        byte checkSum = 0;
+        for (int i = dataStart; i < buffer.position(); i++) {
+            checkSum += buffer.get(i);
         }
+        buffer.put(checkSum);
+        writer.endRecord();
     }
 
     private void writeHeader() throws IOException {
@@ -119,8 +155,10 @@ public class BinarySensorLog<T extends BinaryLogEntry> implements SensorLog {
         stream.writeInt(headerSize);
 
         // 0010h Data begin index - begins immediately after the header text
+        // File format note: consoles before the memory-mapped reader wrote headerSize here, same as info data start, so
+        // readers had to skip header text on their own. BinarySensorLogReader accepts both, see its open()
         int headerWithTextSize = headerSize + headerText.length();
-        stream.writeInt(headerSize);
+        stream.writeInt(headerWithTextSize);
 
         // 0014h Record length
         stream.writeShort(fieldsDataSize);
@@ -156,8 +194,8 @@ public class BinarySensorLog<T extends BinaryLogEntry> implements SensorLog {
 
     @Override
     public void close() {
-        close(stream);
-        stream = null;
+        close(writer);
+        writer = null;
     }
 
     public static void close(Closeable closeable) {
@@ -174,6 +212,20 @@ public class BinarySensorLog<T extends BinaryLogEntry> implements SensorLog {
         return fileName;
     }
 
+    /**
+     * @return bytes written so far, before compression in case of .mlgz
+     */
+    public long getSize() {
+        return writer == null ? 0 : writer.getWrittenBytes();
+    }
+
+    /**
+     * @return when file was started, zero if it was not started yet
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
     private void writeLine(DataOutputStream stream, String name, int length) throws IOException {
         for (int i = 0; i < Math.min(name.length(), length); i++) {
             stream.write(name.charAt(i));
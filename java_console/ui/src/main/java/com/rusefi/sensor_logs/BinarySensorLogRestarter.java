@@ -12,6 +12,7 @@ import com.rusefi.tools.online.UploadResult;
 import com.rusefi.ui.AuthTokenPanel;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -44,6 +45,10 @@ public class BinarySensorLogRestarter implements SensorLog {
             // restart logging 5 seconds after last positive RPM
             close();
         }
+        if (logger != null && LogArchiver.getInstance().getPolicy().isRotationNeeded(logger.getSize(), logger.getStartTime(), System.currentTimeMillis())) {
+            // long session, continue in a new file
+            closeLogger(false);
+        }
 
         if (logger == null) {
             Collection<Sensor> sensorsForLogging = filterOutSensorsWithoutType(SensorLogger.SENSORS);
@@ -59,13 +64,27 @@ public class BinarySensorLogRestarter implements SensorLog {
 
     @Override
     public synchronized void close() {
+        closeLogger(true);
+        seenRunning = 0;
+    }
+
+    /**
+     * @param isSessionEnd true to upload the file, segments of a long session are only archived, see
+     *                     {@link RotationPolicy#DEFAULT}
+     */
+    private void closeLogger(boolean isSessionEnd) {
         if (logger != null) {
             logger.close();
             String fileName = logger.getFileName();
-            scheduleUpload(fileName);
+            if (fileName != null) {
+                if (isSessionEnd) {
+                    scheduleUpload(fileName);
+                } else {
+                    LogArchiver.getInstance().onSegmentClosed(new File(fileName));
+                }
+            }
         }
         logger = null;
-        seenRunning = 0;
     }
 
     private void scheduleUpload(String fileName) {
@@ -73,8 +92,25 @@ public class BinarySensorLogRestarter implements SensorLog {
         UPLOAD_EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
-                UploadResult result = Online.upload(new File(fileName), AuthTokenPanel.getAuthToken());
-                System.out.println(result.toString());
+                File file = new File(fileName);
+                File mlg = null;
+                try {
+                    if (fileName.endsWith(CompressedLog.SUFFIX)) {
+                        // rusEFI Online only knows classic format
+                        mlg = File.createTempFile("rusEFI_gauges", ".mlg");
+                        CompressedLog.decompress(file, mlg);
+                        file = mlg;
+                    }
+                    UploadResult result = Online.upload(file, AuthTokenPanel.getAuthToken());
+                    System.out.println(result.toString());
+                } catch (IOException e) {
+                    log.error("Error converting " + fileName, e);
+                } finally {
+                    if (mlg != null)
+                        mlg.delete();
+                    // compress and apply disk quota only once uploaded
+                    LogArchiver.getInstance().onSegmentClosed(new File(fileName));
+                }
             }
         });
     }
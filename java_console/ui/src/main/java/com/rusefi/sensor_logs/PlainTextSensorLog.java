@@ -11,6 +11,7 @@ import com.rusefi.core.SensorCentral;
 import com.rusefi.ui.UIContext;
 import com.rusefi.ui.config.ConfigUiField;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
@@ -23,14 +24,23 @@ import java.io.Writer;
 public class PlainTextSensorLog implements SensorLog {
     private final UIContext uiContext;
     private Writer logFile;
+    private File file;
 
     private long fileStartTime;
+    /**
+     * characters written into current file
+     */
+    private long fileSize;
 
     public PlainTextSensorLog(UIContext uiContext) {
         this.uiContext = uiContext;
     }
 
     private void startIfNeeded() {
+        if (logFile != null && LogArchiver.getInstance().getPolicy().isRotationNeeded(fileSize, fileStartTime, System.currentTimeMillis())) {
+            // long session, continue in a new file
+            close();
+        }
         if (logFile == null) {
             /*
              * we only start file header once we have first bunch of data
@@ -44,8 +54,11 @@ public class PlainTextSensorLog implements SensorLog {
         String fileName = FileLogger.DIR + "rusEFI_gauges_" + FileLog.getDate() + ".msl";
 
         fileStartTime = System.currentTimeMillis();
+        fileSize = 0;
         try {
-            logFile = new FileWriter(fileName);
+            file = new File(fileName);
+            logFile = new FileWriter(file);
+            LogArchiver.getInstance().onSegmentStarted(file);
 
             logFile.write("\"rusEFI console" + Launcher.CONSOLE_VERSION + " firmware " + Launcher.firmwareVersion.get() + "\"\r\n");
             logFile.write("Captured " + FileLog.getDate() + "\r\n");
@@ -93,12 +106,15 @@ public class PlainTextSensorLog implements SensorLog {
             return;
 
         try {
-            logFile.write(getSecondsSinceFileStart() + "\t");
+            StringBuilder line = new StringBuilder();
+            line.append(getSecondsSinceFileStart()).append("\t");
             for (Sensor sensor : SensorLogger.SENSORS) {
-                logFile.write( sensor.getLogValue(SensorCentral.getInstance().getValue(sensor)) + "\t");
+                line.append(sensor.getLogValue(SensorCentral.getInstance().getValue(sensor))).append("\t");
             }
-            logFile.write("\r\n");
+            line.append("\r\n");
+            logFile.write(line.toString());
             logFile.flush();
+            fileSize += line.length();
         } catch (IOException e) {
             e.printStackTrace();
             logFile = null;
@@ -109,6 +125,9 @@ public class PlainTextSensorLog implements SensorLog {
     public void close() {
         BinarySensorLog.close(logFile);
         logFile = null;
+        if (file != null)
+            LogArchiver.getInstance().onSegmentClosed(file);
+        file = null;
     }
 }
 
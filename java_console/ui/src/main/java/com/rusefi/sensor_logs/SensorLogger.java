@@ -121,6 +121,8 @@ public class SensorLogger {
             return;
         }
         isInitialized = true;
+        // we log all sensors, not just the ones somebody is looking at
+        SensorCentral.getInstance().addFullResponseConsumer(this);
         SensorCentral.getInstance().addListener(Sensor.TIME_SECONDS,
             value -> {
                 if (ConnectionStatusLogic.INSTANCE.getValue() != ConnectionStatusValue.CONNECTED)
@@ -1,5 +1,6 @@
 package com.rusefi.tools;
 
+import com.devexperts.logging.FileLogger;
 import com.devexperts.logging.Logging;
 import com.opensr5.ConfigurationImage;
 import com.opensr5.io.ConfigurationImageFile;
@@ -20,6 +21,10 @@ import com.rusefi.io.tcp.BinaryProtocolProxy;
 import com.rusefi.io.tcp.BinaryProtocolServer;
 import com.rusefi.io.tcp.ServerSocketReference;
 import com.rusefi.maintenance.ExecHelper;
+import com.rusefi.sensor_logs.ChannelStats;
+import com.rusefi.sensor_logs.CompressedLog;
+import com.rusefi.sensor_logs.LogAnalytics;
+import com.rusefi.sensor_logs.LogFilter;
 import com.rusefi.tools.online.Online;
 import com.rusefi.ui.AuthTokenPanel;
 import com.rusefi.ui.StatusConsumer;
@@ -30,6 +35,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.function.Function;
@@ -85,6 +91,8 @@ public class ConsoleTools {
         registerTool("get_performance_trace", args -> PerformanceTraceHelper.getPerformanceTune(), "DEV TOOL: Get performance trace from ECU");
 
         registerTool("version", ConsoleTools::version, "Only print version");
+        registerTool("convert_log", ConsoleTools::convertLog, "Convert between .mlg and compressed .mlgz log, for instance convert_log a.mlgz a.mlg");
+        registerTool("analyze_logs", ConsoleTools::analyzeLogs, "Print channel statistics of all .mlg logs in specified folder, optional second argument is filter like \"RPMValue > 6000 && CLT > 100\"");
 
 /*
     on the one hand we can do low level DFU programming but c'mon we are not planning to maintain it any day soon!
@@ -145,6 +153,42 @@ public class ConsoleTools {
 //        calcXmlImageTuneCrc(null, "CurrentTune.msq");
     }
 
+    private static void analyzeLogs(String[] args) {
+        File folder = new File(args.length > 1 ? args[1] : FileLogger.DIR);
+        LogFilter filter = args.length > 2 ? LogFilter.parse(args[2]) : null;
+        Map<String, Double> thresholds = filter == null ? Collections.emptyMap() : filter.getLowerBounds();
+
+        long start = System.currentTimeMillis();
+        LogAnalytics.Result result = new LogAnalytics(filter, thresholds).analyze(LogAnalytics.listLogs(folder));
+        System.out.printf("%d file(s), %d record(s) in %dms%n", result.getFileCount(), result.getRecordCount(), System.currentTimeMillis() - start);
+        for (File file : result.getFailedFiles())
+            System.out.println("Failed to read " + file);
+
+        System.out.printf("%-34s %12s %12s %12s %12s %12s %12s %12s%n", "channel", "min", "max", "mean", "p50", "p90", "p99", "time above");
+        for (ChannelStats stats : result.getChannels().values()) {
+            System.out.printf("%-34s %12.3f %12.3f %12.3f %12.3f %12.3f %12.3f %12s%n", stats.getName(),
+                stats.getMin(), stats.getMax(), stats.getMean(),
+                stats.getPercentile(50), stats.getPercentile(90), stats.getPercentile(99),
+                Double.isNaN(stats.getThreshold()) ? "" : String.format("%.0fs", stats.getTimeAbove()));
+        }
+        if (filter != null) {
+            System.out.println(result.getWindows().size() + " window(s) matching " + filter);
+            for (LogAnalytics.TimeWindow window : result.getWindows())
+                System.out.println(window);
+        }
+    }
+
+    private static void convertLog(String[] args) throws IOException {
+        File in = new File(args[1]);
+        File out = new File(args[2]);
+        if (in.getName().endsWith(CompressedLog.SUFFIX)) {
+            CompressedLog.decompress(in, out);
+        } else {
+            CompressedLog.compress(in, out);
+        }
+        System.out.printf("%s: %d bytes, %s: %d bytes%n", in, in.length(), out, out.length());
+    }
+
     private static void calcBinaryImageTuneCrc(String... args) throws IOException {
         String fileName = args[1];
         ConfigurationImage image = ConfigurationImageFile.readFromFile(fileName).getConfigurationImage();
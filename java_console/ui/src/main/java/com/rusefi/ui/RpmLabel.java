@@ -48,6 +48,7 @@ public class RpmLabel {
             }
         });
 
+        SensorCentral.getInstance().addPolledSensor(Sensor.RPMValue);
         ConnectionStatusLogic.INSTANCE.addListener(new ConnectionStatusLogic.Listener() {
             @Override
             public void onConnectionStatus(boolean isConnected) {
@@ -1,6 +1,7 @@
 package com.rusefi.ui;
 
 import com.rusefi.NamedThreadFactory;
+import com.rusefi.TimeSeriesStore;
 import com.rusefi.core.Sensor;
 import com.rusefi.core.SensorCategory;
 import com.rusefi.core.SensorCentral;
@@ -11,7 +12,7 @@ import org.jetbrains.annotations.NotNull;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.concurrent.ThreadFactory;
 
 /**
@@ -28,7 +29,6 @@ public class SensorLiveGraph extends JPanel {
     private static final String UPPER = "upper";
     private static final String LOWER = "lower";
 
-    private final LinkedList<Double> values = new LinkedList<>();
     private final Node config;
     private final JMenuItem extraItem;
     @NotNull
@@ -37,12 +37,22 @@ public class SensorLiveGraph extends JPanel {
     private boolean autoScale;
     private double customUpper;
     private double customLower;
+    /**
+     * time of the newest point on the graph, graph stays still while paused
+     */
+    private volatile long time = System.currentTimeMillis();
+    /**
+     * values sampled by this graph for sensors which are not in shared history, oldest first
+     */
+    private final double[] sampledValues = new double[COUNT + 1];
 
     public SensorLiveGraph(Node config, final Sensor defaultSensor, JMenuItem extraItem) {
         this.config = config;
         this.extraItem = extraItem;
         String gaugeName = config.getProperty(SENSOR_TYPE, defaultSensor.name());
         this.sensor = Sensor.lookup(gaugeName, defaultSensor);
+        trackHistory(sensor);
+        Arrays.fill(sampledValues, Double.NaN);
 
         Thread thread = THREAD_FACTORY.newThread(createRunnable());
         thread.start();
@@ -86,8 +96,8 @@ public class SensorLiveGraph extends JPanel {
     }
 
     private void grabNewValue() {
-        double value = SensorCentral.getInstance().getValue(sensor);
-        addValue(value);
+        time = System.currentTimeMillis();
+        sampleIfNotInHistory();
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -223,14 +233,41 @@ public class SensorLiveGraph extends JPanel {
 
     private synchronized void setSensor(Sensor sensor) {
         this.sensor = sensor;
-        values.clear();
+        trackHistory(sensor);
+        Arrays.fill(sampledValues, Double.NaN);
         config.setProperty(SENSOR_TYPE, sensor.name());
     }
 
-    private synchronized void addValue(double value) {
-        if (values.size() > COUNT)
-            values.removeFirst();
-        values.add(value);
+    private static void trackHistory(Sensor sensor) {
+        TimeSeriesStore history = SensorCentral.getInstance().getHistory();
+        int channel = history.getChannel(sensor.name());
+        if (channel != -1)
+            history.track(channel);
+    }
+
+    /**
+     * Sensors which are not decoded from output channels frame, for instance calculated ones, have no shared history
+     * so we keep our own
+     */
+    private synchronized void sampleIfNotInHistory() {
+        if (SensorCentral.getInstance().getHistory().getChannel(sensor.name()) != -1)
+            return;
+        System.arraycopy(sampledValues, 1, sampledValues, 0, COUNT);
+        sampledValues[COUNT] = SensorCentral.getInstance().getValue(sensor);
+    }
+
+    /**
+     * @return sensor value at each point of the graph, NaN where history does not go that far
+     */
+    private double[] getValues() {
+        TimeSeriesStore history = SensorCentral.getInstance().getHistory();
+        int channel = history.getChannel(sensor.name());
+        if (channel == -1)
+            return sampledValues.clone();
+        double[] values = new double[COUNT + 1];
+        for (int i = 0; i < values.length; i++)
+            values[i] = history.getValueAt(channel, time - (long) (COUNT - i) * period.getMs());
+        return values;
     }
 
     @Override
@@ -242,9 +279,10 @@ public class SensorLiveGraph extends JPanel {
             return; // it's hopeless
         g.setColor(Color.black);
 
-        VisibleRange range = getRange();
+        double[] values = getValues();
+        VisibleRange range = getRange(values);
 
-        paintGraph(g, d, range.minValue, range.maxValue);
+        paintGraph(g, d, values, range.minValue, range.maxValue);
 
         g.setColor(Color.red);
         int minY = d.height;
@@ -261,46 +299,48 @@ public class SensorLiveGraph extends JPanel {
         Font f = g.getFont();
         g.setFont(new Font(f.getName(), f.getStyle(), 3 * f.getSize()));
 
-        if (!values.isEmpty())
-            paintLastValue(g, d);
+        paintLastValue(g, d, values[values.length - 1]);
     }
 
-    private VisibleRange getRange() {
-        VisibleRange range;
-        if (autoScale) {
-            range = VisibleRange.findRange(values);
-        } else {
+    private VisibleRange getRange(double[] values) {
+        VisibleRange range = autoScale ? VisibleRange.findRange(values) : null;
+        if (range == null) {
             range = new VisibleRange(Double.isNaN(customLower) ? sensor.getMinValue() : customLower,
                     Double.isNaN(customUpper) ? sensor.getMaxValue() : customUpper);
         }
         return range;
     }
 
-    private void paintLastValue(Graphics g, Dimension d) {
-        Double last = values.getLast();
+    private void paintLastValue(Graphics g, Dimension d, double last) {
         if (!Double.isNaN(last)) {
             String currentValue = String.format("%.2f", last);
             g.drawString(currentValue, (d.width - g.getFontMetrics().stringWidth(currentValue)) / 2, d.height / 2 + g.getFont().getSize() / 2);
         }
     }
 
-    private void paintGraph(Graphics g, Dimension d, double minValue, double maxValue) {
+    private void paintGraph(Graphics g, Dimension d, double[] values, double minValue, double maxValue) {
         int index = 0;
         int prevX = 0;
         int prevY = 0;
+        boolean hasPrevious = false;
         for (double value : values) {
-            int x = d.width * index / values.size();
+            if (Double.isNaN(value)) {
+                index++;
+                continue;
+            }
+            int x = d.width * index / values.length;
 
             int y = (int) (d.height - (value - minValue) * d.height / (maxValue - minValue));
 
             g.drawOval(x, y, 3, 3);
 
-            if (index > 0) {
+            if (hasPrevious) {
                 g.drawLine(x, y, prevX, prevY);
             }
 
             prevX = x;
             prevY = y;
+            hasPrevious = true;
             index++;
         }
     }
@@ -314,13 +354,20 @@ public class SensorLiveGraph extends JPanel {
             this.maxValue = maxValue;
         }
 
-        public static VisibleRange findRange(LinkedList<Double> values) {
+        /**
+         * @return null if there are no values
+         */
+        public static VisibleRange findRange(double[] values) {
             double minValue = Double.MAX_VALUE;
             double maxValue = -Double.MAX_VALUE;
             for (double value : values) {
+                if (Double.isNaN(value))
+                    continue;
                 minValue = Math.min(minValue, value);
                 maxValue = Math.max(maxValue, value);
             }
+            if (minValue > maxValue)
+                return null;
 
             if (minValue == maxValue) { // double equals should work here, should it?
                 minValue = 0.9 * maxValue - 1;
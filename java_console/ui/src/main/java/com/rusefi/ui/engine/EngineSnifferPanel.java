@@ -78,6 +78,8 @@ public class EngineSnifferPanel {
 
     public EngineSnifferPanel(UIContext uiContext, Node config) {
         statusPanel.setTimeAxisTranslator(crank.createTranslator());
+        // image file name
+        SensorCentral.getInstance().addPolledSensor(Sensor.MAF);
 
         final JButton pauseButton = UiUtils.createPauseButton();
         pauseButton.addActionListener(new ActionListener() {
@@ -5,6 +5,7 @@ import com.rusefi.core.Sensor;
 import com.rusefi.core.SensorCentral;
 
 import javax.swing.*;
+import java.util.EnumSet;
 
 /**
  * Read-only text representation of an int {@link Sensor}
@@ -17,6 +18,7 @@ public class IntGaugeLabel extends JLabel {
         if (sensor.getType() != FieldType.INT)
             throw new IllegalArgumentException(sensor.name());
 
-        SensorCentral.getInstance().addListener(sensor, value -> setText(shortName + ": " + (int)value));
+        SensorCentral.getInstance().addFrameListener(EnumSet.of(sensor), SwingUtilities::invokeLater,
+            snapshot -> setText(shortName + ": " + (int) snapshot.getValue(sensor)));
     }
 }
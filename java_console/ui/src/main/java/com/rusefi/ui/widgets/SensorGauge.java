@@ -14,6 +14,7 @@ import eu.hansolo.steelseries.tools.ColorDef;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.EnumSet;
 
 /**
  * Round gauge
@@ -56,11 +57,11 @@ public class SensorGauge {
 
         gauge.setBackgroundColor(BackgroundColor.LIGHT_GRAY);
 
-        SensorCentral.getInstance().addListener(sensor,
-            value -> {
+        SensorCentral.getInstance().addFrameListener(EnumSet.of(sensor), SwingUtilities::invokeLater,
+            snapshot -> {
                 if (GaugesPanel.IS_PAUSED)
                     return;
-                gauge.setValue(sensor.translateValue(value));
+                gauge.setValue(sensor.translateValue(snapshot.getValue(sensor)));
             }
         );
 
@@ -0,0 +1,113 @@
+package com.rusefi.sensor_logs;
+
+import com.rusefi.core.Sensor;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see BinarySensorLogReader
+ */
+public class BinarySensorLogReaderTest {
+    private static final int RECORDS = 1000;
+
+    private static BinarySensorLog<Sensor> writeLog(List<Sensor> sensors, int records) {
+        BinarySensorLog<Sensor> log = new BinarySensorLog<>(sensor -> 1, sensors);
+        for (int i = 0; i < records; i++)
+            log.writeSensorLogLine();
+        log.close();
+        return log;
+    }
+
+    /**
+     * Data begin at 0010h points past header text, older files have it equal to info data start at 000Ch
+     */
+    @Test
+    public void testDataBegin() throws IOException {
+        List<Sensor> sensors = Arrays.asList(Sensor.TIME_SECONDS, Sensor.RPMValue);
+        File file = new File(writeLog(sensors, 10).getFileName());
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            ByteBuffer header = ByteBuffer.wrap(content);
+            int infoStart = header.getInt(0x0C);
+            int dataBegin = header.getInt(0x10);
+            String headerText = BinarySensorLogReader.open(file).getHeaderText();
+            assertEquals(infoStart + headerText.length(), dataBegin);
+            // first record is a field block
+            assertEquals(0, content[dataBegin]);
+
+            // same file the way older consoles wrote it
+            header.putInt(0x10, infoStart);
+            Files.write(file.toPath(), content);
+            BinarySensorLogReader legacy = BinarySensorLogReader.open(file);
+            assertEquals(headerText, legacy.getHeaderText());
+            assertEquals(10, legacy.getRecordCount());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        List<Sensor> sensors = Arrays.asList(Sensor.TIME_SECONDS, Sensor.RPMValue, Sensor.CLT, Sensor.sdAirMassInOneCylinder);
+        int[] record = new int[1];
+        BinarySensorLog<Sensor> log = new BinarySensorLog<>(sensor -> {
+            switch (sensor) {
+                case TIME_SECONDS:
+                    // a few records per second
+                    return record[0] / 4;
+                case RPMValue:
+                    return 800 + record[0];
+                case CLT:
+                    return -record[0];
+                default:
+                    return record[0] / 8.0;
+            }
+        }, sensors);
+        for (record[0] = 0; record[0] < RECORDS; record[0]++)
+            log.writeSensorLogLine();
+        log.close();
+
+        File file = new File(log.getFileName());
+        try {
+            BinarySensorLogReader reader = BinarySensorLogReader.open(file);
+            assertEquals(2, reader.getVersion());
+            assertTrue(reader.getHeaderText().startsWith("\"rusEFI "), reader.getHeaderText());
+            assertEquals(sensors.size(), reader.getFields().size());
+            assertEquals(RECORDS, reader.getRecordCount());
+            assertEquals(4 + 4 + 2 + 2 + 4 + 1, reader.getRecordSize());
+
+            BinarySensorLogReader.LogField rpm = reader.getFields().get(1);
+            assertEquals(Sensor.RPMValue.getName(), rpm.getName());
+            assertEquals(Sensor.RPMValue.getUnits(), rpm.getUnit());
+            assertEquals(1, reader.indexOf(Sensor.RPMValue.getName().toUpperCase()));
+
+            for (int i = 0; i < RECORDS; i++) {
+                assertEquals(i & 0xFF, reader.getCounter(i));
+                assertTrue(reader.isChecksumValid(i));
+                assertEquals(i / 4, reader.getTime(i));
+                assertEquals(800 + i, reader.getValue(i, 1));
+                assertEquals(-i, reader.getValue(i, 2));
+                assertEquals(i / 8.0, reader.getValue(i, 3));
+            }
+
+            double[] sum = new double[1];
+            reader.forEach(1, 10, 20, (index, value) -> sum[0] += value);
+            assertEquals(10 * 800 + (10 + 19) * 5, sum[0]);
+
+            assertEquals(0, reader.findRecord(-1));
+            assertEquals(3, reader.findRecord(0));
+            assertEquals(103, reader.findRecord(25.5));
+            assertEquals(RECORDS - 1, reader.findRecord(1e6));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -6,13 +6,13 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 public class BinarySensorLogSandbox {
     public static void main(String[] args) {
         Map<Sensor, Double> values = new HashMap<>();
 
-        Function<Sensor, Double> valueProvider = sensor -> {
+        ToDoubleFunction<Sensor> valueProvider = sensor -> {
             Double result = values.getOrDefault(sensor, 0.0);
             Objects.requireNonNull(result, "value for sensor");
             return result;
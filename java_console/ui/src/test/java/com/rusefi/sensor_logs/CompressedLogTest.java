@@ -0,0 +1,115 @@
+package com.rusefi.sensor_logs;
+
+import com.rusefi.core.Sensor;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see CompressedLog
+ */
+public class CompressedLogTest {
+    private static final int RECORDS = 3000;
+    private static final List<Sensor> SENSORS = Arrays.asList(Sensor.TIME_SECONDS, Sensor.RPMValue, Sensor.CLT, Sensor.sdAirMassInOneCylinder);
+
+    private static File writeLog(boolean compressed) {
+        int[] record = new int[1];
+        BinarySensorLog<Sensor> log = new BinarySensorLog<>(sensor -> {
+            switch (sensor) {
+                case TIME_SECONDS:
+                    return record[0] / 20;
+                case RPMValue:
+                    return 800 + record[0] % 500;
+                case CLT:
+                    return 90;
+                default:
+                    return Math.sin(record[0] / 100.0);
+            }
+        }, SENSORS).setCompressed(compressed);
+        for (record[0] = 0; record[0] < RECORDS; record[0]++)
+            log.writeSensorLogLine();
+        log.close();
+        return new File(log.getFileName());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File mlg = writeLog(false);
+        File mlgz = File.createTempFile("log", CompressedLog.SUFFIX);
+        File restored = File.createTempFile("log", ".mlg");
+        try {
+            CompressedLog.compress(mlg, mlgz);
+            assertTrue(mlgz.length() * 4 < mlg.length(), mlgz.length() + " vs " + mlg.length());
+
+            try (CompressedLogReader reader = CompressedLogReader.open(mlgz)) {
+                assertFalse(reader.isRecovered());
+                assertEquals(RECORDS, reader.getRecordCount());
+                assertEquals(SENSORS.size(), reader.getFields().size());
+                assertEquals(3, reader.getBlocks().size());
+                assertEquals(2, reader.findBlock(RECORDS - 1));
+                assertEquals(-1, reader.findBlock(RECORDS));
+                // 20 records per second, 1024 records per block
+                assertEquals(1, reader.findBlockByTime(60));
+                assertEquals(51, reader.getBlocks().get(1).getFirstTime());
+            }
+
+            CompressedLog.decompress(mlgz, restored);
+            assertArrayEquals(Files.readAllBytes(mlg.toPath()), Files.readAllBytes(restored.toPath()));
+        } finally {
+            mlg.delete();
+            mlgz.delete();
+            restored.delete();
+        }
+    }
+
+    @Test
+    public void testCrashAndAppend() throws IOException {
+        File mlgz = writeLog(true);
+        assertTrue(mlgz.getName().endsWith(CompressedLog.SUFFIX));
+        try {
+            byte[] firstBlock;
+            long secondBlock;
+            try (CompressedLogReader reader = CompressedLogReader.open(mlgz)) {
+                assertEquals(RECORDS, reader.getRecordCount());
+                firstBlock = reader.readBlock(0);
+                secondBlock = reader.getBlocks().get(1).getOffset();
+            }
+            // power loss while second block was written
+            try (RandomAccessFile file = new RandomAccessFile(mlgz, "rw")) {
+                file.setLength(secondBlock + 10);
+            }
+            try (CompressedLogReader reader = CompressedLogReader.open(mlgz)) {
+                assertTrue(reader.isRecovered());
+                assertEquals(1024, reader.getRecordCount());
+                assertArrayEquals(firstBlock, reader.readBlock(0));
+            }
+
+            try (CompressedLogWriter writer = CompressedLogWriter.append(mlgz)) {
+                assertEquals(1024, writer.getRecordCount());
+                // half a record at a time
+                ByteBuffer records = ByteBuffer.wrap(firstBlock);
+                while (records.hasRemaining()) {
+                    ByteBuffer piece = records.slice();
+                    piece.limit(Math.min(piece.remaining(), 7));
+                    records.position(records.position() + writer.write(piece));
+                }
+            }
+            try (CompressedLogReader reader = CompressedLogReader.open(mlgz)) {
+                assertFalse(reader.isRecovered());
+                assertEquals(2048, reader.getRecordCount());
+                assertEquals(1024, reader.getBlocks().get(1).getFirstRecord());
+                assertArrayEquals(firstBlock, reader.readBlock(1));
+            }
+        } finally {
+            mlgz.delete();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.rusefi.sensor_logs;
+
+import com.rusefi.core.Sensor;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @see LogAnalytics
+ */
+public class LogAnalyticsTest {
+    private static final int RECORDS = 400;
+
+    @Test
+    public void testFolder() throws IOException {
+        File folder = Files.createTempDirectory("logs").toFile();
+        try {
+            for (int i = 0; i < 3; i++)
+                writeLog(folder, i);
+            // not a log
+            Files.write(new File(folder, "broken" + LogAnalytics.LOG_SUFFIX).toPath(), new byte[]{1, 2, 3});
+
+            LogFilter filter = LogFilter.parse("RPMValue > 6000 && CLT > 100");
+            List<File> files = LogAnalytics.listLogs(folder);
+            assertEquals(4, files.size());
+            LogAnalytics.Result result = new LogAnalytics(filter, filter.getLowerBounds()).analyze(files);
+
+            assertEquals(3, result.getFileCount());
+            assertEquals(3 * RECORDS, result.getRecordCount());
+            assertEquals(1, result.getFailedFiles().size());
+
+            ChannelStats rpm = result.getChannels().get(Sensor.RPMValue.getName());
+            assertEquals(3 * RECORDS, rpm.getCount());
+            assertEquals(0, rpm.getMin());
+            assertEquals(8000 + (RECORDS - 1) * 20, rpm.getMax());
+            // one second per record, last record of each log lasts zero seconds
+            assertEquals(98 + 399, rpm.getTimeAbove(), 1e-6);
+
+            // first log never goes above 6000 RPM
+            assertEquals(2, result.getWindows().size());
+            LogAnalytics.TimeWindow window = result.getWindows().get(0);
+            assertTrue(window.getFile().getName().startsWith("1_"));
+            assertEquals(301, window.getFromRecord());
+            assertEquals(310, window.getToRecord());
+            assertEquals(301, window.getFromTime());
+            assertEquals(310, window.getToTime());
+            assertEquals(300, result.getWindows().get(1).getFromRecord());
+        } finally {
+            for (File file : folder.listFiles())
+                file.delete();
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void testCompressedLogMatchesClassic() throws IOException {
+        File folder = Files.createTempDirectory("logs").toFile();
+        try {
+            // hot window crosses the boundary between first and second block
+            int hotFrom = CompressedLogWriter.BLOCK_RECORDS - 4;
+            File mlg = writeLog(folder, 1, 3 * CompressedLogWriter.BLOCK_RECORDS + 7, hotFrom, hotFrom + 10);
+            File mlgz = new File(folder, "2" + CompressedLog.SUFFIX);
+            CompressedLog.compress(mlg, mlgz);
+            assertEquals(Arrays.asList(mlg, mlgz), LogAnalytics.listLogs(folder));
+
+            LogFilter filter = LogFilter.parse("RPMValue > 6000 && CLT > 100");
+            LogAnalytics analytics = new LogAnalytics(filter, filter.getLowerBounds());
+            LogAnalytics.Result classic = analytics.analyze(mlg);
+            LogAnalytics.Result compressed = analytics.analyze(mlgz);
+
+            assertTrue(compressed.getFailedFiles().isEmpty());
+            assertEquals(classic.getRecordCount(), compressed.getRecordCount());
+            for (String channel : classic.getChannels().keySet()) {
+                ChannelStats expected = classic.getChannels().get(channel);
+                ChannelStats actual = compressed.getChannels().get(channel);
+                assertEquals(expected.getCount(), actual.getCount(), channel);
+                assertEquals(expected.getMax(), actual.getMax(), channel);
+                assertEquals(expected.getMean(), actual.getMean(), 1e-9, channel);
+                assertEquals(expected.getTimeAbove(), actual.getTimeAbove(), 1e-9, channel);
+            }
+            assertEquals(1, compressed.getWindows().size());
+            LogAnalytics.TimeWindow window = compressed.getWindows().get(0);
+            assertEquals(hotFrom, window.getFromRecord());
+            assertEquals(hotFrom + 10, window.getToRecord());
+            assertEquals(classic.getWindows().get(0).getToTime(), window.getToTime());
+        } finally {
+            for (File file : folder.listFiles())
+                file.delete();
+            folder.delete();
+        }
+    }
+
+    private static void writeLog(File folder, int index) throws IOException {
+        writeLog(folder, index, RECORDS, 300, 310);
+    }
+
+    /**
+     * RPM ramps up with log index, CLT is hot for records from hotFrom inclusive to hotTo exclusive
+     */
+    private static File writeLog(File folder, int index, int records, int hotFrom, int hotTo) throws IOException {
+        int[] record = new int[1];
+        BinarySensorLog<Sensor> log = new BinarySensorLog<>(sensor -> {
+            switch (sensor) {
+                case TIME_SECONDS:
+                    return record[0];
+                case RPMValue:
+                    return record[0] * (index == 0 ? 10 : 20) + (index == 2 ? 8000 : 0);
+                default:
+                    return record[0] >= hotFrom && record[0] < hotTo ? 110 : 90;
+            }
+        }, Arrays.asList(Sensor.TIME_SECONDS, Sensor.RPMValue, Sensor.CLT));
+        for (record[0] = 0; record[0] < records; record[0]++)
+            log.writeSensorLogLine();
+        log.close();
+        File file = new File(log.getFileName());
+        File target = new File(folder, index + "_" + file.getName());
+        Files.move(file.toPath(), target.toPath());
+        return target;
+    }
+}
@@ -6,6 +6,9 @@ import org.junit.jupiter.api.Test;
 import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * 12/18/13
@@ -48,4 +51,25 @@ public class HistogramsTest {
 
     }
 
+    @Test
+    public void testResetInPlace() {
+        Histograms h = new Histograms();
+        Histograms.ValueType type = Histograms.ValueType.INVOCATION;
+        h.addValue(type, "a", 30);
+        Histograms.Statistics data = h.local_stats.get().stats.get(type).data.get("a");
+
+        assertTrue(h.dumpStats().stream().anyMatch(line -> line.contains("30 / 1")));
+        assertEquals(0, data.total_count);
+
+        // same arrays keep being used after dump
+        h.addValue(type, "a", 40);
+        assertSame(data, h.local_stats.get().stats.get(type).data.get("a"));
+        assertEquals(1, data.total_count);
+
+        h.dumpStats();
+        // nothing recorded for a whole period
+        h.dumpStats();
+        assertNull(h.local_stats.get().stats);
+    }
+
 }